@@ -0,0 +1,99 @@
+/*
+ * BlockingSchedulerBenchmark.java
+ *
+ * Created on 2026-10-18, 02:30
+ *
+ * Copyright 2018 Marc Nuri
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.marcnuri.isotope.api.configuration;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import reactor.core.publisher.Flux;
+import reactor.core.scheduler.Scheduler;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the {@link ExecutionMode}s for a burst of concurrent SSE streams each performing blocking IMAP calls
+ * (simulated with {@link Thread#sleep(long)}), the same way FolderResource subscribes message listings.
+ *
+ * <p>VIRTUAL is measured as BOUNDED when running on Java versions previous to 21.
+ *
+ * <p>Created by Marc Nuri <marc@marcnuri.com> on 2026-10-18.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BlockingSchedulerBenchmark {
+
+    private static final int BLOCKING_CALLS_PER_STREAM = 4;
+    private static final long BLOCKING_CALL_MILLIS = 5L;
+
+    @Param({"ELASTIC", "BOUNDED", "VIRTUAL"})
+    public String mode;
+
+    @Param({"50", "1000"})
+    public int streams;
+
+    @Param({"200"})
+    public int maxThreads;
+
+    private Scheduler scheduler;
+
+    @Setup
+    public void setUp() {
+        scheduler = ExecutionConfiguration.newBlockingScheduler(
+                ExecutionConfiguration.effectiveMode(ExecutionMode.valueOf(mode)), maxThreads, 10000);
+    }
+
+    @TearDown
+    public void tearDown() {
+        scheduler.dispose();
+    }
+
+    @Benchmark
+    public Long burst() {
+        return Flux.range(0, streams)
+                .flatMap(stream -> Flux.range(0, BLOCKING_CALLS_PER_STREAM)
+                        .map(BlockingSchedulerBenchmark::blockingCall)
+                        .subscribeOn(scheduler), streams)
+                .count()
+                .block();
+    }
+
+    private static Integer blockingCall(Integer value) {
+        try {
+            Thread.sleep(BLOCKING_CALL_MILLIS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        return value;
+    }
+}
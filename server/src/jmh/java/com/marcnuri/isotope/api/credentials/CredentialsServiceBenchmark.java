@@ -0,0 +1,106 @@
+/*
+ * CredentialsServiceBenchmark.java
+ *
+ * Created on 2026-10-17, 21:40
+ *
+ * Copyright 2018 Marc Nuri
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.marcnuri.isotope.api.credentials;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.marcnuri.isotope.api.configuration.IsotopeApiConfiguration;
+import com.marcnuri.isotope.api.http.HttpHeaders;
+import com.marcnuri.isotope.api.session.InMemorySessionStore;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per request cost of {@link CredentialsService#fromRequest(javax.servlet.http.HttpServletRequest)} and cost of
+ * {@link CredentialsService#encrypt(Credentials)} (login).
+ *
+ * <p>A cache size of 0 measures the uncached path (key derivation, AES decryption and JSON parsing on every
+ * request). fromSession measures requests authenticated with a session token instead.
+ *
+ * <p>Created by Marc Nuri <marc@marcnuri.com> on 2026-10-17.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CredentialsServiceBenchmark {
+
+    @Param({"0", "10000"})
+    public long cacheMaxSize;
+
+    private CredentialsService credentialsService;
+    private Credentials credentials;
+    private MockHttpServletRequest request;
+    private MockHttpServletRequest sessionRequest;
+
+    @Setup
+    public void setUp() throws Exception {
+        final MockEnvironment environment = new MockEnvironment()
+                .withProperty("CREDENTIALS_CACHE_MAX_SIZE", String.valueOf(cacheMaxSize));
+        credentialsService = new CredentialsService(new ObjectMapper(), new IsotopeApiConfiguration(environment),
+                new InMemorySessionStore(1L, 60000L));
+        credentials = new Credentials();
+        credentials.setServerHost("imap.isotope.com");
+        credentials.setServerPort(993);
+        credentials.setUser("user@isotope.com");
+        credentials.setPassword("password");
+        credentials.setImapSsl(true);
+        credentials.setSmtpHost("smtp.isotope.com");
+        credentials.setSmtpPort(465);
+        credentials.setSmtpSsl(true);
+        final Credentials encrypted = credentialsService.encrypt(credentials);
+        request = new MockHttpServletRequest();
+        request.addHeader(HttpHeaders.ISOTOPE_CRDENTIALS, encrypted.getEncrypted());
+        request.addHeader(HttpHeaders.ISOTOPE_SALT, encrypted.getSalt());
+        sessionRequest = new MockHttpServletRequest();
+        sessionRequest.addHeader(HttpHeaders.ISOTOPE_SESSION, credentialsService.createSession(credentials));
+    }
+
+    @Benchmark
+    public Credentials encrypt() throws JsonProcessingException {
+        return credentialsService.encrypt(credentials);
+    }
+
+    @Benchmark
+    public Credentials fromRequest() {
+        return credentialsService.fromRequest(request);
+    }
+
+    @Benchmark
+    public Credentials fromSession() {
+        return credentialsService.fromRequest(sessionRequest);
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ * FolderFromBenchmark.java
+ *
+ * Created on 2026-10-18, 00:50
+ *
+ * Copyright 2018 Marc Nuri
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.marcnuri.isotope.api.folder;
+
+import com.sun.mail.imap.IMAPFolder;
+import com.sun.mail.imap.IMAPStore;
+import com.sun.mail.imap.protocol.IMAPResponse;
+import com.sun.mail.imap.protocol.Status;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.mail.MessagingException;
+import javax.mail.Session;
+import javax.mail.URLName;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of mapping an IMAP folder tree with {@link Folder#from(IMAPFolder, Boolean)}.
+ *
+ * <p>IMAP folders return their (already loaded) STATUS response without connecting to a server. The tree has a root folder
+ * with children folders with 9 children each.
+ *
+ * <p>Created by Marc Nuri <marc@marcnuri.com> on 2026-10-18.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FolderFromBenchmark {
+
+    @Param({"10", "300"})
+    public int folderCount;
+
+    private IMAPFolder root;
+
+    @Setup
+    public void setUp() throws Exception {
+        final IMAPStore store = (IMAPStore) Session.getInstance(new Properties()).getStore("imap");
+        final IMAPFolder[] children = new IMAPFolder[Math.max(1, folderCount / 10)];
+        for (int it = 0; it < children.length; it++) {
+            final IMAPFolder[] grandChildren = new IMAPFolder[9];
+            for (int gc = 0; gc < grandChildren.length; gc++) {
+                grandChildren[gc] = new StatusFolder(store, "Folder " + it + "/Child " + gc, new IMAPFolder[0]);
+            }
+            children[it] = new StatusFolder(store, "Folder " + it, grandChildren);
+        }
+        root = new StatusFolder(store, "INBOX", children);
+    }
+
+    @Benchmark
+    public Folder from() {
+        return Folder.from(root, true);
+    }
+
+    private static final class StatusFolder extends IMAPFolder {
+
+        private final IMAPFolder[] children;
+        private final Status status;
+
+        private StatusFolder(IMAPStore store, String fullName, IMAPFolder[] children) {
+            super(fullName, '/', store, false);
+            this.children = children;
+            try {
+                status = new Status(new IMAPResponse(
+                        "* STATUS \"" + fullName + "\" (MESSAGES 640 RECENT 1 UNSEEN 13 UIDNEXT 641 UIDVALIDITY 1337)"));
+            } catch (Exception ex) {
+                throw new IllegalStateException(ex);
+            }
+            attributes = children.length == 0 ?
+                    new String[]{"\\HasNoChildren"} : new String[]{"\\HasChildren"};
+        }
+
+        @Override
+        public synchronized String getName() {
+            return fullName.substring(fullName.lastIndexOf('/') + 1);
+        }
+
+        @Override
+        public URLName getURLName() {
+            return new URLName("imaps", "imap.isotope.com", 993, fullName, "user@isotope.com", null);
+        }
+
+        @Override
+        public synchronized String[] getAttributes() {
+            return attributes.clone();
+        }
+
+        @Override
+        public synchronized int getType() {
+            return HOLDS_MESSAGES | HOLDS_FOLDERS;
+        }
+
+        @Override
+        public Object doCommand(ProtocolCommand cmd) throws MessagingException {
+            return status;
+        }
+
+        @Override
+        public synchronized long getUIDValidity() {
+            return 1337L;
+        }
+
+        @Override
+        public synchronized int getMessageCount() {
+            return 640;
+        }
+
+        @Override
+        public synchronized int getNewMessageCount() {
+            return 1;
+        }
+
+        @Override
+        public synchronized int getUnreadMessageCount() {
+            return 13;
+        }
+
+        @Override
+        public synchronized int getDeletedMessageCount() {
+            return 0;
+        }
+
+        @Override
+        public javax.mail.Folder[] list() {
+            return children.clone();
+        }
+    }
+}
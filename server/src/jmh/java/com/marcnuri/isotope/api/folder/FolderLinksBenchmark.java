@@ -0,0 +1,158 @@
+/*
+ * FolderLinksBenchmark.java
+ *
+ * Created on 2026-10-17, 23:10
+ *
+ * Copyright 2018 Marc Nuri
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.marcnuri.isotope.api.folder;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.commons.io.output.NullOutputStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.springframework.hateoas.mvc.ControllerLinkBuilder.linkTo;
+import static org.springframework.hateoas.mvc.ControllerLinkBuilder.methodOn;
+
+/**
+ * Cost of adding links to and serializing a folder tree (as returned by GET /v1/folders).
+ *
+ * <p>linkToMethodOn replicates the previous implementation building every link with linkTo(methodOn(...)),
+ * linkTemplates uses the precomputed templates in {@link FolderResource}.
+ *
+ * <p>Created by Marc Nuri <marc@marcnuri.com> on 2026-10-17.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class FolderLinksBenchmark {
+
+    @Param({"300"})
+    public int folderCount;
+
+    private ObjectMapper objectMapper;
+
+    @Setup
+    public void setUp() {
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(new MockHttpServletRequest()));
+        objectMapper = new ObjectMapper();
+    }
+
+    @TearDown
+    public void tearDown() {
+        RequestContextHolder.resetRequestAttributes();
+    }
+
+    @Benchmark
+    public List<Folder> linkToMethodOn() throws IOException {
+        final List<Folder> folders = folderTree();
+        folders.forEach(FolderLinksBenchmark::addLinksWithLinkTo);
+        objectMapper.writeValue(new NullOutputStream(), folders);
+        return folders;
+    }
+
+    @Benchmark
+    public List<Folder> linkTemplates() throws IOException {
+        final List<Folder> folders = FolderResource.addLinks(folderTree());
+        objectMapper.writeValue(new NullOutputStream(), folders);
+        return folders;
+    }
+
+    /**
+     * Root folders with 9 children each.
+     */
+    private List<Folder> folderTree() {
+        final List<Folder> ret = new ArrayList<>();
+        for (int root = 0; root < folderCount / 10; root++) {
+            final Folder[] children = new Folder[9];
+            for (int child = 0; child < children.length; child++) {
+                children[child] = folder("Folder " + root + "/Child " + child, new Folder[0]);
+            }
+            ret.add(folder("Folder " + root, children));
+        }
+        return ret;
+    }
+
+    private static Folder folder(String name, Folder[] children) {
+        final Folder folder = new Folder();
+        folder.setName(name);
+        folder.setFullName(name);
+        folder.setFolderId(Base64.getUrlEncoder().withoutPadding().encodeToString(name.getBytes(UTF_8)));
+        folder.setChildren(children);
+        return folder;
+    }
+
+    private static void addLinksWithLinkTo(Folder folder) {
+        folder.add(linkTo(methodOn(FolderResource.class)
+                .getMessages( folder.getFolderId(), null))
+                .withRel("messages").expand());
+        folder.add(linkTo(methodOn(FolderResource.class)
+                .deleteFolder(null, folder.getFolderId()))
+                .withRel("delete"));
+        folder.add(linkTo(methodOn(FolderResource.class)
+                .renameFolder(null, folder.getFolderId(), null))
+                .withRel("rename"));
+        folder.add(linkTo(methodOn(FolderResource.class)
+                .moveFolder(null, folder.getFolderId(), null))
+                .withRel("move"));
+        folder.add(linkTo(methodOn(FolderResource.class)
+                .getMessage(null, null, folder.getFolderId(), null))
+                .withRel("message"));
+        folder.add(linkTo(methodOn(FolderResource.class)
+                .setMessageFlagged(null, folder.getFolderId(), null, false))
+                .withRel("message.flagged"));
+        folder.add(linkTo(methodOn(FolderResource.class)
+                .moveMessage(null, folder.getFolderId(), null, null))
+                .withRel("message.move"));
+        folder.add(linkTo(methodOn(FolderResource.class)
+                .moveMessages(null, folder.getFolderId(), null, Collections.emptyList()))
+                .withRel("message.move.bulk"));
+        folder.add(linkTo(methodOn(FolderResource.class)
+                .setMessageSeen(null, folder.getFolderId(), null, false))
+                .withRel("message.seen"));
+        folder.add(linkTo(methodOn(FolderResource.class)
+                .setMessagesSeen(null, folder.getFolderId(), null, Collections.emptyList()))
+                .withRel("message.seen.bulk"));
+        for (Folder child : folder.getChildren()) {
+            addLinksWithLinkTo(child);
+        }
+    }
+}
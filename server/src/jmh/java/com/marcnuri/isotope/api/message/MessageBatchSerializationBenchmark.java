@@ -0,0 +1,104 @@
+/*
+ * MessageBatchSerializationBenchmark.java
+ *
+ * Created on 2026-10-18, 00:25
+ *
+ * Copyright 2018 Marc Nuri
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.marcnuri.isotope.api.message;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.apache.commons.io.output.NullOutputStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.io.IOException;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of serializing a batch of message envelopes to JSON as sent in each event of the message listing SSE stream.
+ *
+ * <p>The ObjectMapper is configured the same way as the one provided by Spring Boot.
+ *
+ * <p>Created by Marc Nuri <marc@marcnuri.com> on 2026-10-18.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MessageBatchSerializationBenchmark {
+
+    @Param({"640"})
+    public int batchSize;
+
+    private ObjectMapper objectMapper;
+    private List<Message> batch;
+
+    @Setup
+    public void setUp() {
+        objectMapper = Jackson2ObjectMapperBuilder.json()
+                .featuresToDisable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+                .build();
+        final ZonedDateTime receivedDate = ZonedDateTime.of(2018, 10, 17, 12, 0, 0, 0, ZoneId.of("CET"));
+        batch = new ArrayList<>(batchSize);
+        for (int it = 0; it < batchSize; it++) {
+            final Message message = new Message();
+            message.setUid(1000L + it);
+            message.setMessageId("<" + it + ".1337@isotope.com>");
+            message.setModseq(10000L + it);
+            message.setFrom(Collections.singletonList("\"Sender " + it + "\" <sender" + it + "@isotope.com>"));
+            message.setReplyTo(Collections.emptyList());
+            message.setRecipients(Arrays.asList(
+                    new Recipient("To", "to@isotope.com"),
+                    new Recipient("Cc", "\"Carbon Copy\" <cc" + it + "@isotope.com>")));
+            message.setSubject("Re: Isotope Mail Client benchmark message number " + it);
+            message.setReceivedDate(receivedDate.plusMinutes(it));
+            message.setSize(4096L + it);
+            message.setFlagged(it % 10 == 0);
+            message.setSeen(it % 3 != 0);
+            message.setRecent(false);
+            message.setDeleted(false);
+            message.setReferences(Collections.singletonList("<" + (it - 1) + ".1337@isotope.com>"));
+            message.setInReplyTo(Collections.singletonList("<" + (it - 1) + ".1337@isotope.com>"));
+            batch.add(message);
+        }
+    }
+
+    @Benchmark
+    public List<Message> messageBatch() throws IOException {
+        objectMapper.writeValue(new NullOutputStream(), batch);
+        return batch;
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * MessageBodyCacheBenchmark.java
+ *
+ * Created on 2026-10-18, 12:10
+ *
+ * Copyright 2018 Marc Nuri
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.marcnuri.isotope.api.message;
+
+import com.marcnuri.isotope.api.configuration.IsotopeApiConfiguration;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.util.FileSystemUtils;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of serving a rendered message body from the {@link MessageBodyCache} (file read, AES-GCM decryption and
+ * decoding) for different content sizes.
+ *
+ * <p>Created by Marc Nuri <marc@marcnuri.com> on 2026-10-18.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MessageBodyCacheBenchmark {
+
+    @Param({"16384", "262144"})
+    public int contentLength;
+
+    private Path directory;
+    private MessageBodyCache messageBodyCache;
+
+    @Setup
+    public void setUp() throws Exception {
+        directory = Files.createTempDirectory("isotope-message-cache-benchmark");
+        final MockEnvironment environment = new MockEnvironment()
+                .withProperty("MESSAGE_CACHE_DIRECTORY", directory.toString());
+        messageBodyCache = new MessageBodyCache(new IsotopeApiConfiguration(environment));
+        final Message message = new Message();
+        message.setUid(1337L);
+        message.setContent(String.join("", Collections.nCopies(contentLength / 16, "<p>Isotope</p>\r\n")));
+        message.setAttachments(Collections.singletonList(
+                new Attachment(null, "report.pdf", "application/pdf", 1048576, "2")));
+        messageBodyCache.put("account", "INBOX", 1L, message);
+    }
+
+    @TearDown
+    public void tearDown() {
+        FileSystemUtils.deleteRecursively(directory.toFile());
+    }
+
+    @Benchmark
+    public Message get() {
+        return messageBodyCache.get("account", "INBOX", 1L, 1337L);
+    }
+}
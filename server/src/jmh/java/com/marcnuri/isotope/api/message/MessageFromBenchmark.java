@@ -0,0 +1,170 @@
+/*
+ * MessageFromBenchmark.java
+ *
+ * Created on 2026-10-17, 23:40
+ *
+ * Copyright 2018 Marc Nuri
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.marcnuri.isotope.api.message;
+
+import com.sun.mail.imap.IMAPFolder;
+import com.sun.mail.imap.IMAPMessage;
+import com.sun.mail.imap.IMAPStore;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.mail.Address;
+import javax.mail.Flags;
+import javax.mail.Session;
+import javax.mail.internet.AddressException;
+import javax.mail.internet.InternetAddress;
+import java.io.UnsupportedEncodingException;
+import java.util.Date;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of mapping an IMAP envelope with {@link Message#from(javax.mail.Folder, IMAPMessage)}.
+ *
+ * <p>Meant to be run with the GC profiler to check the allocated bytes per mapped message
+ * (<code>./gradlew jmh -Pjmh.includes=MessageFromBenchmark -Pjmh.args='-prof gc'</code>, gc.alloc.rate.norm).
+ * A typical envelope has a single TO recipient, a recipient-heavy one 50 TO and 50 CC recipients.
+ *
+ * <p>Created by Marc Nuri <marc@marcnuri.com> on 2026-10-17.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MessageFromBenchmark {
+
+    @Param({"1", "50"})
+    public int recipients;
+
+    private EnvelopeFolder folder;
+    private EnvelopeMessage imapMessage;
+
+    @Setup
+    public void setUp() throws Exception {
+        final Session session = Session.getInstance(new Properties());
+        folder = new EnvelopeFolder((IMAPStore) session.getStore("imap"));
+        imapMessage = new EnvelopeMessage(session, recipients);
+    }
+
+    @Benchmark
+    public Message from() {
+        return Message.from(folder, imapMessage);
+    }
+
+    private static final class EnvelopeFolder extends IMAPFolder {
+
+        private EnvelopeFolder(IMAPStore store) {
+            super("INBOX", '/', store, false);
+        }
+
+        @Override
+        public synchronized long getUID(javax.mail.Message message) {
+            return 1337L;
+        }
+    }
+
+    /**
+     * IMAPMessage with an already loaded envelope.
+     */
+    private static final class EnvelopeMessage extends IMAPMessage {
+
+        private final Address[] from;
+        private final Address[] to;
+        private final Address[] cc;
+        private final Date receivedDate;
+        private final Flags flags;
+
+        private EnvelopeMessage(Session session, int recipients) throws UnsupportedEncodingException, AddressException {
+            super(session);
+            from = new Address[]{new InternetAddress("from@isotope.com", "Isotope Mail Client")};
+            to = addresses("to", recipients);
+            cc = recipients > 1 ? addresses("cc", recipients) : null;
+            receivedDate = new Date();
+            flags = new Flags(Flags.Flag.SEEN);
+        }
+
+        private static Address[] addresses(String prefix, int count) throws UnsupportedEncodingException, AddressException {
+            final Address[] ret = new Address[count];
+            for (int it = 0; it < count; it++) {
+                ret[it] = it % 2 == 0 ?
+                        new InternetAddress(prefix + it + "@isotope.com", "Recipient " + it) :
+                        new InternetAddress(prefix + it + "@isotope.com");
+            }
+            return ret;
+        }
+
+        @Override
+        public String getMessageID() {
+            return "<1337@isotope.com>";
+        }
+
+        @Override
+        public Address[] getFrom() {
+            return from;
+        }
+
+        @Override
+        public Address[] getReplyTo() {
+            return null;
+        }
+
+        @Override
+        public Address[] getRecipients(javax.mail.Message.RecipientType type) {
+            return type == RecipientType.TO ? to : type == RecipientType.CC ? cc : null;
+        }
+
+        @Override
+        public String getSubject() {
+            return "Allocation free subject";
+        }
+
+        @Override
+        public Date getReceivedDate() {
+            return receivedDate;
+        }
+
+        @Override
+        public long getSizeLong() {
+            return 1337L;
+        }
+
+        @Override
+        public String[] getHeader(String name) {
+            return name.equals(Message.HEADER_REFERENCES) ? new String[]{"<1336@isotope.com>"} : null;
+        }
+
+        @Override
+        public synchronized Flags getFlags() {
+            return new Flags(flags);
+        }
+    }
+}
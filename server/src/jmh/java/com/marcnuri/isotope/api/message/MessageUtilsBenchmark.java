@@ -0,0 +1,91 @@
+/*
+ * MessageUtilsBenchmark.java
+ *
+ * Created on 2026-10-18, 00:10
+ *
+ * Copyright 2018 Marc Nuri
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.marcnuri.isotope.api.message;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.mail.MessagingException;
+import javax.mail.Multipart;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of reading the content of a message ({@link MessageUtils#extractContent(MimePartIndex)}) and inlining its
+ * embedded images ({@link MessageUtils#replaceEmbeddedImage(String, MimePartIndex.Part)}), separately and sharing a
+ * single {@link MimePartIndex} as when a message is rendered.
+ *
+ * <p>Messages are parsed from their RFC 822 representation on every invocation as they would be when fetched
+ * from the IMAP server.
+ *
+ * <p>Created by Marc Nuri <marc@marcnuri.com> on 2026-10-18.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MessageUtilsBenchmark {
+
+    @Param({"SMALL", "MEDIUM", "LARGE"})
+    public String size;
+
+    private byte[] message;
+    private String content;
+
+    @Setup
+    public void setUp() throws Exception {
+        message = MimeFixtures.message(MimeFixtures.Size.valueOf(size));
+        content = MessageUtils.extractContent(MimePartIndex.of((Multipart) MimeFixtures.parse(message).getContent()));
+        if (replaceEmbeddedImage().equals(content)) {
+            throw new IllegalStateException("Embedded image not found in fixture");
+        }
+    }
+
+    @Benchmark
+    public String extractContent() throws MessagingException, IOException {
+        return MessageUtils.extractContent(MimePartIndex.of((Multipart) MimeFixtures.parse(message).getContent()));
+    }
+
+    @Benchmark
+    public String replaceEmbeddedImage() throws MessagingException, IOException {
+        return MessageUtils.replaceEmbeddedImage(content, MessageUtils.extractBodypart(
+                MimePartIndex.of((Multipart) MimeFixtures.parse(message).getContent()),
+                '<' + MimeFixtures.IMAGE_CONTENT_ID + '>', true));
+    }
+
+    @Benchmark
+    public String extractContentAndReplaceEmbeddedImage() throws MessagingException, IOException {
+        final MimePartIndex index = MimePartIndex.of((Multipart) MimeFixtures.parse(message).getContent());
+        return MessageUtils.replaceEmbeddedImage(MessageUtils.extractContent(index),
+                MessageUtils.extractBodypart(index, '<' + MimeFixtures.IMAGE_CONTENT_ID + '>', true));
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * MimeFixtures.java
+ *
+ * Created on 2026-10-17, 23:55
+ *
+ * Copyright 2018 Marc Nuri
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.marcnuri.isotope.api.message;
+
+import javax.activation.DataHandler;
+import javax.mail.MessagingException;
+import javax.mail.Session;
+import javax.mail.internet.InternetAddress;
+import javax.mail.internet.MimeBodyPart;
+import javax.mail.internet.MimeMessage;
+import javax.mail.internet.MimeMultipart;
+import javax.mail.util.ByteArrayDataSource;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Date;
+import java.util.Properties;
+import java.util.Random;
+
+/**
+ * Synthetic MIME messages used as benchmark input, generated in memory so that benchmarks run offline.
+ *
+ * <p>Every fixture is a multipart/mixed message containing a multipart/alternative body (text/plain + text/html)
+ * related to an embedded (cid) image, and a PDF attachment.
+ *
+ * <p>Created by Marc Nuri <marc@marcnuri.com> on 2026-10-17.
+ */
+final class MimeFixtures {
+
+    static final String IMAGE_CONTENT_ID = "isotope-image@isotope.com";
+
+    private static final Session SESSION = Session.getInstance(new Properties());
+    private static final String PARAGRAPH = "Lorem ipsum dolor sit amet, consectetur adipiscing elit & sed do "
+            + "eiusmod <tempor> incididunt ut labore et dolore magna aliqua.\n";
+
+    enum Size {
+        SMALL(2 * 1024, 4 * 1024, 16 * 1024),
+        MEDIUM(32 * 1024, 64 * 1024, 256 * 1024),
+        LARGE(256 * 1024, 512 * 1024, 4 * 1024 * 1024);
+
+        private final int bodyBytes;
+        private final int imageBytes;
+        private final int attachmentBytes;
+
+        Size(int bodyBytes, int imageBytes, int attachmentBytes) {
+            this.bodyBytes = bodyBytes;
+            this.imageBytes = imageBytes;
+            this.attachmentBytes = attachmentBytes;
+        }
+    }
+
+    private MimeFixtures() {}
+
+    /**
+     * Returns the RFC 822 representation of a message of the provided size.
+     */
+    static byte[] message(Size size) throws MessagingException, IOException {
+        final Random random = new Random(1337L);
+        final MimeMessage message = new MimeMessage(SESSION);
+        message.setFrom(new InternetAddress("from@isotope.com", "Isotope Mail Client"));
+        message.setRecipients(javax.mail.Message.RecipientType.TO, "to@isotope.com");
+        message.setSubject("Isotope benchmark " + size);
+        message.setSentDate(new Date(0L));
+
+        final MimeBodyPart text = new MimeBodyPart();
+        final String plain = text(size.bodyBytes);
+        text.setText(plain, "UTF-8");
+        final MimeBodyPart html = new MimeBodyPart();
+        html.setContent("<html><body><img src=\"cid:" + IMAGE_CONTENT_ID + "\" /><p>"
+                + plain.replace("\n", "</p><p>") + "</p></body></html>", "text/html; charset=UTF-8");
+        final MimeMultipart alternative = new MimeMultipart("alternative", text, html);
+        final MimeBodyPart alternativePart = new MimeBodyPart();
+        alternativePart.setContent(alternative);
+
+        final MimeBodyPart image = new MimeBodyPart();
+        image.setDataHandler(new DataHandler(new ByteArrayDataSource(bytes(random, size.imageBytes), "image/png")));
+        image.setContentID("<" + IMAGE_CONTENT_ID + ">");
+        image.setDisposition(MimeBodyPart.INLINE);
+        image.setFileName("image.png");
+        final MimeMultipart related = new MimeMultipart("related", alternativePart, image);
+        final MimeBodyPart relatedPart = new MimeBodyPart();
+        relatedPart.setContent(related);
+
+        final MimeBodyPart attachment = new MimeBodyPart();
+        attachment.setDataHandler(new DataHandler(
+                new ByteArrayDataSource(bytes(random, size.attachmentBytes), "application/pdf")));
+        attachment.setFileName("attachment.pdf");
+        attachment.setDisposition(MimeBodyPart.ATTACHMENT);
+
+        message.setContent(new MimeMultipart("mixed", relatedPart, attachment));
+        message.saveChanges();
+        final ByteArrayOutputStream ret = new ByteArrayOutputStream(size.attachmentBytes * 2);
+        message.writeTo(ret);
+        return ret.toByteArray();
+    }
+
+    /**
+     * Parses a message from its RFC 822 representation (see {@link #message(Size)}).
+     */
+    static MimeMessage parse(byte[] message) throws MessagingException {
+        return new MimeMessage(SESSION, new ByteArrayInputStream(message));
+    }
+
+    private static String text(int length) {
+        final StringBuilder ret = new StringBuilder(length + PARAGRAPH.length());
+        while (ret.length() < length) {
+            ret.append(PARAGRAPH);
+        }
+        return ret.toString();
+    }
+
+    private static byte[] bytes(Random random, int length) {
+        final byte[] ret = new byte[length];
+        random.nextBytes(ret);
+        return ret;
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * LinkSerializerBenchmark.java
+ *
+ * Created on 2026-10-18, 00:40
+ *
+ * Copyright 2018 Marc Nuri
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.marcnuri.isotope.api.resource;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.commons.io.output.NullOutputStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.hateoas.Link;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of serializing resource links with {@link LinkSerializer}.
+ *
+ * <p>Resources are given 10 links each, as many as a {@link com.marcnuri.isotope.api.folder.Folder}.
+ *
+ * <p>Created by Marc Nuri <marc@marcnuri.com> on 2026-10-18.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LinkSerializerBenchmark {
+
+    private static final String[] RELS = {"messages", "delete", "rename", "move", "message", "message.flagged",
+            "message.move", "message.move.bulk", "message.seen", "message.seen.bulk"};
+
+    @Param({"1", "300"})
+    public int resourceCount;
+
+    private ObjectMapper objectMapper;
+    private List<IsotopeResource> resources;
+
+    @Setup
+    public void setUp() {
+        objectMapper = new ObjectMapper();
+        resources = new ArrayList<>(resourceCount);
+        for (int it = 0; it < resourceCount; it++) {
+            final IsotopeResource resource = new IsotopeResource();
+            for (String rel : RELS) {
+                resource.add(new Link("http://localhost/v1/folders/SU5CT1g" + it + "/" + rel, rel));
+            }
+            resources.add(resource);
+        }
+    }
+
+    @Benchmark
+    public List<IsotopeResource> serialize() throws IOException {
+        objectMapper.writeValue(new NullOutputStream(), resources);
+        return resources;
+    }
+}
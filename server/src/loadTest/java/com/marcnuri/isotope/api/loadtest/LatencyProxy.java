@@ -0,0 +1,120 @@
+/*
+ * LatencyProxy.java
+ *
+ * Created on 2026-10-18, 01:10
+ *
+ * Copyright 2018 Marc Nuri
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.marcnuri.isotope.api.loadtest;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * TCP proxy that delays every chunk of data sent by the client to the proxied server, emulating the round trip
+ * latency of a remote mail server for request/response protocols such as IMAP.
+ *
+ * <p>Created by Marc Nuri <marc@marcnuri.com> on 2026-10-18.
+ */
+final class LatencyProxy implements Closeable {
+
+    private static final int BUFFER_SIZE = 16384;
+
+    private final ServerSocket serverSocket;
+    private final String targetHost;
+    private final int targetPort;
+    private final long latencyMillis;
+    private final ExecutorService executor;
+
+    private LatencyProxy(String targetHost, int targetPort, long latencyMillis) throws IOException {
+        this.serverSocket = new ServerSocket(0, 50, InetAddress.getByName(targetHost));
+        this.targetHost = targetHost;
+        this.targetPort = targetPort;
+        this.latencyMillis = latencyMillis;
+        this.executor = Executors.newCachedThreadPool(r -> {
+            final Thread ret = new Thread(r, "latency-proxy");
+            ret.setDaemon(true);
+            return ret;
+        });
+    }
+
+    static LatencyProxy start(String targetHost, int targetPort, long latencyMillis) throws IOException {
+        final LatencyProxy ret = new LatencyProxy(targetHost, targetPort, latencyMillis);
+        ret.executor.execute(ret::accept);
+        return ret;
+    }
+
+    int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+        executor.shutdownNow();
+    }
+
+    private void accept() {
+        while (!serverSocket.isClosed()) {
+            try {
+                final Socket client = serverSocket.accept();
+                final Socket server = new Socket(targetHost, targetPort);
+                client.setTcpNoDelay(true);
+                server.setTcpNoDelay(true);
+                executor.execute(() -> pipe(client, server, latencyMillis));
+                executor.execute(() -> pipe(server, client, 0L));
+            } catch (IOException ex) {
+                // Proxy closed
+            }
+        }
+    }
+
+    private static void pipe(Socket from, Socket to, long delayMillis) {
+        final byte[] buffer = new byte[BUFFER_SIZE];
+        try (InputStream in = from.getInputStream(); OutputStream out = to.getOutputStream()) {
+            int read;
+            while ((read = in.read(buffer)) >= 0) {
+                if (delayMillis > 0) {
+                    Thread.sleep(delayMillis);
+                }
+                out.write(buffer, 0, read);
+                out.flush();
+            }
+        } catch (IOException ex) {
+            // Connection closed by either side
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } finally {
+            closeQuietly(from);
+            closeQuietly(to);
+        }
+    }
+
+    private static void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException ex) {
+            // Ignore
+        }
+    }
+}
@@ -0,0 +1,194 @@
+/*
+ * LoadTest.java
+ *
+ * Created on 2026-10-18, 01:45
+ *
+ * Copyright 2018 Marc Nuri
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.marcnuri.isotope.api.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.marcnuri.isotope.api.IsotopeApiApplication;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.security.Security;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * End to end load test of the message listing.
+ *
+ * <p>Starts the application and an in-process IMAP/SMTP server (reached through a {@link LatencyProxy}) and drives
+ * the REST/SSE endpoints with concurrent {@link VirtualUser}s for each of the configured mailbox sizes. Everything
+ * runs in the same JVM so heap figures include the mail server and the virtual users.
+ *
+ * <p>Options (<code>--name=value</code>):
+ * <ul>
+ *     <li>messages: comma separated mailbox sizes (default 1000,10000)</li>
+ *     <li>users: concurrent virtual users (default 10)</li>
+ *     <li>accounts: mail accounts shared by the users (default same as users)</li>
+ *     <li>iterations: complete listings per user (default 3)</li>
+ *     <li>latency: milliseconds added to each IMAP command (default 20)</li>
+ *     <li>output: JSON report file (default build/reports/loadtest/results.json)</li>
+ * </ul>
+ *
+ * <p>Created by Marc Nuri <marc@marcnuri.com> on 2026-10-18.
+ */
+public class LoadTest {
+
+    private static final long HEAP_SAMPLE_INTERVAL_MS = 100L;
+
+    private LoadTest() {}
+
+    public static void main(String[] args) throws Exception {
+        final Map<String, String> options = parse(args);
+        final int users = Integer.parseInt(options.getOrDefault("users", "10"));
+        final int accounts = Integer.parseInt(options.getOrDefault("accounts", String.valueOf(users)));
+        final int iterations = Integer.parseInt(options.getOrDefault("iterations", "3"));
+        final long latency = Long.parseLong(options.getOrDefault("latency", "20"));
+        final File output = new File(options.getOrDefault("output", "build/reports/loadtest/results.json"));
+
+        Security.setProperty("crypto.policy", "unlimited");
+        final ObjectMapper objectMapper = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+        final List<Map<String, Object>> report = new ArrayList<>();
+        try (ConfigurableApplicationContext context = SpringApplication.run(IsotopeApiApplication.class,
+                "--server.port=0", "--logging.level.root=WARN")) {
+
+            final String baseUrl = "http://localhost:" + context.getEnvironment().getProperty("local.server.port");
+            for (String messages : options.getOrDefault("messages", "1000,10000").split(",")) {
+                final int messageCount = Integer.parseInt(messages.trim());
+                System.out.printf("Populating %d account(s) with %d messages%n", accounts, messageCount);
+                try (MailServer mailServer = MailServer.start(accounts, messageCount);
+                     LatencyProxy imapProxy = LatencyProxy.start(MailServer.HOST, mailServer.getImapPort(), latency)) {
+
+                    final Results results = run(baseUrl, objectMapper, mailServer, imapProxy.getPort(),
+                            users, accounts, iterations, messageCount);
+                    final Map<String, Object> entry = new LinkedHashMap<>();
+                    entry.put("messages", messageCount);
+                    entry.put("users", users);
+                    entry.put("accounts", accounts);
+                    entry.put("iterations", iterations);
+                    entry.put("latencyMs", latency);
+                    entry.putAll(results.summary());
+                    report.add(entry);
+                    System.out.println(objectMapper.writeValueAsString(entry));
+                }
+            }
+        }
+        final File parent = output.getAbsoluteFile().getParentFile();
+        if (!parent.isDirectory() && !parent.mkdirs()) {
+            throw new IllegalStateException("Can't create report directory " + parent);
+        }
+        objectMapper.writeValue(output, report);
+        System.out.println("Results written to " + output.getAbsolutePath());
+        // Application executors aren't daemon threads
+        System.exit(0);
+    }
+
+    private static Results run(
+            String baseUrl, ObjectMapper objectMapper, MailServer mailServer, int imapPort, int users, int accounts,
+            int iterations, int messageCount) throws InterruptedException {
+
+        final Results results = new Results();
+        final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        final ScheduledExecutorService heapSampler = Executors.newSingleThreadScheduledExecutor();
+        heapSampler.scheduleAtFixedRate(() -> results.peakHeap.accumulateAndGet(
+                memory.getHeapMemoryUsage().getUsed(), Math::max),
+                0L, HEAP_SAMPLE_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        final ExecutorService executor = Executors.newFixedThreadPool(users);
+        final long start = System.nanoTime();
+        for (int it = 0; it < users; it++) {
+            executor.execute(new VirtualUser(baseUrl, objectMapper,
+                    login(MailServer.user(it % accounts), imapPort, mailServer.getSmtpPort()),
+                    iterations, messageCount, results));
+        }
+        executor.shutdown();
+        executor.awaitTermination(1, TimeUnit.HOURS);
+        results.duration = System.nanoTime() - start;
+        heapSampler.shutdownNow();
+        System.gc();
+        results.heapAfterGc = memory.getHeapMemoryUsage().getUsed();
+        return results;
+    }
+
+    private static Map<String, Object> login(String user, int imapPort, int smtpPort) {
+        final Map<String, Object> ret = new LinkedHashMap<>();
+        ret.put("serverHost", MailServer.HOST);
+        ret.put("serverPort", imapPort);
+        ret.put("user", user);
+        ret.put("password", MailServer.PASSWORD);
+        ret.put("imapSsl", false);
+        ret.put("smtpHost", MailServer.HOST);
+        ret.put("smtpPort", smtpPort);
+        ret.put("smtpSsl", false);
+        return ret;
+    }
+
+    private static Map<String, String> parse(String... args) {
+        final Map<String, String> ret = new LinkedHashMap<>();
+        for (String arg : args) {
+            final int separator = arg.indexOf('=');
+            if (!arg.startsWith("--") || separator < 0) {
+                throw new IllegalArgumentException("Invalid option " + arg + ", expected --name=value");
+            }
+            ret.put(arg.substring(2, separator), arg.substring(separator + 1));
+        }
+        return ret;
+    }
+
+    static final class Results {
+
+        final Samples login = new Samples();
+        final Samples folders = new Samples();
+        final Samples firstBatch = new Samples();
+        final Samples fullListing = new Samples();
+        private final AtomicInteger errors = new AtomicInteger();
+        private final AtomicLong peakHeap = new AtomicLong();
+        private long duration;
+        private long heapAfterGc;
+
+        void error(Exception ex) {
+            errors.incrementAndGet();
+            System.err.println("Virtual user failed: " + ex);
+        }
+
+        private Map<String, Object> summary() {
+            final Map<String, Object> ret = new LinkedHashMap<>();
+            ret.put("durationMs", TimeUnit.NANOSECONDS.toMillis(duration));
+            ret.put("errors", errors.get());
+            ret.put("login", login.summary());
+            ret.put("folders", folders.summary());
+            ret.put("timeToFirstBatch", firstBatch.summary());
+            ret.put("fullListing", fullListing.summary());
+            ret.put("peakHeapMb", peakHeap.get() / (1024 * 1024));
+            ret.put("heapAfterGcMb", heapAfterGc / (1024 * 1024));
+            return ret;
+        }
+    }
+}
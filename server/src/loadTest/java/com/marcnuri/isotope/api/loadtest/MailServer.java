@@ -0,0 +1,130 @@
+/*
+ * MailServer.java
+ *
+ * Created on 2026-10-18, 01:00
+ *
+ * Copyright 2018 Marc Nuri
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.marcnuri.isotope.api.loadtest;
+
+import com.icegreen.greenmail.user.GreenMailUser;
+import com.icegreen.greenmail.util.GreenMail;
+import com.icegreen.greenmail.util.ServerSetup;
+
+import javax.mail.MessagingException;
+import javax.mail.Session;
+import javax.mail.internet.InternetAddress;
+import javax.mail.internet.MimeMessage;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.ServerSocket;
+import java.util.Date;
+import java.util.Properties;
+
+/**
+ * In-process IMAP and SMTP server (GreenMail) with the configured number of accounts whose INBOXes are populated with
+ * the same synthetic messages.
+ *
+ * <p>Created by Marc Nuri <marc@marcnuri.com> on 2026-10-18.
+ */
+final class MailServer implements Closeable {
+
+    static final String HOST = "127.0.0.1";
+    private static final String USER_PREFIX = "load";
+    private static final String USER_DOMAIN = "@isotope.com";
+    static final String PASSWORD = "isotope";
+
+    private static final String BODY = "Lorem ipsum dolor sit amet, consectetur adipiscing elit, sed do eiusmod "
+            + "tempor incididunt ut labore et dolore magna aliqua.\r\n";
+
+    private final GreenMail greenMail;
+    private final int imapPort;
+    private final int smtpPort;
+
+    private MailServer(int imapPort, int smtpPort) {
+        this.imapPort = imapPort;
+        this.smtpPort = smtpPort;
+        greenMail = new GreenMail(new ServerSetup[]{
+                new ServerSetup(imapPort, HOST, ServerSetup.PROTOCOL_IMAP),
+                new ServerSetup(smtpPort, HOST, ServerSetup.PROTOCOL_SMTP)
+        });
+    }
+
+    /**
+     * Starts the server and delivers the provided number of messages to the INBOX of each of the accounts.
+     */
+    static MailServer start(int accounts, int messageCount) throws IOException, MessagingException {
+        final MailServer ret = new MailServer(freePort(), freePort());
+        ret.greenMail.start();
+        final GreenMailUser[] users = new GreenMailUser[accounts];
+        for (int it = 0; it < accounts; it++) {
+            users[it] = ret.greenMail.setUser(user(it), user(it), PASSWORD);
+        }
+        final Session session = Session.getInstance(new Properties());
+        final long now = System.currentTimeMillis();
+        for (int it = 0; it < messageCount; it++) {
+            final MimeMessage message = message(session, it, new Date(now - (messageCount - it) * 60000L));
+            for (GreenMailUser user : users) {
+                user.deliver(message);
+            }
+        }
+        return ret;
+    }
+
+    static String user(int account) {
+        return USER_PREFIX + account + USER_DOMAIN;
+    }
+
+    int getImapPort() {
+        return imapPort;
+    }
+
+    int getSmtpPort() {
+        return smtpPort;
+    }
+
+    @Override
+    public void close() {
+        greenMail.stop();
+    }
+
+    private static MimeMessage message(Session session, int index, Date date)
+            throws MessagingException, UnsupportedEncodingException {
+
+        final MimeMessage ret = new MimeMessage(session);
+        ret.setFrom(new InternetAddress("sender" + (index % 97) + "@isotope.com", "Sender " + (index % 97)));
+        ret.setRecipients(javax.mail.Message.RecipientType.TO, "to" + (index % 7) + USER_DOMAIN);
+        if (index % 5 == 0) {
+            ret.setRecipients(javax.mail.Message.RecipientType.CC, "cc" + (index % 13) + "@isotope.com");
+        }
+        ret.setSubject("Load test message " + index);
+        ret.setSentDate(date);
+        final StringBuilder text = new StringBuilder();
+        for (int line = 0; line <= index % 20; line++) {
+            text.append(BODY);
+        }
+        ret.setText(text.toString(), "UTF-8");
+        ret.saveChanges();
+        return ret;
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket serverSocket = new ServerSocket(0)) {
+            return serverSocket.getLocalPort();
+        }
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * Samples.java
+ *
+ * Created on 2026-10-18, 01:20
+ *
+ * Copyright 2018 Marc Nuri
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.marcnuri.isotope.api.loadtest;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Thread safe collection of duration samples (nanoseconds) with percentile summaries in milliseconds.
+ *
+ * <p>Created by Marc Nuri <marc@marcnuri.com> on 2026-10-18.
+ */
+final class Samples {
+
+    private long[] values = new long[64];
+    private int count;
+
+    synchronized void add(long nanos) {
+        if (count == values.length) {
+            values = Arrays.copyOf(values, values.length * 2);
+        }
+        values[count++] = nanos;
+    }
+
+    /**
+     * Returns count, mean, p50, p99 and max (in milliseconds) of the recorded samples.
+     */
+    synchronized Map<String, Object> summary() {
+        final long[] sorted = Arrays.copyOf(values, count);
+        Arrays.sort(sorted);
+        final Map<String, Object> ret = new LinkedHashMap<>();
+        ret.put("count", count);
+        ret.put("meanMs", count == 0 ? 0d : toMillis((long) Arrays.stream(sorted).average().orElse(0d)));
+        ret.put("p50Ms", toMillis(percentile(sorted, 0.50)));
+        ret.put("p99Ms", toMillis(percentile(sorted, 0.99)));
+        ret.put("maxMs", toMillis(count == 0 ? 0L : sorted[count - 1]));
+        return ret;
+    }
+
+    /**
+     * Nearest-rank percentile.
+     */
+    private static long percentile(long[] sorted, double percentile) {
+        if (sorted.length == 0) {
+            return 0L;
+        }
+        final int rank = (int) Math.ceil(percentile * sorted.length);
+        return sorted[Math.max(0, rank - 1)];
+    }
+
+    private static double toMillis(long nanos) {
+        return nanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+}
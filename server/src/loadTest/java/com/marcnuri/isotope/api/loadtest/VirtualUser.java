@@ -0,0 +1,161 @@
+/*
+ * VirtualUser.java
+ *
+ * Created on 2026-10-18, 01:30
+ *
+ * Copyright 2018 Marc Nuri
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.marcnuri.isotope.api.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.marcnuri.isotope.api.http.HttpHeaders;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+/**
+ * Simulated client that logs in and repeatedly loads the folder list and the complete message listing of the INBOX
+ * (SSE stream) through the REST API.
+ *
+ * <p>Created by Marc Nuri <marc@marcnuri.com> on 2026-10-18.
+ */
+final class VirtualUser implements Runnable {
+
+    private static final String INBOX = "INBOX";
+    private static final String SSE_DATA = "data:";
+
+    private final String baseUrl;
+    private final ObjectMapper objectMapper;
+    private final Map<String, Object> login;
+    private final int iterations;
+    private final int expectedMessages;
+    private final LoadTest.Results results;
+
+    private String encrypted;
+    private String salt;
+
+    VirtualUser(
+            String baseUrl, ObjectMapper objectMapper, Map<String, Object> login, int iterations,
+            int expectedMessages, LoadTest.Results results) {
+
+        this.baseUrl = baseUrl;
+        this.objectMapper = objectMapper;
+        this.login = login;
+        this.iterations = iterations;
+        this.expectedMessages = expectedMessages;
+        this.results = results;
+    }
+
+    @Override
+    public void run() {
+        try {
+            login();
+            for (int it = 0; it < iterations; it++) {
+                listMessages(findInbox());
+            }
+        } catch (Exception ex) {
+            results.error(ex);
+        }
+    }
+
+    private void login() throws IOException {
+        final long start = System.nanoTime();
+        final HttpURLConnection connection = open("/v1/application/login");
+        connection.setRequestMethod("POST");
+        connection.setRequestProperty("Content-Type", "application/json");
+        connection.setDoOutput(true);
+        try (OutputStream out = connection.getOutputStream()) {
+            objectMapper.writeValue(out, login);
+        }
+        final JsonNode credentials = read(connection);
+        encrypted = credentials.get("encrypted").asText();
+        salt = credentials.get("salt").asText();
+        results.login.add(System.nanoTime() - start);
+    }
+
+    private String findInbox() throws IOException {
+        final long start = System.nanoTime();
+        final JsonNode folders = read(authenticate(open("/v1/folders")));
+        results.folders.add(System.nanoTime() - start);
+        for (JsonNode folder : folders) {
+            if (INBOX.equalsIgnoreCase(folder.get("name").asText())) {
+                return folder.get("folderId").asText();
+            }
+        }
+        throw new IllegalStateException("INBOX not found");
+    }
+
+    private void listMessages(String folderId) throws IOException {
+        final long start = System.nanoTime();
+        final HttpURLConnection connection = authenticate(open("/v1/folders/" + folderId + "/messages"));
+        connection.setRequestProperty("Accept", "text/event-stream");
+        int messages = 0;
+        long firstBatch = -1L;
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(checkStatus(connection), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith(SSE_DATA)) {
+                    if (firstBatch < 0) {
+                        firstBatch = System.nanoTime() - start;
+                    }
+                    messages += objectMapper.readTree(line.substring(SSE_DATA.length())).size();
+                }
+            }
+        }
+        if (messages != expectedMessages) {
+            throw new IllegalStateException(
+                    "Incomplete listing, received " + messages + " of " + expectedMessages + " messages");
+        }
+        results.firstBatch.add(firstBatch);
+        results.fullListing.add(System.nanoTime() - start);
+    }
+
+    private HttpURLConnection open(String path) throws IOException {
+        final HttpURLConnection ret = (HttpURLConnection) new URL(baseUrl + path).openConnection();
+        ret.setConnectTimeout(10000);
+        ret.setReadTimeout(600000);
+        return ret;
+    }
+
+    private HttpURLConnection authenticate(HttpURLConnection connection) {
+        connection.setRequestProperty(HttpHeaders.ISOTOPE_CRDENTIALS, encrypted);
+        connection.setRequestProperty(HttpHeaders.ISOTOPE_SALT, salt);
+        return connection;
+    }
+
+    private JsonNode read(HttpURLConnection connection) throws IOException {
+        try (InputStream in = checkStatus(connection)) {
+            return objectMapper.readTree(in);
+        }
+    }
+
+    private static InputStream checkStatus(HttpURLConnection connection) throws IOException {
+        final int status = connection.getResponseCode();
+        if (status != HttpURLConnection.HTTP_OK) {
+            throw new IOException("Unexpected HTTP status " + status + " for " + connection.getURL().getPath());
+        }
+        return connection.getInputStream();
+    }
+}
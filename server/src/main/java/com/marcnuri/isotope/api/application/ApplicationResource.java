@@ -20,8 +20,12 @@
  */
 package com.marcnuri.isotope.api.application;
 
+import com.marcnuri.isotope.api.configuration.IsotopeApiConfiguration;
 import com.marcnuri.isotope.api.credentials.Credentials;
+import com.marcnuri.isotope.api.credentials.CredentialsService;
 import com.marcnuri.isotope.api.imap.ImapService;
+import com.marcnuri.isotope.api.imap.ImapStorePool;
+import com.marcnuri.isotope.api.session.Session;
 import com.marcnuri.isotope.api.smtp.SmtpService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -34,6 +38,8 @@ import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
+import javax.servlet.http.HttpServletRequest;
+
 /**
  * Created by Marc Nuri <marc@marcnuri.com> on 2018-08-15.
  */
@@ -43,11 +49,20 @@ public class ApplicationResource {
 
     private static final Logger log = LoggerFactory.getLogger(ApplicationResource.class);
 
+    private final IsotopeApiConfiguration isotopeApiConfiguration;
+    private final CredentialsService credentialsService;
+    private final ImapStorePool imapStorePool;
     private final ImapService imapService;
     private final SmtpService smtpService;
 
     @Autowired
-    public ApplicationResource(ImapService imapService, SmtpService smtpService) {
+    public ApplicationResource(
+            IsotopeApiConfiguration isotopeApiConfiguration, CredentialsService credentialsService,
+            ImapStorePool imapStorePool, ImapService imapService, SmtpService smtpService) {
+
+        this.isotopeApiConfiguration = isotopeApiConfiguration;
+        this.credentialsService = credentialsService;
+        this.imapStorePool = imapStorePool;
         this.imapService = imapService;
         this.smtpService = smtpService;
     }
@@ -59,7 +74,23 @@ public class ApplicationResource {
         log.info("User logging into application");
         final Credentials encryptedCredentials = imapService.checkCredentials(credentials);
         smtpService.checkCredentials(credentials);
+        if (isotopeApiConfiguration.isSessionsEnabled()) {
+            encryptedCredentials.setSession(credentialsService.createSession(credentials));
+        }
         return ResponseEntity.ok(encryptedCredentials);
     }
 
+    /**
+     * Removes the server side session of the request (if any) and closes its idle pooled IMAP connections.
+     */
+    @PostMapping(path = "/logout")
+    public ResponseEntity<Void> logout(HttpServletRequest request) {
+        log.info("User logging out of application");
+        final Session session = credentialsService.removeSession(request);
+        if (session != null) {
+            imapStorePool.evict(session.getAccountKey());
+        }
+        return ResponseEntity.noContent().build();
+    }
+
 }
@@ -0,0 +1,40 @@
+/*
+ * EmbeddedImageMode.java
+ *
+ * Created on 2026-10-18, 15:40
+ *
+ * Copyright 2018 Marc Nuri
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.marcnuri.isotope.api.configuration;
+
+/**
+ * How images embedded in a message (referenced from its content with a <code>cid:</code> url) are delivered.
+ *
+ * <p>Created by Marc Nuri <marc@marcnuri.com> on 2026-10-18.
+ */
+public enum EmbeddedImageMode {
+
+    /**
+     * Images smaller than <code>EMBEDDED_IMAGE_SIZE_THRESHOLD</code> are inlined in the message content as base64
+     * data urls, bigger images are listed as attachments.
+     */
+    INLINE,
+    /**
+     * Every image is listed as an attachment with its content id and a link to the part endpoint, where it's
+     * streamed and cached as immutable. Message content keeps the <code>cid:</code> urls.
+     */
+    LINK
+}
@@ -0,0 +1,220 @@
+/*
+ * ExecutionConfiguration.java
+ *
+ * Created on 2026-10-18, 02:05
+ *
+ * Copyright 2018 Marc Nuri
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.marcnuri.isotope.api.configuration;
+
+import org.apache.coyote.AbstractProtocol;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.web.embedded.tomcat.TomcatServletWebServerFactory;
+import org.springframework.boot.web.server.WebServerFactoryCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.lang.Nullable;
+import org.springframework.scheduling.concurrent.ConcurrentTaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Executors for blocking IMAP/SMTP work according to the configured {@link ExecutionMode}.
+ *
+ * <p>Note that javax.mail synchronizes on its stores, folders and protocols while performing I/O, on Java versions
+ * previous to 24 this pins virtual threads to their carrier threads while they are blocked. IDLE commands block
+ * (synchronized) until the server reports a change or the command is interrupted, folder change streams are
+ * therefore always processed in platform threads regardless of the execution mode.
+ *
+ * <p>Created by Marc Nuri <marc@marcnuri.com> on 2026-10-18.
+ */
+@Configuration
+public class ExecutionConfiguration {
+
+    public static final String BLOCKING_SCHEDULER = "blockingScheduler";
+    public static final String CHANGES_SCHEDULER = "changesScheduler";
+    public static final String IDLE_SCHEDULER = "idleScheduler";
+    public static final String ASYNC_EXECUTOR = "asyncExecutor";
+
+    private static final Logger log = LoggerFactory.getLogger(ExecutionConfiguration.class);
+
+    private static final String BLOCKING_THREAD_PREFIX = "isotope-blocking-";
+    private static final String CHANGES_THREAD_PREFIX = "isotope-changes-";
+    private static final String IDLE_THREAD_PREFIX = "isotope-idle-";
+    private static final String ASYNC_THREAD_PREFIX = "isotope-async-";
+    private static final long KEEP_ALIVE_SECONDS = 60L;
+
+    /**
+     * Scheduler where SSE streams (message listings, folder changes) perform their blocking IMAP operations.
+     */
+    @Bean(name = BLOCKING_SCHEDULER, destroyMethod = "dispose")
+    public Scheduler blockingScheduler(IsotopeApiConfiguration isotopeApiConfiguration) {
+        return newBlockingScheduler(effectiveMode(isotopeApiConfiguration.getExecutionMode()),
+                isotopeApiConfiguration.getExecutionBoundedMaxThreads(),
+                isotopeApiConfiguration.getExecutionBoundedQueueSize());
+    }
+
+    /**
+     * Scheduler where folder change streams (IMAP IDLE) are processed, each stream holds a platform thread for its
+     * whole life. Streams exceeding the configured maximum are rejected, so they never compete for the threads of
+     * the {@link #BLOCKING_SCHEDULER}.
+     */
+    @Bean(name = CHANGES_SCHEDULER, destroyMethod = "dispose")
+    public StreamScheduler changesScheduler(IsotopeApiConfiguration isotopeApiConfiguration) {
+        return newChangesScheduler(isotopeApiConfiguration.getExecutionChangesMaxStreams());
+    }
+
+    /**
+     * Time capable scheduler where the periodic IDLE interruptions of the change streams are performed, change
+     * streams can't exhaust its threads as these tasks complete as soon as the IDLE command is ended.
+     */
+    @Bean(name = IDLE_SCHEDULER, destroyMethod = "dispose")
+    public Scheduler idleScheduler(IsotopeApiConfiguration isotopeApiConfiguration) {
+        return newIdleScheduler(isotopeApiConfiguration.getExecutionIdleThreads());
+    }
+
+    /**
+     * Executor for Spring MVC async request processing.
+     */
+    @Bean(name = ASYNC_EXECUTOR)
+    public AsyncTaskExecutor asyncExecutor(IsotopeApiConfiguration isotopeApiConfiguration) {
+        switch (effectiveMode(isotopeApiConfiguration.getExecutionMode())) {
+            case VIRTUAL:
+                return new ConcurrentTaskExecutor(newVirtualThreadPerTaskExecutor());
+            case BOUNDED:
+                return threadPoolTaskExecutor(isotopeApiConfiguration.getExecutionBoundedMaxThreads(),
+                        isotopeApiConfiguration.getExecutionBoundedMaxThreads(),
+                        isotopeApiConfiguration.getExecutionBoundedQueueSize());
+            case ELASTIC:
+            default:
+                return threadPoolTaskExecutor(7, 42, 11);
+        }
+    }
+
+    /**
+     * Servlet requests (and their blocking IMAP/SMTP calls) are processed in virtual threads in
+     * {@link ExecutionMode#VIRTUAL} mode, the default Tomcat thread pool is used otherwise.
+     */
+    @Bean
+    public WebServerFactoryCustomizer<TomcatServletWebServerFactory> virtualThreadsTomcatCustomizer(
+            IsotopeApiConfiguration isotopeApiConfiguration) {
+
+        return factory -> {
+            if (effectiveMode(isotopeApiConfiguration.getExecutionMode()) == ExecutionMode.VIRTUAL) {
+                factory.addConnectorCustomizers(connector -> {
+                    if (connector.getProtocolHandler() instanceof AbstractProtocol) {
+                        ((AbstractProtocol<?>) connector.getProtocolHandler())
+                                .setExecutor(newVirtualThreadPerTaskExecutor());
+                    }
+                });
+            }
+        };
+    }
+
+    static Scheduler newBlockingScheduler(ExecutionMode mode, int maxThreads, int queueSize) {
+        switch (mode) {
+            case VIRTUAL:
+                return Schedulers.fromExecutorService(newVirtualThreadPerTaskExecutor());
+            case BOUNDED:
+                final ThreadPoolExecutor executor = new ThreadPoolExecutor(maxThreads, maxThreads,
+                        KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<>(queueSize),
+                        daemonThreadFactory(BLOCKING_THREAD_PREFIX));
+                executor.allowCoreThreadTimeOut(true);
+                return Schedulers.fromExecutorService(executor);
+            case ELASTIC:
+            default:
+                return Schedulers.elastic();
+        }
+    }
+
+    static StreamScheduler newChangesScheduler(int maxStreams) {
+        final ThreadPoolExecutor executor = new ThreadPoolExecutor(maxStreams, maxStreams,
+                KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+                daemonThreadFactory(CHANGES_THREAD_PREFIX));
+        executor.allowCoreThreadTimeOut(true);
+        return new StreamScheduler(Schedulers.fromExecutorService(executor), maxStreams);
+    }
+
+    static Scheduler newIdleScheduler(int threads) {
+        return Schedulers.fromExecutorService(
+                new ScheduledThreadPoolExecutor(threads, daemonThreadFactory(IDLE_THREAD_PREFIX)));
+    }
+
+    /**
+     * Returns the provided mode or {@link ExecutionMode#BOUNDED} if virtual threads aren't supported by the runtime.
+     */
+    static ExecutionMode effectiveMode(ExecutionMode mode) {
+        if (mode == ExecutionMode.VIRTUAL && newVirtualThreadPerTaskExecutorOrNull() == null) {
+            log.warn("Virtual threads are not supported by this Java runtime, falling back to {} execution mode",
+                    ExecutionMode.BOUNDED);
+            return ExecutionMode.BOUNDED;
+        }
+        return mode;
+    }
+
+    private static ExecutorService newVirtualThreadPerTaskExecutor() {
+        final ExecutorService ret = newVirtualThreadPerTaskExecutorOrNull();
+        if (ret == null) {
+            throw new IllegalStateException("Virtual threads are not supported by this Java runtime");
+        }
+        return ret;
+    }
+
+    /**
+     * Executors#newVirtualThreadPerTaskExecutor (Java 21+) invoked reflectively as the application targets Java 8.
+     */
+    @Nullable
+    private static ExecutorService newVirtualThreadPerTaskExecutorOrNull() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException ex) {
+            return null;
+        }
+    }
+
+    private static ThreadPoolTaskExecutor threadPoolTaskExecutor(int corePoolSize, int maxPoolSize, int queueSize) {
+        final ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(corePoolSize);
+        executor.setMaxPoolSize(maxPoolSize);
+        executor.setQueueCapacity(queueSize);
+        executor.setAllowCoreThreadTimeOut(corePoolSize == maxPoolSize);
+        executor.setThreadNamePrefix(ASYNC_THREAD_PREFIX);
+        executor.initialize();
+        return executor;
+    }
+
+    private static ThreadFactory daemonThreadFactory(String prefix) {
+        final AtomicInteger counter = new AtomicInteger();
+        return r -> {
+            final Thread thread = new Thread(r, prefix + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
@@ -0,0 +1,45 @@
+/*
+ * ExecutionMode.java
+ *
+ * Created on 2026-10-18, 02:00
+ *
+ * Copyright 2018 Marc Nuri
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.marcnuri.isotope.api.configuration;
+
+/**
+ * Strategies to execute blocking IMAP/SMTP work (javax.mail I/O is always blocking).
+ *
+ * <p>Created by Marc Nuri <marc@marcnuri.com> on 2026-10-18.
+ */
+public enum ExecutionMode {
+
+    /**
+     * Unbounded pool of platform threads (Reactor elastic scheduler) for SSE streams and a small bounded pool for
+     * async requests.
+     */
+    ELASTIC,
+    /**
+     * Dedicated pools of platform threads with a maximum number of threads and a task queue
+     * (<code>EXECUTION_BOUNDED_MAX_THREADS</code>, <code>EXECUTION_BOUNDED_QUEUE_SIZE</code>).
+     */
+    BOUNDED,
+    /**
+     * A new virtual thread for each task, including servlet request processing. Requires a Java 21+ runtime,
+     * {@link #BOUNDED} is used otherwise. Folder change streams (IMAP IDLE) are always processed in platform threads.
+     */
+    VIRTUAL
+}
@@ -27,8 +27,11 @@ import org.springframework.context.annotation.ComponentScan;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Import;
 import org.springframework.core.env.Environment;
+import org.springframework.lang.Nullable;
 
+import java.nio.file.Paths;
 import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.Set;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
@@ -51,8 +54,92 @@ public class IsotopeApiConfiguration {
 
     private static final String TRUSTED_HOSTS = "TRUSTED_HOSTS";
 
+    private static final String CREDENTIALS_CACHE_MAX_SIZE = "CREDENTIALS_CACHE_MAX_SIZE";
+    private static final long CREDENTIALS_CACHE_MAX_SIZE_DEFAULT = 10000L;
+    private static final String CREDENTIALS_CACHE_EXPIRE_AFTER_WRITE = "CREDENTIALS_CACHE_EXPIRE_AFTER_WRITE";
+    private static final long CREDENTIALS_CACHE_EXPIRE_AFTER_WRITE_DEFAULT_5MIN = 300000L;
+
+    private static final String SESSIONS_ENABLED = "SESSIONS_ENABLED";
+    private static final boolean SESSIONS_ENABLED_DEFAULT = false;
+    private static final String SESSION_MAX_SIZE = "SESSION_MAX_SIZE";
+    private static final long SESSION_MAX_SIZE_DEFAULT = 10000L;
+    private static final String SESSION_EXPIRE_AFTER_ACCESS = "SESSION_EXPIRE_AFTER_ACCESS";
+    private static final long SESSION_EXPIRE_AFTER_ACCESS_DEFAULT_30MIN = 1800000L;
+
     private static final String EMBEDDED_IMAGE_SIZE_THRESHOLD = "EMBEDDED_IMAGE_SIZE_THRESHOLD";
     private static final long EMBEDDED_IMAGE_SIZE_THRESHOLD_DEFAULT_50KB = 51200L;
+    private static final String EMBEDDED_IMAGE_MODE = "EMBEDDED_IMAGE_MODE";
+    private static final EmbeddedImageMode EMBEDDED_IMAGE_MODE_DEFAULT = EmbeddedImageMode.INLINE;
+
+    private static final String BODY_STRUCTURE_FIRST = "BODY_STRUCTURE_FIRST";
+    private static final boolean BODY_STRUCTURE_FIRST_DEFAULT = true;
+
+    private static final String MESSAGES_BATCH_TARGET_LATENCY = "MESSAGES_BATCH_TARGET_LATENCY";
+    private static final long MESSAGES_BATCH_TARGET_LATENCY_DEFAULT_500MS = 500L;
+    private static final String MESSAGES_BATCH_MAX_BYTES = "MESSAGES_BATCH_MAX_BYTES";
+    private static final long MESSAGES_BATCH_MAX_BYTES_DEFAULT_256KB = 262144L;
+
+    private static final String IMAP_POOL_MAX_IDLE = "IMAP_POOL_MAX_IDLE";
+    private static final int IMAP_POOL_MAX_IDLE_DEFAULT = 50;
+    private static final String IMAP_POOL_MAX_CONNECTIONS_PER_USER = "IMAP_POOL_MAX_CONNECTIONS_PER_USER";
+    private static final int IMAP_POOL_MAX_CONNECTIONS_PER_USER_DEFAULT = 8;
+    private static final String IMAP_POOL_MAX_STREAMS_PER_USER = "IMAP_POOL_MAX_STREAMS_PER_USER";
+    private static final int IMAP_POOL_MAX_STREAMS_PER_USER_DEFAULT = 4;
+    private static final String IMAP_POOL_IDLE_TIMEOUT = "IMAP_POOL_IDLE_TIMEOUT";
+    private static final long IMAP_POOL_IDLE_TIMEOUT_DEFAULT_2MIN = 120000L;
+    private static final String IMAP_POOL_VALIDATION_INTERVAL = "IMAP_POOL_VALIDATION_INTERVAL";
+    private static final long IMAP_POOL_VALIDATION_INTERVAL_DEFAULT_10S = 10000L;
+    private static final String IMAP_POOL_BORROW_TIMEOUT = "IMAP_POOL_BORROW_TIMEOUT";
+    private static final long IMAP_POOL_BORROW_TIMEOUT_DEFAULT_5S = 5000L;
+
+    private static final String ENVELOPE_CACHE_USER_BYTES = "ENVELOPE_CACHE_USER_BYTES";
+    private static final long ENVELOPE_CACHE_USER_BYTES_DEFAULT_4MB = 4194304L;
+    private static final String ENVELOPE_CACHE_MAX_USERS = "ENVELOPE_CACHE_MAX_USERS";
+    private static final long ENVELOPE_CACHE_MAX_USERS_DEFAULT = 1000L;
+    private static final String ENVELOPE_CACHE_EXPIRE_AFTER_ACCESS = "ENVELOPE_CACHE_EXPIRE_AFTER_ACCESS";
+    private static final long ENVELOPE_CACHE_EXPIRE_AFTER_ACCESS_DEFAULT_30MIN = 1800000L;
+
+    private static final String ENVELOPE_HEADERS = "ENVELOPE_HEADERS";
+    private static final String ENVELOPE_HEADERS_DEFAULT = "In-Reply-To,References";
+    public static final String ENVELOPE_HEADERS_ALL = "*";
+
+    private static final String SNIPPET_PARTIAL_BYTES = "SNIPPET_PARTIAL_BYTES";
+    private static final int SNIPPET_PARTIAL_BYTES_DEFAULT = 512;
+    private static final String SNIPPET_BATCH_MAX_BYTES = "SNIPPET_BATCH_MAX_BYTES";
+    private static final long SNIPPET_BATCH_MAX_BYTES_DEFAULT_64KB = 65536L;
+
+    private static final String MESSAGE_CACHE_BYTES = "MESSAGE_CACHE_BYTES";
+    private static final long MESSAGE_CACHE_BYTES_DEFAULT_256MB = 268435456L;
+    private static final String MESSAGE_CACHE_DIRECTORY = "MESSAGE_CACHE_DIRECTORY";
+    private static final String MESSAGE_CACHE_DIRECTORY_DEFAULT_NAME = "isotope-message-cache";
+
+    private static final String PREFETCH_ADJACENT_MESSAGES = "PREFETCH_ADJACENT_MESSAGES";
+    private static final int PREFETCH_ADJACENT_MESSAGES_DEFAULT = 2;
+    private static final String PREFETCH_SEARCH_WINDOW = "PREFETCH_SEARCH_WINDOW";
+    private static final int PREFETCH_SEARCH_WINDOW_DEFAULT = 50;
+    private static final String PREFETCH_MAX_THREADS = "PREFETCH_MAX_THREADS";
+    private static final int PREFETCH_MAX_THREADS_DEFAULT = 4;
+    private static final String PREFETCH_MAX_CONCURRENT_PER_USER = "PREFETCH_MAX_CONCURRENT_PER_USER";
+    private static final int PREFETCH_MAX_CONCURRENT_PER_USER_DEFAULT = 1;
+    private static final String PREFETCH_USER_BYTES = "PREFETCH_USER_BYTES";
+    private static final long PREFETCH_USER_BYTES_DEFAULT_2MB = 2097152L;
+    private static final String PREFETCH_MAX_USERS = "PREFETCH_MAX_USERS";
+    private static final long PREFETCH_MAX_USERS_DEFAULT = 1000L;
+    private static final String PREFETCH_EXPIRE_AFTER_WRITE = "PREFETCH_EXPIRE_AFTER_WRITE";
+    private static final long PREFETCH_EXPIRE_AFTER_WRITE_DEFAULT_2MIN = 120000L;
+
+    private static final String EXECUTION_MODE = "EXECUTION_MODE";
+    private static final ExecutionMode EXECUTION_MODE_DEFAULT = ExecutionMode.ELASTIC;
+    private static final String EXECUTION_BOUNDED_MAX_THREADS = "EXECUTION_BOUNDED_MAX_THREADS";
+    private static final int EXECUTION_BOUNDED_MAX_THREADS_DEFAULT = 200;
+    private static final String EXECUTION_BOUNDED_QUEUE_SIZE = "EXECUTION_BOUNDED_QUEUE_SIZE";
+    private static final int EXECUTION_BOUNDED_QUEUE_SIZE_DEFAULT = 10000;
+    private static final String EXECUTION_CHANGES_MAX_STREAMS = "EXECUTION_CHANGES_MAX_STREAMS";
+    private static final int EXECUTION_CHANGES_MAX_STREAMS_DEFAULT = 1000;
+    private static final String EXECUTION_IDLE_THREADS = "EXECUTION_IDLE_THREADS";
+    private static final int EXECUTION_IDLE_THREADS_DEFAULT = 4;
+    @SuppressWarnings("squid:S2068")
+    private static final String METRICS_HOST_HASH_SECRET = "METRICS_HOST_HASH_SECRET";
 
     private final Environment environment;
 
@@ -78,8 +165,344 @@ public class IsotopeApiConfiguration {
                 Stream.of(trustedHosts.split("\\,")).map(String::trim).collect(Collectors.toSet());
     }
 
+    /**
+     * Maximum number of decrypted credentials kept in memory to avoid deriving the encryption key on every request.
+     *
+     * A value of 0 or less disables the credentials cache.
+     *
+     * @return max number of cached credentials
+     */
+    public long getCredentialsCacheMaxSize() {
+        return environment.getProperty(CREDENTIALS_CACHE_MAX_SIZE, Long.class, CREDENTIALS_CACHE_MAX_SIZE_DEFAULT);
+    }
+
+    /**
+     * Time in milliseconds after which cached decrypted credentials are discarded.
+     */
+    public long getCredentialsCacheExpireAfterWrite() {
+        return environment.getProperty(CREDENTIALS_CACHE_EXPIRE_AFTER_WRITE, Long.class,
+                CREDENTIALS_CACHE_EXPIRE_AFTER_WRITE_DEFAULT_5MIN);
+    }
+
+    /**
+     * Whether login issues an opaque session token that can be sent instead of the encrypted credentials.
+     *
+     * @return true if server side sessions are enabled
+     */
+    public boolean isSessionsEnabled() {
+        return environment.getProperty(SESSIONS_ENABLED, Boolean.class, SESSIONS_ENABLED_DEFAULT);
+    }
+
+    /**
+     * Maximum number of sessions kept by the in-memory session store.
+     */
+    public long getSessionMaxSize() {
+        return environment.getProperty(SESSION_MAX_SIZE, Long.class, SESSION_MAX_SIZE_DEFAULT);
+    }
+
+    /**
+     * Time in milliseconds after which an unused session expires in the in-memory session store.
+     */
+    public long getSessionExpireAfterAccess() {
+        return environment.getProperty(SESSION_EXPIRE_AFTER_ACCESS, Long.class,
+                SESSION_EXPIRE_AFTER_ACCESS_DEFAULT_30MIN);
+    }
+
+    /**
+     * Max size in bytes of the images inlined in the message content in {@link EmbeddedImageMode#INLINE} mode.
+     */
     public long getEmbeddedImageSizeThreshold() {
         return environment.getProperty(EMBEDDED_IMAGE_SIZE_THRESHOLD, Long.class, EMBEDDED_IMAGE_SIZE_THRESHOLD_DEFAULT_50KB);
     }
 
+    /**
+     * How images embedded in the message content are delivered (INLINE or LINK).
+     *
+     * @return the configured embedded image mode
+     * @see EmbeddedImageMode
+     */
+    public EmbeddedImageMode getEmbeddedImageMode() {
+        return environment.getProperty(EMBEDDED_IMAGE_MODE, EmbeddedImageMode.class, EMBEDDED_IMAGE_MODE_DEFAULT);
+    }
+
+    /**
+     * Whether message content is read using the message BODYSTRUCTURE (only the selected text part and small
+     * embedded images are downloaded) instead of retrieving and parsing the complete message.
+     *
+     * @return true if messages should be read from their BODYSTRUCTURE
+     */
+    public boolean isBodyStructureFirst() {
+        return environment.getProperty(BODY_STRUCTURE_FIRST, Boolean.class, BODY_STRUCTURE_FIRST_DEFAULT);
+    }
+
+    /**
+     * Time in milliseconds that fetching a batch of messages for a message listing should take.
+     */
+    public long getMessagesBatchTargetLatency() {
+        return environment.getProperty(MESSAGES_BATCH_TARGET_LATENCY, Long.class,
+                MESSAGES_BATCH_TARGET_LATENCY_DEFAULT_500MS);
+    }
+
+    /**
+     * Maximum approximate size in bytes of the JSON representation of a batch of messages for a message listing.
+     */
+    public long getMessagesBatchMaxBytes() {
+        return environment.getProperty(MESSAGES_BATCH_MAX_BYTES, Long.class, MESSAGES_BATCH_MAX_BYTES_DEFAULT_256KB);
+    }
+
+    /**
+     * Maximum number of idle authenticated IMAP connections kept in the pool (for all users).
+     *
+     * A value of 0 or less disables connection pooling, every request will open and close its own connection.
+     *
+     * @return max number of idle pooled connections
+     */
+    public int getImapPoolMaxIdle() {
+        return environment.getProperty(IMAP_POOL_MAX_IDLE, Integer.class, IMAP_POOL_MAX_IDLE_DEFAULT);
+    }
+
+    /**
+     * Maximum number of IMAP connections (idle and in use) a single account may hold at the same time.
+     *
+     * A value of 0 or less means no limit. Connections held by folder change streams (SSE) don't count towards this
+     * limit, see {@link #getImapPoolMaxStreamsPerUser()}.
+     *
+     * @return max number of connections per account
+     */
+    public int getImapPoolMaxConnectionsPerUser() {
+        return environment.getProperty(IMAP_POOL_MAX_CONNECTIONS_PER_USER, Integer.class,
+                IMAP_POOL_MAX_CONNECTIONS_PER_USER_DEFAULT);
+    }
+
+    /**
+     * Maximum number of folder change streams (SSE) a single account may have open at the same time, each stream
+     * holds its own IMAP connection in addition to the ones limited by {@link #getImapPoolMaxConnectionsPerUser()}.
+     *
+     * A value of 0 or less means no limit.
+     *
+     * @return max number of streams per account
+     */
+    public int getImapPoolMaxStreamsPerUser() {
+        return environment.getProperty(IMAP_POOL_MAX_STREAMS_PER_USER, Integer.class,
+                IMAP_POOL_MAX_STREAMS_PER_USER_DEFAULT);
+    }
+
+    /**
+     * Time in milliseconds a pooled connection may remain unused before being closed.
+     */
+    public long getImapPoolIdleTimeout() {
+        return environment.getProperty(IMAP_POOL_IDLE_TIMEOUT, Long.class, IMAP_POOL_IDLE_TIMEOUT_DEFAULT_2MIN);
+    }
+
+    /**
+     * Time in milliseconds after which an idle pooled connection is checked (NOOP) before being reused.
+     */
+    public long getImapPoolValidationInterval() {
+        return environment.getProperty(IMAP_POOL_VALIDATION_INTERVAL, Long.class,
+                IMAP_POOL_VALIDATION_INTERVAL_DEFAULT_10S);
+    }
+
+    /**
+     * Time in milliseconds to wait for a connection when an account has reached its connection limit.
+     */
+    public long getImapPoolBorrowTimeout() {
+        return environment.getProperty(IMAP_POOL_BORROW_TIMEOUT, Long.class, IMAP_POOL_BORROW_TIMEOUT_DEFAULT_5S);
+    }
+
+    /**
+     * Approximate maximum number of bytes used by the cached message envelopes of a single account.
+     *
+     * A value of 0 or less disables the envelope cache.
+     *
+     * @return max bytes for cached envelopes per account
+     */
+    public long getEnvelopeCacheUserBytes() {
+        return environment.getProperty(ENVELOPE_CACHE_USER_BYTES, Long.class, ENVELOPE_CACHE_USER_BYTES_DEFAULT_4MB);
+    }
+
+    /**
+     * Maximum number of accounts with cached message envelopes.
+     */
+    public long getEnvelopeCacheMaxUsers() {
+        return environment.getProperty(ENVELOPE_CACHE_MAX_USERS, Long.class, ENVELOPE_CACHE_MAX_USERS_DEFAULT);
+    }
+
+    /**
+     * Time in milliseconds after which the cached envelopes of an inactive account are discarded.
+     */
+    public long getEnvelopeCacheExpireAfterAccess() {
+        return environment.getProperty(ENVELOPE_CACHE_EXPIRE_AFTER_ACCESS, Long.class,
+                ENVELOPE_CACHE_EXPIRE_AFTER_ACCESS_DEFAULT_30MIN);
+    }
+
+    /**
+     * Names of the message headers fetched with the envelope of every listed message
+     * (<code>BODY.PEEK[HEADER.FIELDS (...)]</code>).
+     *
+     * <code>*</code> fetches the complete header block. Headers required to build the message list (In-Reply-To,
+     * References) are always fetched.
+     *
+     * @return set of header names
+     */
+    public Set<String> getEnvelopeHeaders() {
+        final String envelopeHeaders = environment.getProperty(ENVELOPE_HEADERS, ENVELOPE_HEADERS_DEFAULT);
+        return Stream.of(envelopeHeaders.split("\\,")).map(String::trim).filter(h -> !h.isEmpty())
+                .collect(Collectors.toCollection(LinkedHashSet::new));
+    }
+
+    /**
+     * Number of bytes of the first text part of every listed message fetched to build its preview snippet
+     * (<code>BODY.PEEK[part]&lt;0.bytes&gt;</code>).
+     *
+     * A value of 0 or less disables message snippets.
+     *
+     * @return max bytes fetched per message snippet
+     */
+    public int getSnippetPartialBytes() {
+        return environment.getProperty(SNIPPET_PARTIAL_BYTES, Integer.class, SNIPPET_PARTIAL_BYTES_DEFAULT);
+    }
+
+    /**
+     * Maximum number of bytes fetched to build the snippets of a single message batch, messages exceeding this
+     * budget are listed without snippet.
+     */
+    public long getSnippetBatchMaxBytes() {
+        return environment.getProperty(SNIPPET_BATCH_MAX_BYTES, Long.class, SNIPPET_BATCH_MAX_BYTES_DEFAULT_64KB);
+    }
+
+    /**
+     * Maximum number of bytes used in disk by the cache of rendered message bodies (content and attachment metadata).
+     *
+     * A value of 0 or less disables the message cache.
+     *
+     * @return max bytes for cached message bodies
+     */
+    public long getMessageCacheBytes() {
+        return environment.getProperty(MESSAGE_CACHE_BYTES, Long.class, MESSAGE_CACHE_BYTES_DEFAULT_256MB);
+    }
+
+    /**
+     * Directory where the rendered message bodies are cached, any previous content is discarded on startup.
+     */
+    public String getMessageCacheDirectory() {
+        return environment.getProperty(MESSAGE_CACHE_DIRECTORY,
+                Paths.get(System.getProperty("java.io.tmpdir"), MESSAGE_CACHE_DIRECTORY_DEFAULT_NAME).toString());
+    }
+
+    /**
+     * Number of unread messages before and after an opened message whose bodies are rendered in the background.
+     *
+     * A value of 0 or less disables the prefetch of adjacent messages.
+     */
+    public int getPrefetchAdjacentMessages() {
+        return environment.getProperty(PREFETCH_ADJACENT_MESSAGES, Integer.class, PREFETCH_ADJACENT_MESSAGES_DEFAULT);
+    }
+
+    /**
+     * Number of messages before and after an opened message searched for unread messages to prefetch.
+     *
+     * Only unread messages within this window are prefetched, it's never smaller than the number of adjacent messages.
+     */
+    public int getPrefetchSearchWindow() {
+        return environment.getProperty(PREFETCH_SEARCH_WINDOW, Integer.class, PREFETCH_SEARCH_WINDOW_DEFAULT);
+    }
+
+    /**
+     * Maximum number of threads (shared by all users) prefetching message bodies.
+     */
+    public int getPrefetchMaxThreads() {
+        return environment.getProperty(PREFETCH_MAX_THREADS, Integer.class, PREFETCH_MAX_THREADS_DEFAULT);
+    }
+
+    /**
+     * Maximum number of prefetch tasks of a single user running or waiting for a thread, further requests are
+     * ignored.
+     */
+    public int getPrefetchMaxConcurrentPerUser() {
+        return environment.getProperty(PREFETCH_MAX_CONCURRENT_PER_USER, Integer.class,
+                PREFETCH_MAX_CONCURRENT_PER_USER_DEFAULT);
+    }
+
+    /**
+     * Approximate max heap bytes of prefetched message bodies retained for each user.
+     *
+     * A value of 0 or less disables the prefetch of message bodies.
+     */
+    public long getPrefetchUserBytes() {
+        return environment.getProperty(PREFETCH_USER_BYTES, Long.class, PREFETCH_USER_BYTES_DEFAULT_2MB);
+    }
+
+    /**
+     * Maximum number of users with prefetched message bodies.
+     */
+    public long getPrefetchMaxUsers() {
+        return environment.getProperty(PREFETCH_MAX_USERS, Long.class, PREFETCH_MAX_USERS_DEFAULT);
+    }
+
+    /**
+     * Time in milliseconds a prefetched message body is kept if it's not read.
+     */
+    public long getPrefetchExpireAfterWrite() {
+        return environment.getProperty(PREFETCH_EXPIRE_AFTER_WRITE, Long.class,
+                PREFETCH_EXPIRE_AFTER_WRITE_DEFAULT_2MIN);
+    }
+
+    /**
+     * How blocking IMAP/SMTP work (SSE streams, async requests) is executed (ELASTIC, BOUNDED or VIRTUAL).
+     *
+     * @return the configured execution mode
+     * @see ExecutionMode
+     */
+    public ExecutionMode getExecutionMode() {
+        return environment.getProperty(EXECUTION_MODE, ExecutionMode.class, EXECUTION_MODE_DEFAULT);
+    }
+
+    /**
+     * Maximum number of threads for blocking work in {@link ExecutionMode#BOUNDED} mode.
+     */
+    public int getExecutionBoundedMaxThreads() {
+        return environment.getProperty(EXECUTION_BOUNDED_MAX_THREADS, Integer.class,
+                EXECUTION_BOUNDED_MAX_THREADS_DEFAULT);
+    }
+
+    /**
+     * Maximum number of blocking tasks waiting for a thread in {@link ExecutionMode#BOUNDED} mode, further tasks
+     * are rejected.
+     */
+    public int getExecutionBoundedQueueSize() {
+        return environment.getProperty(EXECUTION_BOUNDED_QUEUE_SIZE, Integer.class,
+                EXECUTION_BOUNDED_QUEUE_SIZE_DEFAULT);
+    }
+
+    /**
+     * Maximum number of concurrent folder change streams, each of them is processed in its own platform thread in
+     * every {@link ExecutionMode}. Further streams are rejected (429).
+     */
+    public int getExecutionChangesMaxStreams() {
+        return environment.getProperty(EXECUTION_CHANGES_MAX_STREAMS, Integer.class,
+                EXECUTION_CHANGES_MAX_STREAMS_DEFAULT);
+    }
+
+    /**
+     * Number of threads performing the periodic interruptions of the IDLE commands of folder change streams.
+     */
+    public int getExecutionIdleThreads() {
+        return environment.getProperty(EXECUTION_IDLE_THREADS, Integer.class, EXECUTION_IDLE_THREADS_DEFAULT);
+    }
+
+    /**
+     * Retrieves the secret that salts the hashed mail server host metric tags from the
+     * <code>METRICS_HOST_HASH_SECRET</code> environment variable.
+     *
+     * If no secret was specified a random one is generated on startup (tags are then only stable for the lifetime of
+     * the process).
+     *
+     * @return the configured secret or null if none was specified
+     */
+    @Nullable
+    public String getMetricsHostHashSecret() {
+        final String secret = environment.getProperty(METRICS_HOST_HASH_SECRET, "");
+        return secret.isEmpty() ? null : secret;
+    }
+
 }
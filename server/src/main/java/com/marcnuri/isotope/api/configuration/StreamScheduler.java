@@ -0,0 +1,84 @@
+/*
+ * StreamScheduler.java
+ *
+ * Created on 2026-10-18, 17:40
+ *
+ * Copyright 2018 Marc Nuri
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.marcnuri.isotope.api.configuration;
+
+import com.marcnuri.isotope.api.exception.IsotopeException;
+import org.springframework.http.HttpStatus;
+import reactor.core.publisher.Flux;
+import reactor.core.scheduler.Scheduler;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Subscribes long lived streams (each of them holding a thread for its whole life) on a dedicated {@link Scheduler}
+ * with a fixed budget of concurrent streams.
+ *
+ * <p>Streams are admitted when requested, once the budget is exhausted further streams are rejected with a
+ * <code>429 Too Many Requests</code> response instead of queueing for a thread that won't be available.
+ *
+ * <p>Created by Marc Nuri <marc@marcnuri.com> on 2026-10-18.
+ */
+public class StreamScheduler {
+
+    private final Scheduler scheduler;
+    private final Semaphore streams;
+
+    public StreamScheduler(Scheduler scheduler, int maxStreams) {
+        this.scheduler = scheduler;
+        this.streams = new Semaphore(maxStreams);
+    }
+
+    /**
+     * Returns the provided stream subscribed on this scheduler, the stream's slot is released once it completes,
+     * fails or is cancelled.
+     *
+     * @param stream to subscribe
+     * @param <T> type of the stream elements
+     * @return the stream subscribed on this scheduler
+     * @throws IsotopeException if the maximum number of concurrent streams was reached
+     */
+    public <T> Flux<T> subscribeOn(Flux<T> stream) {
+        if (!streams.tryAcquire()) {
+            throw new IsotopeException(HttpStatus.TOO_MANY_REQUESTS,
+                    "Too many concurrent streams in the server, please try again later");
+        }
+        final AtomicBoolean released = new AtomicBoolean(false);
+        final Runnable release = () -> {
+            if (released.compareAndSet(false, true)) {
+                streams.release();
+            }
+        };
+        // Released before the terminal signal is propagated so that subscribers can open a new stream right away
+        return stream
+                .subscribeOn(scheduler)
+                .doOnTerminate(release)
+                .doOnCancel(release);
+    }
+
+    public int getAvailableStreams() {
+        return streams.availablePermits();
+    }
+
+    public void dispose() {
+        scheduler.dispose();
+    }
+}
@@ -22,15 +22,24 @@ package com.marcnuri.isotope.api.configuration;
 
 import com.marcnuri.isotope.api.credentials.CredentialsService;
 import com.marcnuri.isotope.api.imap.ImapService;
-import com.sun.mail.util.MailSSLSocketFactory;
+import com.marcnuri.isotope.api.imap.ImapStorePool;
+import com.marcnuri.isotope.api.message.EnvelopeCache;
+import com.marcnuri.isotope.api.message.MessageBodyCache;
+import com.marcnuri.isotope.api.message.MessagePrefetchCache;
+import com.marcnuri.isotope.api.metrics.MailMetrics;
+import com.marcnuri.isotope.api.session.InMemorySessionStore;
+import com.marcnuri.isotope.api.session.SessionStore;
+import org.springframework.boot.actuate.autoconfigure.security.servlet.EndpointRequest;
+import org.springframework.boot.actuate.health.HealthEndpoint;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Scope;
 import org.springframework.core.env.Environment;
+import org.springframework.core.task.AsyncTaskExecutor;
 import org.springframework.scheduling.annotation.AsyncConfigurer;
-import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
 import org.springframework.security.config.annotation.web.configuration.WebSecurityConfigurerAdapter;
@@ -55,12 +64,17 @@ public class WebConfiguration extends WebSecurityConfigurerAdapter implements We
 
     public static final String IMAP_SERVICE_PROTOTYPE = "prototypeImapService";
     private static final String DEVELOPMENT_PROFILE = "dev";
+    private static final String LOCAL_ADDRESS_ACCESS = "hasIpAddress('127.0.0.1') or hasIpAddress('::1')";
 
     private Environment environment;
+    private AsyncTaskExecutor asyncExecutor;
 
     @Autowired
-    public WebConfiguration(Environment environment) {
+    public WebConfiguration(
+            Environment environment, @Qualifier(ExecutionConfiguration.ASYNC_EXECUTOR) AsyncTaskExecutor asyncExecutor) {
+
         this.environment = environment;
+        this.asyncExecutor = asyncExecutor;
     }
 
 
@@ -68,7 +82,12 @@ public class WebConfiguration extends WebSecurityConfigurerAdapter implements We
     protected void configure(HttpSecurity http) throws Exception {
         http.csrf().disable()
                 .authorizeRequests()
-                .regexMatchers("/v1/*").permitAll().and()
+                .requestMatchers(EndpointRequest.to(HealthEndpoint.class)).permitAll()
+                // Metrics (and any other exposed actuator endpoint) are only available from the local host
+                .requestMatchers(EndpointRequest.toAnyEndpoint()).access(LOCAL_ADDRESS_ACCESS)
+                .regexMatchers("/v1/*").permitAll()
+                // API endpoints authenticate the user with the encrypted credentials of each request
+                .anyRequest().permitAll().and()
                 .cors().and()
                 .logout().permitAll();
     }
@@ -78,16 +97,10 @@ public class WebConfiguration extends WebSecurityConfigurerAdapter implements We
         configurer.setTaskExecutor(getAsyncExecutor());
     }
 
-     @Override
-     public ThreadPoolTaskExecutor getAsyncExecutor() {
-         ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
-         executor.setCorePoolSize(7);
-         executor.setMaxPoolSize(42);
-         executor.setQueueCapacity(11);
-         executor.setThreadNamePrefix("MyExecutor-");
-         executor.initialize();
-         return executor;
-     }
+    @Override
+    public AsyncTaskExecutor getAsyncExecutor() {
+        return asyncExecutor;
+    }
 
     @Bean
     public CorsConfigurationSource corsConfigurationSource() {
@@ -103,9 +116,18 @@ public class WebConfiguration extends WebSecurityConfigurerAdapter implements We
     @Scope(SCOPE_PROTOTYPE)
     @Qualifier(IMAP_SERVICE_PROTOTYPE)
     public ImapService imapService(
-            IsotopeApiConfiguration isotopeApiConfiguration, MailSSLSocketFactory mailSSLSocketFactory,
-            CredentialsService credentialsService) {
+            IsotopeApiConfiguration isotopeApiConfiguration, ImapStorePool imapStorePool,
+            EnvelopeCache envelopeCache, MessageBodyCache messageBodyCache, MessagePrefetchCache messagePrefetchCache,
+            CredentialsService credentialsService, MailMetrics mailMetrics) {
 
-        return new ImapService(isotopeApiConfiguration, mailSSLSocketFactory, credentialsService);
+        return new ImapService(isotopeApiConfiguration, imapStorePool, envelopeCache, messageBodyCache,
+                messagePrefetchCache, credentialsService, mailMetrics);
+    }
+
+    @Bean
+    @ConditionalOnMissingBean(SessionStore.class)
+    public SessionStore sessionStore(IsotopeApiConfiguration isotopeApiConfiguration) {
+        return new InMemorySessionStore(isotopeApiConfiguration.getSessionMaxSize(),
+                isotopeApiConfiguration.getSessionExpireAfterAccess());
     }
 }
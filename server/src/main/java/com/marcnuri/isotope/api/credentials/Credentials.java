@@ -40,6 +40,7 @@ public class Credentials extends IsotopeResource implements Serializable {
 
     private String encrypted;
     private String salt;
+    private String session;
     @NotNull(groups=Login.class)
     private String serverHost;
     @NotNull(groups=Login.class)
@@ -74,6 +75,14 @@ public class Credentials extends IsotopeResource implements Serializable {
         this.salt = salt;
     }
 
+    public String getSession() {
+        return session;
+    }
+
+    public void setSession(String session) {
+        this.session = session;
+    }
+
     public String getServerHost() {
         return serverHost;
     }
@@ -146,6 +155,7 @@ public class Credentials extends IsotopeResource implements Serializable {
         Credentials that = (Credentials) o;
         return Objects.equals(encrypted, that.encrypted) &&
                 Objects.equals(salt, that.salt) &&
+                Objects.equals(session, that.session) &&
                 Objects.equals(serverHost, that.serverHost) &&
                 Objects.equals(serverPort, that.serverPort) &&
                 Objects.equals(user, that.user) &&
@@ -159,7 +169,7 @@ public class Credentials extends IsotopeResource implements Serializable {
     @Override
     public int hashCode() {
 
-        return Objects.hash(super.hashCode(), encrypted, salt, serverHost, serverPort, user, password, imapSsl, smtpHost, smtpPort, smtpSsl);
+        return Objects.hash(super.hashCode(), encrypted, salt, session, serverHost, serverPort, user, password, imapSsl, smtpHost, smtpPort, smtpSsl);
     }
 
     /**
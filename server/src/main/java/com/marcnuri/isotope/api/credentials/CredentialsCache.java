@@ -0,0 +1,123 @@
+/*
+ * CredentialsCache.java
+ *
+ * Created on 2026-10-17, 21:05
+ *
+ * Copyright 2018 Marc Nuri
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.marcnuri.isotope.api.credentials;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.lang.NonNull;
+import org.springframework.lang.Nullable;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bounded, time limited cache of decrypted credentials (plain JSON) keyed by salt and a hash of the encrypted
+ * credentials.
+ *
+ * <p>Deriving the encryption key (PBKDF2) for every request is expensive, as credentials are sent with every request
+ * the decrypted value can be reused until it expires. A tampered or re-encrypted value will have a different hash and
+ * will never match a cached entry.
+ *
+ * <p>Cached values are kept as byte arrays that are overwritten with zeros when they are evicted, callers receive
+ * their own copy which they should also clear once parsed.
+ *
+ * <p>Created by Marc Nuri <marc@marcnuri.com> on 2026-10-17.
+ */
+class CredentialsCache {
+
+    private static final String HASH_ALGORITHM = "SHA-256";
+
+    private final Cache<String, DecryptedCredentials> cache;
+
+    /**
+     * @param maxSize max number of cached credentials, 0 or less to disable the cache
+     * @param expireAfterWriteMillis time in milliseconds after which an entry is discarded
+     */
+    CredentialsCache(long maxSize, long expireAfterWriteMillis) {
+        cache = maxSize <= 0 ? null : Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(expireAfterWriteMillis, TimeUnit.MILLISECONDS)
+                .executor(Runnable::run)
+                .<String, DecryptedCredentials>removalListener((key, value, cause) -> {
+                    if (value != null) {
+                        value.wipe();
+                    }
+                })
+                .build();
+    }
+
+    /**
+     * Returns a copy of the decrypted credentials for the provided salt and encrypted credentials or null if they're
+     * not cached.
+     */
+    @Nullable
+    byte[] get(@NonNull String salt, @NonNull String encrypted) {
+        if (cache == null) {
+            return null;
+        }
+        final DecryptedCredentials decrypted = cache.getIfPresent(toKey(salt, encrypted));
+        return decrypted == null ? null : decrypted.copy();
+    }
+
+    /**
+     * Caches a copy of the provided decrypted credentials for the provided salt and encrypted credentials.
+     */
+    void put(@NonNull String salt, @NonNull String encrypted, @NonNull byte[] decrypted) {
+        if (cache != null) {
+            cache.put(toKey(salt, encrypted), new DecryptedCredentials(Arrays.copyOf(decrypted, decrypted.length)));
+        }
+    }
+
+    private static String toKey(String salt, String encrypted) {
+        try {
+            final byte[] hash = MessageDigest.getInstance(HASH_ALGORITHM)
+                    .digest(encrypted.getBytes(StandardCharsets.US_ASCII));
+            return salt + ':' + Base64.getEncoder().encodeToString(hash);
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    private static final class DecryptedCredentials {
+
+        private byte[] value;
+
+        private DecryptedCredentials(byte[] value) {
+            this.value = value;
+        }
+
+        @Nullable
+        private synchronized byte[] copy() {
+            return value == null ? null : Arrays.copyOf(value, value.length);
+        }
+
+        private synchronized void wipe() {
+            if (value != null) {
+                Arrays.fill(value, (byte) 0);
+                value = null;
+            }
+        }
+    }
+}
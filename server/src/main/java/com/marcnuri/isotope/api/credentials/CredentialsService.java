@@ -25,7 +25,11 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.marcnuri.isotope.api.configuration.IsotopeApiConfiguration;
 import com.marcnuri.isotope.api.exception.AuthenticationException;
 import com.marcnuri.isotope.api.http.HttpHeaders;
+import com.marcnuri.isotope.api.session.Session;
+import com.marcnuri.isotope.api.session.SessionStore;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.lang.NonNull;
+import org.springframework.lang.Nullable;
 import org.springframework.security.crypto.encrypt.Encryptors;
 import org.springframework.security.crypto.encrypt.TextEncryptor;
 import org.springframework.security.crypto.keygen.KeyGenerators;
@@ -33,8 +37,12 @@ import org.springframework.stereotype.Service;
 
 import javax.servlet.http.HttpServletRequest;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
 import java.util.Set;
 
+import static com.marcnuri.isotope.api.credentials.CredentialsUtils.toAccountKey;
 import static com.marcnuri.isotope.api.exception.AuthenticationException.Type.BLACKLISTED;
 
 /**
@@ -43,13 +51,22 @@ import static com.marcnuri.isotope.api.exception.AuthenticationException.Type.BL
 @Service
 public class CredentialsService {
 
+    private static final int SESSION_TOKEN_BYTES = 32;
+
     private final ObjectMapper objectMapper;
     private final IsotopeApiConfiguration isotopeApiConfiguration;
+    private final SessionStore sessionStore;
+    private final CredentialsCache credentialsCache;
 
     @Autowired
-    public CredentialsService(ObjectMapper objectMapper, IsotopeApiConfiguration isotopeApiConfiguration) {
+    public CredentialsService(
+            ObjectMapper objectMapper, IsotopeApiConfiguration isotopeApiConfiguration, SessionStore sessionStore) {
+
         this.objectMapper = objectMapper;
         this.isotopeApiConfiguration = isotopeApiConfiguration;
+        this.sessionStore = sessionStore;
+        this.credentialsCache = new CredentialsCache(isotopeApiConfiguration.getCredentialsCacheMaxSize(),
+                isotopeApiConfiguration.getCredentialsCacheExpireAfterWrite());
     }
 
     public void checkHost(Credentials credentials) {
@@ -63,13 +80,27 @@ public class CredentialsService {
      * Parses {@link HttpServletRequest} for isotope credentials to decode them and return
      * a valid {@link Credentials} object.
      *
+     * If the request contains a session token, credentials are retrieved from the server side {@link Session}. If
+     * the session is unknown or expired, the encrypted credentials in the request (if any) are used instead.
+     *
      * @param httpServletRequest
      * @return
      */
     public  Credentials fromRequest(HttpServletRequest httpServletRequest) {
+        final String sessionToken = httpServletRequest.getHeader(HttpHeaders.ISOTOPE_SESSION);
+        final String encrypted = httpServletRequest.getHeader(HttpHeaders.ISOTOPE_CRDENTIALS);
+        final String salt = httpServletRequest.getHeader(HttpHeaders.ISOTOPE_SALT);
+        if (sessionToken != null && !sessionToken.isEmpty()) {
+            final Session session = sessionStore.get(sessionToken);
+            if (session != null) {
+                return session.getCredentials();
+            }
+            if (encrypted == null || encrypted.isEmpty() || salt == null || salt.isEmpty()) {
+                throw new AuthenticationException("Session expired");
+            }
+        }
         try {
-            return decrypt(httpServletRequest.getHeader(HttpHeaders.ISOTOPE_CRDENTIALS),
-                    httpServletRequest.getHeader(HttpHeaders.ISOTOPE_SALT));
+            return decrypt(encrypted, salt);
         } catch(IOException ex) {
             throw new AuthenticationException("Invalid credentials", ex);
         }
@@ -84,13 +115,56 @@ public class CredentialsService {
         return encrytpedCredentials;
     }
 
+    /**
+     * Creates a server side {@link Session} for the provided (validated) credentials.
+     *
+     * @param credentials decrypted user credentials
+     * @return the opaque token identifying the new session
+     */
+    public String createSession(@NonNull Credentials credentials) {
+        final String token = Base64.getUrlEncoder().withoutPadding()
+                .encodeToString(KeyGenerators.secureRandom(SESSION_TOKEN_BYTES).generateKey());
+        sessionStore.put(new Session(token, credentials, toAccountKey(credentials), System.currentTimeMillis()));
+        return token;
+    }
+
+    /**
+     * Removes the server side {@link Session} identified by the session token in the provided request.
+     *
+     * @return the removed session or null if the request has no session or it had already expired
+     */
+    @Nullable
+    public Session removeSession(HttpServletRequest httpServletRequest) {
+        final String sessionToken = httpServletRequest.getHeader(HttpHeaders.ISOTOPE_SESSION);
+        return sessionToken == null || sessionToken.isEmpty() ? null : sessionStore.remove(sessionToken);
+    }
+
+    /**
+     * Decrypts the provided credentials. Decrypted credentials are cached (see {@link CredentialsCache}) so that the
+     * encryption key is only derived the first time the encrypted credentials are received.
+     */
     private Credentials decrypt(String encrypted, String salt) throws IOException {
         if(encrypted == null || encrypted.isEmpty() || salt == null || salt.isEmpty()) {
             throw new AuthenticationException("Missing encrypted credentials");
         }
+        final byte[] cached = credentialsCache.get(salt, encrypted);
+        if (cached != null) {
+            try {
+                return objectMapper.readValue(cached, Credentials.class);
+            } finally {
+                Arrays.fill(cached, (byte) 0);
+            }
+        }
         try {
             final TextEncryptor encryptor = Encryptors.text(isotopeApiConfiguration.getEncryptionPassword(), salt);
-            return objectMapper.readValue(encryptor.decrypt(encrypted), Credentials.class);
+            final byte[] decrypted = encryptor.decrypt(encrypted).getBytes(StandardCharsets.UTF_8);
+            try {
+                final Credentials ret = objectMapper.readValue(decrypted, Credentials.class);
+                credentialsCache.put(salt, encrypted, decrypted);
+                return ret;
+            } finally {
+                Arrays.fill(decrypted, (byte) 0);
+            }
         } catch(IllegalStateException ex) {
             throw new AuthenticationException("Key or salt is not compatible with encrypted credentials" +
                     " (Server has changed the password or user tampered with credentials.", ex);
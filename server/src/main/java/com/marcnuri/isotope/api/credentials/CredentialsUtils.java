@@ -0,0 +1,69 @@
+/*
+ * CredentialsUtils.java
+ *
+ * Created on 2026-10-17, 9:12
+ *
+ * Copyright 2018 Marc Nuri
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.marcnuri.isotope.api.credentials;
+
+import com.marcnuri.isotope.api.exception.IsotopeException;
+import org.springframework.lang.NonNull;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+
+/**
+ * Created by Marc Nuri <marc@marcnuri.com> on 2026-10-17.
+ */
+public class CredentialsUtils {
+
+    private static final String SHA_256 = "SHA-256";
+
+    private CredentialsUtils() {}
+
+    /**
+     * Computes an opaque key identifying the IMAP account of the provided {@link Credentials}.
+     *
+     * <p>The key is a SHA-256 digest of the IMAP host, port, user, SSL flag and password, so two requests share the
+     * same key only if they would authenticate the same way against the same server. The password is included on
+     * purpose: a key that only identifies the account would allow anyone knowing the user name to reuse resources
+     * (e.g. pooled connections) authenticated by someone else.
+     *
+     * @param credentials from which to compute the account key
+     * @return URL safe Base64 representation of the account key
+     */
+    public static String toAccountKey(@NonNull Credentials credentials) {
+        final MessageDigest digest = sha256();
+        for (Object field : new Object[]{
+                credentials.getServerHost(), credentials.getServerPort(), credentials.getUser(),
+                credentials.getImapSsl(), credentials.getPassword()}) {
+            digest.update(String.valueOf(field).getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+        }
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(digest.digest());
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance(SHA_256);
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IsotopeException("SHA-256 digest is not available", ex);
+        }
+    }
+}
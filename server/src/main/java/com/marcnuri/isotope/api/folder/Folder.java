@@ -24,6 +24,7 @@ import com.fasterxml.jackson.annotation.JsonInclude;
 import com.marcnuri.isotope.api.exception.IsotopeException;
 import com.marcnuri.isotope.api.resource.IsotopeResource;
 import com.sun.mail.imap.IMAPFolder;
+import com.sun.mail.imap.protocol.Status;
 import org.springframework.lang.Nullable;
 
 import javax.mail.MessagingException;
@@ -47,6 +48,10 @@ public class Folder extends IsotopeResource implements Serializable {
     private static final String ATTR_HAS_NO_CHILDREN = "\\HasNoChildren";
     public static final String TRASH_FOLDER_NAME = "Trash";
     private static final Folder[] EMPTY_FOLDERS = {};
+    private static final String CAPABILITY_CONDSTORE = "CONDSTORE";
+    private static final String[] STATUS_ITEMS = {"MESSAGES", "RECENT", "UNSEEN", "UIDNEXT", "UIDVALIDITY"};
+    private static final String[] STATUS_ITEMS_CONDSTORE =
+            {"MESSAGES", "RECENT", "UNSEEN", "UIDNEXT", "UIDVALIDITY", "HIGHESTMODSEQ"};
 
     private String folderId;
     // Used when folder renaming to store previous folderId in order to identificate in FE
@@ -54,6 +59,8 @@ public class Folder extends IsotopeResource implements Serializable {
     private String name;
     private char separator;
     private Long UIDValidity;
+    private Long UIDNext;
+    private Long highestModseq;
     private String fullName;
     private String fullURL;
     private Set<String> attributes;
@@ -103,6 +110,22 @@ public class Folder extends IsotopeResource implements Serializable {
         this.UIDValidity = UIDValidity;
     }
 
+    public Long getUIDNext() {
+        return UIDNext;
+    }
+
+    public void setUIDNext(Long UIDNext) {
+        this.UIDNext = UIDNext;
+    }
+
+    public Long getHighestModseq() {
+        return highestModseq;
+    }
+
+    public void setHighestModseq(Long highestModseq) {
+        this.highestModseq = highestModseq;
+    }
+
     public String getFullName() {
         return fullName;
     }
@@ -182,6 +205,8 @@ public class Folder extends IsotopeResource implements Serializable {
                 Objects.equals(previousFolderId, folder.previousFolderId) &&
                 Objects.equals(name, folder.name) &&
                 Objects.equals(UIDValidity, folder.UIDValidity) &&
+                Objects.equals(UIDNext, folder.UIDNext) &&
+                Objects.equals(highestModseq, folder.highestModseq) &&
                 Objects.equals(fullName, folder.fullName) &&
                 Objects.equals(fullURL, folder.fullURL) &&
                 Objects.equals(attributes, folder.attributes) &&
@@ -191,7 +216,7 @@ public class Folder extends IsotopeResource implements Serializable {
     @Override
     public int hashCode() {
 
-        int result = Objects.hash(super.hashCode(), folderId, previousFolderId, name, separator, UIDValidity, fullName, fullURL, attributes, messageCount, newMessageCount, unreadMessageCount, deletedMessageCount);
+        int result = Objects.hash(super.hashCode(), folderId, previousFolderId, name, separator, UIDValidity, UIDNext, highestModseq, fullName, fullURL, attributes, messageCount, newMessageCount, unreadMessageCount, deletedMessageCount);
         result = 31 * result + Arrays.hashCode(children);
         return result;
     }
@@ -208,11 +233,26 @@ public class Folder extends IsotopeResource implements Serializable {
                 ret.setFullURL(mailFolder.getURLName().toString());
                 ret.setAttributes(new HashSet<>(Arrays.asList(mailFolder.getAttributes())));
                 if ((mailFolder.getType() & HOLDS_MESSAGES) != 0) {
-                    ret.setUIDValidity(mailFolder.getUIDValidity());
-                    ret.setMessageCount(mailFolder.getMessageCount());
-                    ret.setNewMessageCount(mailFolder.getNewMessageCount());
-                    ret.setUnreadMessageCount(mailFolder.getUnreadMessageCount());
-                    ret.setDeletedMessageCount(mailFolder.getDeletedMessageCount());
+                    final Status status = mailFolder.isOpen() ? null : status(mailFolder);
+                    if (status != null) {
+                        ret.setUIDValidity(status.uidvalidity);
+                        ret.setUIDNext(status.uidnext < 0 ? null : status.uidnext);
+                        ret.setHighestModseq(status.highestmodseq < 0 ? null : status.highestmodseq);
+                        ret.setMessageCount(status.total);
+                        ret.setNewMessageCount(status.recent);
+                        ret.setUnreadMessageCount(status.unseen);
+                        // Not available for closed folders
+                        ret.setDeletedMessageCount(-1);
+                    } else {
+                        ret.setUIDValidity(mailFolder.getUIDValidity());
+                        ret.setUIDNext(mailFolder.getUIDNext() < 0 ? null : mailFolder.getUIDNext());
+                        ret.setHighestModseq(mailFolder.isOpen() && mailFolder.getHighestModSeq() >= 0 ?
+                                mailFolder.getHighestModSeq() : null);
+                        ret.setMessageCount(mailFolder.getMessageCount());
+                        ret.setNewMessageCount(mailFolder.getNewMessageCount());
+                        ret.setUnreadMessageCount(mailFolder.getUnreadMessageCount());
+                        ret.setDeletedMessageCount(mailFolder.getDeletedMessageCount());
+                    }
                 }
                 if (Boolean.TRUE.equals(loadChildren) && !ret.getAttributes().contains(ATTR_HAS_NO_CHILDREN)) {
                     ret.setChildren(Stream.of(mailFolder.list())
@@ -232,6 +272,17 @@ public class Folder extends IsotopeResource implements Serializable {
         return ret;
     }
 
+    /**
+     * Retrieves the state of the provided closed folder with a single STATUS command (IMAPFolder issues a separate
+     * STATUS command for UIDVALIDITY, UIDNEXT and HIGHESTMODSEQ).
+     *
+     * @return the folder status or null if the server didn't return it
+     */
+    @Nullable
+    private static Status status(IMAPFolder mailFolder) throws MessagingException {
+        return (Status) mailFolder.doCommand(p -> p.status(mailFolder.getFullName(),
+                p.hasCapability(CAPABILITY_CONDSTORE) ? STATUS_ITEMS_CONDSTORE : STATUS_ITEMS));
+    }
 
     public static URLName toId(String base64Id) {
         return new URLName(decodeId(base64Id));
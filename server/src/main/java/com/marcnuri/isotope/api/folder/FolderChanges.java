@@ -0,0 +1,108 @@
+/*
+ * FolderChanges.java
+ *
+ * Created on 2026-10-17, 12:20
+ *
+ * Copyright 2018 Marc Nuri
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.marcnuri.isotope.api.folder;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.marcnuri.isotope.api.message.Message;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Delta of changes in a folder.
+ *
+ * <p>{@link #messages} contains new (or changed) messages with their envelope fields, {@link #changed} contains
+ * messages whose flags changed (only UID and flag fields are filled) and {@link #expunged} the UIDs of the messages
+ * that were removed from the folder.
+ *
+ * <p>When expunged messages can't be computed, {@link #uids} contains the complete list of UIDs in the folder, any
+ * message not included in the list was expunged.
+ *
+ * <p>Created by Marc Nuri <marc@marcnuri.com> on 2026-10-17.
+ */
+@JsonInclude(JsonInclude.Include.NON_EMPTY)
+public class FolderChanges implements Serializable {
+
+    private static final long serialVersionUID = 2317465307264960582L;
+
+    private Long uidValidity;
+    private Long highestModseq;
+    private List<Message> messages;
+    private List<Message> changed;
+    private List<Long> expunged;
+    private List<Long> uids;
+
+    public FolderChanges() {
+        messages = Collections.emptyList();
+        changed = Collections.emptyList();
+        expunged = Collections.emptyList();
+        uids = Collections.emptyList();
+    }
+
+    public Long getUidValidity() {
+        return uidValidity;
+    }
+
+    public void setUidValidity(Long uidValidity) {
+        this.uidValidity = uidValidity;
+    }
+
+    public Long getHighestModseq() {
+        return highestModseq;
+    }
+
+    public void setHighestModseq(Long highestModseq) {
+        this.highestModseq = highestModseq;
+    }
+
+    public List<Message> getMessages() {
+        return messages;
+    }
+
+    public void setMessages(List<Message> messages) {
+        this.messages = messages;
+    }
+
+    public List<Message> getChanged() {
+        return changed;
+    }
+
+    public void setChanged(List<Message> changed) {
+        this.changed = changed;
+    }
+
+    public List<Long> getExpunged() {
+        return expunged;
+    }
+
+    public void setExpunged(List<Long> expunged) {
+        this.expunged = expunged;
+    }
+
+    public List<Long> getUids() {
+        return uids;
+    }
+
+    public void setUids(List<Long> uids) {
+        this.uids = uids;
+    }
+}
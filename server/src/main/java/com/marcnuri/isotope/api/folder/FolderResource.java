@@ -20,41 +20,64 @@
  */
 package com.marcnuri.isotope.api.folder;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.marcnuri.isotope.api.configuration.StreamScheduler;
+import com.marcnuri.isotope.api.credentials.Credentials;
 import com.marcnuri.isotope.api.credentials.CredentialsService;
+import com.marcnuri.isotope.api.http.ETags;
 import com.marcnuri.isotope.api.imap.ImapService;
+import com.marcnuri.isotope.api.imap.MessagePrefetcher;
+import com.marcnuri.isotope.api.imap.UidSet;
 import com.marcnuri.isotope.api.message.Attachment;
 import com.marcnuri.isotope.api.message.Message;
 import com.marcnuri.isotope.api.message.MessageWithFolder;
+import com.marcnuri.isotope.api.metrics.MailMetrics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.ObjectFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.context.ApplicationContext;
 import org.springframework.context.ApplicationContextAware;
 import org.springframework.hateoas.MediaTypes;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.ResponseEntity;
 import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.lang.NonNull;
+import org.springframework.lang.Nullable;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.util.UriUtils;
 import reactor.core.publisher.Flux;
+import reactor.core.scheduler.Scheduler;
 import reactor.core.scheduler.Schedulers;
 
 import javax.mail.URLName;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
+import static com.marcnuri.isotope.api.configuration.ExecutionConfiguration.BLOCKING_SCHEDULER;
+import static com.marcnuri.isotope.api.configuration.ExecutionConfiguration.CHANGES_SCHEDULER;
+import static com.marcnuri.isotope.api.configuration.ExecutionConfiguration.IDLE_SCHEDULER;
 import static com.marcnuri.isotope.api.configuration.WebConfiguration.IMAP_SERVICE_PROTOTYPE;
+import static com.marcnuri.isotope.api.imap.ImapService.MESSAGES_BATCH_PREFETCH;
+import static java.nio.charset.StandardCharsets.UTF_8;
 import static org.springframework.hateoas.mvc.ControllerLinkBuilder.linkTo;
 import static org.springframework.hateoas.mvc.ControllerLinkBuilder.methodOn;
 import static org.springframework.http.MediaType.TEXT_EVENT_STREAM_VALUE;
@@ -69,6 +92,7 @@ public class FolderResource implements ApplicationContextAware {
 
     private static final Logger log = LoggerFactory.getLogger(FolderResource.class);
 
+    private static final String PATH_PARTS = "parts";
     private static final String REL_MESSAGES = "messages";
     public static final String REL_DOWNLOAD = "download";
     private static final String REL_DELETE = "delete";
@@ -80,25 +104,49 @@ public class FolderResource implements ApplicationContextAware {
     private static final String REL_MESSAGE_MOVE_BULK= "message.move.bulk";
     private static final String REL_MESSAGE_SEEN = "message.seen";
     private static final String REL_MESSAGE_SEEN_BULK = "message.seen.bulk";
+    private static final String STREAM_MESSAGES = "messages";
+    private static final String STREAM_CHANGES = "changes";
 
     private final CredentialsService credentialsService;
     private final ObjectFactory<ImapService> imapServiceFactory;
+    private final MessagePrefetcher messagePrefetcher;
+    private final Scheduler blockingScheduler;
+    private final StreamScheduler changesScheduler;
+    private final Scheduler idleScheduler;
+    private final MailMetrics mailMetrics;
 
     private ApplicationContext applicationContext;
 
     @Autowired
-    public FolderResource(CredentialsService credentialsService, ObjectFactory<ImapService> imapServiceFactory) {
+    public FolderResource(
+            CredentialsService credentialsService, ObjectFactory<ImapService> imapServiceFactory,
+            MessagePrefetcher messagePrefetcher, @Qualifier(BLOCKING_SCHEDULER) Scheduler blockingScheduler,
+            @Qualifier(CHANGES_SCHEDULER) StreamScheduler changesScheduler,
+            @Qualifier(IDLE_SCHEDULER) Scheduler idleScheduler, MailMetrics mailMetrics) {
+
         this.credentialsService = credentialsService;
         this.imapServiceFactory = imapServiceFactory;
+        this.messagePrefetcher = messagePrefetcher;
+        this.blockingScheduler = blockingScheduler;
+        this.changesScheduler = changesScheduler;
+        this.idleScheduler = idleScheduler;
+        this.mailMetrics = mailMetrics;
     }
 
     @GetMapping(path = "", produces = MediaTypes.HAL_JSON_VALUE)
     public ResponseEntity<List<Folder>> getFolders(
-            HttpServletRequest request, @RequestParam(value = "loadChildren", required = false) Boolean loadChildren) {
+            HttpServletRequest request, WebRequest webRequest,
+            @RequestParam(value = "loadChildren", required = false) Boolean loadChildren) {
 
         log.debug("Loading list of folders [children:{}]", loadChildren);
-        return ResponseEntity.ok(addLinks(imapServiceFactory.getObject()
-                .getFolders(credentialsService.fromRequest(request), loadChildren)));
+        final List<Folder> folders = imapServiceFactory.getObject()
+                .getFolders(credentialsService.fromRequest(request), loadChildren);
+        if (webRequest.checkNotModified(folderTreeETag(folders, loadChildren))) {
+            return null;
+        }
+        return ResponseEntity.ok()
+                .header(HttpHeaders.CACHE_CONTROL, ETags.CACHE_CONTROL_REVALIDATE)
+                .body(addLinks(folders));
     }
 
     @PostMapping(path = "", produces = MediaTypes.HAL_JSON_VALUE)
@@ -150,60 +198,143 @@ public class FolderResource implements ApplicationContextAware {
 
     @GetMapping(path = "/{folderId}/messages", produces = TEXT_EVENT_STREAM_VALUE)
     public Flux<ServerSentEvent<List<Message>>> getMessages(
-            @PathVariable("folderId") String folderId, HttpServletRequest request, HttpServletResponse response) {
+            @PathVariable("folderId") String folderId, HttpServletRequest request) {
 
         log.debug("Loading list of messages for folder {} ", folderId);
-        return applicationContext.getBean(IMAP_SERVICE_PROTOTYPE, ImapService.class)
-                .getMessagesFlux(credentialsService.fromRequest(request), Folder.toId(folderId), response)
-                .subscribeOn(Schedulers.elastic())
-                .publishOn(Schedulers.immediate()) // Will allow server to stop sending events in case client disconnects
-                ;
+        final Flux<ServerSentEvent<List<Message>>> messages = applicationContext
+                .getBean(IMAP_SERVICE_PROTOTYPE, ImapService.class)
+                .getMessagesFlux(credentialsService.fromRequest(request), Folder.toId(folderId))
+                .subscribeOn(blockingScheduler)
+                // Bounded prefetch, batches are only fetched from the server as the client consumes them
+                .publishOn(Schedulers.immediate(), MESSAGES_BATCH_PREFETCH);
+        return mailMetrics.trackStream(STREAM_MESSAGES, messages);
+    }
+
+    /**
+     * Opens a stream of {@link FolderChanges} for the folder with the provided folderId.
+     *
+     * <p>Events are sent whenever messages are added, expunged or their flags change while the stream remains open.
+     *
+     * @param folderId Id of the folder to watch
+     * @param request
+     * @return
+     */
+    @GetMapping(path = "/{folderId}/changes", produces = TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<FolderChanges>> getFolderChanges(
+            @PathVariable("folderId") String folderId, HttpServletRequest request) {
+
+        log.debug("Watching changes for folder {} ", folderId);
+        final Flux<ServerSentEvent<FolderChanges>> changes = changesScheduler.subscribeOn(applicationContext
+                .getBean(IMAP_SERVICE_PROTOTYPE, ImapService.class)
+                .getFolderChangesFlux(credentialsService.fromRequest(request), Folder.toId(folderId), idleScheduler))
+                // Will allow server to stop sending events in case client disconnects
+                .publishOn(Schedulers.immediate());
+        return mailMetrics.trackStream(STREAM_CHANGES, changes);
     }
 
+    /**
+     * Returns the messages with the provided ids. Ids can be provided as repeated parameters or using compact
+     * UID set syntax (<code>id=1:500,600</code>).
+     */
     @GetMapping(path = "/{folderId}/messages")
     public ResponseEntity<List<Message>> preloadMessages(
-            HttpServletRequest request, @PathVariable("folderId") String folderId, @RequestParam("id") List<Long> messageIds) {
+            HttpServletRequest request, @PathVariable("folderId") String folderId, @RequestParam("id") List<String> messageIds) {
 
-        log.debug("Preloading {} messages for folder {} ", messageIds.size(), folderId);
+        final UidSet uids = UidSet.parse(messageIds);
+        log.debug("Preloading {} messages for folder {} ", uids.size(), folderId);
         return ResponseEntity.ok(imapServiceFactory.getObject()
-                .preloadMessages(credentialsService.fromRequest(request), Folder.toId(folderId), messageIds));
+                .preloadMessages(credentialsService.fromRequest(request), Folder.toId(folderId), uids));
     }
 
+    /**
+     * Deletes the messages with the provided ids. Ids can be provided as repeated parameters or using compact
+     * UID set syntax (<code>id=1:500,600</code>).
+     */
     @DeleteMapping(path = "/{folderId}/messages")
     public ResponseEntity<Folder> deleteMessages(
-            HttpServletRequest request, @PathVariable("folderId") String folderId, @RequestParam("id") List<Long> messageIds) {
+            HttpServletRequest request, @PathVariable("folderId") String folderId, @RequestParam("id") List<String> messageIds) {
 
-        log.debug("Deleting {} messages for folder {} ", messageIds.size(), folderId);
+        final UidSet uids = UidSet.parse(messageIds);
+        log.debug("Deleting {} messages for folder {} ", uids.size(), folderId);
         final Folder folder = imapServiceFactory.getObject()
-                .deleteMessages(credentialsService.fromRequest(request), Folder.toId(folderId), messageIds);
+                .deleteMessages(credentialsService.fromRequest(request), Folder.toId(folderId), uids);
         addLinks(folder);
         return ResponseEntity.ok(folder);
     }
 
+    /**
+     * Returns the changes in the folder with the provided folderId since the provided modseq (CONDSTORE/QRESYNC).
+     *
+     * @param request
+     * @param folderId Id of the folder
+     * @param uidValidity UIDVALIDITY of the folder known by the client
+     * @param modseq HIGHESTMODSEQ of the folder known by the client
+     * @return changed and expunged messages since modseq or 409 CONFLICT if UIDVALIDITY changed
+     */
+    @GetMapping(path = "/{folderId}/messages/changes")
+    public ResponseEntity<FolderChanges> getMessageChanges(
+            HttpServletRequest request, @PathVariable("folderId") String folderId,
+            @RequestParam("uidValidity") Long uidValidity, @RequestParam(value = "modseq", required = false) Long modseq) {
+
+        log.debug("Loading changes for folder {} since modseq {}", folderId, modseq);
+        return ResponseEntity.ok(imapServiceFactory.getObject().getFolderChanges(
+                credentialsService.fromRequest(request), Folder.toId(folderId), uidValidity, modseq));
+    }
+
     @GetMapping(path = "/{folderId}/messages/{messageId}")
     public ResponseEntity<MessageWithFolder> getMessage(
-            HttpServletRequest request, @PathVariable("folderId") String folderId, @PathVariable("messageId") Long messageId) {
+            HttpServletRequest request, WebRequest webRequest,
+            @PathVariable("folderId") String folderId, @PathVariable("messageId") Long messageId) {
 
         log.debug("Loading message {} from folder {}", messageId, folderId);
+        final Credentials credentials = credentialsService.fromRequest(request);
         final MessageWithFolder message = imapServiceFactory.getObject()
-                .getMessage(credentialsService.fromRequest(request), Folder.toId(folderId), messageId);
+                .getMessage(credentials, Folder.toId(folderId), messageId, webRequest);
+        // Render the adjacent unread messages while the user reads this one
+        messagePrefetcher.prefetch(credentials, Folder.toId(folderId), messageId);
+        if (message == null) {
+            // Not modified
+            return null;
+        }
         addLinks(message.getFolder());
         addLinks(folderId, message);
-        return ResponseEntity.ok(message);
+        return ResponseEntity.ok()
+                .header(HttpHeaders.CACHE_CONTROL, ETags.CACHE_CONTROL_REVALIDATE)
+                .body(message);
     }
 
     @GetMapping(path = "/{folderId}/messages/{messageId}/attachments/{id}")
     public ResponseEntity<Void> getAttachment(
             HttpServletRequest request, @PathVariable("folderId") String folderId, @PathVariable("messageId") Long messageId,
             @PathVariable("id") String id, @RequestParam(name="contentId", required = false) Boolean contentId,
-            HttpServletResponse response) {
+            WebRequest webRequest, HttpServletResponse response) {
 
         log.debug("Loading attachment {} from message {} from folder {}", id, messageId, folderId);
-        imapServiceFactory.getObject().readAttachment(response, credentialsService.fromRequest(request),
-                Folder.toId(folderId), messageId, id, contentId);
+        final ImapService imapService = imapServiceFactory.getObject();
+        final Credentials credentials = credentialsService.fromRequest(request);
+        if (notModified(webRequest, response, imapService, credentials, folderId, messageId, id, contentId)) {
+            return null;
+        }
+        imapService.readAttachment(response, credentials, Folder.toId(folderId), messageId, id, contentId);
         return ResponseEntity.ok().build();
     }
 
+    @GetMapping(path = "/{folderId}/messages/{messageId}/" + PATH_PARTS + "/{partPath:.+}")
+    public void getMessagePart(
+            HttpServletRequest request, @PathVariable("folderId") String folderId, @PathVariable("messageId") Long messageId,
+            @PathVariable("partPath") String partPath,
+            @RequestHeader(name = HttpHeaders.RANGE, required = false) String range,
+            WebRequest webRequest, HttpServletResponse response) {
+
+        log.debug("Loading part {} from message {} from folder {}", partPath, messageId, folderId);
+        final ImapService imapService = imapServiceFactory.getObject();
+        final Credentials credentials = credentialsService.fromRequest(request);
+        if (notModified(webRequest, response, imapService, credentials, folderId, messageId, PATH_PARTS, partPath)) {
+            return;
+        }
+        imapService.readMessagePart(response, credentials, Folder.toId(folderId), messageId, partPath, range);
+    }
+
     @PutMapping(path = "/{fromFolderId}/messages/folder/{toFolderId}")
     public ResponseEntity<List<MessageWithFolder>> moveMessages(
             HttpServletRequest request, @PathVariable("fromFolderId") String fromFolderId,
@@ -212,7 +343,7 @@ public class FolderResource implements ApplicationContextAware {
         log.debug("Moving {} messages from folder {} to folder {}", messageIds.size(), fromFolderId, toFolderId);
         final List<MessageWithFolder> movedMessages = imapServiceFactory.getObject().moveMessages(
                 credentialsService.fromRequest(request), Folder.toId(fromFolderId), Folder.toId(toFolderId),
-                messageIds);
+                UidSet.from(messageIds));
         movedMessages.forEach(mwf -> addLinks(mwf.getFolder()));
         return ResponseEntity.ok(movedMessages);
     }
@@ -225,7 +356,7 @@ public class FolderResource implements ApplicationContextAware {
         log.debug("Moving message {} from folder {} to folder {}", messageId, fromFolderId, toFolderId);
         final List<MessageWithFolder> movedMessages = imapServiceFactory.getObject().moveMessages(
                 credentialsService.fromRequest(request), Folder.toId(fromFolderId), Folder.toId(toFolderId),
-                Collections.singletonList(messageId));
+                UidSet.of(messageId));
         movedMessages.forEach(mwf -> addLinks(mwf.getFolder()));
         return ResponseEntity.ok(movedMessages);
     }
@@ -237,7 +368,7 @@ public class FolderResource implements ApplicationContextAware {
 
         log.debug("Setting message seen attribute to {} in message {} from folder {}", seen, messageId, folderId);
         imapServiceFactory.getObject().setMessagesSeen(
-                credentialsService.fromRequest(request), Folder.toId(folderId), seen, messageId);
+                credentialsService.fromRequest(request), Folder.toId(folderId), seen, UidSet.of(messageId));
         return ResponseEntity.noContent().build();
     }
 
@@ -249,7 +380,7 @@ public class FolderResource implements ApplicationContextAware {
         log.debug("Setting {} messages in folder {} seen attribute to {}" , messageIds.size(), folderId, seen);
         imapServiceFactory.getObject().setMessagesSeen(
                 credentialsService.fromRequest(request), Folder.toId(folderId), seen,
-                messageIds.stream().mapToLong(Long::longValue).toArray());
+                UidSet.from(messageIds));
         return ResponseEntity.noContent().build();
     }
 
@@ -260,72 +391,111 @@ public class FolderResource implements ApplicationContextAware {
 
         log.debug("Setting message flagged attribute to {} in message {} from folder {}", flagged, messageId, folderId);
         imapServiceFactory.getObject().setMessagesFlagged(
-                credentialsService.fromRequest(request), Folder.toId(folderId), flagged, messageId);
+                credentialsService.fromRequest(request), Folder.toId(folderId), flagged, UidSet.of(messageId));
         return ResponseEntity.noContent().build();
     }
 
+    /**
+     * Checks if the client has a valid copy of the message attachment/part (If-None-Match).
+     *
+     * <p>The content of a message with a given UID never changes for a given UIDVALIDITY, so attachments and parts
+     * get a strong ETag and are cached as immutable. Only UIDVALIDITY is retrieved from the server (single STATUS
+     * command).
+     *
+     * @return true if the response was completed with a 304 NOT MODIFIED status
+     */
+    private static boolean notModified(
+            WebRequest webRequest, HttpServletResponse response, ImapService imapService, Credentials credentials,
+            String folderId, Long messageId, Object... resource) {
+
+        final String eTag = ETags.strong(folderId,
+                imapService.getUIDValidity(credentials, Folder.toId(folderId)), messageId, resource);
+        response.setHeader(HttpHeaders.CACHE_CONTROL, ETags.CACHE_CONTROL_IMMUTABLE);
+        return webRequest.checkNotModified(eTag);
+    }
+
+    /**
+     * Weak ETag for the folder tree, computed from the state of the folders (not the HAL representation).
+     */
+    private static String folderTreeETag(List<Folder> folders, Boolean loadChildren) {
+        final List<Object> state = new ArrayList<>();
+        state.add(loadChildren);
+        addFolderState(state, folders.toArray(new Folder[0]));
+        return ETags.weak(state.toArray());
+    }
+
+    private static void addFolderState(List<Object> state, @Nullable Folder... folders) {
+        if (folders == null) {
+            return;
+        }
+        for (Folder folder : folders) {
+            state.add(folder.getFolderId());
+            state.add(folder.getAttributes() == null ? null : new TreeSet<>(folder.getAttributes()));
+            state.add(folder.getUIDValidity());
+            state.add(folder.getUIDNext());
+            state.add(folder.getHighestModseq());
+            state.add(folder.getMessageCount());
+            state.add(folder.getNewMessageCount());
+            state.add(folder.getUnreadMessageCount());
+            state.add(folder.getDeletedMessageCount());
+            addFolderState(state, folder.getChildren());
+            // Marks the end of the children
+            state.add(null);
+        }
+    }
+
     private static Folder[] addLinks(Folder... folders) {
-        Stream.of(folders).forEach(FolderResource::addLinks);
+        final LinkTemplates linkTemplates = LinkTemplates.current();
+        Stream.of(folders).forEach(f -> addLinks(linkTemplates, f));
         return folders;
     }
 
-    private static List<Folder> addLinks(List<Folder> folders) {
-        folders.forEach(FolderResource::addLinks);
+    static List<Folder> addLinks(List<Folder> folders) {
+        final LinkTemplates linkTemplates = LinkTemplates.current();
+        folders.forEach(f -> addLinks(linkTemplates, f));
         return folders;
     }
 
     private static Folder addLinks(Folder folder) {
-        folder.add(linkTo(methodOn(FolderResource.class)
-                .getMessages( folder.getFolderId(), null, null))
-                .withRel(REL_MESSAGES).expand());
-        folder.add(linkTo(methodOn(FolderResource.class)
-                .deleteFolder(null, folder.getFolderId()))
-                .withRel(REL_DELETE));
-        folder.add(linkTo(methodOn(FolderResource.class)
-                .renameFolder(null, folder.getFolderId(), null))
-                .withRel(REL_RENAME));
-        folder.add(linkTo(methodOn(FolderResource.class)
-                .moveFolder(null, folder.getFolderId(), null))
-                .withRel(REL_MOVE));
-        folder.add(linkTo(methodOn(FolderResource.class)
-                .getMessage(null, folder.getFolderId(), null))
-                .withRel(REL_MESSAGE));
-        folder.add(linkTo(methodOn(FolderResource.class)
-                .setMessageFlagged(null, folder.getFolderId(), null, false))
-                .withRel(REL_MESSAGE_FLAGGED));
-        folder.add(linkTo(methodOn(FolderResource.class)
-                .moveMessage(null, folder.getFolderId(), null, null))
-                .withRel(REL_MESSAGE_MOVE));
-        folder.add(linkTo(methodOn(FolderResource.class)
-                .moveMessages(null, folder.getFolderId(), null, Collections.emptyList()))
-                .withRel(REL_MESSAGE_MOVE_BULK));
-        folder.add(linkTo(methodOn(FolderResource.class)
-                .setMessageSeen(null, folder.getFolderId(), null, false))
-                .withRel(REL_MESSAGE_SEEN));
-        folder.add(linkTo(methodOn(FolderResource.class)
-                .setMessagesSeen(null, folder.getFolderId(), null, Collections.emptyList()))
-                .withRel(REL_MESSAGE_SEEN_BULK));
-        addLinks(folder.getChildren());
+        return addLinks(LinkTemplates.current(), folder);
+    }
+
+    private static Folder addLinks(LinkTemplates linkTemplates, Folder folder) {
+        for (LinkTemplate linkTemplate : linkTemplates.folder) {
+            folder.add(linkTemplate.expand(folder.getFolderId()));
+        }
+        for (Folder child : folder.getChildren()) {
+            addLinks(linkTemplates, child);
+        }
         return folder;
     }
 
     private static Attachment[] addLinks(String folderId, Message message, Attachment... attachments) {
-        Stream.of(attachments).forEach(a -> addLinks(folderId, message, a));
+        final LinkTemplates linkTemplates = LinkTemplates.current();
+        Stream.of(attachments).forEach(a -> addLinks(linkTemplates, folderId, message, a));
         return attachments;
     }
 
     public static List<Attachment> addLinks(String folderId, Message message, List<Attachment> attachments) {
-        attachments.forEach(a -> addLinks(folderId, message, a));
+        final LinkTemplates linkTemplates = LinkTemplates.current();
+        attachments.forEach(a -> addLinks(linkTemplates, folderId, message, a));
         return attachments;
     }
 
-    private static Attachment addLinks(String folderId, Message message, Attachment attachment) {
+    private static Attachment addLinks(
+            LinkTemplates linkTemplates, String folderId, Message message, Attachment attachment) {
+
+        final String messageId = String.valueOf(message.getUid());
+        if (attachment.getPartPath() != null) {
+            attachment.add(linkTemplates.partDownload.expand(folderId, messageId, attachment.getPartPath()));
+            return attachment;
+        }
         final boolean isContentId = attachment.getContentId() != null && !attachment.getContentId().isEmpty();
         final String attachmentId = isContentId ? attachment.getContentId() : attachment.getFileName();
         if (attachmentId != null && !attachmentId.isEmpty()) {
-            attachment.add(linkTo(methodOn(FolderResource.class).getAttachment(null, folderId, message.getUid(),
-                    attachmentId, isContentId, null))
-                    .withRel(REL_DOWNLOAD).expand());
+            final LinkTemplate download = isContentId ?
+                    linkTemplates.contentIdDownload : linkTemplates.attachmentDownload;
+            attachment.add(download.expand(folderId, messageId, UriUtils.encodePath(attachmentId, UTF_8)));
         }
         return attachment;
     }
@@ -335,4 +505,86 @@ public class FolderResource implements ApplicationContextAware {
         this.applicationContext = applicationContext;
     }
 
+    /**
+     * Links for {@link Folder}s and {@link Attachment}s precomputed for a base URL.
+     *
+     * <p>Building a link with linkTo(methodOn(...)) creates a proxy of the controller and resolves the URI using
+     * reflection, templates are built this way only once per base URL (with placeholder values) and expanded later
+     * on with plain String concatenation.
+     */
+    private static final class LinkTemplates {
+
+        private static final int MAX_BASE_URLS = 16;
+        private static final String FOLDER_ID = "isotopeFolderIdPlaceholder";
+        private static final long MESSAGE_ID = 9013370133701337013L;
+        private static final String ATTACHMENT_ID = "isotopeAttachmentIdPlaceholder";
+        private static final String PART_PATH = "isotopePartPathPlaceholder";
+        private static final Cache<String, LinkTemplates> CACHE = Caffeine.newBuilder()
+                .maximumSize(MAX_BASE_URLS).build();
+
+        private final List<LinkTemplate> folder;
+        private final LinkTemplate partDownload;
+        private final LinkTemplate attachmentDownload;
+        private final LinkTemplate contentIdDownload;
+
+        private LinkTemplates() {
+            final String messageId = String.valueOf(MESSAGE_ID);
+            folder = Stream.of(
+                    linkTo(methodOn(FolderResource.class)
+                            .getMessages(FOLDER_ID, null))
+                            .withRel(REL_MESSAGES).expand(),
+                    linkTo(methodOn(FolderResource.class)
+                            .deleteFolder(null, FOLDER_ID))
+                            .withRel(REL_DELETE),
+                    linkTo(methodOn(FolderResource.class)
+                            .renameFolder(null, FOLDER_ID, null))
+                            .withRel(REL_RENAME),
+                    linkTo(methodOn(FolderResource.class)
+                            .moveFolder(null, FOLDER_ID, null))
+                            .withRel(REL_MOVE),
+                    linkTo(methodOn(FolderResource.class)
+                            .getMessage(null, null, FOLDER_ID, null))
+                            .withRel(REL_MESSAGE),
+                    linkTo(methodOn(FolderResource.class)
+                            .setMessageFlagged(null, FOLDER_ID, null, false))
+                            .withRel(REL_MESSAGE_FLAGGED),
+                    linkTo(methodOn(FolderResource.class)
+                            .moveMessage(null, FOLDER_ID, null, null))
+                            .withRel(REL_MESSAGE_MOVE),
+                    linkTo(methodOn(FolderResource.class)
+                            .moveMessages(null, FOLDER_ID, null, Collections.emptyList()))
+                            .withRel(REL_MESSAGE_MOVE_BULK),
+                    linkTo(methodOn(FolderResource.class)
+                            .setMessageSeen(null, FOLDER_ID, null, false))
+                            .withRel(REL_MESSAGE_SEEN),
+                    linkTo(methodOn(FolderResource.class)
+                            .setMessagesSeen(null, FOLDER_ID, null, Collections.emptyList()))
+                            .withRel(REL_MESSAGE_SEEN_BULK))
+                    .map(link -> LinkTemplate.from(link, FOLDER_ID))
+                    .collect(Collectors.toList());
+            // getMessagePart writes directly to the response (void), link is built from the message resource
+            partDownload = LinkTemplate.from(
+                    linkTo(methodOn(FolderResource.class).getMessage(null, null, FOLDER_ID, MESSAGE_ID))
+                            .slash(PATH_PARTS).slash(PART_PATH)
+                            .withRel(REL_DOWNLOAD).expand(),
+                    FOLDER_ID, messageId, PART_PATH);
+            attachmentDownload = LinkTemplate.from(
+                    linkTo(methodOn(FolderResource.class).getAttachment(
+                            null, FOLDER_ID, MESSAGE_ID, ATTACHMENT_ID, false, null, null))
+                            .withRel(REL_DOWNLOAD).expand(),
+                    FOLDER_ID, messageId, ATTACHMENT_ID);
+            contentIdDownload = LinkTemplate.from(
+                    linkTo(methodOn(FolderResource.class).getAttachment(
+                            null, FOLDER_ID, MESSAGE_ID, ATTACHMENT_ID, true, null, null))
+                            .withRel(REL_DOWNLOAD).expand(),
+                    FOLDER_ID, messageId, ATTACHMENT_ID);
+        }
+
+        /**
+         * Returns the templates for the base URL of the current request.
+         */
+        private static LinkTemplates current() {
+            return CACHE.get(linkTo(FolderResource.class).toUri().toString(), baseUrl -> new LinkTemplates());
+        }
+    }
 }
@@ -0,0 +1,105 @@
+/*
+ * LinkTemplate.java
+ *
+ * Created on 2026-10-17, 22:40
+ *
+ * Copyright 2018 Marc Nuri
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.marcnuri.isotope.api.folder;
+
+import org.springframework.hateoas.Link;
+import org.springframework.lang.NonNull;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Precomputed {@link Link} that can be expanded with plain String concatenation.
+ *
+ * <p>The template is created from a sample link built with placeholder values (e.g. using
+ * {@link org.springframework.hateoas.mvc.ControllerLinkBuilder}), every occurrence of a placeholder in the href is
+ * replaced with the corresponding (already encoded) value when the template is expanded.
+ *
+ * <p>Created by Marc Nuri <marc@marcnuri.com> on 2026-10-17.
+ */
+final class LinkTemplate {
+
+    private final String rel;
+    private final String[] literals;
+    private final int[] variables;
+    private final int length;
+
+    private LinkTemplate(String rel, String[] literals, int[] variables) {
+        this.rel = rel;
+        this.literals = literals;
+        this.variables = variables;
+        int literalsLength = 0;
+        for (String literal : literals) {
+            literalsLength += literal.length();
+        }
+        this.length = literalsLength;
+    }
+
+    /**
+     * Creates a template from the provided sample link.
+     *
+     * @param link sample link built with the provided placeholder values
+     * @param placeholders values used to build the sample link, their positions define the order of the values
+     *                     in {@link #expand(String...)}
+     * @return the link template
+     */
+    static LinkTemplate from(@NonNull Link link, @NonNull String... placeholders) {
+        final String href = link.getHref();
+        final List<String> literals = new ArrayList<>();
+        final List<Integer> variables = new ArrayList<>();
+        int position = 0;
+        while (true) {
+            int next = -1;
+            int variable = -1;
+            for (int it = 0; it < placeholders.length; it++) {
+                final int index = href.indexOf(placeholders[it], position);
+                if (index >= 0 && (next < 0 || index < next)) {
+                    next = index;
+                    variable = it;
+                }
+            }
+            if (next < 0) {
+                break;
+            }
+            literals.add(href.substring(position, next));
+            variables.add(variable);
+            position = next + placeholders[variable].length();
+        }
+        literals.add(href.substring(position));
+        return new LinkTemplate(link.getRel(), literals.toArray(new String[0]),
+                variables.stream().mapToInt(Integer::intValue).toArray());
+    }
+
+    /**
+     * Returns a new {@link Link} replacing the placeholders with the provided values.
+     *
+     * @param values encoded values for each of the placeholders (same order as in {@link #from(Link, String...)})
+     * @return the expanded link
+     */
+    Link expand(@NonNull String... values) {
+        final StringBuilder href = new StringBuilder(length + 32 * variables.length);
+        for (int it = 0; it < variables.length; it++) {
+            href.append(literals[it]).append(values[variables[it]]);
+        }
+        href.append(literals[literals.length - 1]);
+        return new Link(href.toString(), rel);
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * ETags.java
+ *
+ * Created on 2026-10-18, 10:05
+ *
+ * Copyright 2018 Marc Nuri
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.marcnuri.isotope.api.http;
+
+import com.marcnuri.isotope.api.exception.IsotopeException;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+/**
+ * Entity tags and Cache-Control values for conditional GET requests.
+ *
+ * <p>Tags are a truncated SHA-256 digest of the provided parts, so they don't leak any information about the
+ * mailbox (folder names, UIDs...).
+ *
+ * <p>Created by Marc Nuri <marc@marcnuri.com> on 2026-10-18.
+ */
+public class ETags {
+
+    /**
+     * For resources that never change for a given ETag (attachments, message parts).
+     */
+    public static final String CACHE_CONTROL_IMMUTABLE = "private, max-age=31536000, immutable";
+    /**
+     * For resources that may change and must be revalidated (If-None-Match) before using a cached copy.
+     */
+    public static final String CACHE_CONTROL_REVALIDATE = "private, no-cache";
+
+    private static final String SHA_256 = "SHA-256";
+    private static final int TAG_BYTES = 16;
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private ETags() {}
+
+    /**
+     * Strong entity tag, the representation is byte-for-byte identical for equal parts.
+     */
+    public static String strong(Object... parts) {
+        return '"' + digest(parts) + '"';
+    }
+
+    /**
+     * Weak entity tag, the representation is semantically equivalent for equal parts.
+     */
+    public static String weak(Object... parts) {
+        return "W/" + strong(parts);
+    }
+
+    private static String digest(Object... parts) {
+        final MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance(SHA_256);
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IsotopeException("SHA-256 digest is not available", ex);
+        }
+        for (Object part : parts) {
+            final String value = part instanceof Object[] ?
+                    Arrays.deepToString((Object[]) part) : String.valueOf(part);
+            digest.update(value.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+        }
+        final byte[] hash = digest.digest();
+        final char[] ret = new char[TAG_BYTES * 2];
+        for (int it = 0; it < TAG_BYTES; it++) {
+            ret[it * 2] = HEX[(hash[it] >> 4) & 0xF];
+            ret[it * 2 + 1] = HEX[hash[it] & 0xF];
+        }
+        return new String(ret);
+    }
+}
@@ -30,4 +30,5 @@ public class HttpHeaders {
     public static final String ISOTOPE_EXCEPTION = "X-Isotope-Exception";
     public static final String ISOTOPE_CRDENTIALS = "X-Isotope-Credentials";
     public static final String ISOTOPE_SALT = "X-Isotope-Salt";
+    public static final String ISOTOPE_SESSION = "X-Isotope-Session";
 }
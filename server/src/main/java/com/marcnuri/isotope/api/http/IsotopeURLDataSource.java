@@ -34,6 +34,7 @@ import java.net.URLConnection;
 
 import static com.marcnuri.isotope.api.http.HttpHeaders.ISOTOPE_CRDENTIALS;
 import static com.marcnuri.isotope.api.http.HttpHeaders.ISOTOPE_SALT;
+import static com.marcnuri.isotope.api.http.HttpHeaders.ISOTOPE_SESSION;
 
 /**
  * Based on {@link javax.activation.URLDataSource}, tweaked to work with {@link Credentials}.
@@ -50,6 +51,7 @@ public class IsotopeURLDataSource implements DataSource, EncodingAware {
     private final URL url;
     private final String credentials;
     private final String salt;
+    private final String session;
     private final String contentType;
 
     /**
@@ -66,6 +68,7 @@ public class IsotopeURLDataSource implements DataSource, EncodingAware {
         this.url = url;
         this.credentials = request.getHeader(ISOTOPE_CRDENTIALS);
         this.salt = request.getHeader(ISOTOPE_SALT);
+        this.session = request.getHeader(ISOTOPE_SESSION);
         this.contentType = contentType;
     }
 
@@ -78,6 +81,9 @@ public class IsotopeURLDataSource implements DataSource, EncodingAware {
         final URLConnection urlConnection = url.openConnection();
         urlConnection.setRequestProperty (ISOTOPE_CRDENTIALS, credentials);
         urlConnection.setRequestProperty (ISOTOPE_SALT, salt);
+        if (session != null) {
+            urlConnection.setRequestProperty (ISOTOPE_SESSION, session);
+        }
         urlConnection.setUseCaches(false);
         urlConnection.setDoInput(true);
         urlConnection.setDoOutput(true);
@@ -0,0 +1,282 @@
+/*
+ * BodyStructureReader.java
+ *
+ * Created on 2026-10-17, 18:05
+ *
+ * Copyright 2018 Marc Nuri
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.marcnuri.isotope.api.imap;
+
+import com.marcnuri.isotope.api.message.Attachment;
+import com.marcnuri.isotope.api.message.Message;
+import com.marcnuri.isotope.api.message.MessageUtils;
+import com.marcnuri.isotope.api.message.MimePartIndex;
+import com.sun.mail.imap.IMAPFolder;
+import com.sun.mail.imap.protocol.BODY;
+import com.sun.mail.imap.protocol.BODYSTRUCTURE;
+import org.apache.commons.io.IOUtils;
+import org.springframework.lang.NonNull;
+import org.springframework.lang.Nullable;
+import org.springframework.web.util.HtmlUtils;
+
+import javax.mail.MessagingException;
+import javax.mail.Part;
+import javax.mail.internet.ContentType;
+import javax.mail.internet.MimeUtility;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.IllegalCharsetNameException;
+import java.nio.charset.StandardCharsets;
+import java.nio.charset.UnsupportedCharsetException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Reads the content (body) and the {@link Attachment} list of a message using its BODYSTRUCTURE.
+ *
+ * <p>Only the structure of the message is retrieved initially, the selected text/html or text/plain part and the
+ * small embedded images referenced by the content are then fetched individually (BODY.PEEK[part]). Attachments are
+ * listed from the structure metadata, so their content is never downloaded.
+ *
+ * <p>Body and attachment selection follows the same rules as {@link MessageUtils#extractContent(MimePartIndex)} and
+ * the {@link ImapService} attachment extraction. Parts with attachment disposition are never used as content.
+ *
+ * <p>Created by Marc Nuri <marc@marcnuri.com> on 2026-10-17.
+ */
+final class BodyStructureReader {
+
+    private static final String TYPE_TEXT = "text";
+    private static final String TYPE_IMAGE = "image";
+    private static final String TYPE_MESSAGE = "message";
+    private static final String SUBTYPE_HTML = "html";
+    private static final String SUBTYPE_PLAIN = "plain";
+    private static final String SECTION_TEXT = "TEXT";
+    private static final String DEFAULT_CHARSET = "us-ascii";
+
+    private BodyStructureReader() {
+    }
+
+    /**
+     * Reads the content and attachments of the provided message into the provided {@link Message}.
+     *
+     * @param folder open folder containing the message
+     * @param messageNumber sequence number of the message
+     * @param message where content and attachments will be set
+     * @param embeddedImageSizeThreshold max size of the images that will be embedded in the content, negative to
+     *                                   list every image as an attachment
+     * @return the list of attachments or null if the message structure is not supported (content was not read)
+     * @throws MessagingException for any IMAP failure
+     * @throws IOException for IO problems when reading the content
+     */
+    @Nullable
+    static List<Attachment> read(
+            @NonNull IMAPFolder folder, int messageNumber, @NonNull Message message, long embeddedImageSizeThreshold)
+            throws MessagingException, IOException {
+
+        final BODYSTRUCTURE root = (BODYSTRUCTURE) folder.doCommand(p -> p.fetchBodyStructure(messageNumber));
+        if (root == null) {
+            return null;
+        }
+        if (!root.isMulti()) {
+            if (!isType(root, TYPE_TEXT)) {
+                return null;
+            }
+            final String text = readText(folder, messageNumber, SECTION_TEXT, root);
+            message.setContent(isType(root, TYPE_TEXT, SUBTYPE_HTML) ? text : text
+                    .replace("\r\n", "<br />")
+                    .replaceAll("[\\r\\n]", "<br />"));
+            return new ArrayList<>();
+        }
+        final TextPart textPart = findTextPart(root, null);
+        if (textPart == null) {
+            message.setContent("");
+        } else if (isType(textPart.part, TYPE_TEXT, SUBTYPE_HTML)) {
+            message.setContent(readText(folder, messageNumber, textPart.partPath, textPart.part));
+        } else {
+            message.setContent(String.format("<pre>%s</pre>",
+                    HtmlUtils.htmlEscape(readText(folder, messageNumber, textPart.partPath, textPart.part))));
+        }
+        final List<Attachment> ret = new ArrayList<>();
+        extractAttachments(folder, messageNumber, message, root, null, embeddedImageSizeThreshold, ret);
+        return ret;
+    }
+
+    /**
+     * Last text/html part will be selected, first text/plain part is used as a fallback.
+     */
+    @Nullable
+    private static TextPart findTextPart(@NonNull BODYSTRUCTURE multipart, @Nullable String parentPartPath) {
+        TextPart ret = null;
+        for (int it = 0; it < multipart.bodies.length; it++) {
+            final BODYSTRUCTURE part = multipart.bodies[it];
+            final String partPath = partPath(parentPartPath, it);
+            if (part.isMulti()) {
+                final TextPart nested = findTextPart(part, partPath);
+                ret = nested != null ? nested : ret;
+            } else if (!isAttachment(part) && isType(part, TYPE_TEXT, SUBTYPE_HTML)) {
+                ret = new TextPart(partPath, part);
+            } else if (!isAttachment(part) && ret == null && isType(part, TYPE_TEXT, SUBTYPE_PLAIN)) {
+                ret = new TextPart(partPath, part);
+            }
+        }
+        return ret;
+    }
+
+    private static void extractAttachments(
+            IMAPFolder folder, int messageNumber, Message message, BODYSTRUCTURE multipart,
+            @Nullable String parentPartPath, long embeddedImageSizeThreshold, List<Attachment> attachments)
+            throws MessagingException, IOException {
+
+        for (int it = 0; it < multipart.bodies.length; it++) {
+            final BODYSTRUCTURE part = multipart.bodies[it];
+            final String partPath = partPath(parentPartPath, it);
+            // Multipart message with embedded parts
+            if (part.isMulti()) {
+                extractAttachments(
+                        folder, messageNumber, message, part, partPath, embeddedImageSizeThreshold, attachments);
+            }
+            // Image attachments
+            else if (isType(part, TYPE_IMAGE) && part.id != null) {
+                // If image is "not too big" embed as base64 data uri - successive IMAP connections will be more expensive
+                if (embeddedImageSizeThreshold >= 0 && part.size <= embeddedImageSizeThreshold) {
+                    message.setContent(replaceEmbeddedImage(folder, messageNumber, partPath, part,
+                            message.getContent()));
+                } else {
+                    attachments.add(new Attachment(
+                            part.id, fileName(part), contentType(part), part.size, partPath));
+                }
+            }
+            // Embedded messages
+            else if (isType(part, TYPE_MESSAGE)) {
+                if (part.envelope != null) {
+                    attachments.add(new Attachment(null, decodeText(part.envelope.subject),
+                            contentType(part), part.size, partPath));
+                }
+            }
+            // Regular files
+            else if (isAttachment(part)) {
+                attachments.add(new Attachment(null, fileName(part), contentType(part), part.size, partPath));
+            }
+        }
+    }
+
+    /**
+     * Replaces content image cid urls by a data url with the base64 content of the image. Base64 encoded images
+     * (most common case) are used as received from the server.
+     */
+    @Nullable
+    private static String replaceEmbeddedImage(
+            IMAPFolder folder, int messageNumber, String partPath, BODYSTRUCTURE image, @Nullable String content)
+            throws MessagingException, IOException {
+
+        final String cid = image.id.replaceAll("[<>]", "");
+        if (content == null || !content.contains(cid)) {
+            return content;
+        }
+        final byte[] data = fetch(folder, messageNumber, partPath);
+        final String base64;
+        if ("base64".equals(encoding(image))) {
+            base64 = new String(data, StandardCharsets.US_ASCII).replaceAll("\\s", "");
+        } else {
+            base64 = Base64.getEncoder().encodeToString(IOUtils.toByteArray(decode(data, encoding(image))));
+        }
+        return content.replace("cid:" + cid, String.format("data:%s/%s;base64,%s",
+                image.type.toLowerCase(Locale.ROOT), image.subtype.toLowerCase(Locale.ROOT), base64));
+    }
+
+    private static String readText(IMAPFolder folder, int messageNumber, String section, BODYSTRUCTURE part)
+            throws MessagingException, IOException {
+
+        return new String(IOUtils.toByteArray(decode(fetch(folder, messageNumber, section), encoding(part))),
+                charset(part));
+    }
+
+    /**
+     * Returns the charset of the provided text part, ISO-8859-1 is used for unknown or unsupported charsets.
+     */
+    static Charset charset(BODYSTRUCTURE part) {
+        final String charset = part.cParams == null || part.cParams.get("charset") == null ?
+                DEFAULT_CHARSET : part.cParams.get("charset");
+        try {
+            return Charset.forName(MimeUtility.javaCharset(charset));
+        } catch (UnsupportedCharsetException | IllegalCharsetNameException ex) {
+            return StandardCharsets.ISO_8859_1;
+        }
+    }
+
+    private static byte[] fetch(IMAPFolder folder, int messageNumber, String section) throws MessagingException {
+        final BODY body = (BODY) folder.doCommand(p -> p.peekBody(messageNumber, section));
+        return body == null || body.getByteArray() == null ? new byte[0] : body.getByteArray().getNewBytes();
+    }
+
+    private static InputStream decode(byte[] data, @Nullable String encoding) throws MessagingException {
+        final InputStream is = new ByteArrayInputStream(data);
+        return encoding == null ? is : MimeUtility.decode(is, encoding);
+    }
+
+    @Nullable
+    static String encoding(BODYSTRUCTURE part) {
+        return part.encoding == null ? null : part.encoding.trim().toLowerCase(Locale.ROOT);
+    }
+
+    static boolean isAttachment(BODYSTRUCTURE part) {
+        return part.disposition != null && part.disposition.equalsIgnoreCase(Part.ATTACHMENT);
+    }
+
+    static boolean isType(BODYSTRUCTURE part, String type) {
+        return type.equalsIgnoreCase(part.type);
+    }
+
+    static boolean isType(BODYSTRUCTURE part, String type, String subtype) {
+        return isType(part, type) && subtype.equalsIgnoreCase(part.subtype);
+    }
+
+    static String partPath(@Nullable String parentPartPath, int index) {
+        return parentPartPath == null ? String.valueOf(index + 1) : parentPartPath + "." + (index + 1);
+    }
+
+    private static String contentType(BODYSTRUCTURE part) {
+        return new ContentType(part.type, part.subtype, part.cParams).toString();
+    }
+
+    @Nullable
+    private static String fileName(BODYSTRUCTURE part) throws IOException {
+        String ret = part.dParams == null ? null : part.dParams.get("filename");
+        if (ret == null && part.cParams != null) {
+            ret = part.cParams.get("name");
+        }
+        return decodeText(ret);
+    }
+
+    @Nullable
+    private static String decodeText(@Nullable String text) throws IOException {
+        return text == null ? null : MimeUtility.decodeText(text);
+    }
+
+    private static final class TextPart {
+        private final String partPath;
+        private final BODYSTRUCTURE part;
+
+        private TextPart(String partPath, BODYSTRUCTURE part) {
+            this.partPath = partPath;
+            this.part = part;
+        }
+    }
+}
@@ -0,0 +1,305 @@
+/*
+ * FolderChangesFluxSinkConsumer.java
+ *
+ * Created on 2026-10-17, 12:35
+ *
+ * Copyright 2018 Marc Nuri
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.marcnuri.isotope.api.imap;
+
+import com.marcnuri.isotope.api.credentials.Credentials;
+import com.marcnuri.isotope.api.exception.IsotopeException;
+import com.marcnuri.isotope.api.folder.FolderChanges;
+import com.marcnuri.isotope.api.message.Message;
+import com.sun.mail.imap.IMAPFolder;
+import com.sun.mail.imap.IMAPMessage;
+import com.sun.mail.imap.IMAPStore;
+import com.sun.mail.imap.MessageVanishedEvent;
+import com.sun.mail.imap.ResyncData;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.codec.ServerSentEvent;
+import reactor.core.Disposable;
+import reactor.core.publisher.FluxSink;
+import reactor.core.scheduler.Scheduler;
+
+import javax.mail.FetchProfile;
+import javax.mail.MessagingException;
+import javax.mail.UIDFolder;
+import javax.mail.URLName;
+import javax.mail.event.MessageChangedEvent;
+import javax.mail.event.MessageCountEvent;
+import javax.mail.event.MessageCountListener;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+
+import static com.marcnuri.isotope.api.imap.ImapService.IMAP_CAPABILITY_CONDSTORE;
+import static com.marcnuri.isotope.api.imap.ImapService.IMAP_CAPABILITY_IDLE;
+import static com.marcnuri.isotope.api.imap.ImapService.IMAP_CAPABILITY_QRESYNC;
+import static javax.mail.Folder.READ_ONLY;
+
+/**
+ * {@link FluxSink} {@link Consumer} implementation that keeps the provided folder open and publishes
+ * {@link ServerSentEvent}s with the {@link FolderChanges} (new, expunged and flag changed messages) notified by the
+ * server.
+ *
+ * <p>If the server supports IDLE the folder is kept in IDLE state, IDLE is restarted periodically to send
+ * heartbeats (detect client disconnection) and keep the connection alive. Otherwise the folder is polled using NOOP
+ * commands with an interval that backs off while there are no changes.
+ *
+ * <p>Changes are notified by javax.mail listeners (in the folder event dispatching thread), only the UIDs and flags
+ * of the affected messages (and envelopes for new messages) are sent to the client.
+ *
+ * <p>Created by Marc Nuri <marc@marcnuri.com> on 2026-10-17.
+ */
+public class FolderChangesFluxSinkConsumer implements Consumer<FluxSink<ServerSentEvent<FolderChanges>>> {
+
+    private static final Logger log = LoggerFactory.getLogger(FolderChangesFluxSinkConsumer.class);
+
+    private static final String HEARTBEAT_COMMENT = "heartbeat";
+    static final long HEARTBEAT_INTERVAL_MILLIS = 30000L;
+    static final long MIN_POLL_INTERVAL_MILLIS = 2000L;
+    static final long MAX_POLL_INTERVAL_MILLIS = HEARTBEAT_INTERVAL_MILLIS;
+
+    private final Credentials credentials;
+    private final URLName folderId;
+    private final ImapService imapService;
+    private final Scheduler idleScheduler;
+    private final Object pollLock;
+
+    private volatile IMAPFolder folder;
+    private volatile boolean cancelled;
+    private volatile long lastEventTime;
+    private volatile long lastChangeTime;
+
+    FolderChangesFluxSinkConsumer(
+            Credentials credentials, URLName folderId, ImapService imapService, Scheduler idleScheduler) {
+
+        this.credentials = credentials;
+        this.folderId = folderId;
+        this.imapService = imapService;
+        this.idleScheduler = idleScheduler;
+        this.pollLock = new Object();
+    }
+
+    @Override
+    public void accept(FluxSink<ServerSentEvent<FolderChanges>> sink) {
+        sink.onDispose(this::cancel);
+        try {
+            final IMAPStore store = imapService.getImapStreamStore(credentials);
+            final IMAPFolder imapFolder = imapService.getFolder(credentials, folderId);
+            open(store, imapFolder);
+            imapFolder.addMessageCountListener(new MessageCountListener() {
+                @Override
+                public void messagesAdded(MessageCountEvent e) {
+                    publishAdded(sink, imapFolder, e);
+                }
+
+                @Override
+                public void messagesRemoved(MessageCountEvent e) {
+                    publishRemoved(sink, imapFolder, e);
+                }
+            });
+            imapFolder.addMessageChangedListener(e -> publishChanged(sink, imapFolder, e));
+            folder = imapFolder;
+            publish(sink, changes(imapFolder));
+            if (store.hasCapability(IMAP_CAPABILITY_IDLE)) {
+                idle(sink, imapFolder);
+            } else {
+                poll(sink, imapFolder);
+            }
+        } catch (MessagingException | IsotopeException | IllegalStateException ex) {
+            if (!cancelled) {
+                log.error("Error watching changes for folder: " + folderId.toString(), ex);
+                sink.error(ex);
+            }
+        } finally {
+            folder = null;
+            // This bean will be effectively a Prototype, must manually disconnect
+            imapService.destroy();
+            sink.complete();
+        }
+    }
+
+    /**
+     * Opens the folder enabling QRESYNC if available so that expunged messages are notified by UID (VANISHED).
+     *
+     * <p>If QRESYNC is not available, message UIDs are prefetched as EXPUNGE responses only include the sequence
+     * number of the removed message.
+     */
+    private void open(IMAPStore store, IMAPFolder imapFolder) throws MessagingException {
+        if (store.hasCapability(IMAP_CAPABILITY_QRESYNC) && store.hasCapability(IMAP_CAPABILITY_CONDSTORE)) {
+            imapService.open(imapFolder, READ_ONLY,
+                    new ResyncData(imapFolder.getUIDValidity(), imapFolder.getHighestModSeq()));
+        } else {
+            imapService.open(imapFolder, READ_ONLY);
+            final FetchProfile fp = new FetchProfile();
+            fp.add(UIDFolder.FetchProfileItem.UID);
+            imapService.fetch(imapFolder, imapFolder.getMessages(), fp);
+        }
+    }
+
+    private void idle(FluxSink<ServerSentEvent<FolderChanges>> sink, IMAPFolder imapFolder)
+            throws MessagingException {
+
+        // Any command issued by a different thread ends the IDLE command (IMAPFolder#isOpen does so)
+        final Disposable idleInterrupter = idleScheduler.schedulePeriodically(imapFolder::isOpen,
+                HEARTBEAT_INTERVAL_MILLIS, HEARTBEAT_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+        try {
+            while (!cancelled && imapFolder.isOpen()) {
+                imapFolder.idle(true);
+                heartbeat(sink);
+            }
+        } finally {
+            idleInterrupter.dispose();
+        }
+    }
+
+    private void poll(FluxSink<ServerSentEvent<FolderChanges>> sink, IMAPFolder imapFolder)
+            throws MessagingException {
+
+        long interval = MIN_POLL_INTERVAL_MILLIS;
+        long lastPollTime = System.currentTimeMillis();
+        while (!cancelled) {
+            synchronized (pollLock) {
+                try {
+                    pollLock.wait(interval);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+            if (cancelled || !imapFolder.isOpen()) {
+                return;
+            }
+            // Issues a NOOP, server will respond with any pending untagged EXISTS, EXPUNGE or FETCH
+            imapFolder.getMessageCount();
+            interval = lastChangeTime >= lastPollTime ? MIN_POLL_INTERVAL_MILLIS :
+                    Math.min(interval * 2, MAX_POLL_INTERVAL_MILLIS);
+            lastPollTime = System.currentTimeMillis();
+            heartbeat(sink);
+        }
+    }
+
+    private void publishAdded(
+            FluxSink<ServerSentEvent<FolderChanges>> sink, IMAPFolder imapFolder, MessageCountEvent event) {
+
+        try {
+            imapService.envelopeFetch(imapFolder, event.getMessages());
+            final FolderChanges changes = changes(imapFolder);
+            changes.setMessages(Stream.of(event.getMessages())
+                    .map(m -> Message.from(imapFolder, (IMAPMessage) m))
+                    .sorted(Comparator.comparingLong(Message::getUid).reversed())
+                    .collect(Collectors.toList()));
+            publish(sink, changes);
+        } catch (MessagingException | IsotopeException | IllegalStateException ex) {
+            log.debug("Error publishing new messages for folder {} ({})", folderId, ex.getMessage());
+        }
+    }
+
+    private void publishRemoved(
+            FluxSink<ServerSentEvent<FolderChanges>> sink, IMAPFolder imapFolder, MessageCountEvent event) {
+
+        try {
+            final List<Long> expunged;
+            if (event instanceof MessageVanishedEvent) {
+                expunged = LongStream.of(((MessageVanishedEvent) event).getUIDs()).boxed()
+                        .collect(Collectors.toList());
+            } else {
+                expunged = new ArrayList<>(event.getMessages().length);
+                for (javax.mail.Message message : event.getMessages()) {
+                    // UIDs were prefetched when opening the folder (or when the message was added)
+                    expunged.add(imapFolder.getUID(message));
+                }
+            }
+            final FolderChanges changes = changes(imapFolder);
+            changes.setExpunged(expunged);
+            publish(sink, changes);
+        } catch (MessagingException | IllegalStateException ex) {
+            log.debug("Error publishing expunged messages for folder {} ({})", folderId, ex.getMessage());
+        }
+    }
+
+    private void publishChanged(
+            FluxSink<ServerSentEvent<FolderChanges>> sink, IMAPFolder imapFolder, MessageChangedEvent event) {
+
+        if (event.getMessageChangeType() != MessageChangedEvent.FLAGS_CHANGED) {
+            return;
+        }
+        try {
+            final FolderChanges changes = changes(imapFolder);
+            changes.setChanged(Collections.singletonList(
+                    Message.flagsFrom(imapFolder, (IMAPMessage) event.getMessage())));
+            publish(sink, changes);
+        } catch (MessagingException | IsotopeException | IllegalStateException ex) {
+            log.debug("Error publishing changed message for folder {} ({})", folderId, ex.getMessage());
+        }
+    }
+
+    private static FolderChanges changes(IMAPFolder imapFolder) throws MessagingException {
+        final FolderChanges ret = new FolderChanges();
+        ret.setUidValidity(imapFolder.getUIDValidity());
+        final long highestModseq = imapFolder.getHighestModSeq();
+        ret.setHighestModseq(highestModseq == -1L ? null : highestModseq);
+        return ret;
+    }
+
+    private void publish(FluxSink<ServerSentEvent<FolderChanges>> sink, FolderChanges changes) {
+        lastChangeTime = System.currentTimeMillis();
+        lastEventTime = lastChangeTime;
+        sink.next(ServerSentEvent.builder(changes).build());
+    }
+
+    /**
+     * Sends an empty event (comment) if nothing was sent recently, writing to the response is the only way to
+     * detect that the client has disconnected.
+     */
+    private void heartbeat(FluxSink<ServerSentEvent<FolderChanges>> sink) {
+        final long now = System.currentTimeMillis();
+        if (now - lastEventTime >= HEARTBEAT_INTERVAL_MILLIS) {
+            lastEventTime = now;
+            sink.next(ServerSentEvent.<FolderChanges>builder().comment(HEARTBEAT_COMMENT).build());
+        }
+    }
+
+    /**
+     * Stops watching the folder, an ongoing IDLE command is ended by issuing a command from the idle scheduler (the
+     * disposing thread must not block on the IMAP connection). Folder will be closed and IMAP connection released by
+     * the thread watching the folder.
+     */
+    private void cancel() {
+        cancelled = true;
+        synchronized (pollLock) {
+            pollLock.notifyAll();
+        }
+        final IMAPFolder imapFolder = folder;
+        if (imapFolder != null) {
+            try {
+                idleScheduler.schedule(imapFolder::isOpen);
+            } catch (RejectedExecutionException ex) {
+                log.debug("IDLE for folder {} not interrupted, scheduler is disposed", folderId);
+            }
+        }
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * ImapPartInputStream.java
+ *
+ * Created on 2026-10-17, 16:40
+ *
+ * Copyright 2018 Marc Nuri
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.marcnuri.isotope.api.imap;
+
+import com.sun.mail.iap.ByteArray;
+import com.sun.mail.imap.IMAPFolder;
+import com.sun.mail.imap.protocol.BODY;
+
+import javax.mail.MessagingException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * {@link InputStream} with the raw (transfer encoded) content of a MIME part of a message.
+ *
+ * <p>Content is retrieved on demand in chunks of {@link #CHUNK_SIZE} bytes using partial
+ * <code>BODY.PEEK[section]&lt;offset.size&gt;</code> fetches, so the stream can start at any offset and only one
+ * chunk is kept in memory regardless of the size of the part. \Seen flag is not modified.
+ *
+ * <p>Created by Marc Nuri <marc@marcnuri.com> on 2026-10-17.
+ */
+class ImapPartInputStream extends InputStream {
+
+    static final int CHUNK_SIZE = 65536;
+
+    private final IMAPFolder folder;
+    private final int messageNumber;
+    private final String section;
+    private final long end;
+    private long position;
+    private byte[] buffer;
+    private int bufferPosition;
+    private int bufferCount;
+    private boolean eof;
+
+    /**
+     * @param folder open folder containing the message
+     * @param messageNumber sequence number of the message
+     * @param section part path (e.g. 1.2) of the part
+     * @param start offset of the first byte to read
+     * @param end offset (exclusive) where the stream should end or -1 to read until the end of the part
+     */
+    ImapPartInputStream(IMAPFolder folder, int messageNumber, String section, long start, long end) {
+        this.folder = folder;
+        this.messageNumber = messageNumber;
+        this.section = section;
+        this.position = start;
+        this.end = end;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!fill()) {
+            return -1;
+        }
+        return buffer[bufferPosition++] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (!fill()) {
+            return -1;
+        }
+        final int ret = Math.min(len, bufferCount - bufferPosition);
+        System.arraycopy(buffer, bufferPosition, b, off, ret);
+        bufferPosition += ret;
+        return ret;
+    }
+
+    @Override
+    public int available() {
+        return bufferCount - bufferPosition;
+    }
+
+    private boolean fill() throws IOException {
+        if (bufferPosition < bufferCount) {
+            return true;
+        }
+        if (eof || (end >= 0 && position >= end)) {
+            return false;
+        }
+        final int size = end >= 0 ? (int) Math.min(CHUNK_SIZE, end - position) : CHUNK_SIZE;
+        final ByteArray chunk = fetch(position, size);
+        if (chunk == null || chunk.getCount() == 0) {
+            eof = true;
+            return false;
+        }
+        buffer = chunk.getBytes();
+        bufferPosition = chunk.getStart();
+        bufferCount = chunk.getStart() + chunk.getCount();
+        position += chunk.getCount();
+        // Server returns less data than requested once the end of the part is reached
+        eof = chunk.getCount() < size;
+        return true;
+    }
+
+    private ByteArray fetch(long offset, int size) throws IOException {
+        try {
+            final BODY body = (BODY) folder.doCommand(p -> p.peekBody(messageNumber, section, (int) offset, size));
+            return body == null ? null : body.getByteArray();
+        } catch (MessagingException ex) {
+            throw new IOException("Error fetching message part " + section, ex);
+        }
+    }
+}
@@ -20,6 +20,7 @@
  */
 package com.marcnuri.isotope.api.imap;
 
+import com.marcnuri.isotope.api.configuration.EmbeddedImageMode;
 import com.marcnuri.isotope.api.configuration.IsotopeApiConfiguration;
 import com.marcnuri.isotope.api.credentials.Credentials;
 import com.marcnuri.isotope.api.credentials.CredentialsService;
@@ -28,55 +29,84 @@ import com.marcnuri.isotope.api.exception.InvalidFieldException;
 import com.marcnuri.isotope.api.exception.IsotopeException;
 import com.marcnuri.isotope.api.exception.NotFoundException;
 import com.marcnuri.isotope.api.folder.Folder;
+import com.marcnuri.isotope.api.folder.FolderChanges;
 import com.marcnuri.isotope.api.folder.FolderUtils;
+import com.marcnuri.isotope.api.http.ETags;
 import com.marcnuri.isotope.api.message.Attachment;
+import com.marcnuri.isotope.api.message.EnvelopeCache;
 import com.marcnuri.isotope.api.message.Message;
+import com.marcnuri.isotope.api.message.MessageBodyCache;
+import com.marcnuri.isotope.api.message.MessagePrefetchCache;
+import com.marcnuri.isotope.api.message.MessageUtils;
 import com.marcnuri.isotope.api.message.MessageWithFolder;
+import com.marcnuri.isotope.api.message.MimePartIndex;
+import com.marcnuri.isotope.api.metrics.MailMetrics;
+import com.marcnuri.isotope.api.metrics.MailOperation;
+import com.sun.mail.iap.Response;
+import com.sun.mail.imap.CopyUID;
 import com.sun.mail.imap.IMAPFolder;
 import com.sun.mail.imap.IMAPMessage;
 import com.sun.mail.imap.IMAPStore;
-import com.sun.mail.util.MailSSLSocketFactory;
+import com.sun.mail.imap.MessageVanishedEvent;
+import com.sun.mail.imap.ResyncData;
+import com.sun.mail.imap.Utility;
+import com.sun.mail.imap.protocol.BODYSTRUCTURE;
+import com.sun.mail.imap.protocol.FetchResponse;
+import com.sun.mail.imap.protocol.MessageSet;
+import com.sun.mail.imap.protocol.Status;
+import com.sun.mail.imap.protocol.UID;
+import com.sun.mail.imap.protocol.UIDSet;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Primary;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.lang.NonNull;
 import org.springframework.lang.Nullable;
 import org.springframework.stereotype.Service;
 import org.springframework.web.context.annotation.RequestScope;
+import org.springframework.web.context.request.WebRequest;
 import reactor.core.publisher.Flux;
+import reactor.core.scheduler.Scheduler;
 
 import javax.annotation.PreDestroy;
-import javax.mail.BodyPart;
+import javax.mail.FetchProfile;
 import javax.mail.Flags;
+import javax.mail.event.MailEvent;
 import javax.mail.MessagingException;
 import javax.mail.Multipart;
 import javax.mail.Part;
-import javax.mail.Session;
 import javax.mail.UIDFolder;
 import javax.mail.URLName;
-import javax.mail.internet.MimeBodyPart;
+import javax.mail.event.MessageChangedEvent;
 import javax.mail.internet.MimeMessage;
 import javax.mail.internet.MimeUtility;
+import javax.mail.search.FlagTerm;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
-import java.util.Properties;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
 import java.util.stream.Collectors;
+import java.util.stream.LongStream;
 import java.util.stream.Stream;
 
-import static com.marcnuri.isotope.api.configuration.IsotopeApiConfiguration.DEFAULT_CONNECTION_TIMEOUT;
+import static com.marcnuri.isotope.api.credentials.CredentialsUtils.toAccountKey;
 import static com.marcnuri.isotope.api.exception.AuthenticationException.Type.IMAP;
 import static com.marcnuri.isotope.api.folder.FolderResource.addLinks;
 import static com.marcnuri.isotope.api.folder.FolderUtils.addSystemFolders;
 import static com.marcnuri.isotope.api.folder.FolderUtils.getFileWithRef;
-import static com.marcnuri.isotope.api.message.MessageUtils.envelopeFetch;
 import static com.marcnuri.isotope.api.message.MessageUtils.extractBodypart;
 import static com.marcnuri.isotope.api.message.MessageUtils.extractContent;
 import static com.marcnuri.isotope.api.message.MessageUtils.replaceEmbeddedImage;
@@ -94,27 +124,55 @@ public class ImapService {
 
     private static final Logger log = LoggerFactory.getLogger(ImapService.class);
 
-    private static final String IMAP_PROTOCOL = "imap";
-    private static final String IMAPS_PROTOCOL = "imaps";
     static final String IMAP_CAPABILITY_CONDSTORE = "CONDSTORE";
+    static final String IMAP_CAPABILITY_QRESYNC = "QRESYNC";
+    static final String IMAP_CAPABILITY_IDLE = "IDLE";
+    static final String IMAP_CAPABILITY_MOVE = "MOVE";
+    static final String IMAP_CAPABILITY_UIDPLUS = "UIDPLUS";
+    private static final String STATUS_UIDVALIDITY = "UIDVALIDITY";
+    private static final String STATUS_HIGHESTMODSEQ = "HIGHESTMODSEQ";
     public static final String MULTIPART_MIME_TYPE = "multipart/";
-    static final int DEFAULT_INITIAL_MESSAGES_BATCH_SIZE = 20;
-    static final int DEFAULT_MAX_MESSAGES_BATCH_SIZE = 640;
+    public static final int MESSAGES_BATCH_PREFETCH = 2;
+    private static final String FETCH_PROFILE_UID = "uid";
+    private static final String FETCH_PROFILE_ENVELOPE = "envelope";
+    private static final String FETCH_PROFILE_BODY = "body";
+    private static final String FETCH_PROFILE_BODYSTRUCTURE = "bodystructure";
+    private static final String FETCH_PROFILE_SNIPPET = "snippet";
 
     private final IsotopeApiConfiguration isotopeApiConfiguration;
-    private final MailSSLSocketFactory mailSSLSocketFactory;
+    private final ImapStorePool imapStorePool;
+    private final EnvelopeCache envelopeCache;
+    private final MessageBodyCache messageBodyCache;
+    private final MessagePrefetchCache messagePrefetchCache;
     private final CredentialsService credentialsService;
+    private final MailMetrics mailMetrics;
+    private final List<IMAPFolder> folders;
+    private final Set<IMAPFolder> openedFolders;
+    private final String[] envelopeHeaders;
+    private final String endpoint;
 
     private IMAPStore imapStore;
+    private String accountKey;
+    private String serverHost;
 
     @Autowired
     public ImapService(
-            IsotopeApiConfiguration isotopeApiConfiguration, MailSSLSocketFactory mailSSLSocketFactory,
-            CredentialsService credentialsService) {
+            IsotopeApiConfiguration isotopeApiConfiguration, ImapStorePool imapStorePool,
+            EnvelopeCache envelopeCache, MessageBodyCache messageBodyCache, MessagePrefetchCache messagePrefetchCache,
+            CredentialsService credentialsService, MailMetrics mailMetrics) {
 
         this.isotopeApiConfiguration = isotopeApiConfiguration;
-        this.mailSSLSocketFactory = mailSSLSocketFactory;
+        this.imapStorePool = imapStorePool;
+        this.envelopeCache = envelopeCache;
+        this.messageBodyCache = messageBodyCache;
+        this.messagePrefetchCache = messagePrefetchCache;
         this.credentialsService = credentialsService;
+        this.mailMetrics = mailMetrics;
+        this.folders = new ArrayList<>();
+        this.openedFolders = Collections.newSetFromMap(new IdentityHashMap<>());
+        this.envelopeHeaders = envelopeHeaders(isotopeApiConfiguration);
+        // Request scoped or created by the request thread (SSE prototypes)
+        this.endpoint = MailMetrics.currentEndpoint();
     }
 
     /**
@@ -147,9 +205,9 @@ public class ImapService {
             if (folders.stream().anyMatch(
                     f -> f.getName().equalsIgnoreCase("INBOX") && f.getNewMessageCount() > 0)) {
                 final IMAPFolder inbox = (IMAPFolder)rootFolder.getFolder("INBOX");
-                inbox.open(READ_WRITE);
+                open(inbox, READ_WRITE);
                 inbox.getNewMessageCount();
-                inbox.close();
+                close(inbox, true);
             }
             return folders;
         } catch (MessagingException ex) {
@@ -257,26 +315,158 @@ public class ImapService {
         }
     }
 
-    public Flux<ServerSentEvent<List<Message>>> getMessagesFlux(
-            Credentials credentials, URLName folderId, HttpServletResponse response) {
+    /**
+     * Returns a {@link Flux} of batches of {@link Message}s for the provided folder (newest first).
+     *
+     * <p>Batches are fetched from the IMAP server on demand, only when requested by the subscriber. Batch sizes adapt
+     * to the measured server response time and message size (see {@link MessageBatchSizer}).
+     *
+     * @param credentials for IMAP authentication
+     * @param folderId Id of the folder to list
+     * @return Flux with the message batches
+     */
+    public Flux<ServerSentEvent<List<Message>>> getMessagesFlux(Credentials credentials, URLName folderId) {
+        return new MessageBatchGenerator(credentials, folderId, this, new MessageBatchSizer(
+                isotopeApiConfiguration.getMessagesBatchTargetLatency(),
+                isotopeApiConfiguration.getMessagesBatchMaxBytes())).flux();
+    }
 
-        return Flux.create(new MessageFluxSinkConsumer(credentials, folderId, response,this));
+    /**
+     * Returns a {@link Flux} of {@link FolderChanges} for the provided folder that will remain open until
+     * cancelled.
+     *
+     * <p>Folder is kept in IDLE if the server supports it, otherwise it's polled (NOOP) with an adaptive interval.
+     * The stream uses its own IMAP connection (see {@link ImapStorePool#borrowStream(Credentials)}).
+     *
+     * @param credentials for IMAP authentication
+     * @param folderId Id of the folder to watch
+     * @param idleScheduler time capable scheduler where the periodic IDLE interruptions (heartbeats) are performed
+     * @return Flux with the changes in the folder since the subscription
+     */
+    public Flux<ServerSentEvent<FolderChanges>> getFolderChangesFlux(
+            Credentials credentials, URLName folderId, Scheduler idleScheduler) {
+
+        return Flux.create(new FolderChangesFluxSinkConsumer(credentials, folderId, this, idleScheduler));
+    }
+
+    /**
+     * Returns the changes in the folder since the provided modseq.
+     *
+     * <ul>
+     *     <li>QRESYNC: folder is opened with resync data, returned changed messages (with envelope) and
+     *     vanished UIDs are those reported by the server.</li>
+     *     <li>CONDSTORE: changed messages (with envelope) are retrieved using CHANGEDSINCE, expunged messages
+     *     can't be computed so the complete list of UIDs in the folder is returned.</li>
+     *     <li>Other servers (or no modseq provided): UID and flags for every message in the folder are returned so
+     *     that the client can compute the differences.</li>
+     * </ul>
+     *
+     * @param credentials for IMAP authentication
+     * @param folderId Id of the folder to resync
+     * @param uidValidity last UIDVALIDITY known by the client
+     * @param modseq last HIGHESTMODSEQ known by the client
+     * @return the changes in the folder since the provided modseq
+     * @throws IsotopeException (409 CONFLICT) if the provided UIDVALIDITY doesn't match the folder's
+     */
+    public FolderChanges getFolderChanges(
+            @NonNull Credentials credentials, @NonNull URLName folderId, long uidValidity, @Nullable Long modseq) {
+
+        try {
+            final IMAPStore store = getImapStore(credentials);
+            final IMAPFolder folder = getFolder(credentials, folderId);
+            final FolderChanges ret = new FolderChanges();
+            ret.setUidValidity(uidValidity);
+            final boolean condstore = modseq != null && store.hasCapability(IMAP_CAPABILITY_CONDSTORE);
+            if (condstore) {
+                // Single STATUS command, no need to SELECT the folder if nothing changed
+                final Status status = (Status) folder.doCommand(p -> p.status(folder.getFullName(),
+                        new String[]{STATUS_UIDVALIDITY, STATUS_HIGHESTMODSEQ}));
+                checkUidValidity(folderId, uidValidity, status.uidvalidity);
+                if (status.highestmodseq == modseq) {
+                    ret.setHighestModseq(modseq);
+                    return ret;
+                }
+            }
+            if (condstore && store.hasCapability(IMAP_CAPABILITY_QRESYNC)) {
+                final List<MailEvent> events = open(folder, READ_ONLY, new ResyncData(uidValidity, modseq));
+                final List<javax.mail.Message> changedMessages = new ArrayList<>();
+                final List<Long> expunged = new ArrayList<>();
+                for (MailEvent event : Optional.ofNullable(events).orElse(Collections.emptyList())) {
+                    if (event instanceof MessageVanishedEvent) {
+                        LongStream.of(((MessageVanishedEvent) event).getUIDs()).forEach(expunged::add);
+                    } else if (event instanceof MessageChangedEvent) {
+                        changedMessages.add(((MessageChangedEvent) event).getMessage());
+                    }
+                }
+                ret.setMessages(toMessages(folder, changedMessages.toArray(new javax.mail.Message[0])));
+                ret.setExpunged(expunged);
+            } else if (condstore) {
+                open(folder, READ_ONLY);
+                ret.setMessages(toMessages(folder, timedFetch(FETCH_PROFILE_UID, () ->
+                        folder.getMessagesByUIDChangedSince(1, UIDFolder.LASTUID, modseq))));
+                ret.setUids(getUids(folder, timedFetch(FETCH_PROFILE_UID, () ->
+                        folder.getMessagesByUID(1, UIDFolder.LASTUID))));
+            } else {
+                open(folder, READ_ONLY);
+                checkUidValidity(folderId, uidValidity, folder.getUIDValidity());
+                final javax.mail.Message[] messages = folder.getMessages();
+                final FetchProfile fp = new FetchProfile();
+                fp.add(UIDFolder.FetchProfileItem.UID);
+                fp.add(FetchProfile.Item.FLAGS);
+                fetch(folder, messages, fp);
+                ret.setChanged(Stream.of(messages)
+                        .map(m -> Message.flagsFrom(folder, (IMAPMessage) m))
+                        .collect(Collectors.toList()));
+                ret.setUids(getUids(folder, messages));
+            }
+            ret.setHighestModseq(folder.getHighestModSeq() == -1L ? null : folder.getHighestModSeq());
+            close(folder, false);
+            return ret;
+        } catch (MessagingException ex) {
+            log.error("Error loading changes for folder: " + folderId.toString(), ex);
+            throw new IsotopeException(ex.getMessage(), ex);
+        }
     }
 
     public MessageWithFolder getMessage(Credentials credentials, URLName folderId, Long uid) {
+        return getMessage(credentials, folderId, uid, null);
+    }
+
+    /**
+     * Returns the message with the provided uid, or null if the representation known by the client (If-None-Match)
+     * is still valid.
+     *
+     * <p>The ETag is computed from the message flags and the folder state available in the SELECT response, so the
+     * message content is only fetched if the client representation is stale.
+     *
+     * @param credentials to authenticate the user in the IMAP server
+     * @param folderId name of the folder containing the message
+     * @param uid of the message
+     * @param webRequest current request to check and set the ETag, or null to skip conditional processing
+     * @return the message or null if not modified
+     */
+    @Nullable
+    public MessageWithFolder getMessage(
+            Credentials credentials, URLName folderId, Long uid, @Nullable WebRequest webRequest) {
+
         try {
             final IMAPFolder folder = getFolder(credentials, folderId);
             if (!folder.isOpen()) {
-                folder.open(READ_ONLY);
+                open(folder, READ_ONLY);
             }
-            final IMAPMessage imapMessage = (IMAPMessage)folder.getMessageByUID(uid);
+            final IMAPMessage imapMessage = (IMAPMessage)timedFetch(FETCH_PROFILE_UID, () ->
+                    folder.getMessageByUID(uid));
             if (imapMessage == null) {
-                folder.close();
+                close(folder, true);
                 throw new NotFoundException("Message not found");
             }
+            if (webRequest != null && webRequest.checkNotModified(messageETag(folder, imapMessage))) {
+                close(folder, true);
+                return null;
+            }
             final MessageWithFolder ret = MessageWithFolder.from(folder, imapMessage);
             readContentIntoMessage(folderId, imapMessage, ret);
-            folder.close();
+            close(folder, true);
             return ret;
         } catch (MessagingException | IOException ex) {
             log.error("Error loading messages for folder: " + folderId.toString(), ex);
@@ -284,18 +474,28 @@ public class ImapService {
         }
     }
 
+    /**
+     * Returns the UIDVALIDITY of the folder with the provided folderId without opening it (single STATUS command).
+     */
+    public long getUIDValidity(Credentials credentials, URLName folderId) {
+        try {
+            return getFolder(credentials, folderId).getUIDValidity();
+        } catch (MessagingException ex) {
+            log.error("Error loading UIDVALIDITY for folder: " + folderId.toString(), ex);
+            throw new IsotopeException(ex.getMessage(), ex);
+        }
+    }
+
     public List<Message> preloadMessages(
-            @NonNull Credentials credentials, @NonNull URLName folderId, @NonNull List<Long> uids) {
+            @NonNull Credentials credentials, @NonNull URLName folderId, @NonNull UidSet uids) {
 
         try {
             final IMAPFolder folder = getFolder(credentials, folderId);
             if (!folder.isOpen()) {
-                folder.open(READ_ONLY);
+                open(folder, READ_ONLY);
             }
-            final List<Message> ret = new ArrayList<>(uids.size());
-            final List<IMAPMessage> messages = Stream.of(
-                    folder.getMessagesByUID(uids.stream().mapToLong(Long::longValue).toArray()))
-                    .filter(Objects::nonNull)
+            final List<Message> ret = new ArrayList<>();
+            final List<IMAPMessage> messages = Stream.of(getMessagesByUID(folder, uids))
                     .map(IMAPMessage.class::cast)
                     .collect(Collectors.toList());
             for(IMAPMessage imapMessage : messages) {
@@ -303,28 +503,103 @@ public class ImapService {
                 ret.add(message);
                 readContentIntoMessage(folderId, imapMessage, message);
             }
-            folder.close();
+            close(folder, true);
             return ret;
         } catch (MessagingException | IOException ex) {
             throw  new IsotopeException(ex.getMessage());
         }
     }
 
+    /**
+     * Renders the bodies of the unread messages adjacent to the message with the provided uid and stores them in the
+     * {@link MessagePrefetchCache} (and {@link MessageBodyCache}).
+     *
+     * <p>Up to <code>adjacent</code> unread messages after and before the provided message (in folder order) are
+     * rendered, messages already prefetched are skipped. Only the messages within the configured search window around
+     * the provided message are searched, so the cost of the SEARCH doesn't grow with the size of the folder. The
+     * folder is opened in READ_ONLY mode so that the fetched messages are not flagged as seen.
+     *
+     * @param credentials to authenticate the user in the IMAP server
+     * @param folderId name of the folder containing the message
+     * @param uid of the message opened by the user
+     * @param adjacent max number of unread messages to prefetch in each direction
+     * @return number of prefetched messages
+     */
+    int prefetchMessages(@NonNull Credentials credentials, @NonNull URLName folderId, long uid, int adjacent)
+            throws MessagingException, IOException {
+
+        final IMAPFolder folder = getFolder(credentials, folderId);
+        if (!folder.isOpen()) {
+            open(folder, READ_ONLY);
+        }
+        final javax.mail.Message current = timedFetch(FETCH_PROFILE_UID, () -> folder.getMessageByUID(uid));
+        if (current == null || accountKey == null) {
+            close(folder, false);
+            return 0;
+        }
+        final int window = Math.max(adjacent, isotopeApiConfiguration.getPrefetchSearchWindow());
+        final javax.mail.Message[] range = folder.getMessages(
+                Math.max(1, current.getMessageNumber() - window),
+                Math.min(folder.getMessageCount(), current.getMessageNumber() + window));
+        final javax.mail.Message[] unread = timed(MailOperation.SEARCH, () ->
+                folder.search(new FlagTerm(new Flags(Flags.Flag.SEEN), false), range));
+        final List<javax.mail.Message> candidates = new ArrayList<>(adjacent * 2);
+        // Search results are sorted by message number, next messages are rendered first
+        int next = 0;
+        while (next < unread.length && unread[next].getMessageNumber() <= current.getMessageNumber()) {
+            next++;
+        }
+        for (int it = next; it < unread.length && it < next + adjacent; it++) {
+            candidates.add(unread[it]);
+        }
+        for (int it = next - 1, previous = 0; it >= 0 && previous < adjacent; it--) {
+            if (unread[it].getMessageNumber() != current.getMessageNumber()) {
+                candidates.add(unread[it]);
+                previous++;
+            }
+        }
+        int ret = 0;
+        if (!candidates.isEmpty()) {
+            final javax.mail.Message[] messages = candidates.toArray(new javax.mail.Message[0]);
+            final FetchProfile fp = new FetchProfile();
+            fp.add(UIDFolder.FetchProfileItem.UID);
+            fetch(folder, messages, fp);
+            final String folderName = folder.getFullName();
+            final long uidValidity = folder.getUIDValidity();
+            for (javax.mail.Message candidate : messages) {
+                final long candidateUid = folder.getUID(candidate);
+                if (candidateUid == -1L
+                        || messagePrefetchCache.contains(accountKey, folderName, uidValidity, candidateUid)) {
+                    continue;
+                }
+                final Message message = new Message();
+                message.setUid(candidateUid);
+                renderContentIntoMessage((IMAPMessage) candidate, message);
+                messagePrefetchCache.put(accountKey, folderName, uidValidity, message);
+                messageBodyCache.put(accountKey, folderName, uidValidity, message);
+                ret++;
+            }
+        }
+        close(folder, false);
+        return ret;
+    }
+
     public void readAttachment(
             HttpServletResponse response, Credentials credentials, URLName folderId, Long messageId,
             String id, Boolean isContentId) {
         try {
             final IMAPFolder folder = getFolder(credentials, folderId);
             if (!folder.isOpen()) {
-                folder.open(READ_ONLY);
+                open(folder, READ_ONLY);
             }
-            final IMAPMessage imapMessage = (IMAPMessage)folder.getMessageByUID(messageId);
-            final Object content = imapMessage.getContent();
+            final IMAPMessage imapMessage = (IMAPMessage)timedFetch(FETCH_PROFILE_UID, () ->
+                    folder.getMessageByUID(messageId));
+            final Object content = getContent(imapMessage);
             if (content instanceof Multipart) {
-                final BodyPart bp = extractBodypart((Multipart)content, id, isContentId);
-                if (bp != null) {
-                    response.setContentType(bp.getContentType());
-                    bp.getDataHandler().writeTo(response.getOutputStream());
+                final MimePartIndex.Part part = extractBodypart(MimePartIndex.of((Multipart)content), id, isContentId);
+                if (part != null) {
+                    response.setContentType(part.getContentType());
+                    part.getBodyPart().getDataHandler().writeTo(response.getOutputStream());
                     response.getOutputStream().flush();
                 } else {
                     throw new NotFoundException("Attachment not found");
@@ -337,57 +612,140 @@ public class ImapService {
 
     }
 
+    /**
+     * Writes the content of the MIME part with the provided IMAP part path (e.g. 2.1) into the response.
+     *
+     * Only the requested part is fetched from the server (BODY.PEEK[partPath]) and streamed in chunks, single byte
+     * ranges are supported for parts without transfer encoding and for base64 encoded parts.
+     *
+     * @param response where the part content will be written
+     * @param credentials to authenticate the user in the IMAP server
+     * @param folderId name of the folder containing the message
+     * @param messageId uid of the message
+     * @param partPath IMAP part specifier
+     * @param range optional value of the HTTP Range header
+     */
+    public void readMessagePart(
+            HttpServletResponse response, Credentials credentials, URLName folderId, Long messageId,
+            String partPath, @Nullable String range) {
+
+        try {
+            final IMAPFolder folder = getFolder(credentials, folderId);
+            if (!folder.isOpen()) {
+                open(folder, READ_ONLY);
+            }
+            final IMAPMessage imapMessage = (IMAPMessage)timedFetch(FETCH_PROFILE_UID, () ->
+                    folder.getMessageByUID(messageId));
+            if (imapMessage == null) {
+                throw new NotFoundException("Message not found");
+            }
+            final int messageNumber = imapMessage.getMessageNumber();
+            final BODYSTRUCTURE bodyStructure = (BODYSTRUCTURE)timedFetch(FETCH_PROFILE_BODYSTRUCTURE, () ->
+                    folder.doCommand(p -> p.fetchBodyStructure(messageNumber)));
+            final BODYSTRUCTURE part = bodyStructure == null ? null :
+                    MessagePartWriter.findPart(bodyStructure, partPath);
+            if (part == null) {
+                throw new NotFoundException("Message part not found");
+            }
+            MessagePartWriter.write(response, folder, messageNumber, partPath, part, range);
+        } catch (MessagingException | IOException ex) {
+            log.error("Error loading message part for folder: " + folderId.toString(), ex);
+            throw  new IsotopeException(ex.getMessage());
+        }
+    }
+
     /**
      * Moves the provided messages from the specified folderId to the specified destination folderId.
      *
-     * To maximize compatibility with IMAP servers, move is performed using a regular copy and delete in the originating
-     * folder, and a retrieval of messages in the target folder.
+     * If the server supports MOVE (RFC 6851) messages are moved with a single command, otherwise a regular COPY,
+     * STORE \Deleted and EXPUNGE is performed. When the server supports UIDPLUS (RFC 4315) the UIDs of the messages
+     * in the target folder are read from the COPYUID response code. As a last resort, new messages in the target
+     * folder since the move operation started are retrieved.
      *
      * @param credentials to authenticate the user in the IMAP server
      * @param fromFolderId name of the originating folder
      * @param toFolderId name of the target folder
-     * @param uids list of uids to move
-     * @return list of new messages in the target folder since the move operation started (may include additional messages)
+     * @param uids set of uids to move
+     * @return list of moved messages in the target folder (may include additional messages if the server doesn't
+     * support UIDPLUS)
      */
-    public List<MessageWithFolder> moveMessages(Credentials credentials, URLName fromFolderId, URLName toFolderId, List<Long> uids) {
+    public List<MessageWithFolder> moveMessages(Credentials credentials, URLName fromFolderId, URLName toFolderId, UidSet uids) {
         try {
+            final IMAPStore store = getImapStore(credentials);
+            final boolean move = store.hasCapability(IMAP_CAPABILITY_MOVE);
+            final boolean uidPlus = store.hasCapability(IMAP_CAPABILITY_UIDPLUS);
             final IMAPFolder fromFolder = getFolder(credentials, fromFolderId);
-            fromFolder.open(READ_WRITE);
+            open(fromFolder, READ_WRITE);
             final IMAPFolder toFolder = getFolder(credentials, toFolderId);
-            toFolder.open(READ_ONLY);
-            long toFolderNextUID = toFolder.getUIDNext();
-            toFolder.close(false);
-
-            // Maximize IMAP compatibility, perform COPY and DELETE
-            final javax.mail.Message[] messagesToMove = Stream.of(fromFolder.getMessagesByUID(
-                    uids.stream().mapToLong(Long::longValue).toArray()))
-                    .filter(Objects::nonNull)
+            // UIDNEXT is only required if new UIDs can't be retrieved from COPYUID (STATUS, folder is not opened)
+            final long toFolderNextUID = uidPlus ? -1L : toFolder.getUIDNext();
+
+            final javax.mail.Message[] messagesToMove = Stream.of(getMessagesByUID(fromFolder, uids))
                     .filter(m -> !m.isExpunged())
                     .toArray(javax.mail.Message[]::new);
+            long[] newUids = null;
             if (messagesToMove.length > 0) {
-                fromFolder.copyMessages(messagesToMove, toFolder);
-                for (javax.mail.Message m : messagesToMove) {
-                    m.setFlag(Flags.Flag.DELETED, true);
+                final MessageSet[] messageSet = Utility.toMessageSet(messagesToMove, null);
+                final String toFolderName = toFolder.getFullName();
+                final CopyUID copyUID;
+                if (move) {
+                    copyUID = (CopyUID) timed(MailOperation.MOVE, () -> fromFolder.doCommand(p -> {
+                        if (uidPlus) {
+                            return p.moveuid(messageSet, toFolderName);
+                        }
+                        p.move(messageSet, toFolderName);
+                        return null;
+                    }));
+                } else {
+                    copyUID = (CopyUID) timed(MailOperation.COPY, () -> fromFolder.doCommand(p -> {
+                        if (uidPlus) {
+                            return p.copyuid(messageSet, toFolderName);
+                        }
+                        p.copy(messageSet, toFolderName);
+                        return null;
+                    }));
+                    timed(MailOperation.STORE, () -> {
+                        fromFolder.setFlags(messagesToMove, new Flags(Flags.Flag.DELETED), true);
+                        return null;
+                    });
+                    if (uidPlus) {
+                        timed(MailOperation.EXPUNGE, () -> fromFolder.expunge(messagesToMove));
+                    } else {
+                        expungeWithoutUidPlus(fromFolder, messagesToMove);
+                    }
                 }
-                fromFolder.expunge(messagesToMove);
+                newUids = copyUID == null ? null : UIDSet.toArray(copyUID.dst);
             }
 
             // Retrieve new messages in target folder
-            toFolder.open(READ_ONLY);
-            // copy operation may not have finished, wait a little
+            open(toFolder, READ_ONLY);
             javax.mail.Message[] newMessages;
-            int retries = 5;
-            final long sleepTimeMillis = 100L;
-            while((newMessages = toFolder.getMessagesByUID(toFolderNextUID, UIDFolder.LASTUID)).length == 0
-                    && retries-- > 0) {
-                Thread.sleep(sleepTimeMillis);
+            if (messagesToMove.length == 0) {
+                newMessages = new javax.mail.Message[0];
+            } else if (newUids != null) {
+                final long[] uidsToFetch = newUids;
+                newMessages = Stream.of(timedFetch(FETCH_PROFILE_UID, () -> toFolder.getMessagesByUID(uidsToFetch)))
+                        .filter(Objects::nonNull)
+                        .toArray(javax.mail.Message[]::new);
+            } else if (toFolderNextUID < 0) {
+                // Server advertises UIDPLUS but didn't send COPYUID
+                newMessages = new javax.mail.Message[0];
+            } else {
+                // Last resort, copy operation may not have finished, wait a little
+                int retries = move ? 0 : 5;
+                final long sleepTimeMillis = 100L;
+                while((newMessages = timedFetch(FETCH_PROFILE_UID, () ->
+                        toFolder.getMessagesByUID(toFolderNextUID, UIDFolder.LASTUID))).length == 0
+                        && retries-- > 0) {
+                    Thread.sleep(sleepTimeMillis);
+                }
             }
             envelopeFetch(toFolder, newMessages);
             final List<MessageWithFolder> ret = Stream.of(newMessages)
                     .map(m -> MessageWithFolder.from(toFolder, true, (IMAPMessage)m))
                     .collect(Collectors.toList());
-            fromFolder.close(false);
-            toFolder.close(false);
+            close(fromFolder, false);
+            close(toFolder, false);
             return ret;
         } catch(InterruptedException ex) {
             Thread.currentThread().interrupt();
@@ -410,60 +768,197 @@ public class ImapService {
      * @param seen
      * @param uids
      */
-    public void setMessagesSeen(Credentials credentials, URLName folderId, boolean seen, long... uids) {
+    public void setMessagesSeen(Credentials credentials, URLName folderId, boolean seen, UidSet uids) {
         setMessagesFlag(credentials, folderId, Flags.Flag.SEEN, seen, uids);
     }
 
-    public void setMessagesFlagged(Credentials credentials, URLName folderId, boolean flagged, long... uids) {
+    public void setMessagesFlagged(Credentials credentials, URLName folderId, boolean flagged, UidSet uids) {
        setMessagesFlag(credentials, folderId, Flags.Flag.FLAGGED, flagged, uids);
     }
 
-    public Folder deleteMessages(@NonNull Credentials credentials, @NonNull URLName folderId, @NonNull List<Long> uids) {
+    /**
+     * Deletes the specified messages with a single UID STORE and a single UID EXPUNGE (RFC 4315) command.
+     *
+     * @param credentials
+     * @param folderId
+     * @param uids
+     * @return the updated folder
+     */
+    public Folder deleteMessages(@NonNull Credentials credentials, @NonNull URLName folderId, @NonNull UidSet uids) {
         try {
+            final boolean uidPlus = getImapStore(credentials).hasCapability(IMAP_CAPABILITY_UIDPLUS);
             final IMAPFolder folder = getFolder(credentials, folderId);
-            folder.open(READ_WRITE);
-            final javax.mail.Message[] messages = folder.getMessagesByUID(
-                    uids.stream().mapToLong(Long::longValue).toArray());
-            folder.setFlags(messages, new Flags(Flags.Flag.DELETED), true);
-            folder.expunge(messages);
+            open(folder, READ_WRITE);
+            if (!uids.isEmpty() && uidPlus) {
+                storeFlag(folder, uids, Flags.Flag.DELETED, true);
+                timed(MailOperation.EXPUNGE, () -> folder.doCommand(p -> {
+                    p.uidexpunge(uids.toUIDSets());
+                    return null;
+                }));
+            } else if (!uids.isEmpty()) {
+                final javax.mail.Message[] messages = getMessagesByUID(folder, uids);
+                storeFlag(folder, uids, Flags.Flag.DELETED, true);
+                expungeWithoutUidPlus(folder, messages);
+            }
             return Folder.from(folder, true);
         } catch (MessagingException ex) {
             throw new IsotopeException(ex.getMessage(), ex);
         }
     }
 
+    /**
+     * Closes any folder left open by this service and returns the {@link IMAPStore} to the {@link ImapStorePool}.
+     */
     @PreDestroy
     public void destroy() {
         log.debug("ImapService destroyed");
-        if(imapStore != null) {
-            try {
-                imapStore.close();
-            } catch (MessagingException ex) {
-                log.error("Error closing IMAP Store", ex);
+        for (IMAPFolder folder : folders) {
+            if (folder.isOpen()) {
+                try {
+                    close(folder, false);
+                } catch (MessagingException ex) {
+                    log.error("Error closing IMAP Folder", ex);
+                }
             }
         }
+        folders.clear();
+        // Folders closed by the server
+        mailMetrics.foldersClosed(openedFolders.size());
+        openedFolders.clear();
+        if(imapStore != null) {
+            imapStorePool.release(imapStore);
+            imapStore = null;
+        }
+    }
+
+    /**
+     * Returns the {@link IMAPStore} of this service borrowing it for a long-lived stream, must be called before any
+     * other operation.
+     */
+    IMAPStore getImapStreamStore(Credentials credentials) throws MessagingException {
+        if (imapStore != null) {
+            throw new IllegalStateException("IMAP Store already borrowed");
+        }
+        imapStore = imapStorePool.borrowStream(credentials);
+        accountKey = toAccountKey(credentials);
+        serverHost = credentials.getServerHost();
+        return imapStore;
     }
 
     IMAPStore getImapStore(Credentials credentials) throws MessagingException {
         if (imapStore == null) {
-            final Session session = Session.getInstance(initMailProperties(credentials, mailSSLSocketFactory), null);
-            imapStore = (IMAPStore) session.getStore(credentials.getImapSsl() ? IMAPS_PROTOCOL : IMAP_PROTOCOL);
-            imapStore.connect(
-                    credentials.getServerHost(),
-                    credentials.getServerPort(),
-                    credentials.getUser(),
-                    credentials.getPassword());
-            log.debug("Opened new ImapStore session");
+            imapStore = imapStorePool.borrow(credentials);
+            accountKey = toAccountKey(credentials);
+            serverHost = credentials.getServerHost();
         }
         return imapStore;
     }
 
+    /**
+     * Opens the provided folder recording the operation in the {@link MailMetrics}.
+     */
+    void open(IMAPFolder folder, int mode) throws MessagingException {
+        timed(MailOperation.FOLDER_OPEN, () -> {
+            folder.open(mode);
+            return null;
+        });
+        if (openedFolders.add(folder)) {
+            mailMetrics.foldersOpened(1);
+        }
+    }
+
+    List<MailEvent> open(IMAPFolder folder, int mode, ResyncData resyncData) throws MessagingException {
+        final List<MailEvent> ret = timed(MailOperation.FOLDER_OPEN, () -> folder.open(mode, resyncData));
+        if (openedFolders.add(folder)) {
+            mailMetrics.foldersOpened(1);
+        }
+        return ret;
+    }
+
+    void close(IMAPFolder folder, boolean expunge) throws MessagingException {
+        try {
+            folder.close(expunge);
+        } finally {
+            if (openedFolders.remove(folder)) {
+                mailMetrics.foldersClosed(1);
+            }
+        }
+    }
+
+    /**
+     * Fetches the items in the provided {@link FetchProfile} recording the operation in the {@link MailMetrics}.
+     */
+    void fetch(IMAPFolder folder, javax.mail.Message[] messages, FetchProfile fetchProfile)
+            throws MessagingException {
+
+        mailMetrics.recordFetch(MailMetrics.profile(fetchProfile), serverHost, endpoint, () -> {
+            folder.fetch(messages, fetchProfile);
+            return null;
+        });
+    }
+
+    private <T, E extends Exception> T timed(MailOperation operation, MailMetrics.MailCall<T, E> call) throws E {
+        return mailMetrics.record(operation, serverHost, endpoint, call);
+    }
+
+    private <T, E extends Exception> T timedFetch(String profile, MailMetrics.MailCall<T, E> call) throws E {
+        return mailMetrics.recordFetch(profile, serverHost, endpoint, call);
+    }
+
+    /**
+     * Fetches the envelope and configured headers of the provided messages (see
+     * {@link MessageUtils#envelopeFetch(javax.mail.Folder, javax.mail.Message[], String[])}) recording the operation
+     * and the size of the fetched headers in the {@link MailMetrics}.
+     */
+    void envelopeFetch(IMAPFolder folder, javax.mail.Message[] messages) throws MessagingException {
+        if (messages.length != 0) {
+            timedFetch(FETCH_PROFILE_ENVELOPE, () -> {
+                MessageUtils.envelopeFetch(folder, messages, envelopeHeaders);
+                return null;
+            });
+            mailMetrics.recordHeaderBytes(envelopeHeaders == null,
+                    MessageUtils.headerBytes(messages, envelopeHeaders));
+        }
+    }
+
+    /**
+     * Returns the configured envelope headers including the ones required by {@link Message#from(IMAPFolder,
+     * IMAPMessage)}, or null if the complete header block should be fetched.
+     */
+    @Nullable
+    private static String[] envelopeHeaders(IsotopeApiConfiguration isotopeApiConfiguration) {
+        final Set<String> configured = isotopeApiConfiguration.getEnvelopeHeaders();
+        if (configured != null && configured.contains(IsotopeApiConfiguration.ENVELOPE_HEADERS_ALL)) {
+            return null;
+        }
+        // Header names are case-insensitive
+        final Set<String> ret = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+        ret.addAll(Arrays.asList(MessageUtils.ENVELOPE_HEADERS));
+        if (configured != null) {
+            ret.addAll(configured);
+        }
+        return ret.toArray(new String[0]);
+    }
+
+    private Object getContent(IMAPMessage imapMessage) throws MessagingException, IOException {
+        final long start = System.nanoTime();
+        boolean success = false;
+        try {
+            final Object ret = imapMessage.getContent();
+            success = true;
+            return ret;
+        } finally {
+            mailMetrics.record(MailOperation.FETCH, FETCH_PROFILE_BODY, serverHost, endpoint,
+                    System.nanoTime() - start, success);
+        }
+    }
+
     List<Message> getMessages(
             @NonNull IMAPFolder folder, @Nullable Integer start, @Nullable Integer end, boolean fetchModseq)
             throws MessagingException {
 
         if (!folder.isOpen()) {
-            folder.open(READ_ONLY);
+            open(folder, READ_ONLY);
         }
         final javax.mail.Message[] messages;
         if (start != null && end != null) {
@@ -476,7 +971,16 @@ public class ImapService {
         } else {
             messages = folder.getMessages();
         }
-        envelopeFetch(folder, messages);
+        final List<Message> ret;
+        if (envelopeCache.isEnabled() && accountKey != null) {
+            ret = getMessagesWithCachedEnvelopes(folder, messages);
+        } else {
+            envelopeFetch(folder, messages);
+            ret = Stream.of(messages)
+                    .map(m -> Message.from(folder, (IMAPMessage)m))
+                    .collect(Collectors.toList());
+        }
+        readSnippets(folder, messages, ret);
         final Long highestModseq;
         if (fetchModseq && messages.length > 0) {
             highestModseq = folder.getHighestModSeq() == -1L ?
@@ -484,97 +988,362 @@ public class ImapService {
         } else {
             highestModseq = null;
         }
-        return Stream.of(messages)
-                .map(m -> Message.from(folder, (IMAPMessage)m))
-                .map(m -> {
-                    m.setModseq(highestModseq);
-                    return m;
-                })
-                .sorted(Comparator.comparingLong(Message::getUid).reversed())
-                .collect(Collectors.toList());
+        ret.forEach(m -> m.setModseq(highestModseq));
+        ret.sort(Comparator.comparingLong(Message::getUid).reversed());
+        return ret;
+    }
+
+    /**
+     * Fetches UID and FLAGS for the provided messages and retrieves their envelopes from the {@link EnvelopeCache}.
+     *
+     * <p>Only the messages whose envelope is not cached are fetched with the complete envelope.
+     */
+    private List<Message> getMessagesWithCachedEnvelopes(IMAPFolder folder, javax.mail.Message[] messages)
+            throws MessagingException {
+
+        final List<Message> ret = new ArrayList<>(messages.length);
+        if (messages.length == 0) {
+            return ret;
+        }
+        final FetchProfile fp = new FetchProfile();
+        fp.add(UIDFolder.FetchProfileItem.UID);
+        fp.add(FetchProfile.Item.FLAGS);
+        fetch(folder, messages, fp);
+        final String folderName = folder.getFullName();
+        final long uidValidity = folder.getUIDValidity();
+        final List<javax.mail.Message> misses = new ArrayList<>();
+        for (javax.mail.Message message : messages) {
+            final Message cached = envelopeCache.get(
+                    accountKey, folderName, uidValidity, folder.getUID(message), message.getFlags());
+            if (cached == null) {
+                misses.add(message);
+            } else {
+                ret.add(cached);
+            }
+        }
+        final javax.mail.Message[] missedMessages = misses.toArray(new javax.mail.Message[0]);
+        envelopeFetch(folder, missedMessages);
+        for (javax.mail.Message missedMessage : missedMessages) {
+            final Message message = Message.from(folder, (IMAPMessage) missedMessage);
+            envelopeCache.put(accountKey, folderName, uidValidity, message);
+            ret.add(message);
+        }
+        return ret;
     }
 
-    private IMAPFolder getFolder(Credentials credentials, URLName folderId) throws MessagingException {
+    /**
+     * Sets the preview snippet of the provided messages that don't have one yet (cached envelopes already include
+     * it). Newest messages are processed first until the configured byte budget for the batch is exhausted, the
+     * rest of the messages are listed without snippet.
+     *
+     * <p>Snippets are optional, any failure is logged and ignored.
+     */
+    private void readSnippets(IMAPFolder folder, javax.mail.Message[] messages, List<Message> ret) {
+        final int partialBytes = isotopeApiConfiguration.getSnippetPartialBytes();
+        if (partialBytes <= 0 || messages.length == 0) {
+            return;
+        }
+        try {
+            final Map<Long, Integer> messageNumbers = new HashMap<>();
+            for (javax.mail.Message message : messages) {
+                if (!message.isExpunged()) {
+                    messageNumbers.put(folder.getUID(message), message.getMessageNumber());
+                }
+            }
+            final List<Message> pending = ret.stream()
+                    .filter(m -> m.getSnippet() == null && messageNumbers.containsKey(m.getUid()))
+                    .sorted(Comparator.comparingLong(Message::getUid).reversed())
+                    .limit(isotopeApiConfiguration.getSnippetBatchMaxBytes() / partialBytes)
+                    .collect(Collectors.toList());
+            if (pending.isEmpty()) {
+                return;
+            }
+            final Map<Integer, String> snippets = timedFetch(FETCH_PROFILE_SNIPPET, () -> SnippetReader.read(folder,
+                    pending.stream().mapToInt(m -> messageNumbers.get(m.getUid())).toArray(), partialBytes));
+            final boolean cacheSnippets = envelopeCache.isEnabled() && accountKey != null;
+            for (Message message : pending) {
+                message.setSnippet(snippets.get(messageNumbers.get(message.getUid())));
+                if (cacheSnippets && message.getSnippet() != null) {
+                    envelopeCache.put(accountKey, folder.getFullName(), folder.getUIDValidity(), message);
+                }
+            }
+        } catch (MessagingException ex) {
+            log.debug("Error reading message snippets for folder {} ({})", folder.getFullName(), ex.getMessage());
+        }
+    }
+
+    IMAPFolder getFolder(Credentials credentials, URLName folderId) throws MessagingException {
         final IMAPFolder folder = (IMAPFolder)getImapStore(credentials).getFolder(getFileWithRef(folderId));
+        folders.add(folder);
         if (!folder.exists()) {
             throw new NotFoundException(String.format("Folder %s not found", folderId.toString()));
         }
         return folder;
     }
 
-    private void setMessagesFlag(Credentials credentials, URLName folderId, Flags.Flag flag, boolean flagValue, long... uids) {
+    private List<Message> toMessages(IMAPFolder folder, javax.mail.Message[] messages) throws MessagingException {
+        envelopeFetch(folder, messages);
+        return Stream.of(messages)
+                .map(m -> Message.from(folder, (IMAPMessage)m))
+                .sorted(Comparator.comparingLong(Message::getUid).reversed())
+                .collect(Collectors.toList());
+    }
+
+    private static List<Long> getUids(IMAPFolder folder, javax.mail.Message[] messages) throws MessagingException {
+        final List<Long> ret = new ArrayList<>(messages.length);
+        for (javax.mail.Message message : messages) {
+            ret.add(folder.getUID(message));
+        }
+        return ret;
+    }
+
+    /**
+     * Weak ETag for the message representation, message JSON includes flags and folder counters, so it may change
+     * even if the message content is immutable. If the server doesn't support CONDSTORE the unread count is included
+     * instead of the HIGHESTMODSEQ.
+     */
+    private static String messageETag(IMAPFolder folder, IMAPMessage imapMessage) throws MessagingException {
+        final long highestModSeq = folder.getHighestModSeq();
+        return ETags.weak(folder.getFullName(), folder.getUIDValidity(), folder.getUID(imapMessage),
+                imapMessage.getFlags(), folder.getMessageCount(), folder.getUIDNext(),
+                highestModSeq >= 0 ? highestModSeq : folder.getUnreadMessageCount());
+    }
+
+    private static void checkUidValidity(URLName folderId, long expected, long actual) {
+        if (expected != actual) {
+            throw new IsotopeException(HttpStatus.CONFLICT,
+                    String.format("UIDVALIDITY of folder %s has changed, messages must be reloaded", folderId));
+        }
+    }
+
+    private void setMessagesFlag(Credentials credentials, URLName folderId, Flags.Flag flag, boolean flagValue, UidSet uids) {
         try {
             final IMAPFolder folder = getFolder(credentials, folderId);
-            folder.open(READ_WRITE);
-            final javax.mail.Message[] messages = folder.getMessagesByUID(uids);
-            folder.setFlags(messages, new Flags(flag), flagValue);
-            folder.close(false);
+            open(folder, READ_WRITE);
+            if (!uids.isEmpty()) {
+                storeFlag(folder, uids, flag, flagValue);
+            }
+            close(folder, false);
         } catch (MessagingException ex) {
             throw new IsotopeException(ex.getMessage(), ex);
         }
     }
 
+    /**
+     * Returns the existing messages in the provided open folder for the specified uids.
+     *
+     * Messages are resolved with a single UID FETCH command using the compact sequence set of the {@link UidSet}
+     * ({@link IMAPFolder#getMessagesByUID(long[])} lists every single UID in the command).
+     */
+    private javax.mail.Message[] getMessagesByUID(IMAPFolder folder, UidSet uids) throws MessagingException {
+        if (uids.isEmpty()) {
+            return new javax.mail.Message[0];
+        }
+        final int[] messageNumbers = (int[]) timedFetch(FETCH_PROFILE_UID, () -> folder.doCommand(p -> {
+            final Response[] r = p.command("UID FETCH " + uids + " (UID)", null);
+            // Folder response handler will register the UIDs of the fetched messages
+            p.notifyResponseHandlers(r);
+            p.handleResult(r[r.length - 1]);
+            return Stream.of(r)
+                    .filter(FetchResponse.class::isInstance)
+                    .map(FetchResponse.class::cast)
+                    .filter(fr -> fr.getItem(UID.class) != null && uids.contains(fr.getItem(UID.class).uid))
+                    .mapToInt(FetchResponse::getNumber)
+                    .toArray();
+        }));
+        final javax.mail.Message[] ret = new javax.mail.Message[messageNumbers.length];
+        for (int it = 0; it < messageNumbers.length; it++) {
+            ret[it] = folder.getMessage(messageNumbers[it]);
+        }
+        return ret;
+    }
+
+    /**
+     * Expunges the provided messages (already flagged as \Deleted) in a server that doesn't support UID EXPUNGE.
+     *
+     * <p>A plain EXPUNGE removes every \Deleted message in the folder, other messages flagged as \Deleted are
+     * temporarily unflagged and flagged again once expunged (RFC 4315, section 1).
+     */
+    private void expungeWithoutUidPlus(IMAPFolder folder, javax.mail.Message[] messages) throws MessagingException {
+        final Set<Integer> messageNumbers = Stream.of(messages)
+                .map(javax.mail.Message::getMessageNumber)
+                .collect(Collectors.toSet());
+        final javax.mail.Message[] otherDeleted = Stream.of(timed(MailOperation.SEARCH, () ->
+                folder.search(new FlagTerm(new Flags(Flags.Flag.DELETED), true))))
+                .filter(m -> !messageNumbers.contains(m.getMessageNumber()))
+                .toArray(javax.mail.Message[]::new);
+        if (otherDeleted.length > 0) {
+            timed(MailOperation.STORE, () -> {
+                folder.setFlags(otherDeleted, new Flags(Flags.Flag.DELETED), false);
+                return null;
+            });
+        }
+        try {
+            timed(MailOperation.EXPUNGE, folder::expunge);
+        } finally {
+            if (otherDeleted.length > 0) {
+                timed(MailOperation.STORE, () -> {
+                    folder.setFlags(otherDeleted, new Flags(Flags.Flag.DELETED), true);
+                    return null;
+                });
+            }
+        }
+    }
+
+    /**
+     * Sets or clears the provided system flag for the specified uids with a single UID STORE command.
+     */
+    private void storeFlag(IMAPFolder folder, UidSet uids, Flags.Flag flag, boolean flagValue)
+            throws MessagingException {
+
+        final String command = String.format("UID STORE %s %sFLAGS.SILENT (%s)",
+                uids, flagValue ? "+" : "-", toImapFlag(flag));
+        timed(MailOperation.STORE, () -> folder.doCommand(p -> {
+            final Response[] r = p.command(command, null);
+            p.notifyResponseHandlers(r);
+            p.handleResult(r[r.length - 1]);
+            return null;
+        }));
+    }
+
+    private static String toImapFlag(Flags.Flag flag) {
+        if (flag == Flags.Flag.SEEN) {
+            return "\\Seen";
+        } else if (flag == Flags.Flag.FLAGGED) {
+            return "\\Flagged";
+        } else if (flag == Flags.Flag.DELETED) {
+            return "\\Deleted";
+        } else if (flag == Flags.Flag.ANSWERED) {
+            return "\\Answered";
+        } else if (flag == Flags.Flag.DRAFT) {
+            return "\\Draft";
+        }
+        throw new IllegalArgumentException("Unsupported flag");
+    }
+
     /**
      * Returns a list of  {@link Attachment}s and replaces embedded images in {@link Message#content} if they are
      * small in order to avoid future calls to the API which may result more expensive.
      *
      * @param finalMessage
-     * @param mp
-     * @param attachments
+     * @param index of the message multipart content
      * @return
      * @throws MessagingException
      * @throws IOException
      */
-    private List<Attachment> extractAttachments(
-            @NonNull Message finalMessage, @NonNull Multipart mp, @Nullable List<Attachment> attachments)
+    private List<Attachment> extractAttachments(@NonNull Message finalMessage, @NonNull MimePartIndex index)
             throws MessagingException, IOException {
 
-        if (attachments == null){
-            attachments = new ArrayList<>();
-        }
-        for (int it = 0; it < mp.getCount(); it++) {
-            final BodyPart bp = mp.getBodyPart(it);
-            // Multipart message with embedded parts
-            if (bp.getContentType().toLowerCase().startsWith(MULTIPART_MIME_TYPE)) {
-                extractAttachments(finalMessage, (Multipart) bp.getContent(), attachments);
+        final long embeddedImageSizeThreshold = embeddedImageSizeThreshold();
+        final List<Attachment> attachments = new ArrayList<>();
+        for (MimePartIndex.Part part : index.getAllParts()) {
+            // Multipart message with embedded parts (nested parts are already in the index)
+            if (part.isMultipart()) {
+                continue;
             }
             // Image attachments
-            else if (bp.getContentType().toLowerCase().startsWith("image/")
-                    && bp instanceof MimeBodyPart
-                    && ((MimeBodyPart) bp).getContentID() != null) {
+            if (part.getMimeType().startsWith("image/") && part.getContentId() != null) {
                 // If image is "not too big" embed as base64 data uri - successive IMAP connections will be more expensive
-                if (bp.getSize() <= isotopeApiConfiguration.getEmbeddedImageSizeThreshold()) {
-                    finalMessage.setContent(replaceEmbeddedImage(finalMessage.getContent(), (MimeBodyPart)bp));
+                if (embeddedImageSizeThreshold >= 0 && part.getSize() <= embeddedImageSizeThreshold) {
+                    finalMessage.setContent(replaceEmbeddedImage(finalMessage.getContent(), part));
                 } else {
                     attachments.add(new Attachment(
-                            ((MimeBodyPart) bp).getContentID(), bp.getFileName(), bp.getContentType(), bp.getSize()));
+                            part.getContentId(), part.getFileName(), part.getContentType(), part.getSize(),
+                            part.getPartPath()));
                 }
             }
             // Embedded messages
-            else if (bp.getContentType().toLowerCase().startsWith("message/")) {
-                final Object nestedMessage = bp.getContent();
+            else if (part.getMimeType().startsWith("message/")) {
+                final Object nestedMessage = part.getBodyPart().getContent();
                 if (nestedMessage instanceof MimeMessage) {
                     attachments.add(new Attachment(null, ((MimeMessage)nestedMessage).getSubject(),
-                            bp.getContentType(), ((MimeMessage)nestedMessage).getSize()));
+                            part.getContentType(), ((MimeMessage)nestedMessage).getSize(), part.getPartPath()));
                 }
             }
             // Regular files
-            else if (bp.getDisposition() != null && bp.getDisposition().equalsIgnoreCase(Part.ATTACHMENT)) {
-                attachments.add(new Attachment(
-                        null, MimeUtility.decodeText(bp.getFileName()), bp.getContentType(), bp.getSize()));
+            else if (part.getDisposition() != null && part.getDisposition().equalsIgnoreCase(Part.ATTACHMENT)) {
+                attachments.add(new Attachment(null, MimeUtility.decodeText(part.getFileName()),
+                        part.getContentType(), part.getSize(), part.getPartPath()));
             }
         }
         return attachments;
     }
 
+    /**
+     * Max size of the images embedded in the message content as data urls, -1 if images are never embedded
+     * ({@link EmbeddedImageMode#LINK}).
+     */
+    private long embeddedImageSizeThreshold() {
+        return isotopeApiConfiguration.getEmbeddedImageMode() == EmbeddedImageMode.LINK ?
+                -1L : isotopeApiConfiguration.getEmbeddedImageSizeThreshold();
+    }
+
+    /**
+     * Reads the rendered content and attachments of the provided message from the {@link MessagePrefetchCache} or the
+     * {@link MessageBodyCache}, or from the server if not cached.
+     *
+     * <p>Attachment links are built from the current request, this method must be called from a request thread.
+     */
     private void readContentIntoMessage(URLName folderId, @NonNull IMAPMessage imapMessage, @NonNull Message message)
             throws MessagingException, IOException {
 
-        final Object content = imapMessage.getContent();
+        if ((!messageBodyCache.isEnabled() && !messagePrefetchCache.isEnabled())
+                || accountKey == null || message.getUid() == null) {
+            renderContentIntoMessage(imapMessage, message);
+        } else {
+            final IMAPFolder folder = (IMAPFolder) imapMessage.getFolder();
+            final String folderName = folder.getFullName();
+            final long uidValidity = folder.getUIDValidity();
+            Message cached = messagePrefetchCache.take(accountKey, folderName, uidValidity, message.getUid());
+            if (cached == null && messageBodyCache.isEnabled()) {
+                cached = messageBodyCache.get(accountKey, folderName, uidValidity, message.getUid());
+            }
+            if (cached != null) {
+                message.setContent(cached.getContent());
+                message.setAttachments(cached.getAttachments());
+            } else {
+                renderContentIntoMessage(imapMessage, message);
+                messageBodyCache.put(accountKey, folderName, uidValidity, message);
+            }
+        }
+        if (message.getAttachments() != null) {
+            message.setAttachments(addLinks(Folder.toBase64Id(folderId), message, message.getAttachments()));
+        }
+    }
+
+    /**
+     * Renders the content and attachments (without links) of the provided message.
+     *
+     * <p>Doesn't depend on the current request, it's safe to call from background (prefetch) threads.
+     */
+    private void renderContentIntoMessage(@NonNull IMAPMessage imapMessage, @NonNull Message message)
+            throws MessagingException, IOException {
+
+        if (isotopeApiConfiguration.isBodyStructureFirst()) {
+            final long start = System.nanoTime();
+            boolean success = false;
+            final List<Attachment> attachments;
+            try {
+                attachments = BodyStructureReader.read((IMAPFolder) imapMessage.getFolder(),
+                        imapMessage.getMessageNumber(), message,
+                        embeddedImageSizeThreshold());
+                success = true;
+            } finally {
+                mailMetrics.record(MailOperation.FETCH, FETCH_PROFILE_BODYSTRUCTURE, serverHost, endpoint,
+                        System.nanoTime() - start, success);
+            }
+            if (attachments != null) {
+                if (!attachments.isEmpty()) {
+                    message.setAttachments(attachments);
+                }
+                return;
+            }
+        }
+        final Object content = getContent(imapMessage);
         if (content instanceof Multipart) {
-            message.setContent(extractContent((Multipart) content));
-            message.setAttachments(addLinks(Folder.toBase64Id(folderId), message,
-                    extractAttachments(message, (Multipart) content, null)));
+            final MimePartIndex index = MimePartIndex.of((Multipart) content);
+            message.setContent(extractContent(index));
+            message.setAttachments(extractAttachments(message, index));
         } else if (content instanceof MimeMessage
                 && ((MimeMessage) content).getContentType().toLowerCase().contains("html")) {
             message.setContent(content.toString());
@@ -588,18 +1357,4 @@ public class ImapService {
         }
     }
 
-    private static Properties initMailProperties(@NonNull Credentials credentials, MailSSLSocketFactory mailSSLSocketFactory) {
-        final Properties ret = new Properties();
-        ret.put("mail.imap.ssl.enable", credentials.getImapSsl());
-        ret.put("mail.imap.connectiontimeout", DEFAULT_CONNECTION_TIMEOUT);
-        ret.put("mail.imap.connectionpooltimeout", DEFAULT_CONNECTION_TIMEOUT);
-        ret.put("mail.imap.ssl.socketFactory", mailSSLSocketFactory);
-        ret.put("mail.imap.starttls.enable", true);
-        ret.put("mail.imap.starttls.required", false);
-        ret.put("mail.imaps.socketFactory", mailSSLSocketFactory);
-        ret.put("mail.imaps.socketFactory.fallback", false);
-        ret.put("mail.imaps.ssl.socketFactory", mailSSLSocketFactory);
-        return ret;
-    }
-
 }
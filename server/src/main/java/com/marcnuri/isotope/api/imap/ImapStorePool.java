@@ -0,0 +1,464 @@
+/*
+ * ImapStorePool.java
+ *
+ * Created on 2026-10-17, 9:40
+ *
+ * Copyright 2018 Marc Nuri
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.marcnuri.isotope.api.imap;
+
+import com.marcnuri.isotope.api.configuration.IsotopeApiConfiguration;
+import com.marcnuri.isotope.api.credentials.Credentials;
+import com.marcnuri.isotope.api.exception.IsotopeException;
+import com.marcnuri.isotope.api.metrics.MailMetrics;
+import com.marcnuri.isotope.api.metrics.MailOperation;
+import com.sun.mail.imap.IMAPStore;
+import com.sun.mail.util.MailSSLSocketFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.lang.NonNull;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.mail.MessagingException;
+import javax.mail.Session;
+import javax.mail.event.ConnectionAdapter;
+import javax.mail.event.ConnectionEvent;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.marcnuri.isotope.api.configuration.IsotopeApiConfiguration.DEFAULT_CONNECTION_TIMEOUT;
+import static com.marcnuri.isotope.api.credentials.CredentialsUtils.toAccountKey;
+
+/**
+ * Application wide pool of authenticated {@link IMAPStore}s.
+ *
+ * <p>{@link ImapService} instances are request scoped (or prototypes for SSE streams), opening a new store for each
+ * of them means paying a full TCP + TLS + LOGIN handshake for every request. Stores are leased exclusively to a
+ * single ImapService and returned to the pool when the service is destroyed, so that the next request of the same
+ * account can reuse the warm connection.
+ *
+ * <p>Stores are grouped by account key ({@link com.marcnuri.isotope.api.credentials.CredentialsUtils#toAccountKey(Credentials)}),
+ * the number of connections per account can be capped, idle stores are evicted after a timeout and stores that have
+ * been idle for a while are checked (NOOP) before being reused.
+ *
+ * <p>Long-lived streams (folder changes SSE) hold their store for as long as the client stays connected, counting
+ * them towards the per account cap would starve the regular requests of a user with a few open tabs. Stream stores
+ * are borrowed with {@link #borrowStream(Credentials)}, they use a dedicated (non-pooled) connection and are capped
+ * separately.
+ *
+ * <p>Created by Marc Nuri <marc@marcnuri.com> on 2026-10-17.
+ */
+@Component
+public class ImapStorePool {
+
+    private static final Logger log = LoggerFactory.getLogger(ImapStorePool.class);
+
+    private static final String IMAP_PROTOCOL = "imap";
+    private static final String IMAPS_PROTOCOL = "imaps";
+    private static final long MIN_EVICTION_PERIOD = 1000L;
+    private static final String METRIC_STORES_IDLE = "isotope.imap.stores.idle";
+
+    private final MailSSLSocketFactory mailSSLSocketFactory;
+    private final MailMetrics mailMetrics;
+    private final int maxIdle;
+    private final int maxConnectionsPerUser;
+    private final int maxStreamsPerUser;
+    private final long idleTimeout;
+    private final long validationInterval;
+    private final long borrowTimeout;
+
+    private final Map<String, UserPool> pools;
+    private final Map<IMAPStore, PooledStore> leased;
+    private final Map<String, Integer> streams;
+    private final Map<IMAPStore, String> leasedStreams;
+    private final AtomicInteger idleCount;
+    private ScheduledExecutorService evictor;
+    private volatile boolean shutdown;
+
+    @Autowired
+    public ImapStorePool(
+            IsotopeApiConfiguration isotopeApiConfiguration, MailSSLSocketFactory mailSSLSocketFactory,
+            MailMetrics mailMetrics) {
+
+        this.mailSSLSocketFactory = mailSSLSocketFactory;
+        this.mailMetrics = mailMetrics;
+        this.maxIdle = isotopeApiConfiguration.getImapPoolMaxIdle();
+        this.maxConnectionsPerUser = isotopeApiConfiguration.getImapPoolMaxConnectionsPerUser();
+        this.maxStreamsPerUser = isotopeApiConfiguration.getImapPoolMaxStreamsPerUser();
+        this.idleTimeout = isotopeApiConfiguration.getImapPoolIdleTimeout();
+        this.validationInterval = isotopeApiConfiguration.getImapPoolValidationInterval();
+        this.borrowTimeout = isotopeApiConfiguration.getImapPoolBorrowTimeout();
+        pools = new ConcurrentHashMap<>();
+        leased = Collections.synchronizedMap(new IdentityHashMap<>());
+        streams = new ConcurrentHashMap<>();
+        leasedStreams = Collections.synchronizedMap(new IdentityHashMap<>());
+        idleCount = new AtomicInteger();
+        mailMetrics.gauge(METRIC_STORES_IDLE, idleCount, AtomicInteger::get);
+    }
+
+    @PostConstruct
+    public void init() {
+        if (isPoolingEnabled()) {
+            final long period = Math.max(MIN_EVICTION_PERIOD, idleTimeout / 2);
+            evictor = Executors.newSingleThreadScheduledExecutor(r -> {
+                final Thread thread = new Thread(r, "imap-store-pool-evictor");
+                thread.setDaemon(true);
+                return thread;
+            });
+            evictor.scheduleWithFixedDelay(this::evictIdle, period, period, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @PreDestroy
+    public void destroy() {
+        shutdown = true;
+        if (evictor != null) {
+            evictor.shutdownNow();
+        }
+        final List<PooledStore> idle = new ArrayList<>();
+        pools.forEach((key, pool) -> {
+            synchronized (pool) {
+                idle.addAll(pool.idle);
+                pool.open -= pool.idle.size();
+                idleCount.addAndGet(-pool.idle.size());
+                pool.idle.clear();
+            }
+        });
+        idle.forEach(ps -> close(ps.store));
+    }
+
+    /**
+     * Returns a connected {@link IMAPStore} for the provided {@link Credentials}, reusing an idle pooled store of
+     * the same account if available.
+     *
+     * <p>The returned store must be returned with {@link #release(IMAPStore)} once it's no longer in use, all of its
+     * folders must be closed by then.
+     *
+     * @param credentials for IMAP authentication
+     * @return a connected store exclusively leased to the caller
+     * @throws MessagingException if a new connection can't be established
+     * @throws IsotopeException if the account reached its connection limit and none was released in time
+     */
+    public IMAPStore borrow(@NonNull Credentials credentials) throws MessagingException {
+        if (!isPoolingEnabled()) {
+            return connect(credentials);
+        }
+        final String key = toAccountKey(credentials);
+        final long deadline = System.currentTimeMillis() + borrowTimeout;
+        while (true) {
+            final UserPool pool = pools.computeIfAbsent(key, k -> new UserPool());
+            final PooledStore candidate;
+            synchronized (pool) {
+                if (pool.retired) {
+                    continue;
+                }
+                candidate = pool.idle.pollFirst();
+                if (candidate != null) {
+                    idleCount.decrementAndGet();
+                } else if (maxConnectionsPerUser <= 0 || pool.open < maxConnectionsPerUser) {
+                    pool.open++;
+                } else {
+                    awaitRelease(pool, deadline);
+                    continue;
+                }
+            }
+            if (candidate != null) {
+                if (isHealthy(candidate)) {
+                    return lease(candidate);
+                }
+                discard(candidate);
+                continue;
+            }
+            return lease(newPooledStore(pool, credentials));
+        }
+    }
+
+    /**
+     * Returns a new connected {@link IMAPStore} for a long-lived stream of the provided {@link Credentials}.
+     *
+     * <p>Stream stores don't count towards the connection limit of the account, the number of concurrent streams of
+     * the account is capped instead. The returned store must be returned with {@link #release(IMAPStore)} once the
+     * stream completes, it's closed then.
+     *
+     * @param credentials for IMAP authentication
+     * @return a connected store for the exclusive use of the stream
+     * @throws MessagingException if a new connection can't be established
+     * @throws IsotopeException if the account reached its stream limit
+     */
+    public IMAPStore borrowStream(@NonNull Credentials credentials) throws MessagingException {
+        final String key = toAccountKey(credentials);
+        if (streams.merge(key, 1, Integer::sum) > maxStreamsPerUser && maxStreamsPerUser > 0) {
+            releaseStream(key);
+            throw new IsotopeException(HttpStatus.TOO_MANY_REQUESTS,
+                    "Too many concurrent streams for this account, please close some and try again");
+        }
+        try {
+            final IMAPStore ret = connect(credentials);
+            leasedStreams.put(ret, key);
+            return ret;
+        } catch (MessagingException | RuntimeException ex) {
+            releaseStream(key);
+            throw ex;
+        }
+    }
+
+    /**
+     * Returns a store obtained with {@link #borrow(Credentials)} to the pool (or closes a store obtained with
+     * {@link #borrowStream(Credentials)}).
+     *
+     * <p>Stores that are broken, that exceed the pool capacity or that weren't pooled are closed.
+     *
+     * @param store to release
+     */
+    public void release(@NonNull IMAPStore store) {
+        final String streamKey = leasedStreams.remove(store);
+        if (streamKey != null) {
+            releaseStream(streamKey);
+            close(store);
+            return;
+        }
+        final PooledStore pooledStore = leased.remove(store);
+        if (pooledStore == null) {
+            close(store);
+            return;
+        }
+        pooledStore.lastUsed = System.currentTimeMillis();
+        final boolean keep;
+        synchronized (pooledStore.pool) {
+            keep = !pooledStore.broken && !shutdown && idleCount.get() < maxIdle;
+            if (keep) {
+                pooledStore.pool.idle.addFirst(pooledStore);
+                idleCount.incrementAndGet();
+            } else {
+                pooledStore.pool.open--;
+            }
+            pooledStore.pool.notifyAll();
+        }
+        if (!keep) {
+            close(store);
+        }
+    }
+
+    /**
+     * Closes the idle stores that haven't been used within the configured idle timeout or that are known to be
+     * broken.
+     */
+    void evictIdle() {
+        try {
+            final long threshold = System.currentTimeMillis() - idleTimeout;
+            final List<PooledStore> expired = new ArrayList<>();
+            pools.forEach((key, pool) -> {
+                synchronized (pool) {
+                    for (Iterator<PooledStore> it = pool.idle.iterator(); it.hasNext(); ) {
+                        final PooledStore pooledStore = it.next();
+                        if (pooledStore.broken || pooledStore.lastUsed < threshold) {
+                            it.remove();
+                            idleCount.decrementAndGet();
+                            pool.open--;
+                            expired.add(pooledStore);
+                        }
+                    }
+                    if (pool.open <= 0) {
+                        pool.retired = true;
+                        pools.remove(key, pool);
+                    }
+                }
+            });
+            if (!expired.isEmpty()) {
+                log.debug("Evicting {} idle IMAP stores", expired.size());
+            }
+            expired.forEach(ps -> close(ps.store));
+        } catch (RuntimeException ex) {
+            log.error("Error evicting idle IMAP stores", ex);
+        }
+    }
+
+    /**
+     * Closes the idle stores of the provided account (e.g. when the user logs out).
+     *
+     * @param accountKey key of the account (see {@link com.marcnuri.isotope.api.credentials.CredentialsUtils#toAccountKey(Credentials)})
+     */
+    public void evict(@NonNull String accountKey) {
+        final UserPool pool = pools.get(accountKey);
+        if (pool == null) {
+            return;
+        }
+        final List<PooledStore> idle;
+        synchronized (pool) {
+            idle = new ArrayList<>(pool.idle);
+            pool.open -= idle.size();
+            idleCount.addAndGet(-idle.size());
+            pool.idle.clear();
+        }
+        idle.forEach(ps -> close(ps.store));
+    }
+
+    int getIdleCount() {
+        return idleCount.get();
+    }
+
+    /**
+     * Number of stream stores of the provided account currently in use.
+     */
+    int getStreamCount(@NonNull String accountKey) {
+        return streams.getOrDefault(accountKey, 0);
+    }
+
+    private boolean isPoolingEnabled() {
+        return maxIdle > 0;
+    }
+
+    private void awaitRelease(UserPool pool, long deadline) {
+        final long remaining = deadline - System.currentTimeMillis();
+        if (remaining <= 0) {
+            throw new IsotopeException(HttpStatus.TOO_MANY_REQUESTS,
+                    "Too many concurrent connections for this account, please try again later");
+        }
+        try {
+            pool.wait(remaining);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IsotopeException(HttpStatus.SERVICE_UNAVAILABLE, "Interrupted while waiting for a connection", ex);
+        }
+    }
+
+    private void releaseStream(String accountKey) {
+        streams.computeIfPresent(accountKey, (k, count) -> count <= 1 ? null : count - 1);
+    }
+
+    private boolean isHealthy(PooledStore pooledStore) {
+        if (pooledStore.broken) {
+            return false;
+        }
+        if (System.currentTimeMillis() - pooledStore.lastUsed < validationInterval) {
+            return true;
+        }
+        // IMAPStore#isConnected issues a NOOP command to the server
+        return pooledStore.store.isConnected();
+    }
+
+    private IMAPStore lease(PooledStore pooledStore) {
+        leased.put(pooledStore.store, pooledStore);
+        return pooledStore.store;
+    }
+
+    private void discard(PooledStore pooledStore) {
+        synchronized (pooledStore.pool) {
+            pooledStore.pool.open--;
+            pooledStore.pool.notifyAll();
+        }
+        close(pooledStore.store);
+    }
+
+    private PooledStore newPooledStore(UserPool pool, Credentials credentials) throws MessagingException {
+        try {
+            final PooledStore pooledStore = new PooledStore(connect(credentials), pool);
+            pooledStore.store.addConnectionListener(new ConnectionAdapter() {
+                @Override
+                public void disconnected(ConnectionEvent e) {
+                    pooledStore.broken = true;
+                }
+
+                @Override
+                public void closed(ConnectionEvent e) {
+                    pooledStore.broken = true;
+                }
+            });
+            return pooledStore;
+        } catch (MessagingException | RuntimeException ex) {
+            synchronized (pool) {
+                pool.open--;
+                pool.notifyAll();
+            }
+            throw ex;
+        }
+    }
+
+    private IMAPStore connect(Credentials credentials) throws MessagingException {
+        final Session session = Session.getInstance(initMailProperties(credentials, mailSSLSocketFactory), null);
+        final IMAPStore imapStore = (IMAPStore) session.getStore(
+                credentials.getImapSsl() ? IMAPS_PROTOCOL : IMAP_PROTOCOL);
+        mailMetrics.record(MailOperation.CONNECT, credentials.getServerHost(), MailMetrics.currentEndpoint(), () -> {
+            imapStore.connect(
+                    credentials.getServerHost(),
+                    credentials.getServerPort(),
+                    credentials.getUser(),
+                    credentials.getPassword());
+            return null;
+        });
+        mailMetrics.storeOpened();
+        log.debug("Opened new ImapStore session");
+        return imapStore;
+    }
+
+    private void close(IMAPStore store) {
+        mailMetrics.storeClosed();
+        try {
+            store.close();
+        } catch (MessagingException ex) {
+            log.error("Error closing IMAP Store", ex);
+        }
+    }
+
+    private static Properties initMailProperties(@NonNull Credentials credentials, MailSSLSocketFactory mailSSLSocketFactory) {
+        final Properties ret = new Properties();
+        ret.put("mail.imap.ssl.enable", credentials.getImapSsl());
+        ret.put("mail.imap.connectiontimeout", DEFAULT_CONNECTION_TIMEOUT);
+        ret.put("mail.imap.connectionpooltimeout", DEFAULT_CONNECTION_TIMEOUT);
+        ret.put("mail.imap.ssl.socketFactory", mailSSLSocketFactory);
+        ret.put("mail.imap.starttls.enable", true);
+        ret.put("mail.imap.starttls.required", false);
+        ret.put("mail.imaps.socketFactory", mailSSLSocketFactory);
+        ret.put("mail.imaps.socketFactory.fallback", false);
+        ret.put("mail.imaps.ssl.socketFactory", mailSSLSocketFactory);
+        return ret;
+    }
+
+    private static final class UserPool {
+        private final Deque<PooledStore> idle = new ArrayDeque<>();
+        private int open;
+        private boolean retired;
+    }
+
+    private static final class PooledStore {
+        private final IMAPStore store;
+        private final UserPool pool;
+        private volatile long lastUsed;
+        private volatile boolean broken;
+
+        private PooledStore(IMAPStore store, UserPool pool) {
+            this.store = store;
+            this.pool = pool;
+            this.lastUsed = System.currentTimeMillis();
+        }
+    }
+}
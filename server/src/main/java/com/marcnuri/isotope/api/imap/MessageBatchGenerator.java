@@ -0,0 +1,119 @@
+/*
+ * MessageBatchGenerator.java
+ *
+ * Created on 2026-10-17, 18:50
+ *
+ * Copyright 2018 Marc Nuri
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.marcnuri.isotope.api.imap;
+
+import com.marcnuri.isotope.api.credentials.Credentials;
+import com.marcnuri.isotope.api.exception.IsotopeException;
+import com.marcnuri.isotope.api.message.Message;
+import com.sun.mail.imap.IMAPFolder;
+import com.sun.mail.imap.IMAPStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.codec.ServerSentEvent;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.SynchronousSink;
+
+import javax.mail.MessagingException;
+import javax.mail.URLName;
+import java.util.List;
+
+import static com.marcnuri.isotope.api.imap.ImapService.IMAP_CAPABILITY_CONDSTORE;
+import static javax.mail.Folder.READ_ONLY;
+
+/**
+ * Demand driven generator of {@link ServerSentEvent}s with batches of {@link Message}s extracted from the provided
+ * folder starting from the last message (see {@link Flux#generate}).
+ *
+ * <p>A batch is fetched from the IMAP server only when the subscriber requests it, so no more batches than the
+ * requested (plus prefetch) are kept in memory. The IMAP connection is opened with the first request and released
+ * as soon as the Flux completes, fails or is cancelled.
+ *
+ * <p>Created by Marc Nuri <marc@marcnuri.com> on 2026-10-17.
+ */
+public class MessageBatchGenerator {
+
+    private static final Logger log = LoggerFactory.getLogger(MessageBatchGenerator.class);
+
+    private final Credentials credentials;
+    private final URLName folderId;
+    private final ImapService imapService;
+    private final MessageBatchSizer batchSizer;
+
+    private IMAPFolder folder;
+    private boolean fetchModseq;
+    private int end;
+
+    MessageBatchGenerator(
+            Credentials credentials, URLName folderId, ImapService imapService, MessageBatchSizer batchSizer) {
+
+        this.credentials = credentials;
+        this.folderId = folderId;
+        this.imapService = imapService;
+        this.batchSizer = batchSizer;
+    }
+
+    /**
+     * Returns a {@link Flux} that will generate a batch of messages for each requested element.
+     */
+    Flux<ServerSentEvent<List<Message>>> flux() {
+        return Flux.generate(() -> this, MessageBatchGenerator::next, MessageBatchGenerator::close);
+    }
+
+    private MessageBatchGenerator next(SynchronousSink<ServerSentEvent<List<Message>>> sink) {
+        try {
+            if (folder == null) {
+                open();
+            } else if (end <= 0) {
+                sink.complete();
+                return this;
+            }
+            final int start = Math.max(end - batchSizer.getBatchSize() + 1, 1);
+            log.debug("Getting message batch for folder {} [{}-{}]", folder.getName(), start, end);
+            final long fetchStart = System.nanoTime();
+            final List<Message> messages = imapService.getMessages(folder, start, end, fetchModseq);
+            batchSizer.record(messages, System.nanoTime() - fetchStart);
+            sink.next(ServerSentEvent.builder(messages).id(String.valueOf(start)).build());
+            end = start - 1;
+        } catch (MessagingException | IsotopeException ex) {
+            log.error("Error loading messages for folder: " + folderId.toString(), ex);
+            sink.error(ex);
+        }
+        return this;
+    }
+
+    private void open() throws MessagingException {
+        final IMAPStore store = imapService.getImapStore(credentials);
+        fetchModseq = store.hasCapability(IMAP_CAPABILITY_CONDSTORE);
+        folder = imapService.getFolder(credentials, folderId);
+        imapService.open(folder, READ_ONLY);
+        // From end to beginning
+        end = folder.getMessageCount();
+    }
+
+    /**
+     * Call {@link ImapService#destroy()} method in order to close the folder and release the connection as current
+     * instance is a Spring Bean Prototype.
+     */
+    private void close() {
+        folder = null;
+        imapService.destroy();
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * MessageBatchSizer.java
+ *
+ * Created on 2026-10-17, 19:30
+ *
+ * Copyright 2018 Marc Nuri
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.marcnuri.isotope.api.imap;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.marcnuri.isotope.api.message.Message;
+import org.apache.commons.io.output.CountingOutputStream;
+import org.apache.commons.io.output.NullOutputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Computes the size of the next batch of messages to fetch for a message listing.
+ *
+ * <p>The first batch is small so that the client can render the first messages as soon as possible. Subsequent
+ * batch sizes are computed from the measured FETCH time and JSON size per message (exponentially weighted moving
+ * averages) so that every batch takes about the target latency and stays under the byte budget. Batches may shrink
+ * immediately but only grow gradually.
+ *
+ * <p>Created by Marc Nuri <marc@marcnuri.com> on 2026-10-17.
+ */
+class MessageBatchSizer {
+
+    private static final Logger log = LoggerFactory.getLogger(MessageBatchSizer.class);
+
+    static final int INITIAL_BATCH_SIZE = 20;
+    static final int MIN_BATCH_SIZE = 10;
+    static final int MAX_BATCH_SIZE = 2000;
+    private static final int MAX_GROWTH_FACTOR = 4;
+    private static final double EWMA_WEIGHT = 0.5D;
+    private static final int SERIALIZED_SIZE_SAMPLE = 16;
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper().findAndRegisterModules();
+
+    private final long targetLatencyNanos;
+    private final long maxBatchBytes;
+    private int batchSize;
+    private double nanosPerMessage;
+    private double bytesPerMessage;
+
+    /**
+     * @param targetLatencyMillis target time in milliseconds to fetch a batch
+     * @param maxBatchBytes max JSON size in bytes of a batch
+     */
+    MessageBatchSizer(long targetLatencyMillis, long maxBatchBytes) {
+        this.targetLatencyNanos = TimeUnit.MILLISECONDS.toNanos(targetLatencyMillis);
+        this.maxBatchBytes = maxBatchBytes;
+        this.batchSize = INITIAL_BATCH_SIZE;
+        this.nanosPerMessage = -1D;
+        this.bytesPerMessage = -1D;
+    }
+
+    int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * Records the time spent fetching the provided batch of messages and its serialized size and computes the size of
+     * the next batch.
+     *
+     * @param messages fetched batch
+     * @param elapsedNanos time spent fetching the batch
+     */
+    void record(List<Message> messages, long elapsedNanos) {
+        if (!messages.isEmpty()) {
+            record(messages.size(), elapsedNanos, estimateSerializedSize(messages));
+        }
+    }
+
+    void record(int messageCount, long elapsedNanos, long bytes) {
+        if (messageCount <= 0) {
+            return;
+        }
+        nanosPerMessage = ewma(nanosPerMessage, (double) elapsedNanos / messageCount);
+        bytesPerMessage = ewma(bytesPerMessage, (double) bytes / messageCount);
+        final double byLatency = targetLatencyNanos / Math.max(nanosPerMessage, 1D);
+        final double byBytes = maxBatchBytes / Math.max(bytesPerMessage, 1D);
+        final long next = (long) Math.min(Math.min(byLatency, byBytes), (double) batchSize * MAX_GROWTH_FACTOR);
+        batchSize = (int) Math.max(MIN_BATCH_SIZE, Math.min(MAX_BATCH_SIZE, next));
+    }
+
+    private static double ewma(double average, double value) {
+        return average < 0 ? value : EWMA_WEIGHT * value + (1D - EWMA_WEIGHT) * average;
+    }
+
+    /**
+     * Serializes a sample of the provided messages (without buffering the output) and extrapolates the size.
+     */
+    private static long estimateSerializedSize(List<Message> messages) {
+        final int sampleSize = Math.min(messages.size(), SERIALIZED_SIZE_SAMPLE);
+        try (CountingOutputStream counter = new CountingOutputStream(NullOutputStream.NULL_OUTPUT_STREAM)) {
+            OBJECT_MAPPER.writeValue(counter, messages.subList(0, sampleSize));
+            return counter.getByteCount() * messages.size() / sampleSize;
+        } catch (IOException ex) {
+            log.debug("Error estimating message batch size ({})", ex.getMessage());
+            return 0L;
+        }
+    }
+}
@@ -0,0 +1,296 @@
+/*
+ * MessagePartWriter.java
+ *
+ * Created on 2026-10-17, 16:55
+ *
+ * Copyright 2018 Marc Nuri
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.marcnuri.isotope.api.imap;
+
+import com.sun.mail.imap.IMAPFolder;
+import com.sun.mail.imap.protocol.BODYSTRUCTURE;
+import org.apache.commons.io.IOUtils;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
+import org.springframework.http.HttpStatus;
+import org.springframework.lang.NonNull;
+import org.springframework.lang.Nullable;
+
+import javax.mail.MessagingException;
+import javax.mail.internet.MimeUtility;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Writes the content of a single MIME part of a message to a {@link HttpServletResponse} streaming it directly from
+ * the IMAP server (see {@link ImapPartInputStream}).
+ *
+ * <p>Parts without transfer encoding (7bit, 8bit, binary) and base64 parts with fixed length lines support single
+ * HTTP byte ranges, decoded offsets of base64 content are mapped to encoded offsets so that only the requested
+ * portion of the part is fetched. Any other part is decoded and streamed completely.
+ *
+ * <p>Created by Marc Nuri <marc@marcnuri.com> on 2026-10-17.
+ */
+final class MessagePartWriter {
+
+    private static final String ENCODING_BASE64 = "base64";
+    private static final String BYTES_UNIT = "bytes";
+    private static final int BASE64_PROBE_SIZE = 1024;
+
+    private MessagePartWriter() {
+    }
+
+    /**
+     * Returns the {@link BODYSTRUCTURE} for the provided IMAP part path (e.g. 2.1) or null if the message has no such
+     * part.
+     *
+     * @param root BODYSTRUCTURE of the message
+     * @param partPath IMAP section part specifier
+     * @return the BODYSTRUCTURE for the part or null if not found
+     */
+    @Nullable
+    static BODYSTRUCTURE findPart(@NonNull BODYSTRUCTURE root, @NonNull String partPath) {
+        BODYSTRUCTURE current = root;
+        boolean isRoot = true;
+        for (String segment : partPath.split("\\.")) {
+            final int index;
+            try {
+                index = Integer.parseInt(segment) - 1;
+            } catch (NumberFormatException ex) {
+                return null;
+            }
+            if (index < 0 || current == null) {
+                return null;
+            }
+            // Parts of an encapsulated message (message/rfc822) refer to the parts of its body
+            final BODYSTRUCTURE container = !isRoot && current.isNested() && current.bodies != null
+                    && current.bodies.length > 0 ? current.bodies[0] : current;
+            if (container.isMulti()) {
+                current = container.bodies != null && index < container.bodies.length ?
+                        container.bodies[index] : null;
+            } else if (index == 0 && (isRoot || container != current)) {
+                // Non multipart messages have a single part 1
+                current = container;
+            } else {
+                return null;
+            }
+            isRoot = false;
+        }
+        return current;
+    }
+
+    static void write(
+            @NonNull HttpServletResponse response, @NonNull IMAPFolder folder, int messageNumber,
+            @NonNull String partPath, @NonNull BODYSTRUCTURE part, @Nullable String rangeHeader)
+            throws MessagingException, IOException {
+
+        response.setContentType(contentType(part));
+        final String encoding = part.encoding == null ? null : part.encoding.trim().toLowerCase(Locale.ROOT);
+        if (isIdentityEncoding(encoding) && part.size >= 0) {
+            writeRange(response, rangeHeader, part.size,
+                    start -> new ImapPartInputStream(folder, messageNumber, partPath, start, -1));
+            return;
+        }
+        final Base64Layout layout = ENCODING_BASE64.equals(encoding) && part.size > 0 ?
+                base64Layout(folder, messageNumber, partPath, part.size) : null;
+        if (layout != null) {
+            writeRange(response, rangeHeader, layout.decodedSize, start -> {
+                final long line = start / layout.decodedLineSize;
+                final InputStream ret = decode(new ImapPartInputStream(
+                        folder, messageNumber, partPath, line * layout.lineStride, -1), ENCODING_BASE64);
+                IOUtils.skipFully(ret, start - line * layout.decodedLineSize);
+                return ret;
+            });
+        } else {
+            final OutputStream out = response.getOutputStream();
+            try (InputStream is = decode(
+                    new ImapPartInputStream(folder, messageNumber, partPath, 0, -1), encoding)) {
+                IOUtils.copyLarge(is, out);
+            }
+            out.flush();
+        }
+    }
+
+    private static void writeRange(
+            HttpServletResponse response, @Nullable String rangeHeader, long length, RangeOpener opener)
+            throws IOException {
+
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, BYTES_UNIT);
+        final HttpRange range = parseRange(rangeHeader);
+        long start = 0;
+        long end = length - 1;
+        if (range != null) {
+            start = range.getRangeStart(length);
+            end = range.getRangeEnd(length);
+            if (start >= length || start > end) {
+                response.setStatus(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE.value());
+                response.setHeader(HttpHeaders.CONTENT_RANGE, BYTES_UNIT + " */" + length);
+                return;
+            }
+            response.setStatus(HttpStatus.PARTIAL_CONTENT.value());
+            response.setHeader(HttpHeaders.CONTENT_RANGE,
+                    BYTES_UNIT + " " + start + "-" + end + "/" + length);
+        }
+        final long count = end - start + 1;
+        response.setContentLengthLong(count);
+        if (count > 0) {
+            final OutputStream out = response.getOutputStream();
+            try (InputStream is = opener.open(start)) {
+                IOUtils.copyLarge(is, out, 0, count);
+            }
+            out.flush();
+        }
+    }
+
+    /**
+     * Only single ranges are supported, multiple or invalid ranges are ignored and the full content is returned.
+     */
+    @Nullable
+    private static HttpRange parseRange(@Nullable String rangeHeader) {
+        try {
+            final List<HttpRange> ranges = HttpRange.parseRanges(rangeHeader);
+            return ranges.size() == 1 ? ranges.get(0) : null;
+        } catch (IllegalArgumentException ex) {
+            return null;
+        }
+    }
+
+    private static InputStream decode(InputStream is, @Nullable String encoding) throws IOException {
+        if (isIdentityEncoding(encoding)) {
+            return is;
+        }
+        try {
+            return MimeUtility.decode(is, encoding);
+        } catch (MessagingException ex) {
+            throw new IOException(ex.getMessage(), ex);
+        }
+    }
+
+    private static boolean isIdentityEncoding(@Nullable String encoding) {
+        return encoding == null || encoding.isEmpty() || encoding.equals("7bit") || encoding.equals("8bit")
+                || encoding.equals("binary");
+    }
+
+    private static String contentType(BODYSTRUCTURE part) {
+        final StringBuilder ret = new StringBuilder();
+        ret.append(part.type == null ? "application" : part.type.toLowerCase(Locale.ROOT)).append('/')
+                .append(part.subtype == null ? "octet-stream" : part.subtype.toLowerCase(Locale.ROOT));
+        final String charset = part.cParams == null ? null : part.cParams.get("charset");
+        if (charset != null) {
+            ret.append("; charset=").append(charset);
+        }
+        return ret.toString();
+    }
+
+    /**
+     * Retrieves the first line and the tail of the encoded part to compute its {@link Base64Layout}.
+     */
+    @Nullable
+    private static Base64Layout base64Layout(IMAPFolder folder, int messageNumber, String partPath, long size)
+            throws IOException {
+
+        final byte[] head = IOUtils.toByteArray(new ImapPartInputStream(
+                folder, messageNumber, partPath, 0, Math.min(size, BASE64_PROBE_SIZE)));
+        final long tailOffset = Math.max(0, size - BASE64_PROBE_SIZE);
+        final byte[] tail = tailOffset == 0 ? head : IOUtils.toByteArray(new ImapPartInputStream(
+                folder, messageNumber, partPath, tailOffset, size));
+        return base64Layout(head, tail, tailOffset, size);
+    }
+
+    /**
+     * Computes the line layout of base64 encoded content with lines of the same length (all but the last one), or
+     * returns null if the layout can't be determined from the first and last bytes of the content.
+     *
+     * @param head first bytes of the encoded content
+     * @param tail last bytes of the encoded content
+     * @param tailOffset offset of the tail in the encoded content
+     * @param size total size of the encoded content
+     * @return the layout of the encoded content or null if the content has no fixed length lines
+     */
+    @Nullable
+    static Base64Layout base64Layout(@NonNull byte[] head, @NonNull byte[] tail, long tailOffset, long size) {
+        int tailEnd = tail.length;
+        while (tailEnd > 0 && Character.isWhitespace(tail[tailEnd - 1])) {
+            tailEnd--;
+        }
+        int lastLineFeed = tailEnd - 1;
+        while (lastLineFeed >= 0 && tail[lastLineFeed] != '\n') {
+            lastLineFeed--;
+        }
+        final int firstLineFeed = indexOf(head, (byte) '\n');
+        final int lineChars;
+        final int lineStride;
+        if (firstLineFeed < 0 || tailOffset + tailEnd <= firstLineFeed) {
+            // Single line content
+            if (tailOffset != 0 || tailEnd % 4 != 0) {
+                return null;
+            }
+            lineChars = Math.max(tailEnd, 4);
+            lineStride = lineChars;
+        } else {
+            final int eolLength = firstLineFeed > 0 && head[firstLineFeed - 1] == '\r' ? 2 : 1;
+            lineChars = firstLineFeed + 1 - eolLength;
+            lineStride = lineChars + eolLength;
+        }
+        final long lastLineStart = lastLineFeed < 0 ? tailOffset : tailOffset + lastLineFeed + 1;
+        final int lastLineChars = tailEnd - (lastLineFeed + 1);
+        if (lineChars <= 0 || lineChars % 4 != 0 || lastLineStart % lineStride != 0
+                || lastLineChars % 4 != 0 || lastLineChars > lineChars || (lastLineFeed < 0 && tailOffset != 0)) {
+            return null;
+        }
+        int padding = 0;
+        for (int it = tailEnd - 1; it >= tailEnd - lastLineChars && it >= tailEnd - 2 && tail[it] == '='; it--) {
+            padding++;
+        }
+        final int decodedLineSize = lineChars / 4 * 3;
+        final long decodedSize = (lastLineStart / lineStride) * decodedLineSize
+                + lastLineChars / 4 * 3 - padding;
+        return new Base64Layout(decodedLineSize, lineStride, decodedSize);
+    }
+
+    private static int indexOf(byte[] bytes, byte b) {
+        for (int it = 0; it < bytes.length; it++) {
+            if (bytes[it] == b) {
+                return it;
+            }
+        }
+        return -1;
+    }
+
+    @FunctionalInterface
+    private interface RangeOpener {
+        InputStream open(long start) throws IOException;
+    }
+
+    /**
+     * Line layout of base64 encoded content.
+     */
+    static final class Base64Layout {
+        final int decodedLineSize;
+        final int lineStride;
+        final long decodedSize;
+
+        private Base64Layout(int decodedLineSize, int lineStride, long decodedSize) {
+            this.decodedLineSize = decodedLineSize;
+            this.lineStride = lineStride;
+            this.decodedSize = decodedSize;
+        }
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ * MessagePrefetcher.java
+ *
+ * Created on 2026-10-18, 16:35
+ *
+ * Copyright 2018 Marc Nuri
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.marcnuri.isotope.api.imap;
+
+import com.marcnuri.isotope.api.configuration.IsotopeApiConfiguration;
+import com.marcnuri.isotope.api.credentials.Credentials;
+import com.marcnuri.isotope.api.message.MessagePrefetchCache;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.lang.NonNull;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import javax.mail.MessagingException;
+import javax.mail.URLName;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.marcnuri.isotope.api.configuration.WebConfiguration.IMAP_SERVICE_PROTOTYPE;
+import static com.marcnuri.isotope.api.credentials.CredentialsUtils.toAccountKey;
+
+/**
+ * Renders the bodies of the unread messages adjacent to the message opened by a user in the background, so that
+ * navigating to the next (or previous) message is served from the {@link MessagePrefetchCache}.
+ *
+ * <p>Prefetch tasks run in a small pool of low priority daemon threads, each task uses its own prototype
+ * {@link ImapService} (and a pooled {@link com.sun.mail.imap.IMAPStore}). The number of tasks of a single account
+ * running or waiting for a thread is capped, further prefetch requests for that account are ignored, and the bytes
+ * retained for each account are bounded by the {@link MessagePrefetchCache}.
+ *
+ * <p>Created by Marc Nuri <marc@marcnuri.com> on 2026-10-18.
+ */
+@Component
+public class MessagePrefetcher {
+
+    private static final Logger log = LoggerFactory.getLogger(MessagePrefetcher.class);
+
+    private static final String THREAD_PREFIX = "isotope-prefetch-";
+    private static final long KEEP_ALIVE_SECONDS = 60L;
+
+    private final ObjectFactory<ImapService> imapServiceFactory;
+    private final int adjacentMessages;
+    private final int maxConcurrentPerUser;
+    private final Map<String, Integer> pending;
+    private final ExecutorService executor;
+
+    @Autowired
+    public MessagePrefetcher(
+            IsotopeApiConfiguration isotopeApiConfiguration, MessagePrefetchCache messagePrefetchCache,
+            @Qualifier(IMAP_SERVICE_PROTOTYPE) ObjectFactory<ImapService> imapServiceFactory) {
+
+        this.imapServiceFactory = imapServiceFactory;
+        this.adjacentMessages = messagePrefetchCache.isEnabled() ?
+                isotopeApiConfiguration.getPrefetchAdjacentMessages() : 0;
+        this.maxConcurrentPerUser = isotopeApiConfiguration.getPrefetchMaxConcurrentPerUser();
+        this.pending = new ConcurrentHashMap<>();
+        if (isEnabled()) {
+            final int maxThreads = Math.max(1, isotopeApiConfiguration.getPrefetchMaxThreads());
+            final AtomicInteger counter = new AtomicInteger();
+            final ThreadPoolExecutor threadPoolExecutor = new ThreadPoolExecutor(maxThreads, maxThreads,
+                    KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r -> {
+                final Thread thread = new Thread(r, THREAD_PREFIX + counter.incrementAndGet());
+                thread.setDaemon(true);
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            });
+            threadPoolExecutor.allowCoreThreadTimeOut(true);
+            executor = threadPoolExecutor;
+        } else {
+            executor = null;
+        }
+    }
+
+    public boolean isEnabled() {
+        return adjacentMessages > 0;
+    }
+
+    /**
+     * Schedules the prefetch of the unread messages adjacent to the provided message.
+     *
+     * <p>The request is ignored if prefetching is disabled or the account already reached its limit of concurrent
+     * prefetch tasks. Failures are logged and ignored.
+     *
+     * @param credentials to authenticate the user in the IMAP server
+     * @param folderId name of the folder containing the message
+     * @param uid of the message opened by the user
+     */
+    public void prefetch(@NonNull Credentials credentials, @NonNull URLName folderId, long uid) {
+        if (!isEnabled()) {
+            return;
+        }
+        final String accountKey = toAccountKey(credentials);
+        if (pending.merge(accountKey, 1, Integer::sum) > maxConcurrentPerUser) {
+            release(accountKey);
+            return;
+        }
+        try {
+            executor.execute(() -> {
+                final ImapService imapService = imapServiceFactory.getObject();
+                try {
+                    final int prefetched = imapService.prefetchMessages(credentials, folderId, uid, adjacentMessages);
+                    log.debug("Prefetched {} messages adjacent to {} in folder {}", prefetched, uid, folderId);
+                } catch (MessagingException | IOException | RuntimeException ex) {
+                    log.debug("Error prefetching messages adjacent to {} in folder {}", uid, folderId, ex);
+                } finally {
+                    // Prototype bean, must be manually destroyed
+                    imapService.destroy();
+                    release(accountKey);
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            release(accountKey);
+        }
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Number of prefetch tasks of the provided account running or waiting for a thread.
+     */
+    int getPendingTasks(@NonNull String accountKey) {
+        return pending.getOrDefault(accountKey, 0);
+    }
+
+    private void release(String accountKey) {
+        pending.computeIfPresent(accountKey, (k, tasks) -> tasks <= 1 ? null : tasks - 1);
+    }
+}
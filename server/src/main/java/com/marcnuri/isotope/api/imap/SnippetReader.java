@@ -0,0 +1,258 @@
+/*
+ * SnippetReader.java
+ *
+ * Created on 2026-10-18, 13:20
+ *
+ * Copyright 2018 Marc Nuri
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.marcnuri.isotope.api.imap;
+
+import com.sun.mail.iap.Response;
+import com.sun.mail.imap.IMAPFolder;
+import com.sun.mail.imap.protocol.BODY;
+import com.sun.mail.imap.protocol.BODYSTRUCTURE;
+import com.sun.mail.imap.protocol.FetchResponse;
+import com.sun.mail.imap.protocol.Item;
+import com.sun.mail.imap.protocol.MessageSet;
+import org.apache.commons.io.IOUtils;
+import org.springframework.lang.NonNull;
+import org.springframework.lang.Nullable;
+import org.springframework.web.util.HtmlUtils;
+
+import javax.mail.MessagingException;
+import javax.mail.internet.MimeUtility;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Pattern;
+
+import static com.marcnuri.isotope.api.imap.BodyStructureReader.charset;
+import static com.marcnuri.isotope.api.imap.BodyStructureReader.encoding;
+import static com.marcnuri.isotope.api.imap.BodyStructureReader.isAttachment;
+import static com.marcnuri.isotope.api.imap.BodyStructureReader.isType;
+import static com.marcnuri.isotope.api.imap.BodyStructureReader.partPath;
+
+/**
+ * Reads short plain text previews (snippets) of a set of messages.
+ *
+ * <p>The BODYSTRUCTURE of all the messages is retrieved with a single FETCH command and the first text/plain part
+ * (text/html as a fallback) of each message is located. Only the first bytes of that part are then fetched
+ * (BODY.PEEK[part]&lt;0.size&gt;) issuing a single FETCH command for every group of messages sharing the same
+ * part path, so a batch is usually resolved with two or three round trips.
+ *
+ * <p>Created by Marc Nuri <marc@marcnuri.com> on 2026-10-18.
+ */
+final class SnippetReader {
+
+    static final int SNIPPET_MAX_LENGTH = 200;
+
+    private static final String TYPE_TEXT = "text";
+    private static final String SUBTYPE_HTML = "html";
+    private static final String SUBTYPE_PLAIN = "plain";
+    private static final String SECTION_TEXT = "TEXT";
+    private static final String ENCODING_BASE64 = "base64";
+    private static final String ENCODING_QUOTED_PRINTABLE = "quoted-printable";
+    private static final Pattern NON_BASE64 = Pattern.compile("[^A-Za-z0-9+/=]");
+    private static final Pattern HTML_HIDDEN_BLOCKS = Pattern.compile(
+            "<(head|title|style|script)\\b[^>]*>.*?(</\\1\\s*>|$)", Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+    private static final Pattern HTML_COMMENTS = Pattern.compile("<!--.*?(-->|$)", Pattern.DOTALL);
+    // Partial content may end with an incomplete tag
+    private static final Pattern HTML_TAGS = Pattern.compile("<[^>]*(>|$)");
+    private static final Pattern WHITESPACE = Pattern.compile("[\\s\\u00A0]+");
+
+    private SnippetReader() {
+    }
+
+    /**
+     * Reads the snippets of the provided messages.
+     *
+     * @param folder open folder containing the messages
+     * @param messageNumbers sequence numbers of the messages
+     * @param partialSize max number of bytes of the text part to fetch for each message
+     * @return map of message number to snippet, empty snippet if the message has no text content. Messages whose
+     * structure couldn't be retrieved (e.g. expunged) are not included.
+     * @throws MessagingException for any IMAP failure
+     */
+    @NonNull
+    static Map<Integer, String> read(@NonNull IMAPFolder folder, @NonNull int[] messageNumbers, int partialSize)
+            throws MessagingException {
+
+        final Map<Integer, String> ret = new HashMap<>();
+        if (messageNumbers.length == 0 || partialSize <= 0) {
+            return ret;
+        }
+        final Map<Integer, BODYSTRUCTURE> textParts = new HashMap<>();
+        final Map<String, List<Integer>> sections = new TreeMap<>();
+        for (Map.Entry<Integer, BODYSTRUCTURE> entry :
+                fetch(folder, messageNumbers, "BODYSTRUCTURE", BODYSTRUCTURE.class).entrySet()) {
+
+            final TextPart textPart = findTextPart(entry.getValue());
+            if (textPart == null) {
+                ret.put(entry.getKey(), "");
+            } else {
+                textParts.put(entry.getKey(), textPart.part);
+                sections.computeIfAbsent(textPart.partPath, k -> new ArrayList<>()).add(entry.getKey());
+            }
+        }
+        for (Map.Entry<String, List<Integer>> section : sections.entrySet()) {
+            final int[] sectionMessageNumbers = section.getValue().stream().mapToInt(Integer::intValue).toArray();
+            final String item = String.format("BODY.PEEK[%s]<0.%s>", section.getKey(), partialSize);
+            for (Map.Entry<Integer, BODY> body : fetch(folder, sectionMessageNumbers, item, BODY.class).entrySet()) {
+                final BODYSTRUCTURE part = textParts.get(body.getKey());
+                final byte[] data = body.getValue().getByteArray() == null ?
+                        new byte[0] : body.getValue().getByteArray().getNewBytes();
+                ret.put(body.getKey(),
+                        toSnippet(data, encoding(part), charset(part), isType(part, TYPE_TEXT, SUBTYPE_HTML)));
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Converts the (probably truncated) raw content of a text part into a single line plain text snippet of
+     * {@link #SNIPPET_MAX_LENGTH} characters max.
+     */
+    @NonNull
+    static String toSnippet(@NonNull byte[] data, @Nullable String encoding, @NonNull Charset charset, boolean html) {
+        String ret = new String(decode(data, encoding), charset);
+        // Partial content may end with an incomplete multi-byte character
+        int end = ret.length();
+        while (end > 0 && ret.charAt(end - 1) == '\uFFFD') {
+            end--;
+        }
+        ret = ret.substring(0, end);
+        if (html) {
+            ret = HTML_HIDDEN_BLOCKS.matcher(ret).replaceAll(" ");
+            ret = HTML_COMMENTS.matcher(ret).replaceAll(" ");
+            ret = HTML_TAGS.matcher(ret).replaceAll(" ");
+            ret = HtmlUtils.htmlUnescape(ret);
+        }
+        ret = WHITESPACE.matcher(ret).replaceAll(" ").trim();
+        if (ret.length() > SNIPPET_MAX_LENGTH) {
+            end = Character.isHighSurrogate(ret.charAt(SNIPPET_MAX_LENGTH - 1)) ?
+                    SNIPPET_MAX_LENGTH - 1 : SNIPPET_MAX_LENGTH;
+            ret = ret.substring(0, end).trim();
+        }
+        return ret;
+    }
+
+    /**
+     * Decodes the provided partial content, incomplete trailing base64 quantums and quoted-printable escape
+     * sequences are discarded.
+     */
+    private static byte[] decode(byte[] data, @Nullable String encoding) {
+        try {
+            if (ENCODING_BASE64.equals(encoding)) {
+                final String base64 = NON_BASE64.matcher(new String(data, StandardCharsets.US_ASCII)).replaceAll("");
+                return Base64.getDecoder().decode(base64.substring(0, base64.length() - base64.length() % 4));
+            }
+            byte[] encoded = data;
+            if (ENCODING_QUOTED_PRINTABLE.equals(encoding)) {
+                for (int it = Math.max(0, data.length - 2); it < data.length; it++) {
+                    if (data[it] == '=') {
+                        encoded = Arrays.copyOf(data, it);
+                        break;
+                    }
+                }
+            }
+            return encoding == null ? encoded :
+                    IOUtils.toByteArray(MimeUtility.decode(new ByteArrayInputStream(encoded), encoding));
+        } catch (IllegalArgumentException | MessagingException | IOException ex) {
+            return new byte[0];
+        }
+    }
+
+    /**
+     * Fetches the provided item for the specified messages with a single FETCH command.
+     *
+     * @return map of message number to fetched item
+     */
+    @SuppressWarnings("unchecked")
+    private static <T extends Item> Map<Integer, T> fetch(
+            IMAPFolder folder, int[] messageNumbers, String item, Class<T> itemType) throws MessagingException {
+
+        final int[] sortedMessageNumbers = messageNumbers.clone();
+        Arrays.sort(sortedMessageNumbers);
+        final MessageSet[] messageSets = MessageSet.createMessageSets(sortedMessageNumbers);
+        return (Map<Integer, T>) folder.doCommand(p -> {
+            final Response[] r = p.fetch(messageSets, item);
+            p.notifyResponseHandlers(r);
+            final Response response = r[r.length - 1];
+            // NO response, some of the messages may have been expunged
+            if (!response.isNO()) {
+                p.handleResult(response);
+            }
+            final Map<Integer, T> ret = new HashMap<>();
+            for (Response fetchResponse : r) {
+                final T value = fetchResponse instanceof FetchResponse ?
+                        ((FetchResponse) fetchResponse).getItem(itemType) : null;
+                if (value != null) {
+                    ret.put(((FetchResponse) fetchResponse).getNumber(), value);
+                }
+            }
+            return ret;
+        });
+    }
+
+    /**
+     * First text/plain part will be selected, first text/html part is used as a fallback.
+     */
+    @Nullable
+    private static TextPart findTextPart(BODYSTRUCTURE root) {
+        if (!root.isMulti()) {
+            return isType(root, TYPE_TEXT) ? new TextPart(SECTION_TEXT, root) : null;
+        }
+        final TextPart plain = findTextPart(root, null, SUBTYPE_PLAIN);
+        return plain != null ? plain : findTextPart(root, null, SUBTYPE_HTML);
+    }
+
+    @Nullable
+    private static TextPart findTextPart(
+            BODYSTRUCTURE multipart, @Nullable String parentPartPath, String subtype) {
+
+        for (int it = 0; it < multipart.bodies.length; it++) {
+            final BODYSTRUCTURE part = multipart.bodies[it];
+            final String partPath = partPath(parentPartPath, it);
+            if (part.isMulti()) {
+                final TextPart nested = findTextPart(part, partPath, subtype);
+                if (nested != null) {
+                    return nested;
+                }
+            } else if (!isAttachment(part) && isType(part, TYPE_TEXT, subtype)) {
+                return new TextPart(partPath, part);
+            }
+        }
+        return null;
+    }
+
+    private static final class TextPart {
+        private final String partPath;
+        private final BODYSTRUCTURE part;
+
+        private TextPart(String partPath, BODYSTRUCTURE part) {
+            this.partPath = partPath;
+            this.part = part;
+        }
+    }
+}
@@ -0,0 +1,237 @@
+/*
+ * UidSet.java
+ *
+ * Created on 2026-10-17, 20:20
+ *
+ * Copyright 2018 Marc Nuri
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.marcnuri.isotope.api.imap;
+
+import com.marcnuri.isotope.api.exception.InvalidFieldException;
+import com.sun.mail.imap.protocol.UIDSet;
+import org.springframework.lang.NonNull;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * Immutable set of message UIDs stored as a sorted list of non overlapping ranges.
+ *
+ * <p>Sets can be parsed from and are serialized to the IMAP sequence set syntax (e.g. <code>1:500,600</code>) so
+ * that bulk operations on thousands of consecutive messages result in a single short IMAP command.
+ *
+ * <p>Created by Marc Nuri <marc@marcnuri.com> on 2026-10-17.
+ */
+public final class UidSet {
+
+    private static final UidSet EMPTY = new UidSet(new long[0], new long[0]);
+    private static final char RANGE_SEPARATOR = ':';
+    private static final char SET_SEPARATOR = ',';
+    // RFC 3501, nz-number (32 bit unsigned)
+    private static final long MAX_UID = 0xFFFFFFFFL;
+
+    private final long[] starts;
+    private final long[] ends;
+
+    private UidSet(long[] starts, long[] ends) {
+        this.starts = starts;
+        this.ends = ends;
+    }
+
+    /**
+     * Parses a UID set in IMAP sequence set syntax (e.g. <code>1:500,600</code>). Ranges may be reversed
+     * (<code>500:1</code>), overlap or be out of order.
+     *
+     * @param uidSet the set to parse
+     * @return the parsed UidSet
+     * @throws InvalidFieldException if the provided String is not a valid UID set
+     */
+    @NonNull
+    public static UidSet parse(@NonNull String uidSet) {
+        final String[] tokens = uidSet.split(String.valueOf(SET_SEPARATOR));
+        final long[] starts = new long[tokens.length];
+        final long[] ends = new long[tokens.length];
+        int count = 0;
+        for (String token : tokens) {
+            final String trimmed = token.trim();
+            if (trimmed.isEmpty()) {
+                continue;
+            }
+            final int separator = trimmed.indexOf(RANGE_SEPARATOR);
+            final long first = parseUid(uidSet, separator < 0 ? trimmed : trimmed.substring(0, separator));
+            final long last = separator < 0 ? first : parseUid(uidSet, trimmed.substring(separator + 1));
+            starts[count] = Math.min(first, last);
+            ends[count] = Math.max(first, last);
+            count++;
+        }
+        return normalize(starts, ends, count);
+    }
+
+    /**
+     * Parses and merges each of the provided UID sets (see {@link #parse(String)}).
+     */
+    @NonNull
+    public static UidSet parse(@NonNull Collection<String> uidSets) {
+        return parse(String.join(String.valueOf(SET_SEPARATOR), uidSets));
+    }
+
+    @NonNull
+    public static UidSet of(long... uids) {
+        final long[] sorted = Arrays.copyOf(uids, uids.length);
+        Arrays.sort(sorted);
+        for (long uid : sorted) {
+            validateUid(String.valueOf(uid), uid);
+        }
+        return normalize(sorted, Arrays.copyOf(sorted, sorted.length), sorted.length);
+    }
+
+    @NonNull
+    public static UidSet from(@NonNull Collection<Long> uids) {
+        return of(uids.stream().mapToLong(Long::longValue).toArray());
+    }
+
+    /**
+     * Returns the number of UIDs in the set.
+     */
+    public long size() {
+        long ret = 0L;
+        for (int it = 0; it < starts.length; it++) {
+            ret += ends[it] - starts[it] + 1;
+        }
+        return ret;
+    }
+
+    public boolean isEmpty() {
+        return starts.length == 0;
+    }
+
+    public boolean contains(long uid) {
+        final int index = Arrays.binarySearch(starts, uid);
+        if (index >= 0) {
+            return true;
+        }
+        final int range = -index - 2;
+        return range >= 0 && uid <= ends[range];
+    }
+
+    /**
+     * Returns every UID in the set in ascending order.
+     */
+    @NonNull
+    public long[] toArray() {
+        final long[] ret = new long[Math.toIntExact(size())];
+        int pos = 0;
+        for (int it = 0; it < starts.length; it++) {
+            for (long uid = starts[it]; uid <= ends[it]; uid++) {
+                ret[pos++] = uid;
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Returns the set as JavaMail {@link UIDSet}s to be used with {@link com.sun.mail.imap.protocol.IMAPProtocol}.
+     */
+    @NonNull
+    public UIDSet[] toUIDSets() {
+        final UIDSet[] ret = new UIDSet[starts.length];
+        for (int it = 0; it < starts.length; it++) {
+            ret[it] = new UIDSet(starts[it], ends[it]);
+        }
+        return ret;
+    }
+
+    /**
+     * Returns the set in IMAP sequence set syntax (e.g. <code>1:500,600</code>).
+     */
+    @Override
+    public String toString() {
+        final StringBuilder ret = new StringBuilder();
+        for (int it = 0; it < starts.length; it++) {
+            if (it > 0) {
+                ret.append(SET_SEPARATOR);
+            }
+            ret.append(starts[it]);
+            if (ends[it] != starts[it]) {
+                ret.append(RANGE_SEPARATOR).append(ends[it]);
+            }
+        }
+        return ret.toString();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        final UidSet uidSet = (UidSet) o;
+        return Arrays.equals(starts, uidSet.starts) && Arrays.equals(ends, uidSet.ends);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * Arrays.hashCode(starts) + Arrays.hashCode(ends);
+    }
+
+    /**
+     * Sorts the first count ranges by their start and merges those that overlap or are adjacent.
+     */
+    private static UidSet normalize(long[] starts, long[] ends, int count) {
+        if (count == 0) {
+            return EMPTY;
+        }
+        final Integer[] order = new Integer[count];
+        boolean sorted = true;
+        for (int it = 0; it < count; it++) {
+            order[it] = it;
+            sorted &= it == 0 || starts[it - 1] <= starts[it];
+        }
+        if (!sorted) {
+            Arrays.sort(order, (a, b) -> Long.compare(starts[a], starts[b]));
+        }
+        final long[] mergedStarts = new long[count];
+        final long[] mergedEnds = new long[count];
+        int merged = 0;
+        for (int index : order) {
+            if (merged > 0 && starts[index] <= mergedEnds[merged - 1] + 1) {
+                mergedEnds[merged - 1] = Math.max(mergedEnds[merged - 1], ends[index]);
+            } else {
+                mergedStarts[merged] = starts[index];
+                mergedEnds[merged] = ends[index];
+                merged++;
+            }
+        }
+        return new UidSet(Arrays.copyOf(mergedStarts, merged), Arrays.copyOf(mergedEnds, merged));
+    }
+
+    private static long parseUid(String uidSet, String uid) {
+        try {
+            return validateUid(uidSet, Long.parseLong(uid.trim()));
+        } catch (NumberFormatException ex) {
+            throw new InvalidFieldException("Invalid UID set: " + uidSet, ex);
+        }
+    }
+
+    private static long validateUid(String uidSet, long uid) {
+        if (uid < 1L || uid > MAX_UID) {
+            throw new InvalidFieldException("Invalid UID set: " + uidSet);
+        }
+        return uid;
+    }
+}
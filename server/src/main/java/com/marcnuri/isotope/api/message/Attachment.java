@@ -38,13 +38,19 @@ public class Attachment extends IsotopeResource implements Serializable {
     private String fileName;
     private String contentType;
     private Integer size;
+    private String partPath;
     private byte[] content;
 
     public Attachment(String contentId, String fileName, String contentType, Integer size) {
+        this(contentId, fileName, contentType, size, null);
+    }
+
+    public Attachment(String contentId, String fileName, String contentType, Integer size, String partPath) {
         this.contentId = contentId;
         this.fileName = fileName;
         this.contentType = contentType;
         this.size = size;
+        this.partPath = partPath;
     }
 
     public String getContentId() {
@@ -79,6 +85,14 @@ public class Attachment extends IsotopeResource implements Serializable {
         this.size = size;
     }
 
+    public String getPartPath() {
+        return partPath;
+    }
+
+    public void setPartPath(String partPath) {
+        this.partPath = partPath;
+    }
+
     public byte[] getContent() {
         return content;
     }
@@ -95,12 +109,13 @@ public class Attachment extends IsotopeResource implements Serializable {
         return Objects.equals(contentId, that.contentId) &&
                 Objects.equals(fileName, that.fileName) &&
                 Objects.equals(contentType, that.contentType) &&
-                Objects.equals(size, that.size);
+                Objects.equals(size, that.size) &&
+                Objects.equals(partPath, that.partPath);
     }
 
     @Override
     public int hashCode() {
 
-        return Objects.hash(contentId, fileName, contentType, size);
+        return Objects.hash(contentId, fileName, contentType, size, partPath);
     }
 }
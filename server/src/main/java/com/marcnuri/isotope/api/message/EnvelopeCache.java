@@ -0,0 +1,245 @@
+/*
+ * EnvelopeCache.java
+ *
+ * Created on 2026-10-17, 15:10
+ *
+ * Copyright 2018 Marc Nuri
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.marcnuri.isotope.api.message;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.marcnuri.isotope.api.configuration.IsotopeApiConfiguration;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.lang.NonNull;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+import javax.mail.Flags;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * In-process cache of the immutable envelope fields of {@link Message}s.
+ *
+ * <p>For a given folder and UIDVALIDITY a message UID always refers to the same message, so its envelope (subject,
+ * addresses, date, size, references, snippet...) never changes. Only the flags need to be retrieved from the server on
+ * every listing.
+ *
+ * <p>Envelopes are grouped per account, each account has its own byte budget (W-TinyLFU eviction) and inactive
+ * accounts are discarded after a while. Hit, miss and eviction counters are exposed through JMX.
+ *
+ * <p>Created by Marc Nuri <marc@marcnuri.com> on 2026-10-17.
+ */
+@Component
+@ManagedResource(objectName = "com.marcnuri.isotope:type=EnvelopeCache", description = "Message envelope cache")
+public class EnvelopeCache {
+
+    private static final int OBJECT_OVERHEAD_BYTES = 256;
+    private static final int STRING_OVERHEAD_BYTES = 40;
+
+    private final long userBytes;
+    private final Cache<String, Cache<EnvelopeKey, Message>> accounts;
+    private final LongAdder hits;
+    private final LongAdder misses;
+    private final LongAdder evictions;
+
+    @Autowired
+    public EnvelopeCache(IsotopeApiConfiguration isotopeApiConfiguration) {
+        userBytes = isotopeApiConfiguration.getEnvelopeCacheUserBytes();
+        accounts = Caffeine.newBuilder()
+                .maximumSize(isotopeApiConfiguration.getEnvelopeCacheMaxUsers())
+                .expireAfterAccess(isotopeApiConfiguration.getEnvelopeCacheExpireAfterAccess(), TimeUnit.MILLISECONDS)
+                .build();
+        hits = new LongAdder();
+        misses = new LongAdder();
+        evictions = new LongAdder();
+    }
+
+    public boolean isEnabled() {
+        return userBytes > 0;
+    }
+
+    /**
+     * Returns a new {@link Message} with the cached envelope for the provided UID and the provided flags, or null if
+     * the envelope is not cached.
+     *
+     * @param accountKey key of the account owning the folder
+     * @param folder full name of the folder
+     * @param uidValidity UIDVALIDITY of the folder
+     * @param uid of the message
+     * @param flags current flags of the message
+     * @return Message with the cached envelope and provided flags or null if not cached
+     */
+    @Nullable
+    public Message get(
+            @NonNull String accountKey, @NonNull String folder, long uidValidity, long uid, @NonNull Flags flags) {
+
+        final Cache<EnvelopeKey, Message> envelopes = isEnabled() ? accounts.getIfPresent(accountKey) : null;
+        final Message envelope = envelopes == null ? null :
+                envelopes.getIfPresent(new EnvelopeKey(folder, uidValidity, uid));
+        if (envelope == null) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        final Message ret = copyEnvelope(envelope);
+        Message.setFlags(ret, flags);
+        return ret;
+    }
+
+    /**
+     * Stores the envelope fields of the provided {@link Message}.
+     *
+     * @param accountKey key of the account owning the folder
+     * @param folder full name of the folder
+     * @param uidValidity UIDVALIDITY of the folder
+     * @param message with the envelope fields to cache
+     */
+    public void put(@NonNull String accountKey, @NonNull String folder, long uidValidity, @NonNull Message message) {
+        if (!isEnabled() || message.getUid() == null) {
+            return;
+        }
+        accounts.get(accountKey, k -> Caffeine.newBuilder()
+                .maximumWeight(userBytes)
+                .<EnvelopeKey, Message>weigher((key, value) -> weigh(key, value))
+                .removalListener((key, value, cause) -> {
+                    if (cause.wasEvicted()) {
+                        evictions.increment();
+                    }
+                })
+                .build()
+        ).put(new EnvelopeKey(folder, uidValidity, message.getUid()), copyEnvelope(message));
+    }
+
+    @ManagedAttribute(description = "Number of envelopes served from the cache")
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    @ManagedAttribute(description = "Number of envelopes that had to be fetched from the server")
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    @ManagedAttribute(description = "Ratio of envelopes served from the cache")
+    public double getHitRate() {
+        final long hitCount = getHitCount();
+        final long requestCount = hitCount + getMissCount();
+        return requestCount == 0 ? 1D : (double) hitCount / requestCount;
+    }
+
+    @ManagedAttribute(description = "Number of envelopes evicted because of the per account byte budget")
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    @ManagedAttribute(description = "Number of accounts with cached envelopes")
+    public long getAccountCount() {
+        return accounts.estimatedSize();
+    }
+
+    @ManagedAttribute(description = "Number of cached envelopes")
+    public long getEnvelopeCount() {
+        return accounts.asMap().values().stream().mapToLong(Cache::estimatedSize).sum();
+    }
+
+    @ManagedAttribute(description = "Approximate size in bytes of the cached envelopes")
+    public long getWeightedSize() {
+        return accounts.asMap().values().stream()
+                .mapToLong(c -> c.policy().eviction().map(e -> e.weightedSize().orElse(0L)).orElse(0L))
+                .sum();
+    }
+
+    /**
+     * Returns a copy of the provided message with only the immutable envelope fields.
+     */
+    private static Message copyEnvelope(Message message) {
+        final Message ret = new Message();
+        ret.setUid(message.getUid());
+        ret.setMessageId(message.getMessageId());
+        ret.setFrom(message.getFrom());
+        ret.setReplyTo(message.getReplyTo());
+        ret.setRecipients(message.getRecipients());
+        ret.setSubject(message.getSubject());
+        ret.setReceivedDate(message.getReceivedDate());
+        ret.setSize(message.getSize());
+        ret.setReferences(message.getReferences());
+        ret.setInReplyTo(message.getInReplyTo());
+        ret.setSnippet(message.getSnippet());
+        return ret;
+    }
+
+    /**
+     * Rough estimation of the retained heap size of a cached envelope.
+     */
+    private static int weigh(EnvelopeKey key, Message message) {
+        int ret = OBJECT_OVERHEAD_BYTES + weigh(key.folder) + weigh(message.getMessageId())
+                + weigh(message.getSubject()) + weigh(message.getFrom()) + weigh(message.getReplyTo())
+                + weigh(message.getReferences()) + weigh(message.getInReplyTo()) + weigh(message.getSnippet());
+        if (message.getRecipients() != null) {
+            for (Recipient recipient : message.getRecipients()) {
+                ret += STRING_OVERHEAD_BYTES + weigh(recipient.getType()) + weigh(recipient.getAddress());
+            }
+        }
+        return ret;
+    }
+
+    private static int weigh(List<String> values) {
+        int ret = 0;
+        if (values != null) {
+            for (String value : values) {
+                ret += weigh(value);
+            }
+        }
+        return ret;
+    }
+
+    private static int weigh(String value) {
+        return value == null ? 0 : STRING_OVERHEAD_BYTES + value.length() * 2;
+    }
+
+    private static final class EnvelopeKey {
+        private final String folder;
+        private final long uidValidity;
+        private final long uid;
+
+        private EnvelopeKey(String folder, long uidValidity, long uid) {
+            this.folder = folder;
+            this.uidValidity = uidValidity;
+            this.uid = uid;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            EnvelopeKey that = (EnvelopeKey) o;
+            return uidValidity == that.uidValidity &&
+                    uid == that.uid &&
+                    Objects.equals(folder, that.folder);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(folder, uidValidity, uid);
+        }
+    }
+}
@@ -32,8 +32,7 @@ import java.io.Serializable;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
 import java.util.*;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
+import java.util.function.Supplier;
 
 /**
  * Created by Marc Nuri <marc@marcnuri.com> on 2018-08-10.
@@ -43,7 +42,10 @@ public class Message extends IsotopeResource implements Serializable {
 
     private static final long serialVersionUID = -1068972394742882009L;
 
-    private static final String CET_ZONE_ID = "CET";
+    private static final ZoneId CET_ZONE = ZoneId.of("CET");
+    private static final String RECIPIENT_TYPE_TO = RecipientType.TO.toString();
+    private static final String RECIPIENT_TYPE_CC = RecipientType.CC.toString();
+    private static final String RECIPIENT_TYPE_BCC = RecipientType.BCC.toString();
     public static final String HEADER_IN_REPLY_TO = "In-Reply-To";
     public static final String HEADER_REFERENCES = "References";
 
@@ -65,6 +67,7 @@ public class Message extends IsotopeResource implements Serializable {
     private List<Attachment> attachments;
     private List<String> references;
     private List<String> inReplyTo;
+    private String snippet;
 
     public Long getUid() {
         return uid;
@@ -202,6 +205,14 @@ public class Message extends IsotopeResource implements Serializable {
         this.inReplyTo = inReplyTo;
     }
 
+    public String getSnippet() {
+        return snippet;
+    }
+
+    public void setSnippet(String snippet) {
+        this.snippet = snippet;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -224,13 +235,14 @@ public class Message extends IsotopeResource implements Serializable {
                 Objects.equals(content, message.content) &&
                 Objects.equals(attachments, message.attachments) &&
                 Objects.equals(references, message.references) &&
-                Objects.equals(inReplyTo, message.inReplyTo);
+                Objects.equals(inReplyTo, message.inReplyTo) &&
+                Objects.equals(snippet, message.snippet);
     }
 
     @Override
     public int hashCode() {
 
-        return Objects.hash(super.hashCode(), uid, messageId, modseq, from, replyTo, recipients, subject, receivedDate, size, flagged, seen, recent, deleted, content, attachments, references, inReplyTo);
+        return Objects.hash(super.hashCode(), uid, messageId, modseq, from, replyTo, recipients, subject, receivedDate, size, flagged, seen, recent, deleted, content, attachments, references, inReplyTo, snippet);
     }
 
     /**
@@ -241,41 +253,38 @@ public class Message extends IsotopeResource implements Serializable {
      *
      * To map other fields use a separate method.
      *
-     * @param clazz Class of the new Message instance
+     * @param messageSupplier supplier of the new Message instance
      * @param folder where the message is located
      * @param imapMessage original message to map
      * @return mapped Message with fulfilled envelope fields
      */
     public static <M extends Message, F extends Folder & UIDFolder> M from(
-            Class<M> clazz, F folder, IMAPMessage imapMessage) {
+            Supplier<M> messageSupplier, F folder, IMAPMessage imapMessage) {
 
         final M ret;
         if (imapMessage != null) {
             try {
-                ret = clazz.newInstance();
+                ret = messageSupplier.get();
                 ret.setUid(folder.getUID(imapMessage));
                 ret.setMessageId(imapMessage.getMessageID());
                 ret.setFrom(processAddress(imapMessage.getFrom()));
                 ret.setReplyTo(processAddress(imapMessage.getReplyTo()));
                 // Process only recipients received in ENVELOPE (don't use getAllRecipients)
-                ret.setRecipients(Stream.of(
-                        processAddress(RecipientType.TO, imapMessage.getRecipients(RecipientType.TO)),
-                        processAddress(RecipientType.CC, imapMessage.getRecipients(RecipientType.CC)),
-                        processAddress(RecipientType.BCC, imapMessage.getRecipients(RecipientType.BCC))
-                ).flatMap(Collection::stream).collect(Collectors.toList()));
+                final Address[] to = imapMessage.getRecipients(RecipientType.TO);
+                final Address[] cc = imapMessage.getRecipients(RecipientType.CC);
+                final Address[] bcc = imapMessage.getRecipients(RecipientType.BCC);
+                final List<Recipient> recipients = new ArrayList<>(length(to) + length(cc) + length(bcc));
+                addRecipients(recipients, RECIPIENT_TYPE_TO, to);
+                addRecipients(recipients, RECIPIENT_TYPE_CC, cc);
+                addRecipients(recipients, RECIPIENT_TYPE_BCC, bcc);
+                ret.setRecipients(recipients);
                 ret.setSubject(imapMessage.getSubject());
-                ret.setReceivedDate(imapMessage.getReceivedDate().toInstant().atZone(ZoneId.of(CET_ZONE_ID)));
+                ret.setReceivedDate(ZonedDateTime.ofInstant(imapMessage.getReceivedDate().toInstant(), CET_ZONE));
                 ret.setSize(imapMessage.getSizeLong());
-                ret.setInReplyTo(Arrays.asList(
-                        Optional.ofNullable(imapMessage.getHeader(HEADER_IN_REPLY_TO)).orElse(new String[0])));
-                ret.setReferences(Arrays.asList(
-                        Optional.ofNullable(imapMessage.getHeader(HEADER_REFERENCES)).orElse(new String[0])));
-                final Flags flags = imapMessage.getFlags();
-                ret.setFlagged(flags.contains(Flags.Flag.FLAGGED));
-                ret.setSeen(flags.contains(Flags.Flag.SEEN));
-                ret.setRecent(flags.contains(Flags.Flag.RECENT));
-                ret.setDeleted(flags.contains(Flags.Flag.DELETED));
-            } catch (ReflectiveOperationException | MessagingException e) {
+                ret.setInReplyTo(headerValues(imapMessage.getHeader(HEADER_IN_REPLY_TO)));
+                ret.setReferences(headerValues(imapMessage.getHeader(HEADER_REFERENCES)));
+                setFlags(ret, imapMessage.getFlags());
+            } catch (MessagingException e) {
                 throw new IsotopeException("Error parsing IMAP Message", e);
             }
         } else {
@@ -285,27 +294,76 @@ public class Message extends IsotopeResource implements Serializable {
     }
 
     public static <F extends Folder & UIDFolder> Message from(F folder, IMAPMessage imapMessage) {
-        return from(Message.class, folder, imapMessage);
+        return from(Message::new, folder, imapMessage);
+    }
+
+    /**
+     * Maps the UID and flags of an {@link IMAPMessage} to a {@link Message}, the rest of fields are left empty.
+     *
+     * Useful to notify flag changes of a message whose envelope is already known.
+     *
+     * @param folder where the message is located
+     * @param imapMessage original message to map
+     * @return mapped Message with UID and flag fields
+     */
+    public static <F extends Folder & UIDFolder> Message flagsFrom(F folder, IMAPMessage imapMessage) {
+        try {
+            final Message ret = new Message();
+            ret.setUid(folder.getUID(imapMessage));
+            setFlags(ret, imapMessage.getFlags());
+            return ret;
+        } catch (MessagingException e) {
+            throw new IsotopeException("Error parsing IMAP Message", e);
+        }
+    }
+
+    static void setFlags(Message message, Flags flags) {
+        message.setFlagged(flags.contains(Flags.Flag.FLAGGED));
+        message.setSeen(flags.contains(Flags.Flag.SEEN));
+        message.setRecent(flags.contains(Flags.Flag.RECENT));
+        message.setDeleted(flags.contains(Flags.Flag.DELETED));
     }
 
-    private static List<Recipient> processAddress(RecipientType recipient, Address... addresses) {
-        return processAddress(addresses).stream()
-                .map(a -> new Recipient(recipient.toString(), a))
-                .collect(Collectors.toList());
+    private static void addRecipients(List<Recipient> recipients, String type, Address... addresses) {
+        if (addresses != null) {
+            for (Address address : addresses) {
+                recipients.add(new Recipient(type, toString(address)));
+            }
+        }
     }
 
     private static List<String> processAddress(Address... addresses) {
-        return Stream.of(Optional.ofNullable(addresses).orElse(new Address[0]))
-                .map(address -> {
-                    if (address instanceof InternetAddress) {
-                        final InternetAddress internetAddress = (InternetAddress) address;
-                        return internetAddress.getPersonal() == null ? internetAddress.getAddress() :
-                                String.format("\"%s\" <%s>", internetAddress.getPersonal(), internetAddress.getAddress());
-                    } else {
-                        return address.toString();
-                    }
-                })
-                .collect(Collectors.toList());
+        if (addresses == null || addresses.length == 0) {
+            return new ArrayList<>(0);
+        }
+        final List<String> ret = new ArrayList<>(addresses.length);
+        for (Address address : addresses) {
+            ret.add(toString(address));
+        }
+        return ret;
+    }
+
+    private static String toString(Address address) {
+        if (address instanceof InternetAddress) {
+            final InternetAddress internetAddress = (InternetAddress) address;
+            final String personal = internetAddress.getPersonal();
+            final String emailAddress = internetAddress.getAddress();
+            if (personal == null) {
+                return emailAddress;
+            }
+            // "personal" <address>
+            return new StringBuilder(personal.length() + String.valueOf(emailAddress).length() + 5)
+                    .append('"').append(personal).append("\" <").append(emailAddress).append('>').toString();
+        }
+        return address.toString();
+    }
+
+    private static List<String> headerValues(String[] values) {
+        return values == null ? Collections.emptyList() : Arrays.asList(values);
+    }
+
+    private static int length(Object[] array) {
+        return array == null ? 0 : array.length;
     }
 
     /**
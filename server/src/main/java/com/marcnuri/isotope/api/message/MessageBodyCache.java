@@ -0,0 +1,452 @@
+/*
+ * MessageBodyCache.java
+ *
+ * Created on 2026-10-18, 11:20
+ *
+ * Copyright 2018 Marc Nuri
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.marcnuri.isotope.api.message;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import com.marcnuri.isotope.api.configuration.IsotopeApiConfiguration;
+import com.marcnuri.isotope.api.exception.IsotopeException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.lang.NonNull;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+import org.springframework.util.FileSystemUtils;
+
+import javax.annotation.PreDestroy;
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Disk cache of rendered message bodies (HTML content and attachment metadata).
+ *
+ * <p>For a given folder and UIDVALIDITY the content of a message UID never changes, so the rendered body (including
+ * inlined embedded images) can be reused instead of downloading and parsing the MIME message again. Each entry is
+ * stored in its own file named after a digest of the account, folder, UIDVALIDITY and UID.
+ *
+ * <p>Entries are encrypted (AES-GCM) with a key derived from the account key and a random key that only lives in
+ * memory, so entries can only be read by the instance that wrote them. Each instance stores its entries in its own
+ * random subdirectory of the configured directory, locked (with a lock file next to it) while the instance is
+ * running. Subdirectories of instances that are no longer running are discarded on startup, the entries of other
+ * running instances sharing the configured directory are never touched. The total size of the files is bounded
+ * (W-TinyLFU eviction), evicted entries are deleted from disk.
+ *
+ * <p>Created by Marc Nuri <marc@marcnuri.com> on 2026-10-18.
+ */
+@Component
+@ManagedResource(objectName = "com.marcnuri.isotope:type=MessageBodyCache", description = "Message body disk cache")
+public class MessageBodyCache {
+
+    private static final Logger log = LoggerFactory.getLogger(MessageBodyCache.class);
+
+    private static final String FILE_SUFFIX = ".body";
+    private static final String TEMP_FILE_SUFFIX = ".tmp";
+    private static final String INSTANCE_DIRECTORY_PREFIX = "instance-";
+    private static final String LOCK_FILE_SUFFIX = ".lock";
+    private static final String DIGEST_ALGORITHM = "SHA-256";
+    private static final String KEY_DERIVATION_ALGORITHM = "HmacSHA256";
+    private static final String KEY_ALGORITHM = "AES";
+    private static final String CIPHER_ALGORITHM = "AES/GCM/NoPadding";
+    private static final int KEY_BYTES = 32;
+    private static final int IV_BYTES = 12;
+    private static final int TAG_BITS = 128;
+    private static final int FORMAT_VERSION = 1;
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final long maxBytes;
+    private final Path directory;
+    private final FileLock instanceLock;
+    private final SecureRandom random;
+    private final SecretKeySpec masterKey;
+    private final Cache<String, Integer> entries;
+    private final LongAdder hits;
+    private final LongAdder misses;
+    private final LongAdder evictions;
+
+    @Autowired
+    public MessageBodyCache(IsotopeApiConfiguration isotopeApiConfiguration) {
+        random = new SecureRandom();
+        hits = new LongAdder();
+        misses = new LongAdder();
+        evictions = new LongAdder();
+        final byte[] key = new byte[KEY_BYTES];
+        random.nextBytes(key);
+        masterKey = new SecretKeySpec(key, KEY_DERIVATION_ALGORITHM);
+        if (isotopeApiConfiguration.getMessageCacheBytes() > 0) {
+            maxBytes = isotopeApiConfiguration.getMessageCacheBytes();
+            final Path root = Paths.get(isotopeApiConfiguration.getMessageCacheDirectory());
+            try {
+                Files.createDirectories(root);
+                deleteStaleInstances(root);
+                final Path lockFile = Files.createTempFile(root, INSTANCE_DIRECTORY_PREFIX, LOCK_FILE_SUFFIX);
+                instanceLock = FileChannel.open(lockFile, StandardOpenOption.WRITE).lock();
+                directory = Files.createDirectory(root.resolve(instanceDirectoryName(lockFile)));
+            } catch (IOException ex) {
+                throw new IsotopeException("Message cache directory is not available: " + root, ex);
+            }
+            entries = Caffeine.newBuilder()
+                    .maximumWeight(maxBytes)
+                    .<String, Integer>weigher((fileName, size) -> size)
+                    .executor(Runnable::run)
+                    .removalListener(this::onRemoval)
+                    .build();
+        } else {
+            maxBytes = 0;
+            directory = null;
+            instanceLock = null;
+            entries = null;
+        }
+    }
+
+    public boolean isEnabled() {
+        return entries != null;
+    }
+
+    /**
+     * Deletes the entries of this instance and releases its directory.
+     */
+    @PreDestroy
+    public void destroy() {
+        if (!isEnabled()) {
+            return;
+        }
+        entries.invalidateAll();
+        try {
+            FileSystemUtils.deleteRecursively(directory);
+            instanceLock.channel().close();
+            Files.deleteIfExists(directory.resolveSibling(directory.getFileName() + LOCK_FILE_SUFFIX));
+        } catch (IOException ex) {
+            log.warn("Message cache directory {} couldn't be deleted", directory, ex);
+        }
+    }
+
+    /**
+     * Returns a new {@link Message} with the cached content and attachments (without links) for the provided UID, or
+     * null if the body is not cached.
+     *
+     * @param accountKey key of the account owning the folder
+     * @param folder full name of the folder
+     * @param uidValidity UIDVALIDITY of the folder
+     * @param uid of the message
+     * @return Message with the cached body or null if not cached
+     */
+    @Nullable
+    public Message get(@NonNull String accountKey, @NonNull String folder, long uidValidity, long uid) {
+        final String fileName = isEnabled() ? toFileName(accountKey, folder, uidValidity, uid) : null;
+        if (fileName == null || entries.getIfPresent(fileName) == null) {
+            misses.increment();
+            return null;
+        }
+        try {
+            final byte[] encrypted = Files.readAllBytes(directory.resolve(fileName));
+            final Message ret = decode(decrypt(accountKey, fileName, encrypted));
+            ret.setUid(uid);
+            hits.increment();
+            return ret;
+        } catch (IOException | GeneralSecurityException ex) {
+            if (!(ex instanceof NoSuchFileException)) {
+                log.warn("Discarding unreadable cached message body {}", fileName, ex);
+            }
+            entries.invalidate(fileName);
+            misses.increment();
+            return null;
+        }
+    }
+
+    /**
+     * Stores the content and attachment metadata of the provided {@link Message}.
+     *
+     * <p>Failures are logged and ignored, the message will be retrieved from the server the next time.
+     *
+     * @param accountKey key of the account owning the folder
+     * @param folder full name of the folder
+     * @param uidValidity UIDVALIDITY of the folder
+     * @param message with the rendered content and attachments
+     */
+    public void put(@NonNull String accountKey, @NonNull String folder, long uidValidity, @NonNull Message message) {
+        if (!isEnabled() || message.getUid() == null) {
+            return;
+        }
+        final String fileName = toFileName(accountKey, folder, uidValidity, message.getUid());
+        try {
+            final byte[] encrypted = encrypt(accountKey, fileName, encode(message));
+            if (encrypted.length > maxBytes) {
+                return;
+            }
+            final Path temp = Files.createTempFile(directory, null, TEMP_FILE_SUFFIX);
+            try {
+                Files.write(temp, encrypted);
+                Files.move(temp, directory.resolve(fileName), StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+            entries.put(fileName, encrypted.length);
+        } catch (IOException | GeneralSecurityException ex) {
+            log.warn("Message body couldn't be cached", ex);
+        }
+    }
+
+    @ManagedAttribute(description = "Number of message bodies served from the cache")
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    @ManagedAttribute(description = "Number of message bodies that had to be fetched from the server")
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    @ManagedAttribute(description = "Ratio of message bodies served from the cache")
+    public double getHitRate() {
+        final long hitCount = getHitCount();
+        final long requestCount = hitCount + getMissCount();
+        return requestCount == 0 ? 1D : (double) hitCount / requestCount;
+    }
+
+    @ManagedAttribute(description = "Number of message bodies evicted because of the size limit")
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    @ManagedAttribute(description = "Number of cached message bodies")
+    public long getEntryCount() {
+        return isEnabled() ? entries.estimatedSize() : 0L;
+    }
+
+    @ManagedAttribute(description = "Size in bytes of the cached message body files")
+    public long getWeightedSize() {
+        return isEnabled() ?
+                entries.policy().eviction().map(e -> e.weightedSize().orElse(0L)).orElse(0L) : 0L;
+    }
+
+    private void onRemoval(@Nullable String fileName, @Nullable Integer size, RemovalCause cause) {
+        if (cause.wasEvicted()) {
+            evictions.increment();
+        }
+        // Replaced entries share the file with the new value
+        if (fileName != null && cause != RemovalCause.REPLACED) {
+            try {
+                Files.deleteIfExists(directory.resolve(fileName));
+            } catch (IOException ex) {
+                log.warn("Cached message body {} couldn't be deleted", fileName, ex);
+            }
+        }
+    }
+
+    /**
+     * Returns the directory where the entries of this instance are stored.
+     */
+    Path getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Deletes the directories of instances that are no longer running (entries encrypted with a lost key).
+     *
+     * <p>The lock file of an instance is created and locked before its directory, a directory whose lock can be
+     * acquired belongs to an instance that is no longer running.
+     */
+    private static void deleteStaleInstances(Path root) throws IOException {
+        try (DirectoryStream<Path> instances = Files.newDirectoryStream(root, INSTANCE_DIRECTORY_PREFIX + "*")) {
+            for (Path instance : instances) {
+                if (!Files.isDirectory(instance)) {
+                    continue;
+                }
+                final Path lockFile = root.resolve(instance.getFileName() + LOCK_FILE_SUFFIX);
+                boolean stale = false;
+                try (FileChannel channel = FileChannel.open(lockFile,
+                        StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+                    if (channel.tryLock() != null) {
+                        stale = true;
+                        FileSystemUtils.deleteRecursively(instance);
+                    }
+                } catch (OverlappingFileLockException ex) {
+                    // Locked by another instance running in this JVM
+                }
+                if (stale) {
+                    Files.deleteIfExists(lockFile);
+                }
+            }
+        }
+    }
+
+    private static String instanceDirectoryName(Path lockFile) {
+        final String lockFileName = lockFile.getFileName().toString();
+        return lockFileName.substring(0, lockFileName.length() - LOCK_FILE_SUFFIX.length());
+    }
+
+    private static String toFileName(String accountKey, String folder, long uidValidity, long uid) {
+        try {
+            final MessageDigest digest = MessageDigest.getInstance(DIGEST_ALGORITHM);
+            for (String part : new String[]{accountKey, folder, Long.toString(uidValidity), Long.toString(uid)}) {
+                digest.update(part.getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) 0);
+            }
+            final byte[] hash = digest.digest();
+            final StringBuilder ret = new StringBuilder(hash.length * 2 + FILE_SUFFIX.length());
+            for (byte b : hash) {
+                ret.append(HEX[(b >> 4) & 0xF]).append(HEX[b & 0xF]);
+            }
+            return ret.append(FILE_SUFFIX).toString();
+        } catch (GeneralSecurityException ex) {
+            throw new IsotopeException("SHA-256 digest is not available", ex);
+        }
+    }
+
+    /**
+     * Derives the encryption key of an account, entries of other accounts can't be decrypted even if the file
+     * names collide.
+     */
+    private SecretKeySpec accountKey(String accountKey) throws GeneralSecurityException {
+        final Mac mac = Mac.getInstance(KEY_DERIVATION_ALGORITHM);
+        mac.init(masterKey);
+        return new SecretKeySpec(mac.doFinal(accountKey.getBytes(StandardCharsets.UTF_8)), KEY_ALGORITHM);
+    }
+
+    private byte[] encrypt(String accountKey, String fileName, byte[] plain) throws GeneralSecurityException {
+        final byte[] iv = new byte[IV_BYTES];
+        random.nextBytes(iv);
+        final Cipher cipher = Cipher.getInstance(CIPHER_ALGORITHM);
+        cipher.init(Cipher.ENCRYPT_MODE, accountKey(accountKey), new GCMParameterSpec(TAG_BITS, iv));
+        // The file name is authenticated so that an entry can't be swapped with another one
+        cipher.updateAAD(fileName.getBytes(StandardCharsets.US_ASCII));
+        final byte[] ret = Arrays.copyOf(iv, IV_BYTES + cipher.getOutputSize(plain.length));
+        cipher.doFinal(plain, 0, plain.length, ret, IV_BYTES);
+        return ret;
+    }
+
+    private byte[] decrypt(String accountKey, String fileName, byte[] encrypted) throws GeneralSecurityException {
+        if (encrypted.length < IV_BYTES) {
+            throw new GeneralSecurityException("Truncated message body");
+        }
+        final Cipher cipher = Cipher.getInstance(CIPHER_ALGORITHM);
+        cipher.init(Cipher.DECRYPT_MODE, accountKey(accountKey), new GCMParameterSpec(TAG_BITS, encrypted, 0, IV_BYTES));
+        cipher.updateAAD(fileName.getBytes(StandardCharsets.US_ASCII));
+        return cipher.doFinal(encrypted, IV_BYTES, encrypted.length - IV_BYTES);
+    }
+
+    private static byte[] encode(Message message) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream(
+                message.getContent() == null ? 256 : message.getContent().length() + 256);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(FORMAT_VERSION);
+            writeBytes(out, message.getContent() == null ? null : message.getContent().getBytes(StandardCharsets.UTF_8));
+            final List<Attachment> attachments = message.getAttachments();
+            out.writeInt(attachments == null ? -1 : attachments.size());
+            if (attachments != null) {
+                for (Attachment attachment : attachments) {
+                    writeString(out, attachment.getContentId());
+                    writeString(out, attachment.getFileName());
+                    writeString(out, attachment.getContentType());
+                    writeString(out, attachment.getPartPath());
+                    out.writeInt(attachment.getSize() == null ? -1 : attachment.getSize());
+                    writeBytes(out, attachment.getContent());
+                }
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    private static Message decode(byte[] plain) throws IOException {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(plain))) {
+            if (in.readInt() != FORMAT_VERSION) {
+                throw new IOException("Unsupported message body format");
+            }
+            final Message ret = new Message();
+            final byte[] content = readBytes(in);
+            ret.setContent(content == null ? null : new String(content, StandardCharsets.UTF_8));
+            final int attachmentCount = in.readInt();
+            if (attachmentCount >= 0) {
+                final List<Attachment> attachments = new ArrayList<>(attachmentCount);
+                for (int it = 0; it < attachmentCount; it++) {
+                    final String contentId = readString(in);
+                    final String fileName = readString(in);
+                    final String contentType = readString(in);
+                    final String partPath = readString(in);
+                    final int size = in.readInt();
+                    final Attachment attachment = new Attachment(
+                            contentId, fileName, contentType, size < 0 ? null : size, partPath);
+                    attachment.setContent(readBytes(in));
+                    attachments.add(attachment);
+                }
+                ret.setAttachments(attachments);
+            }
+            return ret;
+        }
+    }
+
+    private static void writeString(DataOutputStream out, @Nullable String value) throws IOException {
+        writeBytes(out, value == null ? null : value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Nullable
+    private static String readString(DataInputStream in) throws IOException {
+        final byte[] value = readBytes(in);
+        return value == null ? null : new String(value, StandardCharsets.UTF_8);
+    }
+
+    private static void writeBytes(DataOutputStream out, @Nullable byte[] value) throws IOException {
+        out.writeInt(value == null ? -1 : value.length);
+        if (value != null) {
+            out.write(value);
+        }
+    }
+
+    @Nullable
+    private static byte[] readBytes(DataInputStream in) throws IOException {
+        final int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        final byte[] ret = new byte[length];
+        in.readFully(ret);
+        return ret;
+    }
+}
@@ -0,0 +1,240 @@
+/*
+ * MessagePrefetchCache.java
+ *
+ * Created on 2026-10-18, 16:10
+ *
+ * Copyright 2018 Marc Nuri
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.marcnuri.isotope.api.message;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.marcnuri.isotope.api.configuration.IsotopeApiConfiguration;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.lang.NonNull;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Short-lived in-memory cache of message bodies (content and attachment metadata) rendered in the background before
+ * the user opens them.
+ *
+ * <p>Entries are grouped per account, each account has its own byte budget and entries expire shortly after being
+ * prefetched. An entry is discarded once it's read, the message is then served by the {@link MessageBodyCache} (if
+ * enabled) or fetched again from the server.
+ *
+ * <p>Created by Marc Nuri <marc@marcnuri.com> on 2026-10-18.
+ */
+@Component
+@ManagedResource(objectName = "com.marcnuri.isotope:type=MessagePrefetchCache",
+        description = "Prefetched message body cache")
+public class MessagePrefetchCache {
+
+    private static final int OBJECT_OVERHEAD_BYTES = 256;
+    private static final int STRING_OVERHEAD_BYTES = 40;
+
+    private final long userBytes;
+    private final long expireAfterWrite;
+    private final Cache<String, Cache<BodyKey, Message>> accounts;
+    private final LongAdder hits;
+    private final LongAdder misses;
+    private final LongAdder evictions;
+
+    @Autowired
+    public MessagePrefetchCache(IsotopeApiConfiguration isotopeApiConfiguration) {
+        userBytes = isotopeApiConfiguration.getPrefetchUserBytes();
+        expireAfterWrite = isotopeApiConfiguration.getPrefetchExpireAfterWrite();
+        accounts = Caffeine.newBuilder()
+                .maximumSize(isotopeApiConfiguration.getPrefetchMaxUsers())
+                .expireAfterAccess(expireAfterWrite, TimeUnit.MILLISECONDS)
+                .build();
+        hits = new LongAdder();
+        misses = new LongAdder();
+        evictions = new LongAdder();
+    }
+
+    public boolean isEnabled() {
+        return userBytes > 0;
+    }
+
+    /**
+     * Checks if the body of the provided UID is already prefetched (without counting a hit or a miss).
+     */
+    public boolean contains(@NonNull String accountKey, @NonNull String folder, long uidValidity, long uid) {
+        final Cache<BodyKey, Message> bodies = isEnabled() ? accounts.getIfPresent(accountKey) : null;
+        return bodies != null && bodies.getIfPresent(new BodyKey(folder, uidValidity, uid)) != null;
+    }
+
+    /**
+     * Removes and returns a new {@link Message} with the prefetched content and attachments (without links) for the
+     * provided UID, or null if the body was not prefetched.
+     *
+     * @param accountKey key of the account owning the folder
+     * @param folder full name of the folder
+     * @param uidValidity UIDVALIDITY of the folder
+     * @param uid of the message
+     * @return Message with the prefetched body or null if not available
+     */
+    @Nullable
+    public Message take(@NonNull String accountKey, @NonNull String folder, long uidValidity, long uid) {
+        if (!isEnabled()) {
+            return null;
+        }
+        final Cache<BodyKey, Message> bodies = accounts.getIfPresent(accountKey);
+        final Message body = bodies == null ? null :
+                bodies.asMap().remove(new BodyKey(folder, uidValidity, uid));
+        if (body == null) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return body;
+    }
+
+    /**
+     * Stores the content and attachment metadata of the provided {@link Message}.
+     *
+     * @param accountKey key of the account owning the folder
+     * @param folder full name of the folder
+     * @param uidValidity UIDVALIDITY of the folder
+     * @param message with the rendered content and attachments
+     */
+    public void put(@NonNull String accountKey, @NonNull String folder, long uidValidity, @NonNull Message message) {
+        if (!isEnabled() || message.getUid() == null) {
+            return;
+        }
+        accounts.get(accountKey, k -> Caffeine.newBuilder()
+                .maximumWeight(userBytes)
+                .expireAfterWrite(expireAfterWrite, TimeUnit.MILLISECONDS)
+                .<BodyKey, Message>weigher((key, value) -> weigh(value))
+                .executor(Runnable::run)
+                .removalListener((key, value, cause) -> {
+                    if (cause.wasEvicted()) {
+                        evictions.increment();
+                    }
+                })
+                .build()
+        ).put(new BodyKey(folder, uidValidity, message.getUid()), copyBody(message));
+    }
+
+    @ManagedAttribute(description = "Number of message bodies served from the prefetch cache")
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    @ManagedAttribute(description = "Number of message bodies that weren't prefetched")
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    @ManagedAttribute(description = "Ratio of message bodies served from the prefetch cache")
+    public double getHitRate() {
+        final long hitCount = getHitCount();
+        final long requestCount = hitCount + getMissCount();
+        return requestCount == 0 ? 1D : (double) hitCount / requestCount;
+    }
+
+    @ManagedAttribute(description = "Number of prefetched bodies discarded before being read (expired or byte budget)")
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    @ManagedAttribute(description = "Number of prefetched message bodies")
+    public long getEntryCount() {
+        return accounts.asMap().values().stream().mapToLong(Cache::estimatedSize).sum();
+    }
+
+    @ManagedAttribute(description = "Approximate size in bytes of the prefetched message bodies")
+    public long getWeightedSize() {
+        return accounts.asMap().values().stream()
+                .mapToLong(c -> c.policy().eviction().map(e -> e.weightedSize().orElse(0L)).orElse(0L))
+                .sum();
+    }
+
+    /**
+     * Returns a copy of the provided message with only the UID, content and attachments (links are not copied).
+     */
+    private static Message copyBody(Message message) {
+        final Message ret = new Message();
+        ret.setUid(message.getUid());
+        ret.setContent(message.getContent());
+        if (message.getAttachments() != null) {
+            final List<Attachment> attachments = new ArrayList<>(message.getAttachments().size());
+            for (Attachment attachment : message.getAttachments()) {
+                final Attachment copy = new Attachment(attachment.getContentId(), attachment.getFileName(),
+                        attachment.getContentType(), attachment.getSize(), attachment.getPartPath());
+                copy.setContent(attachment.getContent());
+                attachments.add(copy);
+            }
+            ret.setAttachments(attachments);
+        }
+        return ret;
+    }
+
+    /**
+     * Rough estimation of the retained heap size of a prefetched body.
+     */
+    private static int weigh(Message message) {
+        int ret = OBJECT_OVERHEAD_BYTES + weigh(message.getContent());
+        if (message.getAttachments() != null) {
+            for (Attachment attachment : message.getAttachments()) {
+                ret += OBJECT_OVERHEAD_BYTES + weigh(attachment.getContentId()) + weigh(attachment.getFileName())
+                        + weigh(attachment.getContentType()) + weigh(attachment.getPartPath())
+                        + (attachment.getContent() == null ? 0 : attachment.getContent().length);
+            }
+        }
+        return ret;
+    }
+
+    private static int weigh(String value) {
+        return value == null ? 0 : STRING_OVERHEAD_BYTES + value.length() * 2;
+    }
+
+    private static final class BodyKey {
+        private final String folder;
+        private final long uidValidity;
+        private final long uid;
+
+        private BodyKey(String folder, long uidValidity, long uid) {
+            this.folder = folder;
+            this.uidValidity = uidValidity;
+            this.uid = uid;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            BodyKey that = (BodyKey) o;
+            return uidValidity == that.uidValidity &&
+                    uid == that.uid &&
+                    Objects.equals(folder, that.folder);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(folder, uidValidity, uid);
+        }
+    }
+}
@@ -33,16 +33,25 @@ import javax.mail.internet.AddressException;
 import javax.mail.internet.InternetAddress;
 import javax.mail.internet.MimeBodyPart;
 import javax.mail.internet.MimeMessage;
+import javax.mail.internet.MimePart;
 import javax.mail.internet.MimeUtility;
 import java.io.IOException;
-
-import static com.marcnuri.isotope.api.imap.ImapService.MULTIPART_MIME_TYPE;
+import java.util.Enumeration;
+import java.util.List;
 
 /**
  * Created by Marc Nuri <marc@marcnuri.com> on 2018-09-16.
  */
 public class MessageUtils {
 
+    /**
+     * Headers read by {@link Message#from(com.sun.mail.imap.IMAPFolder, com.sun.mail.imap.IMAPMessage)}, they must
+     * always be fetched with the envelope.
+     */
+    public static final String[] ENVELOPE_HEADERS = {Message.HEADER_IN_REPLY_TO, Message.HEADER_REFERENCES};
+
+    private static final int HEADER_LINE_OVERHEAD_BYTES = 4;
+
     private MessageUtils() {}
 
     /**
@@ -52,21 +61,84 @@ public class MessageUtils {
      * @param messages array of messages for which to fetch information
      * @throws MessagingException for other javax.mail failures
      */
-    @SuppressWarnings("squid:S1191")
     public static void envelopeFetch(@NonNull  javax.mail.Folder folder, @NonNull javax.mail.Message[] messages)
             throws MessagingException {
 
+        envelopeFetch(folder, messages, ENVELOPE_HEADERS);
+    }
+
+    /**
+     * Fetches the envelope and basic "lightweight" fields from the provided {@link javax.mail.Message} array.
+     *
+     * Only the provided headers are fetched (<code>BODY.PEEK[HEADER.FIELDS (...)]</code>), the complete header block
+     * (e.g. long Received/DKIM-Signature chains) is only fetched if headerNames is null.
+     *
+     * @param folder the folder where the messages are located
+     * @param messages array of messages for which to fetch information
+     * @param headerNames names of the headers to fetch or null to fetch all of them
+     * @throws MessagingException for other javax.mail failures
+     */
+    @SuppressWarnings("squid:S1191")
+    public static void envelopeFetch(
+            @NonNull  javax.mail.Folder folder, @NonNull javax.mail.Message[] messages, @Nullable String[] headerNames)
+            throws MessagingException {
+
         if (messages.length != 0) {
             final FetchProfile fp = new FetchProfile();
             fp.add(FetchProfile.Item.ENVELOPE);
             fp.add(UIDFolder.FetchProfileItem.UID);
-            fp.add(com.sun.mail.imap.IMAPFolder.FetchProfileItem.HEADERS);
+            if (headerNames == null) {
+                fp.add(com.sun.mail.imap.IMAPFolder.FetchProfileItem.HEADERS);
+            } else {
+                for (String headerName : headerNames) {
+                    fp.add(headerName);
+                }
+            }
             fp.add(FetchProfile.Item.FLAGS);
             fp.add(FetchProfile.Item.SIZE);
             folder.fetch(messages, fp);
         }
     }
 
+    /**
+     * Approximate size in bytes of the headers fetched by
+     * {@link #envelopeFetch(javax.mail.Folder, javax.mail.Message[], String[])} for the provided messages.
+     *
+     * Only already loaded headers are read, no additional commands are sent to the server.
+     *
+     * @param messages for which the envelope was fetched
+     * @param headerNames names of the fetched headers or null if all of them were fetched
+     * @return size of the header names and values plus line overhead (": " and CRLF)
+     * @throws MessagingException for other javax.mail failures
+     */
+    public static long headerBytes(@NonNull javax.mail.Message[] messages, @Nullable String[] headerNames)
+            throws MessagingException {
+
+        long ret = 0;
+        for (javax.mail.Message message : messages) {
+            if (message.isExpunged()) {
+                continue;
+            }
+            if (headerNames == null) {
+                final Enumeration<Header> headers = message.getAllHeaders();
+                while (headers != null && headers.hasMoreElements()) {
+                    final Header header = headers.nextElement();
+                    ret += headerLineBytes(header.getName(), header.getValue());
+                }
+            } else {
+                for (String headerName : headerNames) {
+                    final String[] values = message.getHeader(headerName);
+                    if (values != null) {
+                        for (String value : values) {
+                            ret += headerLineBytes(headerName, value);
+                        }
+                    }
+                }
+            }
+        }
+        return ret;
+    }
+
     /**
      * Returns an array of {@link Address} for the provided {@link javax.mail.Message.RecipientType}
      *
@@ -91,52 +163,59 @@ public class MessageUtils {
     }
 
     /**
-     * Extracts e-mail message content (body) from the provided {@link Multipart} body container.
+     * Extracts e-mail message content (body) from the provided {@link MimePartIndex} of a multipart body container.
      *
      * Multipart is processed recursively in order to find valid html or text e-mail content. Last body part
      * with valid html will be used. Any found text/plain body will be returned as fallback.
      *
      * TODO: Check this is the right approach
      *
-     * @param multipart to process and extract body
+     * @param index of the multipart to process and extract body
      * @return
      * @throws MessagingException
      * @throws IOException
      */
-    public static String extractContent(@NonNull Multipart multipart) throws MessagingException, IOException {
+    public static String extractContent(@NonNull MimePartIndex index) throws MessagingException, IOException {
+        return extractContent(index.getParts());
+    }
+
+    private static String extractContent(@NonNull List<MimePartIndex.Part> parts)
+            throws MessagingException, IOException {
+
         String ret = "";
-        for (int it = 0; it < multipart.getCount(); it++) {
-            final BodyPart bp = multipart.getBodyPart(it);
+        for (MimePartIndex.Part part : parts) {
             if ((ret == null || ret.isEmpty())
-                    && bp.getContentType().toLowerCase().startsWith(MediaType.TEXT_PLAIN_VALUE)) {
-                ret = String.format("<pre>%s</pre>", HtmlUtils.htmlEscape(bp.getContent().toString()));
+                    && part.getMimeType().startsWith(MediaType.TEXT_PLAIN_VALUE)) {
+                ret = String.format("<pre>%s</pre>",
+                        HtmlUtils.htmlEscape(part.getBodyPart().getContent().toString()));
             }
-            if (bp.getContentType().toLowerCase().startsWith(MediaType.TEXT_HTML_VALUE)) {
-                ret = (bp.getContent().toString());
+            if (part.getMimeType().startsWith(MediaType.TEXT_HTML_VALUE)) {
+                ret = (part.getBodyPart().getContent().toString());
             }
-            if (bp.getContentType().toLowerCase().startsWith(MULTIPART_MIME_TYPE)) {
-                ret = extractContent((Multipart) bp.getContent());
+            if (part.isMultipart()) {
+                ret = extractContent(part.getChildren());
             }
         }
         return ret;
     }
 
     /**
-     * Extract a {@link BodyPart} from the provided {@link Multipart} matching the given id.
+     * Extract a {@link MimePartIndex.Part} from the provided {@link MimePartIndex} matching the given id.
      *
-     * @param mp
+     * @param index
      * @param id
      * @param contentId
      * @return
      * @throws MessagingException
      * @throws IOException
      */
-    @Nullable public static BodyPart extractBodypart(@NonNull Multipart mp, @NonNull String id, Boolean contentId)
+    @Nullable public static MimePartIndex.Part extractBodypart(
+            @NonNull MimePartIndex index, @NonNull String id, Boolean contentId)
             throws MessagingException, IOException {
 
         return Boolean.TRUE.equals(contentId) ?
-                extractEmbeddedBodypart(mp, id) : // Embedded contentId
-                extractAttachmentBodypart(mp, id); // Attachment
+                extractEmbeddedBodypart(index, id) : // Embedded contentId
+                extractAttachmentBodypart(index, id); // Attachment
     }
 
     /**
@@ -154,77 +233,92 @@ public class MessageUtils {
     public static String replaceEmbeddedImage(@Nullable String content, @NonNull MimeBodyPart imageBodyPart)
             throws MessagingException, IOException {
 
-        final String cid = imageBodyPart.getContentID().replaceAll("[<>]", "");
+        String contentType = imageBodyPart.getContentType();
+        if (contentType.contains(";")) {
+            contentType = contentType.substring(0, contentType.indexOf(';'));
+        }
+        return replaceEmbeddedImage(content, imageBodyPart.getContentID(), contentType, imageBodyPart);
+    }
+
+    /**
+     * Replaces content image cid urls by Base64 data urls for every occurrence of the provided indexed image part.
+     *
+     * @see #replaceEmbeddedImage(String, MimeBodyPart)
+     */
+    public static String replaceEmbeddedImage(@Nullable String content, @NonNull MimePartIndex.Part imagePart)
+            throws MessagingException, IOException {
+
+        return replaceEmbeddedImage(content, imagePart.getContentId(), imagePart.getMimeType(),
+                imagePart.getBodyPart());
+    }
+
+    private static String replaceEmbeddedImage(
+            @Nullable String content, String contentId, String contentType, Part imagePart)
+            throws MessagingException, IOException {
+
+        final String cid = contentId.replaceAll("[<>]", "");
         if (content != null && content.contains(cid)) {
-            String contentType = imageBodyPart.getContentType();
-            if (contentType.contains(";")) {
-                contentType = contentType.substring(0, contentType.indexOf(';'));
-            }
-            final String base64 = Base64.encodeBase64String(IOUtils.toByteArray(imageBodyPart.getInputStream()))
+            final String base64 = Base64.encodeBase64String(IOUtils.toByteArray(imagePart.getInputStream()))
                     .replace("\r", "").replace("\n", "");
             return content.replace("cid:" + cid,
                     String.format("data:%s;%s,%s",
                             contentType,
-                            imageBodyPart.getEncoding(),
+                            imagePart instanceof MimePart ? ((MimePart) imagePart).getEncoding() : null,
                             base64));
         }
         return content;
     }
 
     /**
-     * Extracts a {@link BodyPart} form a {@link Multipart} body for an <b>image</b> matching the provided contentId
+     * Extracts the indexed part for an <b>image</b> matching the provided contentId
      *
-     * @param multipart to extract the BodyPart from
-     * @param contentId of the image for which the BodyPart must be extracted
-     * @return the BodyPart for the image with the given contentId or null if not found
-     * @throws MessagingException for any IMAP exception
-     * @throws IOException for IO problems when reading the content
+     * @param index to extract the part from
+     * @param contentId of the image for which the part must be extracted
+     * @return the part for the image with the given contentId or null if not found
      */
-    @Nullable private static BodyPart extractEmbeddedBodypart(@NonNull Multipart multipart, @NonNull String contentId)
-            throws MessagingException, IOException {
+    @Nullable private static MimePartIndex.Part extractEmbeddedBodypart(
+            @NonNull MimePartIndex index, @NonNull String contentId) {
 
-        for (int it = 0; it < multipart.getCount(); it++) {
-            final BodyPart bp = multipart.getBodyPart(it);
-            if (bp.getContentType().toLowerCase().startsWith(MULTIPART_MIME_TYPE)) {
-                final BodyPart nestedBodyPart = extractEmbeddedBodypart((Multipart) bp.getContent(), contentId);
-                if (nestedBodyPart != null){
-                    return nestedBodyPart;
-                }
-            }
-            if (bp.getContentType().toLowerCase().startsWith("image/") && bp instanceof MimeBodyPart
-                    && contentId.equals(((MimeBodyPart) bp).getContentID())) {
-                return bp;
+        for (MimePartIndex.Part part : index.getAllParts()) {
+            if (part.getMimeType().startsWith("image/") && contentId.equals(part.getContentId())) {
+                return part;
             }
         }
         return null;
     }
 
     /**
-     * Extracts a {@link BodyPart} form a {@link Multipart} body for an <b>attachment</b> matching the provided id
+     * Extracts the indexed part for an <b>attachment</b> matching the provided id
      *
-     * @param multipart to extract the BodyPart from
-     * @param id of the attachment for which the BodyPart must be extracted
-     * @return the BodyPart for the attachment with the given id or null if not found
+     * @param index to extract the part from
+     * @param id of the attachment for which the part must be extracted
+     * @return the part for the attachment with the given id or null if not found
      * @throws MessagingException for any IMAP exception
      * @throws IOException for IO problems when reading the content
      */
-    @Nullable private static BodyPart extractAttachmentBodypart(@NonNull Multipart multipart, @NonNull String id)
-            throws MessagingException, IOException {
+    @Nullable private static MimePartIndex.Part extractAttachmentBodypart(
+            @NonNull MimePartIndex index, @NonNull String id) throws MessagingException, IOException {
 
-        for (int it = 0; it < multipart.getCount(); it++) {
-            final BodyPart bp = multipart.getBodyPart(it);
-            if (bp.getDisposition() != null && Part.ATTACHMENT.equalsIgnoreCase(bp.getDisposition())) {
+        for (MimePartIndex.Part part : index.getAllParts()) {
+            if (part.getDisposition() != null && Part.ATTACHMENT.equalsIgnoreCase(part.getDisposition())) {
                 // Regular file
-                if (id.equals(MimeUtility.decodeText(bp.getFileName()))) {
-                    return bp;
+                if (part.getFileName() != null && id.equals(MimeUtility.decodeText(part.getFileName()))) {
+                    return part;
                 }
                 // Embedded message
-                if(bp.getContentType().toLowerCase().startsWith("message/") && bp.getContent() instanceof MimeMessage
-                        && ((MimeMessage)bp.getContent()).getSubject().equals(id)) {
-                    return bp;
+                if (part.getMimeType().startsWith("message/")) {
+                    final Object nestedMessage = part.getBodyPart().getContent();
+                    if (nestedMessage instanceof MimeMessage
+                            && id.equals(((MimeMessage) nestedMessage).getSubject())) {
+                        return part;
+                    }
                 }
             }
         }
         return null;
     }
+
+    private static int headerLineBytes(String name, @Nullable String value) {
+        return name.length() + (value == null ? 0 : value.length()) + HEADER_LINE_OVERHEAD_BYTES;
+    }
 }
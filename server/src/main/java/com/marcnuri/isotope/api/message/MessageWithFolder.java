@@ -64,7 +64,7 @@ public class MessageWithFolder extends Message {
     }
 
     public static MessageWithFolder from(IMAPFolder folder, boolean loadChildrenFolders, IMAPMessage imapMessage) {
-        final MessageWithFolder ret = from(MessageWithFolder.class, folder, imapMessage);
+        final MessageWithFolder ret = from(MessageWithFolder::new, folder, imapMessage);
         ret.setFolder(Folder.from(folder, loadChildrenFolders));
         return ret;
     }
@@ -0,0 +1,257 @@
+/*
+ * MimePartIndex.java
+ *
+ * Created on 2026-10-18, 14:30
+ *
+ * Copyright 2018 Marc Nuri
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.marcnuri.isotope.api.message;
+
+import org.springframework.lang.NonNull;
+import org.springframework.lang.Nullable;
+
+import javax.mail.BodyPart;
+import javax.mail.MessagingException;
+import javax.mail.Multipart;
+import javax.mail.internet.ContentType;
+import javax.mail.internet.MimePart;
+import javax.mail.internet.ParseException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+import static com.marcnuri.isotope.api.imap.ImapService.MULTIPART_MIME_TYPE;
+
+/**
+ * Lightweight index of the MIME parts of a message built with a single traversal of its multipart tree.
+ *
+ * <p>The headers of every part (content type, disposition, content id, file name, size and charset) are read once
+ * and nested multiparts are only decoded once, so content extraction, attachment listing and part lookups can
+ * consume the index instead of walking the {@link Multipart} again.
+ *
+ * <p>Created by Marc Nuri <marc@marcnuri.com> on 2026-10-18.
+ */
+public final class MimePartIndex {
+
+    private static final String TEXT_MIME_TYPE = "text/";
+
+    private final List<Part> parts;
+    private final List<Part> allParts;
+
+    private MimePartIndex(List<Part> parts, List<Part> allParts) {
+        this.parts = parts;
+        this.allParts = allParts;
+    }
+
+    /**
+     * Top level parts of the indexed multipart.
+     */
+    @NonNull
+    public List<Part> getParts() {
+        return parts;
+    }
+
+    /**
+     * Every part of the indexed multipart in depth-first order (a multipart is listed before its children).
+     */
+    @NonNull
+    public List<Part> getAllParts() {
+        return allParts;
+    }
+
+    /**
+     * Builds the index of the provided {@link Multipart}.
+     *
+     * @param multipart to index
+     * @return the part index
+     * @throws MessagingException for javax.mail failures
+     * @throws IOException for IO problems when decoding nested multiparts
+     */
+    @NonNull
+    public static MimePartIndex of(@NonNull Multipart multipart) throws MessagingException, IOException {
+        final List<Part> allParts = new ArrayList<>();
+        final List<Part> parts = walk(multipart, null, allParts::add);
+        return new MimePartIndex(parts, Collections.unmodifiableList(allParts));
+    }
+
+    /**
+     * Traverses the provided {@link Multipart} depth-first notifying every part to the provided {@link Visitor}.
+     *
+     * @param multipart to traverse
+     * @param visitor to notify
+     * @throws MessagingException for javax.mail failures
+     * @throws IOException for IO problems when decoding nested multiparts
+     */
+    public static void walk(@NonNull Multipart multipart, @NonNull Visitor visitor)
+            throws MessagingException, IOException {
+
+        walk(multipart, null, visitor);
+    }
+
+    private static List<Part> walk(Multipart multipart, @Nullable String parentPartPath, Visitor visitor)
+            throws MessagingException, IOException {
+
+        final int count = multipart.getCount();
+        final List<Part> ret = new ArrayList<>(count);
+        for (int it = 0; it < count; it++) {
+            final BodyPart bodyPart = multipart.getBodyPart(it);
+            final String partPath = parentPartPath == null ? String.valueOf(it + 1) : parentPartPath + "." + (it + 1);
+            final String contentType = bodyPart.getContentType();
+            final String mimeType = mimeType(contentType);
+            final Object content = mimeType.startsWith(MULTIPART_MIME_TYPE) ? bodyPart.getContent() : null;
+            final Part part = new Part(partPath, bodyPart, contentType, mimeType, bodyPart.getDisposition(),
+                    bodyPart instanceof MimePart ? ((MimePart) bodyPart).getContentID() : null,
+                    bodyPart.getFileName(), bodyPart.getSize(),
+                    mimeType.startsWith(TEXT_MIME_TYPE) ? charset(contentType) : null,
+                    content instanceof Multipart);
+            ret.add(part);
+            visitor.visit(part);
+            if (content instanceof Multipart) {
+                part.children = Collections.unmodifiableList(walk((Multipart) content, partPath, visitor));
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Returns the lower case type/subtype of the provided content type (without parameters).
+     */
+    private static String mimeType(@Nullable String contentType) {
+        if (contentType == null) {
+            return "";
+        }
+        final int parametersIndex = contentType.indexOf(';');
+        return (parametersIndex < 0 ? contentType : contentType.substring(0, parametersIndex))
+                .trim().toLowerCase(Locale.ROOT);
+    }
+
+    @Nullable
+    private static String charset(String contentType) {
+        try {
+            return new ContentType(contentType).getParameter("charset");
+        } catch (ParseException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * Receives every part found while traversing a {@link Multipart}.
+     */
+    @FunctionalInterface
+    public interface Visitor {
+
+        void visit(@NonNull Part part) throws MessagingException, IOException;
+    }
+
+    /**
+     * Indexed MIME part.
+     */
+    public static final class Part {
+
+        private final String partPath;
+        private final BodyPart bodyPart;
+        private final String contentType;
+        private final String mimeType;
+        private final String disposition;
+        private final String contentId;
+        private final String fileName;
+        private final int size;
+        private final String charset;
+        private final boolean multipart;
+        private List<Part> children;
+
+        private Part(
+                String partPath, BodyPart bodyPart, String contentType, String mimeType, String disposition,
+                String contentId, String fileName, int size, String charset, boolean multipart) {
+
+            this.partPath = partPath;
+            this.bodyPart = bodyPart;
+            this.contentType = contentType;
+            this.mimeType = mimeType;
+            this.disposition = disposition;
+            this.contentId = contentId;
+            this.fileName = fileName;
+            this.size = size;
+            this.charset = charset;
+            this.multipart = multipart;
+            this.children = Collections.emptyList();
+        }
+
+        /**
+         * IMAP part specifier of the part (e.g. 2.1).
+         */
+        public String getPartPath() {
+            return partPath;
+        }
+
+        public BodyPart getBodyPart() {
+            return bodyPart;
+        }
+
+        /**
+         * Complete Content-Type header value (including parameters).
+         */
+        public String getContentType() {
+            return contentType;
+        }
+
+        /**
+         * Lower case type/subtype of the part (e.g. text/html).
+         */
+        public String getMimeType() {
+            return mimeType;
+        }
+
+        public String getDisposition() {
+            return disposition;
+        }
+
+        public String getContentId() {
+            return contentId;
+        }
+
+        /**
+         * File name of the part as received (not decoded).
+         */
+        public String getFileName() {
+            return fileName;
+        }
+
+        public int getSize() {
+            return size;
+        }
+
+        /**
+         * Charset of text parts, null for any other part.
+         */
+        public String getCharset() {
+            return charset;
+        }
+
+        /**
+         * Nested parts if the part is a multipart, empty list otherwise (or while the part is being visited).
+         */
+        public List<Part> getChildren() {
+            return children;
+        }
+
+        public boolean isMultipart() {
+            return multipart;
+        }
+    }
+}
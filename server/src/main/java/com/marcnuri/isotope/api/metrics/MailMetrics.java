@@ -0,0 +1,354 @@
+/*
+ * MailMetrics.java
+ *
+ * Created on 2026-10-18, 03:15
+ *
+ * Copyright 2018 Marc Nuri
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.marcnuri.isotope.api.metrics;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.marcnuri.isotope.api.configuration.IsotopeApiConfiguration;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.lang.NonNull;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+import org.springframework.web.servlet.HandlerMapping;
+import reactor.core.publisher.Flux;
+
+import javax.mail.FetchProfile;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Micrometer instrumentation of the IMAP and SMTP operations performed by the application.
+ *
+ * <ul>
+ *     <li><code>isotope.mail.operations</code> timer tagged by operation, outcome, (hashed) server host and, for
+ *     FETCH operations, the fetch profile.</li>
+ *     <li><code>isotope.mail.round.trips</code> counter tagged by operation and the API endpoint that triggered
+ *     it.</li>
+ *     <li><code>isotope.imap.fetch.header.bytes</code> summary of the header bytes fetched with each batch of
+ *     envelopes tagged by header projection (all or fields).</li>
+ *     <li><code>isotope.imap.stores.open</code>, <code>isotope.imap.folders.open</code> and
+ *     <code>isotope.sse.streams.active</code> gauges.</li>
+ * </ul>
+ *
+ * <p>Server hosts are tagged with a truncated SHA-256 hash salted with the <code>METRICS_HOST_HASH_SECRET</code>.
+ * Slow servers can be told apart without publishing the (user provided) host names and the tags can't be reversed by
+ * hashing a list of known hosts without the secret. Operators knowing the secret can map tags to hosts by computing
+ * the first {@value #HOST_HASH_BYTES} bytes (hex) of <code>SHA-256(secret + lower case host)</code>. If no secret is
+ * configured a random one is generated on startup and tags are only stable for the lifetime of the process. Only the
+ * first
+ * {@value #MAX_HOST_TAGS} distinct hosts get their own tag, the rest are tagged as {@value #HOST_OTHER} to keep the
+ * number of timers bounded.
+ *
+ * <p>Created by Marc Nuri <marc@marcnuri.com> on 2026-10-18.
+ */
+@Component
+public class MailMetrics {
+
+    static final String OPERATIONS = "isotope.mail.operations";
+    static final String ROUND_TRIPS = "isotope.mail.round.trips";
+    static final String STORES_OPEN = "isotope.imap.stores.open";
+    static final String FOLDERS_OPEN = "isotope.imap.folders.open";
+    static final String STREAMS_ACTIVE = "isotope.sse.streams.active";
+    static final String HEADER_BYTES = "isotope.imap.fetch.header.bytes";
+    static final String TAG_OPERATION = "operation";
+    static final String TAG_OUTCOME = "outcome";
+    static final String TAG_HOST = "host";
+    static final String TAG_PROFILE = "profile";
+    static final String TAG_ENDPOINT = "endpoint";
+    static final String TAG_STREAM = "stream";
+    static final String TAG_HEADERS = "headers";
+    static final String OUTCOME_SUCCESS = "success";
+    static final String OUTCOME_ERROR = "error";
+    static final String NONE = "none";
+    static final String HEADERS_ALL = "all";
+    static final String HEADERS_FIELDS = "fields";
+    static final String HOST_OTHER = "other";
+    static final int MAX_HOST_TAGS = 100;
+    private static final String BYTES = "bytes";
+    private static final String HEADERS = "headers";
+    private static final String HASH_ALGORITHM = "SHA-256";
+    private static final int HASH_SALT_BYTES = 32;
+    private static final int HOST_HASH_BYTES = 6;
+    private static final long HOST_HASH_CACHE_MAX_SIZE = 1000L;
+
+    private final MeterRegistry meterRegistry;
+    private final AtomicInteger openStores;
+    private final AtomicInteger openFolders;
+    private final Map<String, AtomicInteger> activeStreams;
+    private final Cache<String, String> hostHashes;
+    private final byte[] hostHashSalt;
+    private final Set<String> hostTags;
+
+    @Autowired
+    public MailMetrics(MeterRegistry meterRegistry, IsotopeApiConfiguration isotopeApiConfiguration) {
+        this(meterRegistry, isotopeApiConfiguration.getMetricsHostHashSecret());
+    }
+
+    public MailMetrics(MeterRegistry meterRegistry) {
+        this(meterRegistry, (String) null);
+    }
+
+    MailMetrics(MeterRegistry meterRegistry, @Nullable String hostHashSecret) {
+        this.meterRegistry = meterRegistry;
+        openStores = meterRegistry.gauge(STORES_OPEN, new AtomicInteger());
+        openFolders = meterRegistry.gauge(FOLDERS_OPEN, new AtomicInteger());
+        activeStreams = new ConcurrentHashMap<>();
+        hostHashes = Caffeine.newBuilder().maximumSize(HOST_HASH_CACHE_MAX_SIZE).build();
+        hostHashSalt = hostHashSecret == null ? randomSalt() : hostHashSecret.getBytes(StandardCharsets.UTF_8);
+        hostTags = new HashSet<>();
+    }
+
+    /**
+     * Performs the provided call recording its duration and outcome.
+     *
+     * @param operation performed by the call
+     * @param host of the mail server
+     * @param endpoint API endpoint that triggered the operation (see {@link #currentEndpoint()})
+     * @param call to perform
+     * @return the value returned by the call
+     * @throws E the exception thrown by the call
+     */
+    public <T, E extends Exception> T record(
+            @NonNull MailOperation operation, @Nullable String host, @Nullable String endpoint,
+            @NonNull MailCall<T, E> call) throws E {
+
+        return record(operation, NONE, host, endpoint, call);
+    }
+
+    /**
+     * Performs the provided FETCH call recording its duration and outcome tagged with the provided profile.
+     *
+     * @see #profile(FetchProfile)
+     */
+    public <T, E extends Exception> T recordFetch(
+            @NonNull String profile, @Nullable String host, @Nullable String endpoint,
+            @NonNull MailCall<T, E> call) throws E {
+
+        return record(MailOperation.FETCH, profile, host, endpoint, call);
+    }
+
+    /**
+     * Records an already completed operation.
+     */
+    public void record(
+            @NonNull MailOperation operation, @NonNull String profile, @Nullable String host,
+            @Nullable String endpoint, long durationNanos, boolean success) {
+
+        Timer.builder(OPERATIONS)
+                .tags(Tags.of(
+                        TAG_OPERATION, operation.getTag(),
+                        TAG_OUTCOME, success ? OUTCOME_SUCCESS : OUTCOME_ERROR,
+                        TAG_HOST, hashHost(host),
+                        TAG_PROFILE, profile))
+                .register(meterRegistry)
+                .record(durationNanos, TimeUnit.NANOSECONDS);
+        Counter.builder(ROUND_TRIPS)
+                .tags(TAG_OPERATION, operation.getTag(), TAG_ENDPOINT, endpoint == null ? NONE : endpoint)
+                .register(meterRegistry)
+                .increment();
+    }
+
+    /**
+     * Records the size of the headers fetched with a batch of envelopes.
+     *
+     * @param allHeaders true if the complete header block was fetched, false if only specific fields were fetched
+     * @param bytes approximate size of the fetched headers
+     */
+    public void recordHeaderBytes(boolean allHeaders, long bytes) {
+        DistributionSummary.builder(HEADER_BYTES)
+                .baseUnit(BYTES)
+                .tags(TAG_HEADERS, allHeaders ? HEADERS_ALL : HEADERS_FIELDS)
+                .register(meterRegistry)
+                .record(bytes);
+    }
+
+    public void storeOpened() {
+        openStores.incrementAndGet();
+    }
+
+    public void storeClosed() {
+        openStores.decrementAndGet();
+    }
+
+    public void foldersOpened(int count) {
+        openFolders.addAndGet(count);
+    }
+
+    public void foldersClosed(int count) {
+        openFolders.addAndGet(-count);
+    }
+
+    /**
+     * Registers a gauge for the provided object, the object must be strongly referenced elsewhere.
+     */
+    public <T> void gauge(@NonNull String name, @NonNull T object, @NonNull ToDoubleFunction<T> valueFunction) {
+        meterRegistry.gauge(name, object, valueFunction);
+    }
+
+    /**
+     * Returns a {@link Flux} that counts the provided stream as active while subscribed.
+     *
+     * @param stream name of the stream (tag)
+     * @param flux to track
+     * @return the tracked Flux
+     */
+    public <T> Flux<T> trackStream(@NonNull String stream, @NonNull Flux<T> flux) {
+        final AtomicInteger active = activeStreams.computeIfAbsent(stream, s ->
+                meterRegistry.gauge(STREAMS_ACTIVE, Tags.of(TAG_STREAM, s), new AtomicInteger()));
+        return flux
+                .doOnSubscribe(s -> active.incrementAndGet())
+                .doFinally(s -> active.decrementAndGet());
+    }
+
+    /**
+     * Returns the HTTP method and path pattern of the request being processed by the current thread
+     * (e.g. <code>GET /v1/folders/{folderId}/messages</code>) or null if there's none.
+     */
+    @Nullable
+    public static String currentEndpoint() {
+        final RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        if (!(attributes instanceof ServletRequestAttributes)) {
+            return null;
+        }
+        final Object pattern = attributes.getAttribute(
+                HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE, RequestAttributes.SCOPE_REQUEST);
+        if (pattern == null) {
+            return null;
+        }
+        return ((ServletRequestAttributes) attributes).getRequest().getMethod() + " " + pattern;
+    }
+
+    /**
+     * Returns a short, low cardinality, representation of the items in the provided profile
+     * (e.g. <code>uid+flags</code>).
+     */
+    @NonNull
+    public static String profile(@NonNull FetchProfile fetchProfile) {
+        final StringBuilder ret = new StringBuilder();
+        for (FetchProfile.Item item : fetchProfile.getItems()) {
+            append(ret, itemName(item));
+        }
+        if (fetchProfile.getHeaderNames().length > 0 && ret.indexOf(HEADERS) < 0) {
+            append(ret, HEADERS);
+        }
+        return ret.length() == 0 ? NONE : ret.toString();
+    }
+
+    private <T, E extends Exception> T record(
+            MailOperation operation, String profile, @Nullable String host, @Nullable String endpoint,
+            MailCall<T, E> call) throws E {
+
+        final long start = System.nanoTime();
+        boolean success = false;
+        try {
+            final T ret = call.call();
+            success = true;
+            return ret;
+        } finally {
+            record(operation, profile, host, endpoint, System.nanoTime() - start, success);
+        }
+    }
+
+    private String hashHost(@Nullable String host) {
+        if (host == null || host.isEmpty()) {
+            return NONE;
+        }
+        return hostHashes.get(host.toLowerCase(Locale.ENGLISH), h -> hostTag(hash(h)));
+    }
+
+    /**
+     * Returns the provided hash if it's already a tag or there's still room for a new host tag,
+     * {@link #HOST_OTHER} otherwise.
+     */
+    private String hostTag(String hash) {
+        synchronized (hostTags) {
+            if (hostTags.contains(hash) || (hostTags.size() < MAX_HOST_TAGS && hostTags.add(hash))) {
+                return hash;
+            }
+            return HOST_OTHER;
+        }
+    }
+
+    private static byte[] randomSalt() {
+        final byte[] ret = new byte[HASH_SALT_BYTES];
+        new SecureRandom().nextBytes(ret);
+        return ret;
+    }
+
+    private String hash(String value) {
+        try {
+            final MessageDigest messageDigest = MessageDigest.getInstance(HASH_ALGORITHM);
+            messageDigest.update(hostHashSalt);
+            final byte[] digest = messageDigest.digest(value.getBytes(StandardCharsets.UTF_8));
+            final StringBuilder ret = new StringBuilder(HOST_HASH_BYTES * 2);
+            for (int it = 0; it < HOST_HASH_BYTES; it++) {
+                ret.append(Character.forDigit((digest[it] >> 4) & 0xF, 16))
+                        .append(Character.forDigit(digest[it] & 0xF, 16));
+            }
+            return ret.toString();
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    /**
+     * FetchProfile.Item#toString returns the class name followed by the item name
+     * (e.g. <code>...Item[ENVELOPE]</code>).
+     */
+    private static String itemName(FetchProfile.Item item) {
+        final String ret = item.toString();
+        final int nameStart = ret.lastIndexOf('[');
+        return nameStart >= 0 && ret.endsWith("]") ? ret.substring(nameStart + 1, ret.length() - 1) : ret;
+    }
+
+    private static void append(StringBuilder sb, String item) {
+        if (sb.length() > 0) {
+            sb.append('+');
+        }
+        sb.append(item.toLowerCase(Locale.ENGLISH));
+    }
+
+    /**
+     * Mail operation that may throw a checked exception.
+     */
+    @FunctionalInterface
+    public interface MailCall<T, E extends Exception> {
+        T call() throws E;
+    }
+}
@@ -0,0 +1,50 @@
+/*
+ * MailOperation.java
+ *
+ * Created on 2026-10-18, 03:10
+ *
+ * Copyright 2018 Marc Nuri
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.marcnuri.isotope.api.metrics;
+
+/**
+ * IMAP and SMTP operations recorded by {@link MailMetrics}.
+ *
+ * <p>Created by Marc Nuri <marc@marcnuri.com> on 2026-10-18.
+ */
+public enum MailOperation {
+
+    CONNECT("imap.connect"),
+    FOLDER_OPEN("imap.folder.open"),
+    FETCH("imap.fetch"),
+    STORE("imap.store"),
+    COPY("imap.copy"),
+    MOVE("imap.move"),
+    EXPUNGE("imap.expunge"),
+    SEARCH("imap.search"),
+    SMTP_CONNECT("smtp.connect"),
+    SMTP_SEND("smtp.send");
+
+    private final String tag;
+
+    MailOperation(String tag) {
+        this.tag = tag;
+    }
+
+    public String getTag() {
+        return tag;
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * InMemorySessionStore.java
+ *
+ * Created on 2026-10-17, 22:10
+ *
+ * Copyright 2018 Marc Nuri
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.marcnuri.isotope.api.session;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.lang.NonNull;
+import org.springframework.lang.Nullable;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Default {@link SessionStore}, sessions are kept in memory and expire if they're not used for a while.
+ *
+ * <p>Created by Marc Nuri <marc@marcnuri.com> on 2026-10-17.
+ */
+public class InMemorySessionStore implements SessionStore {
+
+    private final Cache<String, Session> sessions;
+
+    /**
+     * @param maxSize max number of sessions
+     * @param expireAfterAccessMillis time in milliseconds after which an unused session expires
+     */
+    public InMemorySessionStore(long maxSize, long expireAfterAccessMillis) {
+        sessions = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterAccess(expireAfterAccessMillis, TimeUnit.MILLISECONDS)
+                .build();
+    }
+
+    @Nullable
+    @Override
+    public Session get(@NonNull String token) {
+        return sessions.getIfPresent(token);
+    }
+
+    @Override
+    public void put(@NonNull Session session) {
+        sessions.put(session.getToken(), session);
+    }
+
+    @Nullable
+    @Override
+    public Session remove(@NonNull String token) {
+        return sessions.asMap().remove(token);
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * Session.java
+ *
+ * Created on 2026-10-17, 22:00
+ *
+ * Copyright 2018 Marc Nuri
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.marcnuri.isotope.api.session;
+
+import com.marcnuri.isotope.api.credentials.Credentials;
+import org.springframework.lang.NonNull;
+
+import java.io.Serializable;
+
+/**
+ * Server side session record identified by an opaque token issued on login.
+ *
+ * <p>Holds the decrypted {@link Credentials} of the user so that requests only need to send the token, and the
+ * account key ({@link com.marcnuri.isotope.api.credentials.CredentialsUtils#toAccountKey(Credentials)}) used to
+ * identify pooled connections of the session.
+ *
+ * <p>Created by Marc Nuri <marc@marcnuri.com> on 2026-10-17.
+ */
+public class Session implements Serializable {
+
+    private static final long serialVersionUID = 3318146407283617935L;
+
+    private final String token;
+    private final Credentials credentials;
+    private final String accountKey;
+    private final long createdAt;
+
+    public Session(@NonNull String token, @NonNull Credentials credentials, @NonNull String accountKey, long createdAt) {
+        this.token = token;
+        this.credentials = credentials;
+        this.accountKey = accountKey;
+        this.createdAt = createdAt;
+    }
+
+    public String getToken() {
+        return token;
+    }
+
+    /**
+     * Credentials are shared by all the requests of the session and must not be modified.
+     */
+    public Credentials getCredentials() {
+        return credentials;
+    }
+
+    public String getAccountKey() {
+        return accountKey;
+    }
+
+    public long getCreatedAt() {
+        return createdAt;
+    }
+}
@@ -0,0 +1,51 @@
+/*
+ * SessionStore.java
+ *
+ * Created on 2026-10-17, 22:05
+ *
+ * Copyright 2018 Marc Nuri
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.marcnuri.isotope.api.session;
+
+import org.springframework.lang.NonNull;
+import org.springframework.lang.Nullable;
+
+/**
+ * Storage for server side {@link Session}s.
+ *
+ * <p>Sessions are kept in memory by default ({@link InMemorySessionStore}), any other SessionStore bean defined in
+ * the application context will be used instead (e.g. to share sessions between several instances).
+ *
+ * <p>Created by Marc Nuri <marc@marcnuri.com> on 2026-10-17.
+ */
+public interface SessionStore {
+
+    /**
+     * Returns the session for the provided token or null if the session doesn't exist or has expired.
+     */
+    @Nullable
+    Session get(@NonNull String token);
+
+    void put(@NonNull Session session);
+
+    /**
+     * Removes the session for the provided token.
+     *
+     * @return the removed session or null if it didn't exist
+     */
+    @Nullable
+    Session remove(@NonNull String token);
+}
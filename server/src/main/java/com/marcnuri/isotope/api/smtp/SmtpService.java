@@ -27,6 +27,8 @@ import com.marcnuri.isotope.api.http.IsotopeURLDataSource;
 import com.marcnuri.isotope.api.message.Attachment;
 import com.marcnuri.isotope.api.message.Message;
 import com.marcnuri.isotope.api.message.MessageUtils;
+import com.marcnuri.isotope.api.metrics.MailMetrics;
+import com.marcnuri.isotope.api.metrics.MailOperation;
 import com.sun.mail.util.MailSSLSocketFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -83,13 +85,18 @@ public class SmtpService {
             "pre.code {background-color: #ebebeb; margin: 0; padding: 8px}";
 
     private final MailSSLSocketFactory mailSSLSocketFactory;
+    private final MailMetrics mailMetrics;
+    private final String endpoint;
 
     private Session session;
     private Transport smtpTransport;
+    private String smtpHost;
 
     @Autowired
-    public SmtpService(MailSSLSocketFactory mailSSLSocketFactory) {
+    public SmtpService(MailSSLSocketFactory mailSSLSocketFactory, MailMetrics mailMetrics) {
         this.mailSSLSocketFactory = mailSSLSocketFactory;
+        this.mailMetrics = mailMetrics;
+        this.endpoint = MailMetrics.currentEndpoint();
     }
     /**
      * Checks if specified {@link Credentials} are valid
@@ -166,7 +173,11 @@ public class SmtpService {
             mimeMessage.setContent(multipart);
 
             mimeMessage.saveChanges();
-            getSmtpTransport(credentials).sendMessage(mimeMessage, mimeMessage.getAllRecipients());
+            final Transport transport = getSmtpTransport(credentials);
+            mailMetrics.record(MailOperation.SMTP_SEND, smtpHost, endpoint, () -> {
+                transport.sendMessage(mimeMessage, mimeMessage.getAllRecipients());
+                return null;
+            });
         } catch(MessagingException | IOException ex) {
             throw new IsotopeException("Problem sending message", ex);
         }
@@ -194,13 +205,20 @@ public class SmtpService {
 
     private Transport getSmtpTransport(Credentials credentials) throws MessagingException {
         if (smtpTransport == null) {
-            smtpTransport = getSession(credentials).getTransport(credentials.getSmtpSsl() ? SMTPS_PROTOCOL : SMTP_PROTOCOL);
-            final String smtpHost = credentials.getSmtpHost();
-            smtpTransport.connect(
-                    smtpHost != null && !smtpHost.isEmpty() ? smtpHost : credentials.getServerHost(),
-                    credentials.getSmtpPort(),
-                    credentials.getUser(),
-                    credentials.getPassword());
+            final Transport transport = getSession(credentials)
+                    .getTransport(credentials.getSmtpSsl() ? SMTPS_PROTOCOL : SMTP_PROTOCOL);
+            final String credentialsSmtpHost = credentials.getSmtpHost();
+            smtpHost = credentialsSmtpHost != null && !credentialsSmtpHost.isEmpty() ?
+                    credentialsSmtpHost : credentials.getServerHost();
+            mailMetrics.record(MailOperation.SMTP_CONNECT, smtpHost, endpoint, () -> {
+                transport.connect(
+                        smtpHost,
+                        credentials.getSmtpPort(),
+                        credentials.getUser(),
+                        credentials.getPassword());
+                return null;
+            });
+            smtpTransport = transport;
             log.debug("Opened new SMTP transport");
         }
         return smtpTransport;
@@ -0,0 +1,149 @@
+/*
+ * ExecutionConfigurationTest.java
+ *
+ * Created on 2026-10-18, 02:40
+ *
+ * Copyright 2018 Marc Nuri
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.marcnuri.isotope.api.configuration;
+
+import org.junit.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.everyItem;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.startsWith;
+
+/**
+ * Created by Marc Nuri <marc@marcnuri.com> on 2026-10-18.
+ */
+public class ExecutionConfigurationTest {
+
+    @Test
+    public void newBlockingScheduler_bounded_shouldRunInBoundedThreads() {
+        // Given
+        final Scheduler scheduler = ExecutionConfiguration.newBlockingScheduler(ExecutionMode.BOUNDED, 2, 10);
+        try {
+            // When
+            final String result = Flux.just(1).map(i -> Thread.currentThread().getName())
+                    .subscribeOn(scheduler).blockFirst();
+            // Then
+            assertThat(result, startsWith("isotope-blocking-"));
+        } finally {
+            scheduler.dispose();
+        }
+    }
+
+    /**
+     * Simulates more IDLE commands than available cores (javax.mail waits for the IDLE response while holding the
+     * protocol's monitor), other blocking work must still be processed. In VIRTUAL mode (Java 21-23) this would
+     * fail if change streams were processed in virtual threads (carrier threads pinned).
+     */
+    @Test
+    public void newChangesScheduler_moreIdleStreamsThanCores_shouldNotStarveBlockingScheduler() throws Exception {
+        // Given
+        final int streams = Runtime.getRuntime().availableProcessors() * 2 + 1;
+        final StreamScheduler changesScheduler = ExecutionConfiguration.newChangesScheduler(streams);
+        final Scheduler idleScheduler = ExecutionConfiguration.newIdleScheduler(1);
+        final Scheduler blockingScheduler = ExecutionConfiguration.newBlockingScheduler(
+                ExecutionConfiguration.effectiveMode(ExecutionMode.VIRTUAL), 2, 10);
+        final Set<String> idleThreads = Collections.newSetFromMap(new ConcurrentHashMap<>());
+        final CountDownLatch idling = new CountDownLatch(streams);
+        final CountDownLatch idleResponse = new CountDownLatch(1);
+        try {
+            for (int it = 0; it < streams; it++) {
+                final Object protocol = new Object();
+                changesScheduler.subscribeOn(Flux.<Boolean>create(sink -> {
+                    synchronized (protocol) {
+                        idleThreads.add(Thread.currentThread().getName());
+                        idling.countDown();
+                        awaitUninterruptibly(idleResponse);
+                    }
+                    sink.complete();
+                })).subscribe();
+            }
+            assertThat(idling.await(5, TimeUnit.SECONDS), is(true));
+            // When
+            final Boolean result = Mono.fromCallable(() -> true).subscribeOn(blockingScheduler)
+                    .block(Duration.ofSeconds(5));
+            final Long interruption = Mono.delay(Duration.ofMillis(10), idleScheduler)
+                    .block(Duration.ofSeconds(5));
+            // Then
+            assertThat(result, is(true));
+            assertThat(interruption, is(0L));
+            assertThat(changesScheduler.getAvailableStreams(), is(0));
+            assertThat(idleThreads, everyItem(startsWith("isotope-changes-")));
+        } finally {
+            idleResponse.countDown();
+            changesScheduler.dispose();
+            idleScheduler.dispose();
+            blockingScheduler.dispose();
+        }
+    }
+
+    @Test
+    public void newIdleScheduler_periodicTask_shouldRunInIdleThreads() {
+        // Given
+        final Scheduler idleScheduler = ExecutionConfiguration.newIdleScheduler(1);
+        try {
+            // When
+            final String result = Flux.interval(Duration.ofMillis(1), idleScheduler)
+                    .map(tick -> Thread.currentThread().getName()).blockFirst(Duration.ofSeconds(5));
+            // Then
+            assertThat(result, startsWith("isotope-idle-"));
+        } finally {
+            idleScheduler.dispose();
+        }
+    }
+
+    @Test
+    public void effectiveMode_virtualInUnsupportedRuntime_shouldFallBackToBounded() {
+        // Given
+        final boolean virtualThreadsSupported = System.getProperty("java.specification.version")
+                .matches("(2[1-9]|[3-9]\\d)(\\..*)?");
+        // When
+        final ExecutionMode result = ExecutionConfiguration.effectiveMode(ExecutionMode.VIRTUAL);
+        // Then
+        assertThat(result, equalTo(virtualThreadsSupported ? ExecutionMode.VIRTUAL : ExecutionMode.BOUNDED));
+    }
+
+    @Test
+    public void effectiveMode_elastic_shouldReturnElastic() {
+        // When
+        final ExecutionMode result = ExecutionConfiguration.effectiveMode(ExecutionMode.ELASTIC);
+        // Then
+        assertThat(result, is(ExecutionMode.ELASTIC));
+    }
+
+    private static void awaitUninterruptibly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
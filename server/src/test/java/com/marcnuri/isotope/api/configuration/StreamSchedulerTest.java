@@ -0,0 +1,86 @@
+/*
+ * StreamSchedulerTest.java
+ *
+ * Created on 2026-10-18, 17:55
+ *
+ * Copyright 2018 Marc Nuri
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.marcnuri.isotope.api.configuration;
+
+import com.marcnuri.isotope.api.exception.IsotopeException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.http.HttpStatus;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.fail;
+
+/**
+ * Created by Marc Nuri <marc@marcnuri.com> on 2026-10-18.
+ */
+public class StreamSchedulerTest {
+
+    private StreamScheduler streamScheduler;
+
+    @Before
+    public void setUp() {
+        streamScheduler = ExecutionConfiguration.newChangesScheduler(2);
+    }
+
+    @After
+    public void tearDown() {
+        streamScheduler.dispose();
+    }
+
+    @Test
+    public void subscribeOn_maxStreamsReached_shouldThrowTooManyRequests() {
+        // Given
+        streamScheduler.subscribeOn(Flux.never());
+        streamScheduler.subscribeOn(Flux.never());
+        try {
+            // When
+            streamScheduler.subscribeOn(Flux.never());
+            fail("Stream should have been rejected");
+        } catch (IsotopeException ex) {
+            // Then
+            assertThat(ex.getHttpStatus(), equalTo(HttpStatus.TOO_MANY_REQUESTS));
+        }
+    }
+
+    @Test
+    public void subscribeOn_streamCancelled_shouldReleaseStream() {
+        // Given
+        final Disposable stream = streamScheduler.subscribeOn(Flux.never()).subscribe();
+        // When
+        stream.dispose();
+        // Then
+        assertThat(streamScheduler.getAvailableStreams(), is(2));
+    }
+
+    @Test
+    public void subscribeOn_streamCompleted_shouldReleaseStream() {
+        // When
+        final Long result = streamScheduler.subscribeOn(Flux.just(1, 2, 3)).count().block();
+        // Then
+        assertThat(result, is(3L));
+        assertThat(streamScheduler.getAvailableStreams(), is(2));
+    }
+}
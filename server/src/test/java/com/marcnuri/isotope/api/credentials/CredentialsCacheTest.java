@@ -0,0 +1,78 @@
+/*
+ * CredentialsCacheTest.java
+ *
+ * Created on 2026-10-17, 21:25
+ *
+ * Copyright 2018 Marc Nuri
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.marcnuri.isotope.api.credentials;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Created by Marc Nuri <marc@marcnuri.com> on 2026-10-17.
+ */
+public class CredentialsCacheTest {
+
+    @Test
+    public void get_cachedCredentials_shouldReturnIndependentCopy() {
+        // Given
+        final CredentialsCache credentialsCache = new CredentialsCache(10L, 60000L);
+        final byte[] decrypted = "{\"user\":\"user\"}".getBytes(StandardCharsets.UTF_8);
+        credentialsCache.put("salt", "encrypted", decrypted);
+        Arrays.fill(decrypted, (byte) 0);
+        Arrays.fill(credentialsCache.get("salt", "encrypted"), (byte) 0);
+
+        // When
+        final byte[] result = credentialsCache.get("salt", "encrypted");
+
+        // Then
+        assertThat(new String(result, StandardCharsets.UTF_8), equalTo("{\"user\":\"user\"}"));
+    }
+
+    @Test
+    public void get_differentEncryptedCredentials_shouldReturnNull() {
+        // Given
+        final CredentialsCache credentialsCache = new CredentialsCache(10L, 60000L);
+        credentialsCache.put("salt", "encrypted", new byte[]{1});
+
+        // When
+        final byte[] result = credentialsCache.get("salt", "tampered");
+
+        // Then
+        assertThat(result, nullValue());
+    }
+
+    @Test
+    public void get_disabledCache_shouldReturnNull() {
+        // Given
+        final CredentialsCache credentialsCache = new CredentialsCache(0L, 60000L);
+        credentialsCache.put("salt", "encrypted", new byte[]{1});
+
+        // When
+        final byte[] result = credentialsCache.get("salt", "encrypted");
+
+        // Then
+        assertThat(result, nullValue());
+    }
+}
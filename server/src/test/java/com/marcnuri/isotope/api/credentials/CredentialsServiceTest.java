@@ -23,17 +23,25 @@ package com.marcnuri.isotope.api.credentials;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.marcnuri.isotope.api.configuration.IsotopeApiConfiguration;
 import com.marcnuri.isotope.api.exception.AuthenticationException;
+import com.marcnuri.isotope.api.http.HttpHeaders;
+import com.marcnuri.isotope.api.session.InMemorySessionStore;
+import com.marcnuri.isotope.api.session.SessionStore;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.Mockito;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.mock.web.MockHttpServletRequest;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
 
 import java.util.Collections;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
 import static org.junit.Assert.fail;
 import static org.mockito.Mockito.doReturn;
 
@@ -49,15 +57,18 @@ public class CredentialsServiceTest {
     private ObjectMapper objectMapper;
     @MockBean
     private IsotopeApiConfiguration isotopeApiConfiguration;
+    private SessionStore sessionStore;
 
     @Before
     public void setUp() {
-        credentialsService = new CredentialsService(objectMapper, isotopeApiConfiguration);
+        sessionStore = new InMemorySessionStore(10L, 60000L);
+        credentialsService = new CredentialsService(objectMapper, isotopeApiConfiguration, sessionStore);
     }
 
     @After
     public void tearDown() throws Exception {
         credentialsService = null;
+        sessionStore = null;
     }
 
     ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
@@ -106,4 +117,66 @@ public class CredentialsServiceTest {
         // Then
         fail("AuthenticationException was expected");
     }
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    // Sessions
+    @Test
+    public void fromRequest_validSession_shouldReturnSessionCredentials() {
+        // Given
+        final Credentials credentials = new Credentials();
+        credentials.setServerHost("mail.isotope.com");
+        final MockHttpServletRequest request = new MockHttpServletRequest();
+        request.addHeader(HttpHeaders.ISOTOPE_SESSION, credentialsService.createSession(credentials));
+
+        // When
+        final Credentials result = credentialsService.fromRequest(request);
+
+        // Then
+        assertThat(result, sameInstance(credentials));
+    }
+
+    @Test(expected = AuthenticationException.class)
+    public void fromRequest_removedSession_shouldThrowException() {
+        // Given
+        final MockHttpServletRequest request = new MockHttpServletRequest();
+        request.addHeader(HttpHeaders.ISOTOPE_SESSION, credentialsService.createSession(new Credentials()));
+        credentialsService.removeSession(request);
+
+        // When
+        credentialsService.fromRequest(request);
+
+        // Then
+        fail("AuthenticationException was expected");
+    }
+
+    @Test
+    public void fromRequest_removedSessionWithEncryptedCredentials_shouldReturnDecryptedCredentials() throws Exception {
+        // Given
+        final Credentials credentials = new Credentials();
+        credentials.setServerHost("mail.isotope.com");
+        doReturn("Th1s 1s th3 p4ssw0rd").when(isotopeApiConfiguration).getEncryptionPassword();
+        doReturn("{\"serverHost\":\"mail.isotope.com\"}").when(objectMapper).writeValueAsString(credentials);
+        doReturn(credentials).when(objectMapper).readValue(Mockito.any(byte[].class), Mockito.eq(Credentials.class));
+        final Credentials encrypted = credentialsService.encrypt(credentials);
+        final MockHttpServletRequest request = new MockHttpServletRequest();
+        request.addHeader(HttpHeaders.ISOTOPE_SESSION, credentialsService.createSession(credentials));
+        request.addHeader(HttpHeaders.ISOTOPE_CRDENTIALS, encrypted.getEncrypted());
+        request.addHeader(HttpHeaders.ISOTOPE_SALT, encrypted.getSalt());
+        credentialsService.removeSession(request);
+
+        // When
+        final Credentials result = credentialsService.fromRequest(request);
+
+        // Then
+        assertThat(result, sameInstance(credentials));
+    }
+
+    @Test
+    public void removeSession_noSessionHeader_shouldReturnNull() {
+        // When
+        final Object result = credentialsService.removeSession(new MockHttpServletRequest());
+
+        // Then
+        assertThat(result, nullValue());
+    }
 }
@@ -20,10 +20,17 @@
  */
 package com.marcnuri.isotope.api.folder;
 
+import com.marcnuri.isotope.api.configuration.StreamScheduler;
 import com.marcnuri.isotope.api.credentials.Credentials;
 import com.marcnuri.isotope.api.credentials.CredentialsService;
 import com.marcnuri.isotope.api.imap.ImapService;
+import com.marcnuri.isotope.api.imap.MessagePrefetcher;
+import com.marcnuri.isotope.api.imap.UidSet;
+import com.marcnuri.isotope.api.message.Attachment;
 import com.marcnuri.isotope.api.message.Message;
+import com.marcnuri.isotope.api.message.MessageWithFolder;
+import com.marcnuri.isotope.api.metrics.MailMetrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
@@ -31,9 +38,13 @@ import org.junit.runner.RunWith;
 import org.mockito.Mockito;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
 import org.springframework.hateoas.MediaTypes;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.mock.web.MockHttpServletRequest;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
 import org.springframework.test.util.JsonPathExpectationsHelper;
@@ -41,26 +52,42 @@ import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.test.web.servlet.ResultActions;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
 import reactor.core.publisher.Flux;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
 
 import javax.mail.URLName;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+import static com.marcnuri.isotope.api.configuration.ExecutionConfiguration.BLOCKING_SCHEDULER;
+import static com.marcnuri.isotope.api.configuration.ExecutionConfiguration.CHANGES_SCHEDULER;
+import static com.marcnuri.isotope.api.configuration.ExecutionConfiguration.IDLE_SCHEDULER;
 import static com.marcnuri.isotope.api.configuration.WebConfiguration.IMAP_SERVICE_PROTOTYPE;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.aMapWithSize;
+import static org.hamcrest.Matchers.containsString;
 import static org.hamcrest.Matchers.endsWith;
 import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.isEmptyString;
+import static org.hamcrest.Matchers.startsWith;
 import static org.mockito.Mockito.doNothing;
 import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.springframework.hateoas.mvc.ControllerLinkBuilder.linkTo;
+import static org.springframework.hateoas.mvc.ControllerLinkBuilder.methodOn;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
@@ -68,9 +95,32 @@ import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.
  * Created by Marc Nuri <marc@marcnuri.com> on 2018-09-23.
  */
 @RunWith(SpringJUnit4ClassRunner.class)
-@ContextConfiguration(classes = FolderResource.class)
+@ContextConfiguration(classes = {FolderResource.class, FolderResourceTest.DependenciesConfiguration.class})
 public class FolderResourceTest {
 
+    @Configuration
+    static class DependenciesConfiguration {
+        @Bean(name = BLOCKING_SCHEDULER)
+        public Scheduler blockingScheduler() {
+            return Schedulers.elastic();
+        }
+
+        @Bean(name = CHANGES_SCHEDULER)
+        public StreamScheduler changesScheduler() {
+            return new StreamScheduler(Schedulers.elastic(), 10);
+        }
+
+        @Bean(name = IDLE_SCHEDULER)
+        public Scheduler idleScheduler() {
+            return Schedulers.parallel();
+        }
+
+        @Bean
+        public MailMetrics mailMetrics() {
+            return new MailMetrics(new SimpleMeterRegistry());
+        }
+    }
+
     @Autowired
     private FolderResource folderResource;
 
@@ -78,6 +128,8 @@ public class FolderResourceTest {
     private CredentialsService credentialsService;
     @MockBean(name=IMAP_SERVICE_PROTOTYPE)
     private ImapService imapService;
+    @MockBean
+    private MessagePrefetcher messagePrefetcher;
 
     private MockMvc mockMvc;
 
@@ -128,6 +180,54 @@ public class FolderResourceTest {
                 endsWith("/v1/folders/1337/messages/seen/{seen}")));
     }
 
+    @Test
+    public void getFolders_matchingIfNoneMatch_shouldReturnNotModified() throws Exception {
+        // Given
+        final Folder mockFolder = new Folder();
+        mockFolder.setChildren(new Folder[0]);
+        mockFolder.setFolderId("1337");
+        mockFolder.setMessageCount(1);
+        doReturn(Collections.singletonList(mockFolder))
+                .when(imapService).getFolders(Mockito.any(), Mockito.isNull());
+        final String eTag = mockMvc.perform(get("/v1/folders").accept(MediaTypes.HAL_JSON_VALUE))
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+
+        // When
+        final ResultActions result = mockMvc.perform(
+                get("/v1/folders")
+                        .header(HttpHeaders.IF_NONE_MATCH, eTag)
+                        .accept(MediaTypes.HAL_JSON_VALUE));
+
+        // Then
+        result.andExpect(status().isNotModified());
+        assertThat(result.andReturn().getResponse().getContentAsString(), isEmptyString());
+    }
+
+    @Test
+    public void getFolders_folderChanged_shouldReturnOk() throws Exception {
+        // Given
+        final Folder mockFolder = new Folder();
+        mockFolder.setChildren(new Folder[0]);
+        mockFolder.setFolderId("1337");
+        mockFolder.setMessageCount(1);
+        doReturn(Collections.singletonList(mockFolder))
+                .when(imapService).getFolders(Mockito.any(), Mockito.isNull());
+        final String eTag = mockMvc.perform(get("/v1/folders").accept(MediaTypes.HAL_JSON_VALUE))
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        mockFolder.setMessageCount(2);
+
+        // When
+        final ResultActions result = mockMvc.perform(
+                get("/v1/folders")
+                        .header(HttpHeaders.IF_NONE_MATCH, eTag)
+                        .accept(MediaTypes.HAL_JSON_VALUE));
+
+        // Then
+        result.andExpect(status().isOk());
+        result.andExpect(header().string(HttpHeaders.CACHE_CONTROL, "private, no-cache"));
+        result.andExpect(jsonPath("[0].messageCount").value(2));
+    }
+
     @Test
     public void createRootFolder_validNewName_shouldReturnOk() throws Exception {
         // Given
@@ -233,7 +333,7 @@ public class FolderResourceTest {
             c.complete();
         });
         doReturn(mockFlux).when(imapService).getMessagesFlux(
-                Mockito.any(), Mockito.eq(new URLName("1337")), Mockito.any());
+                Mockito.any(), Mockito.eq(new URLName("1337")));
 
         // When
         final ResultActions result = mockMvc.perform(get("/v1/folders/MTMzNw==/messages")
@@ -255,6 +355,37 @@ public class FolderResourceTest {
         assertThat("Event Stream should contain 2 packets", results, equalTo(2));
     }
 
+    @Test
+    public void getFolderChanges_validFolderId_shouldReturnOk() throws Exception {
+        // Given
+        final Message newMessage = new Message();
+        newMessage.setUid(1337L);
+        final FolderChanges added = new FolderChanges();
+        added.setUidValidity(1L);
+        added.setMessages(Collections.singletonList(newMessage));
+        final FolderChanges expunged = new FolderChanges();
+        expunged.setUidValidity(1L);
+        expunged.setExpunged(Collections.singletonList(1337L));
+        final Flux<ServerSentEvent<FolderChanges>> mockFlux = Flux.create(c -> {
+            c.next(ServerSentEvent.builder(added).build());
+            c.next(ServerSentEvent.builder(expunged).build());
+            c.complete();
+        });
+        doReturn(mockFlux).when(imapService).getFolderChangesFlux(
+                Mockito.any(), Mockito.eq(new URLName("1337")), Mockito.any());
+
+        // When
+        final ResultActions result = mockMvc.perform(get("/v1/folders/MTMzNw==/changes")
+                .accept("text/event-stream"));
+
+        // Then
+        result.andDo(MvcResult::getAsyncResult);
+        result.andExpect(status().isOk());
+        final String content = result.andReturn().getResponse().getContentAsString();
+        assertThat(content, containsString("data:{\"uidValidity\":1,\"messages\":[{"));
+        assertThat(content, containsString("data:{\"uidValidity\":1,\"expunged\":[1337]}"));
+    }
+
     @Test
     public void preloadMessages_validFolderAndValidIds_shouldReturnOk() throws Exception {
         // Given
@@ -263,7 +394,7 @@ public class FolderResourceTest {
         message.setUid(messageUid);
         message.setSubject("Message in a bottle");
         doReturn(Collections.singletonList(message))
-                .when(imapService).preloadMessages(Mockito.any(), Mockito.any(), Mockito.anyList());
+                .when(imapService).preloadMessages(Mockito.any(), Mockito.any(), Mockito.any(UidSet.class));
 
         // When
         final ResultActions result = mockMvc.perform(
@@ -285,7 +416,7 @@ public class FolderResourceTest {
         folder.setChildren(new Folder[0]);
         folder.setFolderId(folderId);
         doReturn(folder)
-                .when(imapService).deleteMessages(Mockito.any(), Mockito.any(), Mockito.anyList());
+                .when(imapService).deleteMessages(Mockito.any(), Mockito.any(), Mockito.any(UidSet.class));
 
         // When
         final ResultActions result = mockMvc.perform(
@@ -299,11 +430,119 @@ public class FolderResourceTest {
         result.andExpect(jsonPath("$._links", aMapWithSize(10)));
     }
 
+    @Test
+    public void deleteMessages_compactUidSet_shouldDelegateParsedUidSetToService() throws Exception {
+        // Given
+        final Folder folder = new Folder();
+        folder.setChildren(new Folder[0]);
+        folder.setFolderId("1337");
+        doReturn(folder)
+                .when(imapService).deleteMessages(Mockito.any(), Mockito.any(), Mockito.any(UidSet.class));
+
+        // When
+        final ResultActions result = mockMvc.perform(
+                delete("/v1/folders/1337/messages?id=1:500,600&id=501")
+                        .accept(MediaTypes.HAL_JSON_VALUE));
+
+        // Then
+        result.andExpect(status().isOk());
+        verify(imapService, times(1)).deleteMessages(
+                Mockito.any(), Mockito.any(), Mockito.eq(UidSet.parse("1:501,600")));
+    }
+
+    @Test
+    public void getMessage_validFolderAndMessage_shouldReturnOkAndPrefetchAdjacentMessages() throws Exception {
+        // Given
+        final Folder folder = new Folder();
+        folder.setChildren(new Folder[0]);
+        folder.setFolderId("MTMzNw==");
+        final MessageWithFolder message = new MessageWithFolder();
+        message.setUid(1337L);
+        message.setFolder(folder);
+        doReturn(message).when(imapService).getMessage(
+                Mockito.any(), Mockito.eq(new URLName("1337")), Mockito.eq(1337L), Mockito.any());
+
+        // When
+        final ResultActions result = mockMvc.perform(get("/v1/folders/MTMzNw==/messages/1337")
+                .accept(MediaTypes.HAL_JSON_VALUE));
+
+        // Then
+        result.andExpect(status().isOk());
+        result.andExpect(jsonPath("uid").value(1337));
+        verify(messagePrefetcher, times(1)).prefetch(
+                Mockito.any(), Mockito.eq(new URLName("1337")), Mockito.eq(1337L));
+    }
+
+    @Test
+    public void getMessagePart_nestedPartPathAndRange_shouldDelegateToService() throws Exception {
+        // Given
+        doNothing().when(imapService).readMessagePart(
+                Mockito.any(), Mockito.any(), Mockito.any(), Mockito.anyLong(), Mockito.any(), Mockito.any());
+
+        // When
+        final ResultActions result = mockMvc.perform(get("/v1/folders/MTMzNw==/messages/1337/parts/2.1")
+                .header(HttpHeaders.RANGE, "bytes=0-1023"));
+
+        // Then
+        result.andExpect(status().isOk());
+        verify(imapService, times(1)).readMessagePart(Mockito.any(), Mockito.any(),
+                Mockito.eq(new URLName("1337")), Mockito.eq(1337L), Mockito.eq("2.1"), Mockito.eq("bytes=0-1023"));
+    }
+
+    @Test
+    public void getMessagePart_na_shouldReturnStrongETagAndImmutableCacheControl() throws Exception {
+        // Given
+        doReturn(1L).when(imapService).getUIDValidity(Mockito.any(), Mockito.eq(new URLName("1337")));
+
+        // When
+        final ResultActions result = mockMvc.perform(get("/v1/folders/MTMzNw==/messages/1337/parts/2.1"));
+
+        // Then
+        result.andExpect(status().isOk());
+        result.andExpect(header().string(HttpHeaders.ETAG, startsWith("\"")));
+        result.andExpect(header().string(HttpHeaders.CACHE_CONTROL, containsString("immutable")));
+    }
+
+    @Test
+    public void getMessagePart_matchingIfNoneMatch_shouldReturnNotModifiedWithoutReadingPart() throws Exception {
+        // Given
+        doReturn(1L).when(imapService).getUIDValidity(Mockito.any(), Mockito.eq(new URLName("1337")));
+        final String eTag = mockMvc.perform(get("/v1/folders/MTMzNw==/messages/1337/parts/2.1"))
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+
+        // When
+        final ResultActions result = mockMvc.perform(get("/v1/folders/MTMzNw==/messages/1337/parts/2.1")
+                .header(HttpHeaders.IF_NONE_MATCH, eTag));
+
+        // Then
+        result.andExpect(status().isNotModified());
+        verify(imapService, times(1)).readMessagePart(Mockito.any(), Mockito.any(),
+                Mockito.any(), Mockito.anyLong(), Mockito.any(), Mockito.any());
+    }
+
+    @Test
+    public void getMessagePart_uidValidityChanged_shouldReadPart() throws Exception {
+        // Given
+        doReturn(1L).when(imapService).getUIDValidity(Mockito.any(), Mockito.eq(new URLName("1337")));
+        final String eTag = mockMvc.perform(get("/v1/folders/MTMzNw==/messages/1337/parts/2.1"))
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        doReturn(2L).when(imapService).getUIDValidity(Mockito.any(), Mockito.eq(new URLName("1337")));
+
+        // When
+        final ResultActions result = mockMvc.perform(get("/v1/folders/MTMzNw==/messages/1337/parts/2.1")
+                .header(HttpHeaders.IF_NONE_MATCH, eTag));
+
+        // Then
+        result.andExpect(status().isOk());
+        verify(imapService, times(2)).readMessagePart(Mockito.any(), Mockito.any(),
+                Mockito.any(), Mockito.anyLong(), Mockito.any(), Mockito.any());
+    }
+
     @Test
     public void setMessageSeen_validFolderAndMessage_shouldReturnNoContent() throws Exception {
         // Given
         doNothing().when(imapService)
-                .setMessagesSeen(Mockito.any(), Mockito.any(), Mockito.anyBoolean(), Mockito.any(long[].class));
+                .setMessagesSeen(Mockito.any(), Mockito.any(), Mockito.anyBoolean(), Mockito.any(UidSet.class));
 
         // When
         final ResultActions result = mockMvc.perform(
@@ -320,7 +559,7 @@ public class FolderResourceTest {
     public void setMessagesSeen_validFolderAndMessages_shouldReturnNoContent() throws Exception {
         // Given
         doNothing().when(imapService)
-                .setMessagesSeen(Mockito.any(), Mockito.any(), Mockito.anyBoolean(), Mockito.any(long[].class));
+                .setMessagesSeen(Mockito.any(), Mockito.any(), Mockito.anyBoolean(), Mockito.any(UidSet.class));
 
         // When
         final ResultActions result = mockMvc.perform(
@@ -337,7 +576,7 @@ public class FolderResourceTest {
     public void setMessageFlagged_validFolderAndMessage_shouldReturnNoContent() throws Exception {
         // Given
         doNothing().when(imapService)
-                .setMessagesFlagged(Mockito.any(), Mockito.any(), Mockito.anyBoolean(), Mockito.any(long[].class));
+                .setMessagesFlagged(Mockito.any(), Mockito.any(), Mockito.anyBoolean(), Mockito.any(UidSet.class));
 
         // When
         final ResultActions result = mockMvc.perform(
@@ -349,4 +588,33 @@ public class FolderResourceTest {
         // Then
         result.andExpect(status().isNoContent());
     }
+
+    @Test
+    public void addLinks_attachmentsWithReservedCharacters_shouldMatchControllerLinkBuilder() {
+        // Given
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(new MockHttpServletRequest()));
+        final Message message = new Message();
+        message.setUid(1337L);
+        final String fileName = "my file \u00f1/\u00e4?#%{x}.pdf";
+        final List<Attachment> attachments = Arrays.asList(
+                new Attachment(null, fileName, "application/pdf", 1),
+                new Attachment("cid@isotope", null, "image/png", 1),
+                new Attachment(null, fileName, "application/pdf", 1, "1.2"));
+
+        // When
+        final List<Attachment> result = FolderResource.addLinks("SU5CT1g", message, attachments);
+
+        // Then
+        assertThat(result.get(0).getLink(FolderResource.REL_DOWNLOAD).getHref(), equalTo(linkTo(methodOn(FolderResource.class)
+                .getAttachment(null, "SU5CT1g", 1337L, fileName, false, null, null)).withRel(FolderResource.REL_DOWNLOAD).expand()
+                .getHref()));
+        assertThat(result.get(0).getLink(FolderResource.REL_DOWNLOAD).getHref(), endsWith(
+                "/v1/folders/SU5CT1g/messages/1337/attachments/my%20file%20%C3%B1/%C3%A4%3F%23%25%7Bx%7D.pdf"
+                        + "?contentId=false"));
+        assertThat(result.get(1).getLink(FolderResource.REL_DOWNLOAD).getHref(),
+                endsWith("/v1/folders/SU5CT1g/messages/1337/attachments/cid@isotope?contentId=true"));
+        assertThat(result.get(2).getLink(FolderResource.REL_DOWNLOAD).getHref(),
+                endsWith("/v1/folders/SU5CT1g/messages/1337/parts/1.2"));
+        RequestContextHolder.resetRequestAttributes();
+    }
 }
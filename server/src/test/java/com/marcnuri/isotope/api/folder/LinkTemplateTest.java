@@ -0,0 +1,74 @@
+/*
+ * LinkTemplateTest.java
+ *
+ * Created on 2026-10-17, 22:55
+ *
+ * Copyright 2018 Marc Nuri
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.marcnuri.isotope.api.folder;
+
+import org.junit.Test;
+import org.springframework.hateoas.Link;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Created by Marc Nuri <marc@marcnuri.com> on 2026-10-17.
+ */
+public class LinkTemplateTest {
+
+    @Test
+    public void expand_multiplePlaceholders_shouldReplaceInPlaceholderOrder() {
+        // Given
+        final LinkTemplate linkTemplate = LinkTemplate.from(
+                new Link("http://localhost/v1/folders/FID/messages/MID/attachments/AID?contentId=false", "download"),
+                "FID", "MID", "AID");
+
+        // When
+        final Link result = linkTemplate.expand("SU5CT1g", "1337", "my%20file.pdf");
+
+        // Then
+        assertThat(result.getHref(),
+                equalTo("http://localhost/v1/folders/SU5CT1g/messages/1337/attachments/my%20file.pdf?contentId=false"));
+        assertThat(result.getRel(), equalTo("download"));
+    }
+
+    @Test
+    public void expand_repeatedAndMissingPlaceholders_shouldReplaceEveryOccurrence() {
+        // Given
+        final LinkTemplate linkTemplate = LinkTemplate.from(
+                new Link("/FID/FID/end", "self"), "FID", "UNUSED");
+
+        // When
+        final Link result = linkTemplate.expand("a", "b");
+
+        // Then
+        assertThat(result.getHref(), equalTo("/a/a/end"));
+    }
+
+    @Test
+    public void expand_noPlaceholders_shouldReturnOriginalHref() {
+        // Given
+        final LinkTemplate linkTemplate = LinkTemplate.from(new Link("http://localhost/v1/folders", "folders"));
+
+        // When
+        final Link result = linkTemplate.expand();
+
+        // Then
+        assertThat(result.getHref(), equalTo("http://localhost/v1/folders"));
+    }
+}
@@ -20,37 +20,65 @@
  */
 package com.marcnuri.isotope.api.imap;
 
+import com.marcnuri.isotope.api.configuration.EmbeddedImageMode;
 import com.marcnuri.isotope.api.configuration.IsotopeApiConfiguration;
 import com.marcnuri.isotope.api.credentials.Credentials;
 import com.marcnuri.isotope.api.credentials.CredentialsService;
 import com.marcnuri.isotope.api.exception.IsotopeException;
 import com.marcnuri.isotope.api.exception.NotFoundException;
 import com.marcnuri.isotope.api.folder.Folder;
+import com.marcnuri.isotope.api.folder.FolderChanges;
 import com.marcnuri.isotope.api.folder.FolderUtils;
+import com.marcnuri.isotope.api.message.EnvelopeCache;
+import com.marcnuri.isotope.api.message.MessageBodyCache;
+import com.marcnuri.isotope.api.message.MessagePrefetchCache;
+import com.marcnuri.isotope.api.metrics.MailMetrics;
+import com.sun.mail.iap.ByteArray;
+import com.sun.mail.imap.CopyUID;
 import com.sun.mail.imap.IMAPFolder;
+import com.sun.mail.imap.IMAPMessage;
 import com.sun.mail.imap.IMAPStore;
+import com.sun.mail.imap.protocol.BODY;
+import com.sun.mail.imap.protocol.BODYSTRUCTURE;
+import com.sun.mail.imap.protocol.IMAPProtocol;
+import com.sun.mail.imap.protocol.MessageSet;
+import com.sun.mail.imap.protocol.UIDSet;
 import com.sun.mail.util.MailSSLSocketFactory;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mockito;
 import org.mockito.internal.verification.VerificationModeFactory;
 import org.powermock.api.mockito.PowerMockito;
+import org.powermock.core.classloader.annotations.PowerMockIgnore;
 import org.powermock.core.classloader.annotations.PrepareForTest;
 import org.powermock.modules.junit4.PowerMockRunner;
+import org.springframework.http.HttpStatus;
+import org.springframework.util.FileSystemUtils;
 
 import javax.mail.Flags;
 import javax.mail.Message;
 import javax.mail.MessagingException;
 import javax.mail.Session;
 import javax.mail.URLName;
+import javax.mail.search.SearchTerm;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Date;
 import java.util.List;
 
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.hasSize;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.fail;
 import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.powermock.api.mockito.PowerMockito.when;
@@ -60,11 +88,13 @@ import static org.powermock.api.mockito.PowerMockito.when;
  */
 @RunWith(PowerMockRunner.class)
 @PrepareForTest({Session.class, IMAPStore.class, FolderUtils.class})
+@PowerMockIgnore("javax.crypto.*")
 public class ImapServiceTest {
 
     private IMAPStore imapStore;
     private IsotopeApiConfiguration isotopeApiConfiguration;
     private MailSSLSocketFactory mailSSLSocketFactory;
+    private MailMetrics mailMetrics;
     private CredentialsService credentialsService;
 
     private ImapService imapService;
@@ -79,15 +109,20 @@ public class ImapServiceTest {
 
         isotopeApiConfiguration = Mockito.mock(IsotopeApiConfiguration.class);
         mailSSLSocketFactory = Mockito.mock(MailSSLSocketFactory.class);
+        mailMetrics = new MailMetrics(new SimpleMeterRegistry());
         credentialsService = Mockito.mock(CredentialsService.class);
 
-        imapService = new ImapService(isotopeApiConfiguration, mailSSLSocketFactory, credentialsService);
+        imapService = new ImapService(isotopeApiConfiguration,
+                new ImapStorePool(isotopeApiConfiguration, mailSSLSocketFactory, mailMetrics),
+                new EnvelopeCache(isotopeApiConfiguration), new MessageBodyCache(isotopeApiConfiguration),
+                new MessagePrefetchCache(isotopeApiConfiguration), credentialsService, mailMetrics);
     }
 
     @After
     public void tearDown() {
         isotopeApiConfiguration = null;
         mailSSLSocketFactory = null;
+        mailMetrics = null;
         credentialsService = null;
 
         imapService = null;
@@ -291,17 +326,45 @@ public class ImapServiceTest {
         final IMAPFolder folder = Mockito.mock(IMAPFolder.class);
         doReturn(folder).when(imapStore).getFolder(Mockito.any(String.class));
         doReturn(true).when(folder).exists();
-        doReturn(new Message[0]).when(folder).getMessagesByUID(new long[]{1337L});
 
         // When
-        imapService.setMessagesSeen(credentials, new URLName("1337"), true, 1337L);
+        imapService.setMessagesSeen(credentials, new URLName("1337"), true, UidSet.of(1337L));
 
         // Then
         verify(imapStore, times(1)).connect(
                 Mockito.eq(credentials.getServerHost()), Mockito.eq(credentials.getServerPort()),
                 Mockito.eq(credentials.getUser()), Mockito.eq(credentials.getPassword()));
-        verify(folder, times(1)).setFlags(
-                Mockito.any(Message[].class), Mockito.eq(new Flags(Flags.Flag.SEEN)), Mockito.eq(true));
+        final ArgumentCaptor<IMAPFolder.ProtocolCommand> command =
+                ArgumentCaptor.forClass(IMAPFolder.ProtocolCommand.class);
+        verify(folder, times(1)).doCommand(command.capture());
+        final IMAPProtocol protocol = doCommand(command.getValue());
+        verify(protocol, times(1)).command(Mockito.eq("UID STORE 1337 +FLAGS.SILENT (\\Seen)"), Mockito.isNull());
+        verify(folder, never()).getMessagesByUID(Mockito.any(long[].class));
+        verify(folder, times(1)).close(Mockito.eq(false));
+    }
+
+    @Test
+    public void setMessagesSeen_notSeen_shouldRemoveSeenFlag() throws Exception {
+        // Given
+        final Credentials credentials = new Credentials();
+        credentials.setUser("validUser");
+        credentials.setServerHost("email.com");
+        credentials.setImapSsl(true);
+        credentials.setServerPort(993);
+
+        final IMAPFolder folder = Mockito.mock(IMAPFolder.class);
+        doReturn(folder).when(imapStore).getFolder(Mockito.any(String.class));
+        doReturn(true).when(folder).exists();
+
+        // When
+        imapService.setMessagesSeen(credentials, new URLName("1337"), false, UidSet.of(1L, 2L, 3L, 5L));
+
+        // Then
+        final ArgumentCaptor<IMAPFolder.ProtocolCommand> command =
+                ArgumentCaptor.forClass(IMAPFolder.ProtocolCommand.class);
+        verify(folder, times(1)).doCommand(command.capture());
+        final IMAPProtocol protocol = doCommand(command.getValue());
+        verify(protocol, times(1)).command(Mockito.eq("UID STORE 1:3,5 -FLAGS.SILENT (\\Seen)"), Mockito.isNull());
         verify(folder, times(1)).close(Mockito.eq(false));
     }
 
@@ -317,17 +380,450 @@ public class ImapServiceTest {
         final IMAPFolder folder = Mockito.mock(IMAPFolder.class);
         doReturn(folder).when(imapStore).getFolder(Mockito.any(String.class));
         doReturn(true).when(folder).exists();
-        doReturn(new Message[0]).when(folder).getMessagesByUID(new long[]{1337L});
 
         // When
-        imapService.setMessagesFlagged(credentials, new URLName("1337"), true, 1337L);
+        imapService.setMessagesFlagged(credentials, new URLName("1337"), true, UidSet.of(1337L));
 
         // Then
         verify(imapStore, times(1)).connect(
                 Mockito.eq(credentials.getServerHost()), Mockito.eq(credentials.getServerPort()),
                 Mockito.eq(credentials.getUser()), Mockito.eq(credentials.getPassword()));
-        verify(folder, times(1)).setFlags(
-                Mockito.any(Message[].class), Mockito.eq(new Flags(Flags.Flag.FLAGGED)), Mockito.eq(true));
+        final ArgumentCaptor<IMAPFolder.ProtocolCommand> command =
+                ArgumentCaptor.forClass(IMAPFolder.ProtocolCommand.class);
+        verify(folder, times(1)).doCommand(command.capture());
+        final IMAPProtocol protocol = doCommand(command.getValue());
+        verify(protocol, times(1)).command(
+                Mockito.eq("UID STORE 1337 +FLAGS.SILENT (\\Flagged)"), Mockito.isNull());
+        verify(folder, never()).getMessagesByUID(Mockito.any(long[].class));
         verify(folder, times(1)).close(Mockito.eq(false));
     }
+
+    @Test
+    public void preloadMessages_bodyStructureFirst_shouldFetchOnlyContentPart() throws Exception {
+        // Given
+        doReturn(true).when(isotopeApiConfiguration).isBodyStructureFirst();
+        final Credentials credentials = new Credentials();
+        credentials.setUser("validUser");
+        credentials.setServerHost("email.com");
+        credentials.setImapSsl(true);
+        credentials.setServerPort(993);
+
+        final IMAPFolder folder = Mockito.mock(IMAPFolder.class);
+        doReturn(folder).when(imapStore).getFolder(Mockito.eq("/1337"));
+        doReturn(true).when(folder).exists();
+        final IMAPMessage message = Mockito.mock(IMAPMessage.class);
+        doReturn(folder).when(message).getFolder();
+        doReturn(1).when(message).getMessageNumber();
+        doReturn(new Date()).when(message).getReceivedDate();
+        doReturn(new Flags()).when(message).getFlags();
+        doReturn(message).when(folder).getMessage(Mockito.eq(1));
+        doReturn(42L).when(folder).getUID(Mockito.eq(message));
+        final BODYSTRUCTURE html = Mockito.mock(BODYSTRUCTURE.class);
+        html.type = "text";
+        html.subtype = "html";
+        final BODYSTRUCTURE pdf = Mockito.mock(BODYSTRUCTURE.class);
+        pdf.type = "application";
+        pdf.subtype = "pdf";
+        pdf.disposition = "attachment";
+        pdf.size = 31337;
+        final BODYSTRUCTURE root = Mockito.mock(BODYSTRUCTURE.class);
+        doReturn(true).when(root).isMulti();
+        root.bodies = new BODYSTRUCTURE[]{html, pdf};
+        final byte[] htmlContent = "<p>Isotope</p>".getBytes(StandardCharsets.US_ASCII);
+        final BODY body = Mockito.mock(BODY.class);
+        doReturn(new ByteArray(htmlContent, 0, htmlContent.length)).when(body).getByteArray();
+        doReturn(new int[]{1}, root, body).when(folder).doCommand(Mockito.any());
+
+        // When
+        final List<com.marcnuri.isotope.api.message.Message> result =
+                imapService.preloadMessages(credentials, new URLName("/1337"), UidSet.of(42L));
+
+        // Then
+        assertThat(result, hasSize(1));
+        assertThat(result.iterator().next().getContent(), equalTo("<p>Isotope</p>"));
+        assertThat(result.iterator().next().getAttachments(), hasSize(1));
+        assertThat(result.iterator().next().getAttachments().iterator().next().getPartPath(), equalTo("2"));
+        assertThat(result.iterator().next().getAttachments().iterator().next().getSize(), equalTo(31337));
+        verify(message, never()).getContent();
+        verify(folder, times(3)).doCommand(Mockito.any());
+    }
+
+    @Test
+    public void preloadMessages_linkEmbeddedImageMode_shouldListImageWithPartPath() throws Exception {
+        // Given
+        doReturn(true).when(isotopeApiConfiguration).isBodyStructureFirst();
+        doReturn(51200L).when(isotopeApiConfiguration).getEmbeddedImageSizeThreshold();
+        doReturn(EmbeddedImageMode.LINK).when(isotopeApiConfiguration).getEmbeddedImageMode();
+        final Credentials credentials = new Credentials();
+        credentials.setUser("validUser");
+        credentials.setServerHost("email.com");
+        credentials.setImapSsl(true);
+        credentials.setServerPort(993);
+
+        final IMAPFolder folder = Mockito.mock(IMAPFolder.class);
+        doReturn(folder).when(imapStore).getFolder(Mockito.eq("/1337"));
+        doReturn(true).when(folder).exists();
+        final IMAPMessage message = Mockito.mock(IMAPMessage.class);
+        doReturn(folder).when(message).getFolder();
+        doReturn(1).when(message).getMessageNumber();
+        doReturn(new Date()).when(message).getReceivedDate();
+        doReturn(new Flags()).when(message).getFlags();
+        doReturn(message).when(folder).getMessage(Mockito.eq(1));
+        doReturn(42L).when(folder).getUID(Mockito.eq(message));
+        final BODYSTRUCTURE html = Mockito.mock(BODYSTRUCTURE.class);
+        html.type = "text";
+        html.subtype = "html";
+        final BODYSTRUCTURE image = Mockito.mock(BODYSTRUCTURE.class);
+        image.type = "image";
+        image.subtype = "png";
+        image.id = "<image@isotope>";
+        image.size = 1337;
+        final BODYSTRUCTURE root = Mockito.mock(BODYSTRUCTURE.class);
+        doReturn(true).when(root).isMulti();
+        root.bodies = new BODYSTRUCTURE[]{html, image};
+        final byte[] htmlContent = "<img src=\"cid:image@isotope\" />".getBytes(StandardCharsets.US_ASCII);
+        final BODY body = Mockito.mock(BODY.class);
+        doReturn(new ByteArray(htmlContent, 0, htmlContent.length)).when(body).getByteArray();
+        doReturn(new int[]{1}, root, body).when(folder).doCommand(Mockito.any());
+
+        // When
+        final List<com.marcnuri.isotope.api.message.Message> result =
+                imapService.preloadMessages(credentials, new URLName("/1337"), UidSet.of(42L));
+
+        // Then
+        assertThat(result, hasSize(1));
+        assertThat(result.iterator().next().getContent(), equalTo("<img src=\"cid:image@isotope\" />"));
+        assertThat(result.iterator().next().getAttachments(), hasSize(1));
+        assertThat(result.iterator().next().getAttachments().iterator().next().getContentId(),
+                equalTo("<image@isotope>"));
+        assertThat(result.iterator().next().getAttachments().iterator().next().getPartPath(), equalTo("2"));
+        verify(folder, times(3)).doCommand(Mockito.any());
+    }
+
+    @Test
+    public void preloadMessages_cachedBody_shouldNotFetchContent() throws Exception {
+        // Given
+        doReturn(true).when(isotopeApiConfiguration).isBodyStructureFirst();
+        doReturn(1048576L).when(isotopeApiConfiguration).getMessageCacheBytes();
+        final Path cacheDirectory = Files.createTempDirectory("isotope-message-cache-test");
+        doReturn(cacheDirectory.toString()).when(isotopeApiConfiguration).getMessageCacheDirectory();
+        final MailMetrics mailMetrics = new MailMetrics(new SimpleMeterRegistry());
+        final ImapService cachingImapService = new ImapService(isotopeApiConfiguration,
+                new ImapStorePool(isotopeApiConfiguration, mailSSLSocketFactory, mailMetrics),
+                new EnvelopeCache(isotopeApiConfiguration), new MessageBodyCache(isotopeApiConfiguration),
+                new MessagePrefetchCache(isotopeApiConfiguration), credentialsService, mailMetrics);
+        final Credentials credentials = new Credentials();
+        credentials.setUser("validUser");
+        credentials.setServerHost("email.com");
+        credentials.setImapSsl(true);
+        credentials.setServerPort(993);
+
+        final IMAPFolder folder = Mockito.mock(IMAPFolder.class);
+        doReturn(folder).when(imapStore).getFolder(Mockito.eq("/1337"));
+        doReturn(true).when(folder).exists();
+        doReturn("INBOX").when(folder).getFullName();
+        doReturn(1L).when(folder).getUIDValidity();
+        final IMAPMessage message = Mockito.mock(IMAPMessage.class);
+        doReturn(folder).when(message).getFolder();
+        doReturn(1).when(message).getMessageNumber();
+        doReturn(new Date()).when(message).getReceivedDate();
+        doReturn(new Flags()).when(message).getFlags();
+        doReturn(message).when(folder).getMessage(Mockito.eq(1));
+        doReturn(42L).when(folder).getUID(Mockito.eq(message));
+        final BODYSTRUCTURE html = Mockito.mock(BODYSTRUCTURE.class);
+        html.type = "text";
+        html.subtype = "html";
+        final BODYSTRUCTURE root = Mockito.mock(BODYSTRUCTURE.class);
+        doReturn(true).when(root).isMulti();
+        root.bodies = new BODYSTRUCTURE[]{html};
+        final byte[] htmlContent = "<p>Isotope</p>".getBytes(StandardCharsets.US_ASCII);
+        final BODY body = Mockito.mock(BODY.class);
+        doReturn(new ByteArray(htmlContent, 0, htmlContent.length)).when(body).getByteArray();
+        doReturn(new int[]{1}, root, body, new int[]{1}).when(folder).doCommand(Mockito.any());
+        cachingImapService.preloadMessages(credentials, new URLName("/1337"), UidSet.of(42L));
+
+        try {
+            // When
+            final List<com.marcnuri.isotope.api.message.Message> result =
+                    cachingImapService.preloadMessages(credentials, new URLName("/1337"), UidSet.of(42L));
+
+            // Then
+            assertThat(result, hasSize(1));
+            assertThat(result.iterator().next().getContent(), equalTo("<p>Isotope</p>"));
+            // UID SEARCH of both calls + BODYSTRUCTURE and BODY of the 1st one
+            verify(folder, times(4)).doCommand(Mockito.any());
+        } finally {
+            FileSystemUtils.deleteRecursively(cacheDirectory.toFile());
+        }
+    }
+
+    @Test
+    public void prefetchMessages_adjacentUnreadMessages_shouldRenderAndServeThemFromCache() throws Exception {
+        // Given
+        doReturn(1048576L).when(isotopeApiConfiguration).getPrefetchUserBytes();
+        doReturn(10L).when(isotopeApiConfiguration).getPrefetchMaxUsers();
+        doReturn(60000L).when(isotopeApiConfiguration).getPrefetchExpireAfterWrite();
+        doReturn(2).when(isotopeApiConfiguration).getPrefetchSearchWindow();
+        final MailMetrics mailMetrics = new MailMetrics(new SimpleMeterRegistry());
+        final ImapService prefetchingImapService = new ImapService(isotopeApiConfiguration,
+                new ImapStorePool(isotopeApiConfiguration, mailSSLSocketFactory, mailMetrics),
+                new EnvelopeCache(isotopeApiConfiguration), new MessageBodyCache(isotopeApiConfiguration),
+                new MessagePrefetchCache(isotopeApiConfiguration), credentialsService, mailMetrics);
+        final Credentials credentials = new Credentials();
+        credentials.setUser("validUser");
+        credentials.setServerHost("email.com");
+        credentials.setImapSsl(true);
+        credentials.setServerPort(993);
+
+        final IMAPFolder folder = Mockito.mock(IMAPFolder.class);
+        doReturn(folder).when(imapStore).getFolder(Mockito.eq("/1337"));
+        doReturn(true).when(folder).exists();
+        doReturn("INBOX").when(folder).getFullName();
+        doReturn(1L).when(folder).getUIDValidity();
+        final IMAPMessage[] messages = new IMAPMessage[6];
+        for (int it = 0; it < messages.length; it++) {
+            messages[it] = Mockito.mock(IMAPMessage.class);
+            doReturn(folder).when(messages[it]).getFolder();
+            doReturn(it + 1).when(messages[it]).getMessageNumber();
+            doReturn(new Date()).when(messages[it]).getReceivedDate();
+            doReturn(new Flags()).when(messages[it]).getFlags();
+            doReturn("text/html").when(messages[it]).getContentType();
+            doReturn("<p>Message " + (it + 1) + "</p>").when(messages[it]).getContent();
+            doReturn((it + 1) * 10L).when(folder).getUID(Mockito.eq(messages[it]));
+            doReturn(messages[it]).when(folder).getMessageByUID(Mockito.eq((it + 1) * 10L));
+            doReturn(messages[it]).when(folder).getMessage(Mockito.eq(it + 1));
+        }
+        doReturn(messages.length).when(folder).getMessageCount();
+        final Message[] range = new Message[]{messages[0], messages[1], messages[2], messages[3], messages[4]};
+        doReturn(range).when(folder).getMessages(Mockito.eq(1), Mockito.eq(5));
+        // Message 4 is already seen
+        doReturn(new Message[]{messages[0], messages[1], messages[2], messages[4]})
+                .when(folder).search(Mockito.any(SearchTerm.class), Mockito.eq(range));
+
+        // When
+        final int result = prefetchingImapService.prefetchMessages(credentials, new URLName("/1337"), 30L, 1);
+
+        // Then
+        assertThat(result, equalTo(2));
+        verify(messages[4], times(1)).getContent();
+        verify(messages[1], times(1)).getContent();
+        verify(messages[0], never()).getContent();
+        verify(messages[5], never()).getContent();
+        verify(folder, never()).search(Mockito.any(SearchTerm.class));
+        doReturn(new int[]{5}).when(folder).doCommand(Mockito.any());
+        final List<com.marcnuri.isotope.api.message.Message> next =
+                prefetchingImapService.preloadMessages(credentials, new URLName("/1337"), UidSet.of(50L));
+        assertThat(next.iterator().next().getContent(), equalTo("<p>Message 5</p>"));
+        verify(messages[4], times(1)).getContent();
+    }
+
+    @Test
+    public void deleteMessages_uidPlusSupported_shouldUidExpunge() throws Exception {
+        // Given
+        final Credentials credentials = new Credentials();
+        credentials.setUser("validUser");
+        credentials.setServerHost("email.com");
+        credentials.setImapSsl(true);
+        credentials.setServerPort(993);
+
+        doReturn(true).when(imapStore).hasCapability(Mockito.eq("UIDPLUS"));
+        final IMAPFolder folder = Mockito.mock(IMAPFolder.class);
+        doReturn(folder).when(imapStore).getFolder(Mockito.any(String.class));
+        doReturn(true).when(folder).exists();
+        doReturn(new URLName("imap://account/1337")).when(folder).getURLName();
+        doReturn(new String[0]).when(folder).getAttributes();
+        doReturn(new IMAPFolder[0]).when(folder).list();
+
+        // When
+        imapService.deleteMessages(credentials, new URLName("1337"), UidSet.of(1L, 2L, 3L, 5L));
+
+        // Then
+        final ArgumentCaptor<IMAPFolder.ProtocolCommand> command =
+                ArgumentCaptor.forClass(IMAPFolder.ProtocolCommand.class);
+        verify(folder, times(2)).doCommand(command.capture());
+        final IMAPProtocol storeProtocol = doCommand(command.getAllValues().get(0));
+        verify(storeProtocol, times(1)).command(
+                Mockito.eq("UID STORE 1:3,5 +FLAGS.SILENT (\\Deleted)"), Mockito.isNull());
+        final IMAPProtocol expungeProtocol = doCommand(command.getAllValues().get(1));
+        verify(expungeProtocol, times(1)).uidexpunge(
+                Mockito.<UIDSet[]>argThat(uidSets -> UIDSet.toString(uidSets).equals("1:3,5")));
+        verify(folder, never()).search(Mockito.any(SearchTerm.class));
+        verify(folder, never()).expunge();
+    }
+
+    @Test
+    public void deleteMessages_uidPlusNotSupported_shouldExpungeKeepingOtherDeletedMessages() throws Exception {
+        // Given
+        final Credentials credentials = new Credentials();
+        credentials.setUser("validUser");
+        credentials.setServerHost("email.com");
+        credentials.setImapSsl(true);
+        credentials.setServerPort(993);
+
+        doReturn(false).when(imapStore).hasCapability(Mockito.eq("UIDPLUS"));
+        final IMAPFolder folder = Mockito.mock(IMAPFolder.class);
+        doReturn(folder).when(imapStore).getFolder(Mockito.any(String.class));
+        doReturn(true).when(folder).exists();
+        doReturn(new URLName("imap://account/1337")).when(folder).getURLName();
+        doReturn(new String[0]).when(folder).getAttributes();
+        doReturn(new IMAPFolder[0]).when(folder).list();
+        final IMAPMessage message = Mockito.mock(IMAPMessage.class);
+        doReturn(1).when(message).getMessageNumber();
+        doReturn(message).when(folder).getMessage(Mockito.eq(1));
+        final IMAPMessage otherDeleted = Mockito.mock(IMAPMessage.class);
+        doReturn(2).when(otherDeleted).getMessageNumber();
+        doReturn(new int[]{1}, (Object) null).when(folder).doCommand(Mockito.any());
+        doReturn(new Message[]{message, otherDeleted}).when(folder).search(Mockito.any(SearchTerm.class));
+
+        // When
+        imapService.deleteMessages(credentials, new URLName("1337"), UidSet.of(1L));
+
+        // Then
+        final ArgumentCaptor<IMAPFolder.ProtocolCommand> command =
+                ArgumentCaptor.forClass(IMAPFolder.ProtocolCommand.class);
+        verify(folder, times(2)).doCommand(command.capture());
+        final IMAPProtocol protocol = doCommand(command.getAllValues().get(1));
+        verify(protocol, times(1)).command(Mockito.eq("UID STORE 1 +FLAGS.SILENT (\\Deleted)"), Mockito.isNull());
+        verify(protocol, never()).uidexpunge(Mockito.any());
+        verify(folder, times(1)).expunge();
+        verify(folder, never()).expunge(Mockito.any());
+        verify(folder, times(1)).setFlags(
+                Mockito.eq(new Message[]{otherDeleted}), Mockito.any(Flags.class), Mockito.eq(false));
+        verify(folder, times(1)).setFlags(
+                Mockito.eq(new Message[]{otherDeleted}), Mockito.any(Flags.class), Mockito.eq(true));
+    }
+
+    @Test
+    public void moveMessages_moveAndUidPlusSupported_shouldMoveWithSingleCommand() throws Exception {
+        // Given
+        final Credentials credentials = new Credentials();
+        credentials.setUser("validUser");
+        credentials.setServerHost("email.com");
+        credentials.setImapSsl(true);
+        credentials.setServerPort(993);
+
+        doReturn(true).when(imapStore).hasCapability(Mockito.eq("MOVE"));
+        doReturn(true).when(imapStore).hasCapability(Mockito.eq("UIDPLUS"));
+        final IMAPFolder fromFolder = Mockito.mock(IMAPFolder.class);
+        doReturn(fromFolder).when(imapStore).getFolder(Mockito.eq("/1337"));
+        doReturn(true).when(fromFolder).exists();
+        final IMAPFolder toFolder = Mockito.mock(IMAPFolder.class);
+        doReturn(toFolder).when(imapStore).getFolder(Mockito.eq("/42"));
+        doReturn(true).when(toFolder).exists();
+        final IMAPMessage message = Mockito.mock(IMAPMessage.class);
+        doReturn(1).when(message).getMessageNumber();
+        doReturn(message).when(fromFolder).getMessage(Mockito.eq(1));
+        doReturn(new int[]{1},
+                new CopyUID(1L, UIDSet.createUIDSets(new long[]{1L}), UIDSet.createUIDSets(new long[]{100L})))
+                .when(fromFolder).doCommand(Mockito.any());
+        doReturn(new Message[0]).when(toFolder).getMessagesByUID(Mockito.any(long[].class));
+
+        // When
+        imapService.moveMessages(credentials, new URLName("/1337"), new URLName("/42"), UidSet.of(1L));
+
+        // Then
+        verify(fromFolder, times(2)).doCommand(Mockito.any());
+        verify(fromFolder, never()).setFlags(Mockito.any(Message[].class), Mockito.any(), Mockito.anyBoolean());
+        verify(fromFolder, never()).expunge(Mockito.any());
+        verify(toFolder, never()).getUIDNext();
+        verify(toFolder, times(1)).getMessagesByUID(Mockito.eq(new long[]{100L}));
+    }
+
+    @Test
+    public void getMessages_snippetBudgetExceeded_shouldReadSnippetsOfNewestMessages() throws Exception {
+        // Given
+        doReturn(512).when(isotopeApiConfiguration).getSnippetPartialBytes();
+        doReturn(1024L).when(isotopeApiConfiguration).getSnippetBatchMaxBytes();
+        final IMAPFolder folder = Mockito.mock(IMAPFolder.class);
+        final Message[] messages = new Message[3];
+        for (int it = 0; it < messages.length; it++) {
+            messages[it] = Mockito.mock(IMAPMessage.class);
+            doReturn(it + 1).when(messages[it]).getMessageNumber();
+            doReturn(new Flags()).when(messages[it]).getFlags();
+            doReturn(new Date()).when(messages[it]).getReceivedDate();
+            doReturn(it + 100L).when(folder).getUID(Mockito.eq(messages[it]));
+        }
+        doReturn(messages).when(folder).getMessages();
+        doReturn(Collections.emptyMap()).when(folder).doCommand(Mockito.any());
+
+        // When
+        final List<com.marcnuri.isotope.api.message.Message> result =
+                imapService.getMessages(folder, null, null, false);
+
+        // Then
+        assertThat(result, hasSize(3));
+        final ArgumentCaptor<IMAPFolder.ProtocolCommand> command =
+                ArgumentCaptor.forClass(IMAPFolder.ProtocolCommand.class);
+        verify(folder, times(1)).doCommand(command.capture());
+        final IMAPProtocol protocol = Mockito.mock(IMAPProtocol.class);
+        doReturn(new com.sun.mail.iap.Response[]{new com.sun.mail.imap.protocol.IMAPResponse("A1 OK FETCH")})
+                .when(protocol).fetch(Mockito.<MessageSet[]>any(), Mockito.anyString());
+        command.getValue().doCommand(protocol);
+        verify(protocol, times(1)).fetch(Mockito.<MessageSet[]>argThat(
+                ms -> MessageSet.toString(ms).equals("2:3")), Mockito.eq("BODYSTRUCTURE"));
+    }
+
+    @Test
+    public void getFolderChanges_noCondstore_shouldReturnUidsAndFlags() throws Exception {
+        // Given
+        final Credentials credentials = new Credentials();
+        credentials.setUser("validUser");
+        credentials.setServerHost("email.com");
+        credentials.setImapSsl(true);
+        credentials.setServerPort(993);
+
+        final IMAPFolder folder = Mockito.mock(IMAPFolder.class);
+        doReturn(folder).when(imapStore).getFolder(Mockito.eq("/1337"));
+        doReturn(true).when(folder).exists();
+        doReturn(1L).when(folder).getUIDValidity();
+        doReturn(-1L).when(folder).getHighestModSeq();
+        final IMAPMessage message = Mockito.mock(IMAPMessage.class);
+        doReturn(new Flags(Flags.Flag.SEEN)).when(message).getFlags();
+        doReturn(new Message[]{message}).when(folder).getMessages();
+        doReturn(42L).when(folder).getUID(Mockito.eq(message));
+
+        // When
+        final FolderChanges result = imapService.getFolderChanges(credentials, new URLName("/1337"), 1L, 10L);
+
+        // Then
+        assertThat(result.getUidValidity(), equalTo(1L));
+        assertThat(result.getUids(), contains(42L));
+        assertThat(result.getChanged(), hasSize(1));
+        assertThat(result.getChanged().iterator().next().getSeen(), equalTo(true));
+    }
+
+    @Test
+    public void getFolderChanges_uidValidityChanged_shouldThrowConflict() throws Exception {
+        // Given
+        final Credentials credentials = new Credentials();
+        credentials.setUser("validUser");
+        credentials.setServerHost("email.com");
+        credentials.setImapSsl(true);
+        credentials.setServerPort(993);
+
+        final IMAPFolder folder = Mockito.mock(IMAPFolder.class);
+        doReturn(folder).when(imapStore).getFolder(Mockito.eq("/1337"));
+        doReturn(true).when(folder).exists();
+        doReturn(2L).when(folder).getUIDValidity();
+
+        // When
+        try {
+            imapService.getFolderChanges(credentials, new URLName("/1337"), 1L, 10L);
+            fail();
+        } catch (IsotopeException ex) {
+            // Then
+            assertThat(ex.getHttpStatus(), equalTo(HttpStatus.CONFLICT));
+        }
+    }
+
+    /**
+     * Runs the provided command against a mocked {@link IMAPProtocol} which accepts any command.
+     */
+    private static IMAPProtocol doCommand(IMAPFolder.ProtocolCommand command) throws Exception {
+        final IMAPProtocol protocol = Mockito.mock(IMAPProtocol.class);
+        doReturn(new com.sun.mail.iap.Response[]{new com.sun.mail.imap.protocol.IMAPResponse("A1 OK STORE")})
+                .when(protocol).command(Mockito.anyString(), Mockito.any());
+        command.doCommand(protocol);
+        return protocol;
+    }
 }
@@ -0,0 +1,224 @@
+/*
+ * ImapStorePoolTest.java
+ *
+ * Created on 2026-10-17, 11:05
+ *
+ * Copyright 2018 Marc Nuri
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.marcnuri.isotope.api.imap;
+
+import com.marcnuri.isotope.api.configuration.IsotopeApiConfiguration;
+import com.marcnuri.isotope.api.credentials.Credentials;
+import com.marcnuri.isotope.api.exception.IsotopeException;
+import com.marcnuri.isotope.api.metrics.MailMetrics;
+import com.sun.mail.imap.IMAPStore;
+import com.sun.mail.util.MailSSLSocketFactory;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mockito;
+import org.powermock.api.mockito.PowerMockito;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+import org.springframework.http.HttpStatus;
+
+import javax.mail.Session;
+
+import static com.marcnuri.isotope.api.credentials.CredentialsUtils.toAccountKey;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.powermock.api.mockito.PowerMockito.when;
+
+/**
+ * Created by Marc Nuri <marc@marcnuri.com> on 2026-10-17.
+ */
+@RunWith(PowerMockRunner.class)
+@PrepareForTest({Session.class, IMAPStore.class})
+public class ImapStorePoolTest {
+
+    private Session session;
+    private IMAPStore imapStore;
+    private IsotopeApiConfiguration isotopeApiConfiguration;
+    private MailSSLSocketFactory mailSSLSocketFactory;
+    private MailMetrics mailMetrics;
+    private Credentials credentials;
+
+    @Before
+    public void setUp() throws Exception {
+        PowerMockito.mockStatic(Session.class);
+        session = Mockito.mock(Session.class);
+        imapStore = Mockito.mock(IMAPStore.class);
+        when(Session.getInstance(Mockito.any(), Mockito.any())).thenReturn(session);
+        doReturn(imapStore).when(session).getStore(Mockito.anyString());
+
+        isotopeApiConfiguration = Mockito.mock(IsotopeApiConfiguration.class);
+        doReturn(10).when(isotopeApiConfiguration).getImapPoolMaxIdle();
+        doReturn(1).when(isotopeApiConfiguration).getImapPoolMaxConnectionsPerUser();
+        doReturn(2).when(isotopeApiConfiguration).getImapPoolMaxStreamsPerUser();
+        doReturn(60000L).when(isotopeApiConfiguration).getImapPoolIdleTimeout();
+        doReturn(60000L).when(isotopeApiConfiguration).getImapPoolValidationInterval();
+        doReturn(10L).when(isotopeApiConfiguration).getImapPoolBorrowTimeout();
+        mailSSLSocketFactory = Mockito.mock(MailSSLSocketFactory.class);
+        mailMetrics = new MailMetrics(new SimpleMeterRegistry());
+
+        credentials = new Credentials();
+        credentials.setUser("validUser");
+        credentials.setPassword("1234");
+        credentials.setServerHost("email.com");
+        credentials.setImapSsl(true);
+        credentials.setServerPort(993);
+    }
+
+    @After
+    public void tearDown() {
+        session = null;
+        imapStore = null;
+        isotopeApiConfiguration = null;
+        mailSSLSocketFactory = null;
+        mailMetrics = null;
+        credentials = null;
+    }
+
+    @Test
+    public void borrow_releasedStore_shouldReuseConnection() throws Exception {
+        // Given
+        final ImapStorePool imapStorePool = new ImapStorePool(
+                isotopeApiConfiguration, mailSSLSocketFactory, mailMetrics);
+        final IMAPStore first = imapStorePool.borrow(credentials);
+        imapStorePool.release(first);
+
+        // When
+        final IMAPStore result = imapStorePool.borrow(credentials);
+
+        // Then
+        assertThat(result, sameInstance(first));
+        verify(imapStore, times(1))
+                .connect(Mockito.eq("email.com"), Mockito.eq(993), Mockito.eq("validUser"), Mockito.eq("1234"));
+        verify(imapStore, never()).close();
+    }
+
+    @Test
+    public void borrow_maxConnectionsPerUserReached_shouldThrowException() throws Exception {
+        // Given
+        final ImapStorePool imapStorePool = new ImapStorePool(
+                isotopeApiConfiguration, mailSSLSocketFactory, mailMetrics);
+        imapStorePool.borrow(credentials);
+
+        // When
+        try {
+            imapStorePool.borrow(credentials);
+            fail();
+        } catch (IsotopeException ex) {
+            // Then
+            assertThat(ex.getHttpStatus(), equalTo(HttpStatus.TOO_MANY_REQUESTS));
+        }
+    }
+
+    @Test
+    public void borrowStream_maxConnectionsPerUserReached_shouldNotCountStreams() throws Exception {
+        // Given
+        doAnswer(i -> Mockito.mock(IMAPStore.class)).when(session).getStore(Mockito.anyString());
+        final ImapStorePool imapStorePool = new ImapStorePool(
+                isotopeApiConfiguration, mailSSLSocketFactory, mailMetrics);
+        final IMAPStore stream = imapStorePool.borrowStream(credentials);
+        imapStorePool.borrowStream(credentials);
+
+        // When
+        final IMAPStore result = imapStorePool.borrow(credentials);
+
+        // Then
+        assertThat(result, not(sameInstance(stream)));
+        assertThat(imapStorePool.getStreamCount(toAccountKey(credentials)), equalTo(2));
+    }
+
+    @Test
+    public void borrowStream_maxStreamsPerUserReached_shouldThrowException() throws Exception {
+        // Given
+        doAnswer(i -> Mockito.mock(IMAPStore.class)).when(session).getStore(Mockito.anyString());
+        final ImapStorePool imapStorePool = new ImapStorePool(
+                isotopeApiConfiguration, mailSSLSocketFactory, mailMetrics);
+        imapStorePool.borrowStream(credentials);
+        imapStorePool.borrowStream(credentials);
+
+        // When
+        try {
+            imapStorePool.borrowStream(credentials);
+            fail();
+        } catch (IsotopeException ex) {
+            // Then
+            assertThat(ex.getHttpStatus(), equalTo(HttpStatus.TOO_MANY_REQUESTS));
+        }
+        assertThat(imapStorePool.getStreamCount(toAccountKey(credentials)), equalTo(2));
+    }
+
+    @Test
+    public void release_streamStore_shouldCloseStoreAndReleaseStream() throws Exception {
+        // Given
+        final ImapStorePool imapStorePool = new ImapStorePool(
+                isotopeApiConfiguration, mailSSLSocketFactory, mailMetrics);
+        final IMAPStore stream = imapStorePool.borrowStream(credentials);
+
+        // When
+        imapStorePool.release(stream);
+
+        // Then
+        verify(imapStore, times(1)).close();
+        assertThat(imapStorePool.getStreamCount(toAccountKey(credentials)), equalTo(0));
+        assertThat(imapStorePool.getIdleCount(), equalTo(0));
+    }
+
+    @Test
+    public void release_poolingDisabled_shouldCloseStore() throws Exception {
+        // Given
+        doReturn(0).when(isotopeApiConfiguration).getImapPoolMaxIdle();
+        final ImapStorePool imapStorePool = new ImapStorePool(
+                isotopeApiConfiguration, mailSSLSocketFactory, mailMetrics);
+        final IMAPStore store = imapStorePool.borrow(credentials);
+
+        // When
+        imapStorePool.release(store);
+
+        // Then
+        verify(imapStore, times(1)).close();
+        assertThat(imapStorePool.getIdleCount(), equalTo(0));
+    }
+
+    @Test
+    public void evictIdle_expiredStore_shouldCloseStore() throws Exception {
+        // Given
+        doReturn(-1L).when(isotopeApiConfiguration).getImapPoolIdleTimeout();
+        final ImapStorePool imapStorePool = new ImapStorePool(
+                isotopeApiConfiguration, mailSSLSocketFactory, mailMetrics);
+        imapStorePool.release(imapStorePool.borrow(credentials));
+
+        // When
+        imapStorePool.evictIdle();
+
+        // Then
+        verify(imapStore, times(1)).close();
+        assertThat(imapStorePool.getIdleCount(), equalTo(0));
+    }
+}
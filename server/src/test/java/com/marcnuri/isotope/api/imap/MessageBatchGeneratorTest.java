@@ -0,0 +1,124 @@
+/*
+ * MessageBatchGeneratorTest.java
+ *
+ * Created on 2026-10-17, 19:10
+ *
+ * Copyright 2018 Marc Nuri
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.marcnuri.isotope.api.imap;
+
+import com.marcnuri.isotope.api.credentials.Credentials;
+import com.marcnuri.isotope.api.message.Message;
+import com.sun.mail.imap.IMAPFolder;
+import com.sun.mail.imap.IMAPStore;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.reactivestreams.Subscription;
+import org.springframework.http.codec.ServerSentEvent;
+import reactor.core.publisher.BaseSubscriber;
+
+import javax.mail.URLName;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.hasSize;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Created by Marc Nuri <marc@marcnuri.com> on 2026-10-17.
+ */
+public class MessageBatchGeneratorTest {
+
+    private ImapService imapService;
+    private IMAPFolder folder;
+    private List<ServerSentEvent<List<Message>>> received;
+
+    @Before
+    public void setUp() throws Exception {
+        imapService = Mockito.mock(ImapService.class);
+        final IMAPStore imapStore = Mockito.mock(IMAPStore.class);
+        doReturn(imapStore).when(imapService).getImapStore(Mockito.any());
+        folder = Mockito.mock(IMAPFolder.class);
+        doReturn(folder).when(imapService).getFolder(Mockito.any(), Mockito.any());
+        doReturn(1000).when(folder).getMessageCount();
+        doReturn(Collections.emptyList()).when(imapService)
+                .getMessages(Mockito.any(), Mockito.anyInt(), Mockito.anyInt(), Mockito.anyBoolean());
+        received = new ArrayList<>();
+    }
+
+    @After
+    public void tearDown() {
+        imapService = null;
+        folder = null;
+        received = null;
+    }
+
+    @Test
+    public void flux_singleRequest_shouldFetchSingleBatch() throws Exception {
+        // Given
+        final MessageBatchGenerator generator = new MessageBatchGenerator(
+                new Credentials(), new URLName("INBOX"), imapService, new MessageBatchSizer(500L, 262144L));
+
+        // When
+        generator.flux().subscribe(subscriber(1));
+
+        // Then
+        assertThat(received, hasSize(1));
+        assertThat(received.iterator().next().id(), equalTo("981"));
+        verify(imapService, times(1))
+                .getMessages(Mockito.eq(folder), Mockito.eq(981), Mockito.eq(1000), Mockito.anyBoolean());
+        verify(imapService, never()).destroy();
+    }
+
+    @Test
+    public void flux_cancelled_shouldReleaseConnection() throws Exception {
+        // Given
+        final MessageBatchGenerator generator = new MessageBatchGenerator(
+                new Credentials(), new URLName("INBOX"), imapService, new MessageBatchSizer(500L, 262144L));
+        final BaseSubscriber<ServerSentEvent<List<Message>>> subscriber = subscriber(1);
+        generator.flux().subscribe(subscriber);
+
+        // When
+        subscriber.dispose();
+
+        // Then
+        verify(imapService, times(1))
+                .getMessages(Mockito.any(), Mockito.anyInt(), Mockito.anyInt(), Mockito.anyBoolean());
+        verify(imapService, times(1)).destroy();
+    }
+
+    private BaseSubscriber<ServerSentEvent<List<Message>>> subscriber(long initialRequest) {
+        return new BaseSubscriber<ServerSentEvent<List<Message>>>() {
+            @Override
+            protected void hookOnSubscribe(Subscription subscription) {
+                request(initialRequest);
+            }
+
+            @Override
+            protected void hookOnNext(ServerSentEvent<List<Message>> value) {
+                received.add(value);
+            }
+        };
+    }
+}
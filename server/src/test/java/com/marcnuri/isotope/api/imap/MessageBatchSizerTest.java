@@ -0,0 +1,95 @@
+/*
+ * MessageBatchSizerTest.java
+ *
+ * Created on 2026-10-17, 19:50
+ *
+ * Copyright 2018 Marc Nuri
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.marcnuri.isotope.api.imap;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Created by Marc Nuri <marc@marcnuri.com> on 2026-10-17.
+ */
+public class MessageBatchSizerTest {
+
+    @Test
+    public void getBatchSize_noBatchRecorded_shouldReturnInitialBatchSize() {
+        // Given
+        final MessageBatchSizer sizer = new MessageBatchSizer(500L, 262144L);
+
+        // When
+        final int result = sizer.getBatchSize();
+
+        // Then
+        assertThat(result, equalTo(MessageBatchSizer.INITIAL_BATCH_SIZE));
+    }
+
+    @Test
+    public void record_fastServer_shouldGrowGradually() {
+        // Given
+        final MessageBatchSizer sizer = new MessageBatchSizer(500L, 262144L);
+
+        // When
+        sizer.record(20, TimeUnit.MILLISECONDS.toNanos(20), 20 * 100);
+
+        // Then
+        assertThat(sizer.getBatchSize(), equalTo(80));
+    }
+
+    @Test
+    public void record_slowServer_shouldShrinkToTargetLatency() {
+        // Given
+        final MessageBatchSizer sizer = new MessageBatchSizer(500L, 262144L);
+
+        // When
+        sizer.record(20, TimeUnit.MILLISECONDS.toNanos(400), 20 * 100);
+
+        // Then
+        assertThat(sizer.getBatchSize(), equalTo(25));
+    }
+
+    @Test
+    public void record_verySlowServer_shouldReturnMinBatchSize() {
+        // Given
+        final MessageBatchSizer sizer = new MessageBatchSizer(500L, 262144L);
+        sizer.record(20, TimeUnit.MILLISECONDS.toNanos(400), 20 * 100);
+
+        // When
+        sizer.record(25, TimeUnit.MILLISECONDS.toNanos(2500), 25 * 100);
+
+        // Then
+        assertThat(sizer.getBatchSize(), equalTo(MessageBatchSizer.MIN_BATCH_SIZE));
+    }
+
+    @Test
+    public void record_largeMessages_shouldLimitToByteBudget() {
+        // Given
+        final MessageBatchSizer sizer = new MessageBatchSizer(500L, 262144L);
+
+        // When
+        sizer.record(20, TimeUnit.MILLISECONDS.toNanos(1), 20 * 8192);
+
+        // Then
+        assertThat(sizer.getBatchSize(), equalTo(32));
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * MessagePartWriterTest.java
+ *
+ * Created on 2026-10-17, 17:30
+ *
+ * Copyright 2018 Marc Nuri
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.marcnuri.isotope.api.imap;
+
+import com.sun.mail.imap.protocol.BODYSTRUCTURE;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.doReturn;
+
+/**
+ * Created by Marc Nuri <marc@marcnuri.com> on 2026-10-17.
+ */
+public class MessagePartWriterTest {
+
+    @Test
+    public void findPart_nestedPartPath_shouldReturnPart() {
+        // Given
+        final BODYSTRUCTURE attachment = part(false);
+        final BODYSTRUCTURE mixed = part(true, part(false), attachment);
+        final BODYSTRUCTURE root = part(true, part(false), mixed);
+
+        // When
+        final BODYSTRUCTURE result = MessagePartWriter.findPart(root, "2.2");
+
+        // Then
+        assertThat(result, sameInstance(attachment));
+    }
+
+    @Test
+    public void findPart_nonExistentPartPath_shouldReturnNull() {
+        // Given
+        final BODYSTRUCTURE root = part(true, part(false), part(false));
+
+        // When
+        final BODYSTRUCTURE result = MessagePartWriter.findPart(root, "3");
+
+        // Then
+        assertThat(result, nullValue());
+    }
+
+    @Test
+    public void base64Layout_fixedLengthLines_shouldComputeDecodedSize() {
+        // Given
+        final byte[] decoded = new byte[10000];
+        Arrays.fill(decoded, (byte) 'I');
+        final byte[] encoded = Base64.getMimeEncoder().encode(decoded);
+        final int tailOffset = encoded.length - 1024;
+
+        // When
+        final MessagePartWriter.Base64Layout result = MessagePartWriter.base64Layout(
+                Arrays.copyOf(encoded, 1024), Arrays.copyOfRange(encoded, tailOffset, encoded.length),
+                tailOffset, encoded.length);
+
+        // Then
+        assertThat(result.decodedSize, equalTo(10000L));
+        assertThat(result.decodedLineSize, equalTo(57));
+        assertThat(result.lineStride, equalTo(78));
+    }
+
+    @Test
+    public void base64Layout_irregularLines_shouldReturnNull() {
+        // Given
+        final byte[] encoded = "SXNvdG9w\r\nZSBNYWlsIENsaWVudA\r\n==\r\n".getBytes(StandardCharsets.US_ASCII);
+
+        // When
+        final MessagePartWriter.Base64Layout result = MessagePartWriter.base64Layout(
+                encoded, encoded, 0, encoded.length);
+
+        // Then
+        assertThat(result, nullValue());
+    }
+
+    private static BODYSTRUCTURE part(boolean multi, BODYSTRUCTURE... bodies) {
+        final BODYSTRUCTURE ret = Mockito.mock(BODYSTRUCTURE.class);
+        doReturn(multi).when(ret).isMulti();
+        ret.bodies = multi ? bodies : null;
+        return ret;
+    }
+}
@@ -0,0 +1,211 @@
+/*
+ * MessagePrefetcherTest.java
+ *
+ * Created on 2026-10-18, 17:20
+ *
+ * Copyright 2018 Marc Nuri
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.marcnuri.isotope.api.imap;
+
+import com.marcnuri.isotope.api.configuration.IsotopeApiConfiguration;
+import com.marcnuri.isotope.api.credentials.Credentials;
+import com.marcnuri.isotope.api.credentials.CredentialsService;
+import com.marcnuri.isotope.api.message.EnvelopeCache;
+import com.marcnuri.isotope.api.message.MessageBodyCache;
+import com.marcnuri.isotope.api.message.MessagePrefetchCache;
+import com.marcnuri.isotope.api.metrics.MailMetrics;
+import com.sun.mail.imap.IMAPFolder;
+import com.sun.mail.imap.IMAPMessage;
+import com.sun.mail.imap.IMAPStore;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.ObjectFactory;
+import org.springframework.web.context.request.RequestContextHolder;
+
+import javax.mail.Flags;
+import javax.mail.Message;
+import javax.mail.Part;
+import javax.mail.URLName;
+import javax.mail.internet.MimeBodyPart;
+import javax.mail.internet.MimeMultipart;
+import javax.mail.search.SearchTerm;
+import java.util.Date;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static com.marcnuri.isotope.api.credentials.CredentialsUtils.toAccountKey;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Created by Marc Nuri <marc@marcnuri.com> on 2026-10-18.
+ */
+public class MessagePrefetcherTest {
+
+    private IsotopeApiConfiguration isotopeApiConfiguration;
+    private MessagePrefetchCache messagePrefetchCache;
+    private ImapService imapService;
+    private ObjectFactory<ImapService> imapServiceFactory;
+    private MessagePrefetcher messagePrefetcher;
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+        isotopeApiConfiguration = Mockito.mock(IsotopeApiConfiguration.class);
+        doReturn(2).when(isotopeApiConfiguration).getPrefetchAdjacentMessages();
+        doReturn(2).when(isotopeApiConfiguration).getPrefetchMaxThreads();
+        doReturn(1).when(isotopeApiConfiguration).getPrefetchMaxConcurrentPerUser();
+        messagePrefetchCache = Mockito.mock(MessagePrefetchCache.class);
+        doReturn(true).when(messagePrefetchCache).isEnabled();
+        imapService = Mockito.mock(ImapService.class);
+        imapServiceFactory = Mockito.mock(ObjectFactory.class);
+        doReturn(imapService).when(imapServiceFactory).getObject();
+        messagePrefetcher = new MessagePrefetcher(isotopeApiConfiguration, messagePrefetchCache, imapServiceFactory);
+    }
+
+    @After
+    public void tearDown() {
+        messagePrefetcher.destroy();
+        messagePrefetcher = null;
+        imapServiceFactory = null;
+        imapService = null;
+        messagePrefetchCache = null;
+        isotopeApiConfiguration = null;
+    }
+
+    @Test
+    public void prefetch_userLimitReached_shouldIgnoreRequestsOfThatUserOnly() throws Exception {
+        // Given
+        final CountDownLatch running = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        doAnswer(i -> {
+            running.countDown();
+            release.await(5, TimeUnit.SECONDS);
+            return 2;
+        }).when(imapService).prefetchMessages(Mockito.argThat(c -> "user".equals(c.getUser())),
+                Mockito.any(), Mockito.anyLong(), Mockito.anyInt());
+        final Credentials user = credentials("user");
+        final Credentials other = credentials("other");
+        messagePrefetcher.prefetch(user, new URLName("INBOX"), 1L);
+        running.await(5, TimeUnit.SECONDS);
+
+        // When
+        messagePrefetcher.prefetch(user, new URLName("INBOX"), 2L);
+        messagePrefetcher.prefetch(other, new URLName("INBOX"), 3L);
+
+        // Then
+        verify(imapService, timeout(5000L).times(1)).prefetchMessages(
+                Mockito.eq(other), Mockito.eq(new URLName("INBOX")), Mockito.eq(3L), Mockito.eq(2));
+        assertThat(messagePrefetcher.getPendingTasks(toAccountKey(user)), equalTo(1));
+        release.countDown();
+        verify(imapService, timeout(5000L).times(2)).destroy();
+        verify(imapService, never()).prefetchMessages(
+                Mockito.any(), Mockito.any(), Mockito.eq(2L), Mockito.anyInt());
+    }
+
+    @Test
+    public void prefetch_cacheDisabled_shouldNotPrefetch() throws Exception {
+        // Given
+        doReturn(false).when(messagePrefetchCache).isEnabled();
+        final MessagePrefetcher disabledPrefetcher =
+                new MessagePrefetcher(isotopeApiConfiguration, messagePrefetchCache, imapServiceFactory);
+
+        // When
+        disabledPrefetcher.prefetch(credentials("user"), new URLName("INBOX"), 1L);
+
+        // Then
+        assertThat(disabledPrefetcher.isEnabled(), equalTo(false));
+        verify(imapServiceFactory, times(0)).getObject();
+    }
+
+    @Test
+    public void prefetch_messageWithAttachments_shouldRenderAttachmentsWithoutLinks() throws Exception {
+        // Given
+        final IMAPStore imapStore = Mockito.mock(IMAPStore.class);
+        final ImapStorePool imapStorePool = Mockito.mock(ImapStorePool.class);
+        doReturn(imapStore).when(imapStorePool).borrow(Mockito.any());
+        final MailMetrics mailMetrics = new MailMetrics(new SimpleMeterRegistry());
+        final ImapService realImapService = new ImapService(isotopeApiConfiguration, imapStorePool,
+                new EnvelopeCache(isotopeApiConfiguration), new MessageBodyCache(isotopeApiConfiguration),
+                messagePrefetchCache, Mockito.mock(CredentialsService.class), mailMetrics);
+        doReturn(realImapService).when(imapServiceFactory).getObject();
+        final IMAPFolder folder = Mockito.mock(IMAPFolder.class);
+        doReturn(folder).when(imapStore).getFolder(Mockito.eq("INBOX"));
+        doReturn(true).when(folder).exists();
+        doReturn("INBOX").when(folder).getFullName();
+        doReturn(1L).when(folder).getUIDValidity();
+        doReturn(2).when(folder).getMessageCount();
+        final IMAPMessage[] messages = new IMAPMessage[2];
+        for (int it = 0; it < messages.length; it++) {
+            messages[it] = Mockito.mock(IMAPMessage.class);
+            doReturn(folder).when(messages[it]).getFolder();
+            doReturn(it + 1).when(messages[it]).getMessageNumber();
+            doReturn(new Date()).when(messages[it]).getReceivedDate();
+            doReturn(new Flags()).when(messages[it]).getFlags();
+            doReturn((it + 1) * 10L).when(folder).getUID(Mockito.eq(messages[it]));
+            doReturn(messages[it]).when(folder).getMessageByUID(Mockito.eq((it + 1) * 10L));
+        }
+        doReturn(messages).when(folder).getMessages(Mockito.eq(1), Mockito.eq(2));
+        doReturn(new Message[]{messages[1]}).when(folder).search(Mockito.any(SearchTerm.class), Mockito.any());
+        final MimeMultipart multipart = new MimeMultipart();
+        final MimeBodyPart html = new MimeBodyPart();
+        html.setContent("<p>Prefetched</p>", "text/html");
+        html.setHeader("Content-Type", "text/html");
+        multipart.addBodyPart(html);
+        final MimeBodyPart pdf = new MimeBodyPart();
+        pdf.setContent(new byte[]{1, 3, 3, 7}, "application/pdf");
+        pdf.setDisposition(Part.ATTACHMENT);
+        pdf.setFileName("file.pdf");
+        multipart.addBodyPart(pdf);
+        doReturn(multipart).when(messages[1]).getContent();
+
+        // When
+        messagePrefetcher.prefetch(credentials("user"), new URLName("INBOX"), 10L);
+
+        // Then
+        final ArgumentCaptor<com.marcnuri.isotope.api.message.Message> prefetched =
+                ArgumentCaptor.forClass(com.marcnuri.isotope.api.message.Message.class);
+        verify(messagePrefetchCache, timeout(5000L).times(1)).put(
+                Mockito.anyString(), Mockito.eq("INBOX"), Mockito.eq(1L), prefetched.capture());
+        assertThat(RequestContextHolder.getRequestAttributes(), nullValue());
+        assertThat(prefetched.getValue().getUid(), equalTo(20L));
+        assertThat(prefetched.getValue().getContent(), equalTo("<p>Prefetched</p>"));
+        assertThat(prefetched.getValue().getAttachments(), hasSize(1));
+        assertThat(prefetched.getValue().getAttachments().iterator().next().getFileName(), equalTo("file.pdf"));
+        assertThat(prefetched.getValue().getAttachments().iterator().next().getLinks(), empty());
+    }
+
+    private static Credentials credentials(String user) {
+        final Credentials ret = new Credentials();
+        ret.setUser(user);
+        ret.setServerHost("email.com");
+        ret.setServerPort(993);
+        return ret;
+    }
+}
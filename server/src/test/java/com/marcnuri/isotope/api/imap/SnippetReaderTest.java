@@ -0,0 +1,154 @@
+/*
+ * SnippetReaderTest.java
+ *
+ * Created on 2026-10-18, 13:50
+ *
+ * Copyright 2018 Marc Nuri
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.marcnuri.isotope.api.imap;
+
+import com.sun.mail.iap.Response;
+import com.sun.mail.imap.IMAPFolder;
+import com.sun.mail.imap.protocol.FetchResponse;
+import com.sun.mail.imap.protocol.IMAPProtocol;
+import com.sun.mail.imap.protocol.IMAPResponse;
+import com.sun.mail.imap.protocol.MessageSet;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.Map;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Created by Marc Nuri <marc@marcnuri.com> on 2026-10-18.
+ */
+public class SnippetReaderTest {
+
+    @Test
+    public void read_messagesWithDifferentStructures_shouldFetchPartialTextPartsGroupedBySection() throws Exception {
+        // Given
+        final IMAPProtocol protocol = Mockito.mock(IMAPProtocol.class);
+        final IMAPFolder folder = Mockito.mock(IMAPFolder.class);
+        doAnswer(i -> ((IMAPFolder.ProtocolCommand) i.getArgument(0)).doCommand(protocol))
+                .when(folder).doCommand(Mockito.any());
+        doReturn(responses(
+                "* 1 FETCH (BODYSTRUCTURE ((\"TEXT\" \"PLAIN\" (\"CHARSET\" \"UTF-8\") NIL NIL \"7BIT\" 5 1)"
+                        + "(\"TEXT\" \"HTML\" (\"CHARSET\" \"UTF-8\") NIL NIL \"7BIT\" 12 1) \"ALTERNATIVE\"))",
+                "* 2 FETCH (BODYSTRUCTURE ((\"TEXT\" \"PLAIN\" NIL NIL NIL \"7BIT\" 5 1)"
+                        + "(\"APPLICATION\" \"PDF\" NIL NIL NIL \"BASE64\" 1024) \"MIXED\"))",
+                "* 3 FETCH (BODYSTRUCTURE (\"TEXT\" \"HTML\" NIL NIL NIL \"7BIT\" 12 1))",
+                "* 4 FETCH (BODYSTRUCTURE (\"IMAGE\" \"PNG\" NIL NIL NIL \"BASE64\" 1024))"))
+                .when(protocol).fetch(Mockito.<MessageSet[]>any(), Mockito.eq("BODYSTRUCTURE"));
+        doReturn(responses("* 1 FETCH (BODY[1]<0> \"Hello\")", "* 2 FETCH (BODY[1]<0> \"World\")"))
+                .when(protocol).fetch(Mockito.<MessageSet[]>any(), Mockito.eq("BODY.PEEK[1]<0.512>"));
+        doReturn(responses("* 3 FETCH (BODY[TEXT]<0> \"<p>Hi</p>\")"))
+                .when(protocol).fetch(Mockito.<MessageSet[]>any(), Mockito.eq("BODY.PEEK[TEXT]<0.512>"));
+
+        // When
+        final Map<Integer, String> result = SnippetReader.read(folder, new int[]{4, 3, 2, 1}, 512);
+
+        // Then
+        assertThat(result.get(1), equalTo("Hello"));
+        assertThat(result.get(2), equalTo("World"));
+        assertThat(result.get(3), equalTo("Hi"));
+        assertThat(result.get(4), equalTo(""));
+        verify(folder, times(3)).doCommand(Mockito.any());
+        verify(protocol, times(1)).fetch(Mockito.<MessageSet[]>argThat(
+                ms -> MessageSet.toString(ms).equals("1:2")), Mockito.eq("BODY.PEEK[1]<0.512>"));
+    }
+
+    @Test
+    public void read_noMessages_shouldNotFetch() throws Exception {
+        // Given
+        final IMAPFolder folder = Mockito.mock(IMAPFolder.class);
+
+        // When
+        final Map<Integer, String> result = SnippetReader.read(folder, new int[0], 512);
+
+        // Then
+        assertThat(result, equalTo(Collections.emptyMap()));
+        verify(folder, times(0)).doCommand(Mockito.any());
+    }
+
+    @Test
+    public void toSnippet_truncatedHtml_shouldReturnPlainText() {
+        // Given
+        final byte[] data = ("<html><head><style>p {color: red;}</style></head><body><!-- comment -->"
+                + "<p>Hello&nbsp;&amp;\r\n   welcome</p><div class=\"tr").getBytes(StandardCharsets.US_ASCII);
+
+        // When
+        final String result = SnippetReader.toSnippet(data, "7bit", StandardCharsets.US_ASCII, true);
+
+        // Then
+        assertThat(result, equalTo("Hello & welcome"));
+    }
+
+    @Test
+    public void toSnippet_truncatedBase64_shouldDiscardIncompleteCharacters() {
+        // Given
+        final String base64 = Base64.getMimeEncoder().encodeToString("Café é".getBytes(StandardCharsets.UTF_8));
+        final byte[] data = base64.substring(0, base64.length() - 2).getBytes(StandardCharsets.US_ASCII);
+
+        // When
+        final String result = SnippetReader.toSnippet(data, "base64", StandardCharsets.UTF_8, false);
+
+        // Then
+        assertThat(result, equalTo("Café"));
+    }
+
+    @Test
+    public void toSnippet_truncatedQuotedPrintable_shouldDiscardIncompleteEscape() {
+        // Given
+        final byte[] data = "Caf=C3=A9 caf=C3=".getBytes(StandardCharsets.US_ASCII);
+
+        // When
+        final String result = SnippetReader.toSnippet(data, "quoted-printable", StandardCharsets.UTF_8, false);
+
+        // Then
+        assertThat(result, equalTo("Café caf"));
+    }
+
+    @Test
+    public void toSnippet_longText_shouldTruncateToMaxLength() {
+        // Given
+        final byte[] data = String.join(" ", Collections.nCopies(100, "word")).getBytes(StandardCharsets.US_ASCII);
+
+        // When
+        final String result = SnippetReader.toSnippet(data, null, StandardCharsets.US_ASCII, false);
+
+        // Then
+        assertThat(result.length() <= SnippetReader.SNIPPET_MAX_LENGTH, equalTo(true));
+        assertThat(result.startsWith("word word"), equalTo(true));
+    }
+
+    private static Response[] responses(String... fetchResponses) throws Exception {
+        final Response[] ret = new Response[fetchResponses.length + 1];
+        for (int it = 0; it < fetchResponses.length; it++) {
+            ret[it] = new FetchResponse(new IMAPResponse(fetchResponses[it]));
+        }
+        ret[fetchResponses.length] = new IMAPResponse("A1 OK FETCH completed");
+        return ret;
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * UidSetTest.java
+ *
+ * Created on 2026-10-17, 20:45
+ *
+ * Copyright 2018 Marc Nuri
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.marcnuri.isotope.api.imap;
+
+import com.marcnuri.isotope.api.exception.InvalidFieldException;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Created by Marc Nuri <marc@marcnuri.com> on 2026-10-17.
+ */
+public class UidSetTest {
+
+    @Test
+    public void parse_unorderedOverlappingRanges_shouldMergeRanges() {
+        // Given
+        final String uidSet = "600,500:1,450:550,602, 601";
+
+        // When
+        final UidSet result = UidSet.parse(uidSet);
+
+        // Then
+        assertThat(result.toString(), equalTo("1:550,600:602"));
+        assertThat(result.size(), equalTo(553L));
+    }
+
+    @Test
+    public void parse_repeatedParameters_shouldMergeRanges() {
+        // Given
+        final List<String> uidSets = Arrays.asList("1:500", "600", "501");
+
+        // When
+        final UidSet result = UidSet.parse(uidSets);
+
+        // Then
+        assertThat(result.toString(), equalTo("1:501,600"));
+    }
+
+    @Test(expected = InvalidFieldException.class)
+    public void parse_invalidUid_shouldThrowException() {
+        // When
+        UidSet.parse("1:*");
+
+        // Then
+        // Exception is thrown
+    }
+
+    @Test
+    public void of_consecutiveUids_shouldCompactToSingleRange() {
+        // Given
+        final long[] uids = new long[10000];
+        Arrays.setAll(uids, it -> uids.length - it);
+
+        // When
+        final UidSet result = UidSet.of(uids);
+
+        // Then
+        assertThat(result.toString(), equalTo("1:10000"));
+        assertThat(result.toUIDSets().length, equalTo(1));
+        assertThat(result.contains(5000L), equalTo(true));
+        assertThat(result.contains(10001L), equalTo(false));
+    }
+}
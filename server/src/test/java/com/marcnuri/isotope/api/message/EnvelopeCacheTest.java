@@ -0,0 +1,124 @@
+/*
+ * EnvelopeCacheTest.java
+ *
+ * Created on 2026-10-17, 15:55
+ *
+ * Copyright 2018 Marc Nuri
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.marcnuri.isotope.api.message;
+
+import com.marcnuri.isotope.api.configuration.IsotopeApiConfiguration;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import javax.mail.Flags;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.doReturn;
+
+/**
+ * Created by Marc Nuri <marc@marcnuri.com> on 2026-10-17.
+ */
+public class EnvelopeCacheTest {
+
+    private IsotopeApiConfiguration isotopeApiConfiguration;
+
+    @Before
+    public void setUp() {
+        isotopeApiConfiguration = Mockito.mock(IsotopeApiConfiguration.class);
+        doReturn(1048576L).when(isotopeApiConfiguration).getEnvelopeCacheUserBytes();
+        doReturn(10L).when(isotopeApiConfiguration).getEnvelopeCacheMaxUsers();
+        doReturn(60000L).when(isotopeApiConfiguration).getEnvelopeCacheExpireAfterAccess();
+    }
+
+    @After
+    public void tearDown() {
+        isotopeApiConfiguration = null;
+    }
+
+    @Test
+    public void get_cachedEnvelope_shouldReturnEnvelopeWithProvidedFlags() {
+        // Given
+        final EnvelopeCache envelopeCache = new EnvelopeCache(isotopeApiConfiguration);
+        final Message message = new Message();
+        message.setUid(1337L);
+        message.setSubject("Cached subject");
+        message.setSeen(false);
+        message.setContent("Not an envelope field");
+        envelopeCache.put("account", "INBOX", 1L, message);
+
+        // When
+        final Message result = envelopeCache.get("account", "INBOX", 1L, 1337L, new Flags(Flags.Flag.SEEN));
+
+        // Then
+        assertThat(result.getUid(), equalTo(1337L));
+        assertThat(result.getSubject(), equalTo("Cached subject"));
+        assertThat(result.getSeen(), equalTo(true));
+        assertThat(result.getContent(), nullValue());
+        assertThat(envelopeCache.getHitCount(), equalTo(1L));
+    }
+
+    @Test
+    public void get_differentUidValidity_shouldReturnNull() {
+        // Given
+        final EnvelopeCache envelopeCache = new EnvelopeCache(isotopeApiConfiguration);
+        final Message message = new Message();
+        message.setUid(1337L);
+        envelopeCache.put("account", "INBOX", 1L, message);
+
+        // When
+        final Message result = envelopeCache.get("account", "INBOX", 2L, 1337L, new Flags());
+
+        // Then
+        assertThat(result, nullValue());
+        assertThat(envelopeCache.getMissCount(), equalTo(1L));
+    }
+
+    @Test
+    public void get_differentAccount_shouldReturnNull() {
+        // Given
+        final EnvelopeCache envelopeCache = new EnvelopeCache(isotopeApiConfiguration);
+        final Message message = new Message();
+        message.setUid(1337L);
+        envelopeCache.put("account", "INBOX", 1L, message);
+
+        // When
+        final Message result = envelopeCache.get("other-account", "INBOX", 1L, 1337L, new Flags());
+
+        // Then
+        assertThat(result, nullValue());
+    }
+
+    @Test
+    public void put_cacheDisabled_shouldNotCache() {
+        // Given
+        doReturn(0L).when(isotopeApiConfiguration).getEnvelopeCacheUserBytes();
+        final EnvelopeCache envelopeCache = new EnvelopeCache(isotopeApiConfiguration);
+        final Message message = new Message();
+        message.setUid(1337L);
+
+        // When
+        envelopeCache.put("account", "INBOX", 1L, message);
+
+        // Then
+        assertThat(envelopeCache.get("account", "INBOX", 1L, 1337L, new Flags()), nullValue());
+        assertThat(envelopeCache.getAccountCount(), equalTo(0L));
+    }
+}
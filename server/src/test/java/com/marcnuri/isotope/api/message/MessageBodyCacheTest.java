@@ -0,0 +1,239 @@
+/*
+ * MessageBodyCacheTest.java
+ *
+ * Created on 2026-10-18, 11:55
+ *
+ * Copyright 2018 Marc Nuri
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.marcnuri.isotope.api.message;
+
+import com.marcnuri.isotope.api.configuration.IsotopeApiConfiguration;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.Mockito;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+
+import static org.hamcrest.Matchers.arrayWithSize;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.doReturn;
+
+/**
+ * Created by Marc Nuri <marc@marcnuri.com> on 2026-10-18.
+ */
+public class MessageBodyCacheTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private IsotopeApiConfiguration isotopeApiConfiguration;
+
+    @Before
+    public void setUp() {
+        isotopeApiConfiguration = Mockito.mock(IsotopeApiConfiguration.class);
+        doReturn(1048576L).when(isotopeApiConfiguration).getMessageCacheBytes();
+        doReturn(temporaryFolder.getRoot().getAbsolutePath())
+                .when(isotopeApiConfiguration).getMessageCacheDirectory();
+    }
+
+    @After
+    public void tearDown() {
+        isotopeApiConfiguration = null;
+    }
+
+    @Test
+    public void get_cachedBody_shouldReturnContentAndAttachments() {
+        // Given
+        final MessageBodyCache messageBodyCache = new MessageBodyCache(isotopeApiConfiguration);
+        final Message message = new Message();
+        message.setUid(1337L);
+        message.setSubject("Not a body field");
+        message.setContent("<p>Cached content é</p>");
+        message.setAttachments(Collections.singletonList(
+                new Attachment("cid", "file.pdf", "application/pdf", 1024, "2")));
+        messageBodyCache.put("account", "INBOX", 1L, message);
+
+        // When
+        final Message result = messageBodyCache.get("account", "INBOX", 1L, 1337L);
+
+        // Then
+        assertThat(result.getUid(), equalTo(1337L));
+        assertThat(result.getSubject(), nullValue());
+        assertThat(result.getContent(), equalTo("<p>Cached content é</p>"));
+        assertThat(result.getAttachments(), equalTo(message.getAttachments()));
+        assertThat(messageBodyCache.getHitCount(), equalTo(1L));
+    }
+
+    @Test
+    public void put_validMessage_shouldStoreEncryptedFile() throws Exception {
+        // Given
+        final MessageBodyCache messageBodyCache = new MessageBodyCache(isotopeApiConfiguration);
+        final Message message = new Message();
+        message.setUid(1337L);
+        message.setContent("Sensitive content");
+
+        // When
+        messageBodyCache.put("account", "INBOX", 1L, message);
+
+        // Then
+        final File[] files = messageBodyCache.getDirectory().toFile().listFiles();
+        assertThat(files, arrayWithSize(1));
+        final String stored = new String(Files.readAllBytes(files[0].toPath()), StandardCharsets.ISO_8859_1);
+        assertThat(stored.contains("Sensitive content"), equalTo(false));
+        assertThat(files[0].getName().contains("INBOX"), equalTo(false));
+    }
+
+    @Test
+    public void get_differentAccountOrUidValidity_shouldReturnNull() {
+        // Given
+        final MessageBodyCache messageBodyCache = new MessageBodyCache(isotopeApiConfiguration);
+        final Message message = new Message();
+        message.setUid(1337L);
+        message.setContent("Content");
+        messageBodyCache.put("account", "INBOX", 1L, message);
+
+        // When
+        final Message otherAccount = messageBodyCache.get("other-account", "INBOX", 1L, 1337L);
+        final Message otherUidValidity = messageBodyCache.get("account", "INBOX", 2L, 1337L);
+
+        // Then
+        assertThat(otherAccount, nullValue());
+        assertThat(otherUidValidity, nullValue());
+        assertThat(messageBodyCache.getMissCount(), equalTo(2L));
+    }
+
+    @Test
+    public void get_tamperedFile_shouldReturnNullAndDiscardEntry() throws Exception {
+        // Given
+        final MessageBodyCache messageBodyCache = new MessageBodyCache(isotopeApiConfiguration);
+        final Message message = new Message();
+        message.setUid(1337L);
+        message.setContent("Content");
+        messageBodyCache.put("account", "INBOX", 1L, message);
+        final File file = messageBodyCache.getDirectory().toFile().listFiles()[0];
+        final byte[] bytes = Files.readAllBytes(file.toPath());
+        bytes[bytes.length - 1] ^= 1;
+        Files.write(file.toPath(), bytes);
+
+        // When
+        final Message result = messageBodyCache.get("account", "INBOX", 1L, 1337L);
+
+        // Then
+        assertThat(result, nullValue());
+        assertThat(messageBodyCache.getEntryCount(), equalTo(0L));
+        assertThat(file.exists(), equalTo(false));
+    }
+
+    @Test
+    public void new_staleInstanceFromPreviousExecution_shouldBeDeleted() throws Exception {
+        // Given
+        final File stale = temporaryFolder.newFolder("instance-0123");
+        final File staleEntry = new File(stale, "0123.body");
+        Files.write(staleEntry.toPath(), new byte[]{1, 3, 3, 7});
+        final File staleLock = temporaryFolder.newFile("instance-0123.lock");
+        final File unrelated = temporaryFolder.newFile("unrelated.txt");
+
+        // When
+        final MessageBodyCache messageBodyCache = new MessageBodyCache(isotopeApiConfiguration);
+
+        // Then
+        assertThat(stale.exists(), equalTo(false));
+        assertThat(staleLock.exists(), equalTo(false));
+        assertThat(unrelated.exists(), equalTo(true));
+        assertThat(messageBodyCache.getDirectory().getParent(), equalTo(temporaryFolder.getRoot().toPath()));
+    }
+
+    @Test
+    public void new_otherRunningInstanceInSameDirectory_shouldKeepItsEntries() {
+        // Given
+        final MessageBodyCache running = new MessageBodyCache(isotopeApiConfiguration);
+        final Message message = new Message();
+        message.setUid(1337L);
+        message.setContent("Content");
+        running.put("account", "INBOX", 1L, message);
+
+        // When
+        final MessageBodyCache other = new MessageBodyCache(isotopeApiConfiguration);
+        other.put("account", "INBOX", 1L, message);
+
+        // Then
+        assertThat(other.getDirectory(), not(equalTo(running.getDirectory())));
+        assertThat(running.get("account", "INBOX", 1L, 1337L).getContent(), equalTo("Content"));
+        assertThat(other.get("account", "INBOX", 1L, 1337L).getContent(), equalTo("Content"));
+    }
+
+    @Test
+    public void destroy_enabledCache_shouldDeleteInstanceDirectory() {
+        // Given
+        final MessageBodyCache messageBodyCache = new MessageBodyCache(isotopeApiConfiguration);
+        final Message message = new Message();
+        message.setUid(1337L);
+        message.setContent("Content");
+        messageBodyCache.put("account", "INBOX", 1L, message);
+
+        // When
+        messageBodyCache.destroy();
+
+        // Then
+        assertThat(temporaryFolder.getRoot().listFiles(), arrayWithSize(0));
+    }
+
+    @Test
+    public void put_sizeLimitExceeded_shouldEvictAndDeleteFiles() {
+        // Given
+        doReturn(4096L).when(isotopeApiConfiguration).getMessageCacheBytes();
+        final MessageBodyCache messageBodyCache = new MessageBodyCache(isotopeApiConfiguration);
+        final String content = String.join("", Collections.nCopies(1000, "a"));
+
+        // When
+        for (long uid = 1; uid <= 20; uid++) {
+            final Message message = new Message();
+            message.setUid(uid);
+            message.setContent(content);
+            messageBodyCache.put("account", "INBOX", 1L, message);
+        }
+
+        // Then
+        assertThat(messageBodyCache.getEvictionCount(), not(equalTo(0L)));
+        assertThat(messageBodyCache.getDirectory().toFile().listFiles().length,
+                equalTo((int) messageBodyCache.getEntryCount()));
+    }
+
+    @Test
+    public void put_cacheDisabled_shouldNotCache() {
+        // Given
+        doReturn(0L).when(isotopeApiConfiguration).getMessageCacheBytes();
+        final MessageBodyCache messageBodyCache = new MessageBodyCache(isotopeApiConfiguration);
+        final Message message = new Message();
+        message.setUid(1337L);
+
+        // When
+        messageBodyCache.put("account", "INBOX", 1L, message);
+
+        // Then
+        assertThat(messageBodyCache.get("account", "INBOX", 1L, 1337L), nullValue());
+        assertThat(temporaryFolder.getRoot().listFiles(), arrayWithSize(0));
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * MessagePrefetchCacheTest.java
+ *
+ * Created on 2026-10-18, 17:05
+ *
+ * Copyright 2018 Marc Nuri
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.marcnuri.isotope.api.message;
+
+import com.marcnuri.isotope.api.configuration.IsotopeApiConfiguration;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.util.Collections;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.doReturn;
+
+/**
+ * Created by Marc Nuri <marc@marcnuri.com> on 2026-10-18.
+ */
+public class MessagePrefetchCacheTest {
+
+    private IsotopeApiConfiguration isotopeApiConfiguration;
+
+    @Before
+    public void setUp() {
+        isotopeApiConfiguration = Mockito.mock(IsotopeApiConfiguration.class);
+        doReturn(1048576L).when(isotopeApiConfiguration).getPrefetchUserBytes();
+        doReturn(10L).when(isotopeApiConfiguration).getPrefetchMaxUsers();
+        doReturn(60000L).when(isotopeApiConfiguration).getPrefetchExpireAfterWrite();
+    }
+
+    @After
+    public void tearDown() {
+        isotopeApiConfiguration = null;
+    }
+
+    @Test
+    public void take_prefetchedBody_shouldReturnBodyOnlyOnce() {
+        // Given
+        final MessagePrefetchCache messagePrefetchCache = new MessagePrefetchCache(isotopeApiConfiguration);
+        final Message message = new Message();
+        message.setUid(1337L);
+        message.setSubject("Not a body field");
+        message.setContent("<p>Prefetched</p>");
+        message.setAttachments(Collections.singletonList(
+                new Attachment(null, "file.pdf", "application/pdf", 1024, "2")));
+        messagePrefetchCache.put("account", "INBOX", 1L, message);
+
+        // When
+        final Message result = messagePrefetchCache.take("account", "INBOX", 1L, 1337L);
+
+        // Then
+        assertThat(result.getContent(), equalTo("<p>Prefetched</p>"));
+        assertThat(result.getSubject(), nullValue());
+        assertThat(result.getAttachments(), hasSize(1));
+        assertThat(result.getAttachments().iterator().next().getPartPath(), equalTo("2"));
+        assertThat(messagePrefetchCache.take("account", "INBOX", 1L, 1337L), nullValue());
+        assertThat(messagePrefetchCache.getHitCount(), equalTo(1L));
+        assertThat(messagePrefetchCache.getMissCount(), equalTo(1L));
+    }
+
+    @Test
+    public void contains_prefetchedBodyOfAnotherAccount_shouldReturnFalse() {
+        // Given
+        final MessagePrefetchCache messagePrefetchCache = new MessagePrefetchCache(isotopeApiConfiguration);
+        final Message message = new Message();
+        message.setUid(1337L);
+        messagePrefetchCache.put("account", "INBOX", 1L, message);
+
+        // When
+        final boolean result = messagePrefetchCache.contains("other", "INBOX", 1L, 1337L);
+
+        // Then
+        assertThat(result, equalTo(false));
+        assertThat(messagePrefetchCache.contains("account", "INBOX", 1L, 1337L), equalTo(true));
+    }
+
+    @Test
+    public void put_userBytesExceeded_shouldEvictBodies() {
+        // Given
+        doReturn(4096L).when(isotopeApiConfiguration).getPrefetchUserBytes();
+        final MessagePrefetchCache messagePrefetchCache = new MessagePrefetchCache(isotopeApiConfiguration);
+
+        // When
+        for (long uid = 1; uid <= 10; uid++) {
+            final Message message = new Message();
+            message.setUid(uid);
+            message.setContent(String.join("", Collections.nCopies(512, "x")));
+            messagePrefetchCache.put("account", "INBOX", 1L, message);
+        }
+
+        // Then
+        assertThat(messagePrefetchCache.getWeightedSize() <= 4096L, equalTo(true));
+        assertThat(messagePrefetchCache.getEvictionCount() > 0, equalTo(true));
+    }
+
+    @Test
+    public void put_disabled_shouldNotCache() {
+        // Given
+        doReturn(0L).when(isotopeApiConfiguration).getPrefetchUserBytes();
+        final MessagePrefetchCache messagePrefetchCache = new MessagePrefetchCache(isotopeApiConfiguration);
+        final Message message = new Message();
+        message.setUid(1337L);
+
+        // When
+        messagePrefetchCache.put("account", "INBOX", 1L, message);
+
+        // Then
+        assertThat(messagePrefetchCache.isEnabled(), equalTo(false));
+        assertThat(messagePrefetchCache.take("account", "INBOX", 1L, 1337L), nullValue());
+    }
+}
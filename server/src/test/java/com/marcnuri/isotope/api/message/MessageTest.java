@@ -0,0 +1,76 @@
+/*
+ * MessageTest.java
+ *
+ * Created on 2026-10-17, 23:30
+ *
+ * Copyright 2018 Marc Nuri
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.marcnuri.isotope.api.message;
+
+import com.sun.mail.imap.IMAPFolder;
+import com.sun.mail.imap.IMAPMessage;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import javax.mail.Address;
+import javax.mail.Flags;
+import javax.mail.Message.RecipientType;
+import javax.mail.internet.InternetAddress;
+import java.time.ZoneId;
+import java.util.Date;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.doReturn;
+
+/**
+ * Created by Marc Nuri <marc@marcnuri.com> on 2026-10-17.
+ */
+public class MessageTest {
+
+    @Test
+    public void from_envelope_shouldMapEnvelopeFields() throws Exception {
+        // Given
+        final IMAPFolder folder = Mockito.mock(IMAPFolder.class);
+        final IMAPMessage imapMessage = Mockito.mock(IMAPMessage.class);
+        doReturn(1337L).when(folder).getUID(imapMessage);
+        doReturn(new Address[]{new InternetAddress("from@isotope.com", "Mr. From")}).when(imapMessage).getFrom();
+        doReturn(new Address[]{new InternetAddress("to@isotope.com")})
+                .when(imapMessage).getRecipients(RecipientType.TO);
+        doReturn(new Address[]{new InternetAddress("cc@isotope.com", "Cc")})
+                .when(imapMessage).getRecipients(RecipientType.CC);
+        doReturn(new String[]{"<ref@isotope.com>"}).when(imapMessage).getHeader(Message.HEADER_REFERENCES);
+        doReturn(new Date(0L)).when(imapMessage).getReceivedDate();
+        doReturn(new Flags(Flags.Flag.SEEN)).when(imapMessage).getFlags();
+
+        // When
+        final MessageWithFolder result = Message.from(MessageWithFolder::new, folder, imapMessage);
+
+        // Then
+        assertThat(result.getUid(), equalTo(1337L));
+        assertThat(result.getFrom(), contains("\"Mr. From\" <from@isotope.com>"));
+        assertThat(result.getReplyTo(), empty());
+        assertThat(result.getRecipients(), contains(
+                new Recipient("To", "to@isotope.com"), new Recipient("Cc", "\"Cc\" <cc@isotope.com>")));
+        assertThat(result.getReferences(), contains("<ref@isotope.com>"));
+        assertThat(result.getInReplyTo(), empty());
+        assertThat(result.getReceivedDate().getZone(), equalTo(ZoneId.of("CET")));
+        assertThat(result.getSeen(), equalTo(true));
+        assertThat(result.getFlagged(), equalTo(false));
+    }
+}
@@ -21,17 +21,24 @@
 package com.marcnuri.isotope.api.message;
 
 import com.marcnuri.isotope.api.exception.InvalidFieldException;
+import com.sun.mail.imap.IMAPFolder;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mockito;
 
 import javax.mail.Address;
+import javax.mail.FetchProfile;
 import javax.mail.Folder;
 import javax.mail.Message;
 import java.util.Arrays;
 import java.util.List;
 
 import static com.marcnuri.isotope.api.message.MessageUtils.envelopeFetch;
+import static org.hamcrest.Matchers.arrayContainingInAnyOrder;
 import static org.hamcrest.Matchers.arrayWithSize;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.nullValue;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.fail;
 import static org.mockito.Mockito.*;
@@ -54,6 +61,59 @@ public class MessageUtilsTest {
         verify(mockFolder, times(1)).fetch(Mockito.any(), Mockito.any());
     }
 
+    @Test
+    public void envelopeFetch_headerNames_shouldFetchOnlyProvidedHeaders() throws Exception {
+        // Given
+        final Folder mockFolder = Mockito.mock(Folder.class);
+        final Message[] mockMessages = new Message[]{Mockito.mock(Message.class)};
+        final ArgumentCaptor<FetchProfile> fetchProfile = ArgumentCaptor.forClass(FetchProfile.class);
+
+        // When
+        envelopeFetch(mockFolder, mockMessages, new String[]{"In-Reply-To", "References", "List-Id"});
+
+        // Then
+        verify(mockFolder, times(1)).fetch(Mockito.any(), fetchProfile.capture());
+        assertThat(fetchProfile.getValue().getHeaderNames(),
+                arrayContainingInAnyOrder("In-Reply-To", "References", "List-Id"));
+        assertThat(fetchProfile.getValue().contains(IMAPFolder.FetchProfileItem.HEADERS), equalTo(false));
+        assertThat(fetchProfile.getValue().contains(FetchProfile.Item.ENVELOPE), equalTo(true));
+    }
+
+    @Test
+    public void envelopeFetch_nullHeaderNames_shouldFetchAllHeaders() throws Exception {
+        // Given
+        final Folder mockFolder = Mockito.mock(Folder.class);
+        final Message[] mockMessages = new Message[]{Mockito.mock(Message.class)};
+        final ArgumentCaptor<FetchProfile> fetchProfile = ArgumentCaptor.forClass(FetchProfile.class);
+
+        // When
+        envelopeFetch(mockFolder, mockMessages, null);
+
+        // Then
+        verify(mockFolder, times(1)).fetch(Mockito.any(), fetchProfile.capture());
+        assertThat(fetchProfile.getValue().getHeaderNames(), arrayWithSize(0));
+        assertThat(fetchProfile.getValue().contains(IMAPFolder.FetchProfileItem.HEADERS), equalTo(true));
+    }
+
+    @Test
+    public void headerBytes_headerNames_shouldSumOnlyProvidedHeaders() throws Exception {
+        // Given
+        final Message message = Mockito.mock(Message.class);
+        doReturn(new String[]{"<1337@isotope.com>"}).when(message).getHeader("References");
+        doReturn(null).when(message).getHeader("In-Reply-To");
+        final Message expunged = Mockito.mock(Message.class);
+        doReturn(true).when(expunged).isExpunged();
+
+        // When
+        final long result = MessageUtils.headerBytes(
+                new Message[]{message, expunged}, new String[]{"In-Reply-To", "References"});
+
+        // Then
+        assertThat(result, equalTo((long) "References: <1337@isotope.com>\r\n".length()));
+        verify(message, never()).getAllHeaders();
+        verify(expunged, never()).getHeader(Mockito.anyString());
+    }
+
     @Test
     public void envelopeFetch_validFolderAndEmptyMessageArray_shouldNotFetchMessages() throws Exception {
         // Given
@@ -67,6 +127,48 @@ public class MessageUtilsTest {
         verify(mockFolder, never()).fetch(Mockito.any(), Mockito.any());
     }
 
+    @Test
+    public void extractContent_nestedMultipart_shouldReturnHtmlContent() throws Exception {
+        // Given
+        final MimePartIndex index = MimePartIndex.of(MimePartIndexTest.nestedMultipart());
+
+        // When
+        final String result = MessageUtils.extractContent(index);
+
+        // Then
+        assertThat(result, containsString("<p>Html content"));
+    }
+
+    @Test
+    public void extractBodypart_nestedParts_shouldReturnMatchingParts() throws Exception {
+        // Given
+        final MimePartIndex index = MimePartIndex.of(MimePartIndexTest.nestedMultipart());
+
+        // When
+        final MimePartIndex.Part image = MessageUtils.extractBodypart(index, "<image@isotope>", true);
+        final MimePartIndex.Part attachment = MessageUtils.extractBodypart(index, "file.pdf", false);
+        final MimePartIndex.Part missing = MessageUtils.extractBodypart(index, "missing.pdf", false);
+
+        // Then
+        assertThat(image.getPartPath(), equalTo("1.2"));
+        assertThat(attachment.getPartPath(), equalTo("2"));
+        assertThat(missing, nullValue());
+    }
+
+    @Test
+    public void replaceEmbeddedImage_indexedImage_shouldReplaceCidUrl() throws Exception {
+        // Given
+        final MimePartIndex index = MimePartIndex.of(MimePartIndexTest.nestedMultipart());
+        final String content = MessageUtils.extractContent(index);
+
+        // When
+        final String result = MessageUtils.replaceEmbeddedImage(content,
+                MessageUtils.extractBodypart(index, "<image@isotope>", true));
+
+        // Then
+        assertThat(result, containsString("src=\"data:image/png;base64,AQMDBw==\""));
+    }
+
     @Test
     public void getRecipientAddresses_validMessageNoRecipients_shouldReturnAddresses() {
         // Given
@@ -0,0 +1,135 @@
+/*
+ * MimePartIndexTest.java
+ *
+ * Created on 2026-10-18, 15:05
+ *
+ * Copyright 2018 Marc Nuri
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.marcnuri.isotope.api.message;
+
+import org.junit.Test;
+
+import javax.activation.DataHandler;
+import javax.mail.Multipart;
+import javax.mail.Part;
+import javax.mail.Session;
+import javax.mail.internet.MimeBodyPart;
+import javax.mail.internet.MimeMessage;
+import javax.mail.internet.MimeMultipart;
+import javax.mail.util.ByteArrayDataSource;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Created by Marc Nuri <marc@marcnuri.com> on 2026-10-18.
+ */
+public class MimePartIndexTest {
+
+    @Test
+    public void of_nestedMultipart_shouldIndexAllPartsDepthFirst() throws Exception {
+        // Given
+        final Multipart multipart = nestedMultipart();
+
+        // When
+        final MimePartIndex result = MimePartIndex.of(multipart);
+
+        // Then
+        assertThat(result.getParts().stream().map(MimePartIndex.Part::getPartPath).collect(Collectors.toList()),
+                contains("1", "2"));
+        assertThat(result.getAllParts().stream().map(MimePartIndex.Part::getPartPath).collect(Collectors.toList()),
+                contains("1", "1.1", "1.1.1", "1.1.2", "1.2", "2"));
+        assertThat(result.getAllParts().stream().map(MimePartIndex.Part::getMimeType).collect(Collectors.toList()),
+                contains("multipart/related", "multipart/alternative", "text/plain", "text/html", "image/png",
+                        "application/pdf"));
+        assertThat(result.getParts().get(0).isMultipart(), equalTo(true));
+        assertThat(result.getParts().get(0).getChildren(), hasSize(2));
+    }
+
+    @Test
+    public void of_nestedMultipart_shouldIndexPartHeaders() throws Exception {
+        // Given
+        final Multipart multipart = nestedMultipart();
+
+        // When
+        final List<MimePartIndex.Part> result = MimePartIndex.of(multipart).getAllParts();
+
+        // Then
+        final MimePartIndex.Part text = result.get(2);
+        assertThat(text.getCharset(), equalTo("UTF-8"));
+        assertThat(text.getContentId(), nullValue());
+        final MimePartIndex.Part image = result.get(4);
+        assertThat(image.getContentId(), equalTo("<image@isotope>"));
+        assertThat(image.getDisposition(), equalTo(Part.INLINE));
+        assertThat(image.getCharset(), nullValue());
+        final MimePartIndex.Part attachment = result.get(5);
+        assertThat(attachment.getFileName(), equalTo("file.pdf"));
+        assertThat(attachment.getDisposition(), equalTo(Part.ATTACHMENT));
+        assertThat(attachment.getSize() > 0, equalTo(true));
+        assertThat(attachment.isMultipart(), equalTo(false));
+    }
+
+    @Test
+    public void walk_nestedMultipart_shouldVisitEveryPartOnce() throws Exception {
+        // Given
+        final Multipart multipart = nestedMultipart();
+        final List<String> visited = new ArrayList<>();
+
+        // When
+        MimePartIndex.walk(multipart, part -> visited.add(part.getPartPath()));
+
+        // Then
+        assertThat(visited, contains("1", "1.1", "1.1.1", "1.1.2", "1.2", "2"));
+    }
+
+    /**
+     * Returns a parsed mixed(related(alternative(text, html), image), attachment) multipart.
+     */
+    static Multipart nestedMultipart() throws Exception {
+        final Session session = Session.getInstance(new Properties());
+        final MimeBodyPart text = new MimeBodyPart();
+        text.setText("Plain content", "UTF-8");
+        final MimeBodyPart html = new MimeBodyPart();
+        html.setContent("<p>Html content <img src=\"cid:image@isotope\" /></p>", "text/html; charset=UTF-8");
+        final MimeBodyPart alternative = new MimeBodyPart();
+        alternative.setContent(new MimeMultipart("alternative", text, html));
+        final MimeBodyPart image = new MimeBodyPart();
+        image.setDataHandler(new DataHandler(new ByteArrayDataSource(new byte[]{1, 3, 3, 7}, "image/png")));
+        image.setContentID("<image@isotope>");
+        image.setDisposition(Part.INLINE);
+        final MimeBodyPart related = new MimeBodyPart();
+        related.setContent(new MimeMultipart("related", alternative, image));
+        final MimeBodyPart attachment = new MimeBodyPart();
+        attachment.setDataHandler(new DataHandler(new ByteArrayDataSource(new byte[1024], "application/pdf")));
+        attachment.setFileName("file.pdf");
+        attachment.setDisposition(Part.ATTACHMENT);
+        final MimeMessage message = new MimeMessage(session);
+        message.setContent(new MimeMultipart("mixed", related, attachment));
+        message.saveChanges();
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        message.writeTo(out);
+        return (Multipart) new MimeMessage(session, new ByteArrayInputStream(out.toByteArray())).getContent();
+    }
+}
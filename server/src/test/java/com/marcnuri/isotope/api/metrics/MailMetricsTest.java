@@ -0,0 +1,211 @@
+/*
+ * MailMetricsTest.java
+ *
+ * Created on 2026-10-18, 03:50
+ *
+ * Copyright 2018 Marc Nuri
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.marcnuri.isotope.api.metrics;
+
+import com.sun.mail.imap.IMAPFolder;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import reactor.core.publisher.Flux;
+
+import javax.mail.FetchProfile;
+import javax.mail.MessagingException;
+import javax.mail.UIDFolder;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.junit.Assert.fail;
+
+/**
+ * Created by Marc Nuri <marc@marcnuri.com> on 2026-10-18.
+ */
+public class MailMetricsTest {
+
+    private MeterRegistry meterRegistry;
+    private MailMetrics mailMetrics;
+
+    @Before
+    public void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        mailMetrics = new MailMetrics(meterRegistry);
+    }
+
+    @After
+    public void tearDown() {
+        mailMetrics = null;
+        meterRegistry = null;
+    }
+
+    @Test
+    public void record_successfulCall_shouldRecordTimerAndRoundTrip() throws Exception {
+        // When
+        final String result = mailMetrics.record(MailOperation.STORE, "imap.isotope.com", "PUT /v1/folders", () -> "OK");
+
+        // Then
+        assertThat(result, equalTo("OK"));
+        final Timer timer = meterRegistry.find(MailMetrics.OPERATIONS)
+                .tags(MailMetrics.TAG_OPERATION, "imap.store", MailMetrics.TAG_OUTCOME, MailMetrics.OUTCOME_SUCCESS,
+                        MailMetrics.TAG_PROFILE, MailMetrics.NONE)
+                .timer();
+        assertThat(timer, notNullValue());
+        assertThat(timer.count(), equalTo(1L));
+        assertThat(timer.getId().getTag(MailMetrics.TAG_HOST), not("imap.isotope.com"));
+        assertThat(meterRegistry.find(MailMetrics.ROUND_TRIPS)
+                .tags(MailMetrics.TAG_OPERATION, "imap.store", MailMetrics.TAG_ENDPOINT, "PUT /v1/folders")
+                .counter().count(), equalTo(1D));
+    }
+
+    @Test
+    public void record_failedCall_shouldRecordErrorOutcomeAndRethrow() {
+        // When
+        try {
+            mailMetrics.recordFetch("envelope", "imap.isotope.com", null, () -> {
+                throw new MessagingException("Connection reset");
+            });
+            fail();
+        } catch (MessagingException ex) {
+            // Then
+            assertThat(ex.getMessage(), equalTo("Connection reset"));
+        }
+        assertThat(meterRegistry.find(MailMetrics.OPERATIONS)
+                .tags(MailMetrics.TAG_OUTCOME, MailMetrics.OUTCOME_ERROR, MailMetrics.TAG_PROFILE, "envelope")
+                .timer().count(), equalTo(1L));
+        assertThat(meterRegistry.find(MailMetrics.ROUND_TRIPS)
+                .tags(MailMetrics.TAG_ENDPOINT, MailMetrics.NONE).counter().count(), equalTo(1D));
+    }
+
+    @Test
+    public void record_sameHostDifferentCase_shouldUseSameHostTag() throws Exception {
+        // Given
+        mailMetrics.record(MailOperation.CONNECT, "IMAP.isotope.com", null, () -> null);
+
+        // When
+        mailMetrics.record(MailOperation.CONNECT, "imap.isotope.com", null, () -> null);
+
+        // Then
+        assertThat(meterRegistry.find(MailMetrics.OPERATIONS).timers().size(), equalTo(1));
+        assertThat(meterRegistry.find(MailMetrics.OPERATIONS).timer().getId().getTag(MailMetrics.TAG_HOST).length(),
+                equalTo(12));
+    }
+
+    @Test
+    public void record_sameHostDifferentInstancesWithoutSecret_shouldUseDifferentHostTags() throws Exception {
+        // Given
+        final MeterRegistry otherMeterRegistry = new SimpleMeterRegistry();
+        final MailMetrics otherMailMetrics = new MailMetrics(otherMeterRegistry);
+
+        // When
+        mailMetrics.record(MailOperation.CONNECT, "imap.isotope.com", null, () -> null);
+        otherMailMetrics.record(MailOperation.CONNECT, "imap.isotope.com", null, () -> null);
+
+        // Then
+        assertThat(meterRegistry.find(MailMetrics.OPERATIONS).timer().getId().getTag(MailMetrics.TAG_HOST),
+                not(otherMeterRegistry.find(MailMetrics.OPERATIONS).timer().getId().getTag(MailMetrics.TAG_HOST)));
+    }
+
+    @Test
+    public void record_sameHostDifferentInstancesWithSecret_shouldUseSameReproducibleHostTag() throws Exception {
+        // Given
+        final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+        final MailMetrics mailMetrics = new MailMetrics(meterRegistry, "metrics-secret");
+        final MeterRegistry otherMeterRegistry = new SimpleMeterRegistry();
+        final MailMetrics otherMailMetrics = new MailMetrics(otherMeterRegistry, "metrics-secret");
+
+        // When
+        mailMetrics.record(MailOperation.CONNECT, "imap.isotope.com", null, () -> null);
+        otherMailMetrics.record(MailOperation.CONNECT, "IMAP.isotope.com", null, () -> null);
+
+        // Then
+        assertThat(meterRegistry.find(MailMetrics.OPERATIONS).timer().getId().getTag(MailMetrics.TAG_HOST),
+                equalTo("28387ee3accc"));
+        assertThat(otherMeterRegistry.find(MailMetrics.OPERATIONS).timer().getId().getTag(MailMetrics.TAG_HOST),
+                equalTo("28387ee3accc"));
+    }
+
+    @Test
+    public void record_maxHostTagsExceeded_shouldTagRemainingHostsAsOther() throws Exception {
+        // Given
+        for (int it = 0; it < MailMetrics.MAX_HOST_TAGS; it++) {
+            mailMetrics.record(MailOperation.CONNECT, "imap" + it + ".isotope.com", null, () -> null);
+        }
+
+        // When
+        mailMetrics.record(MailOperation.CONNECT, "imap.other.com", null, () -> null);
+        mailMetrics.record(MailOperation.CONNECT, "imap.another.com", null, () -> null);
+        mailMetrics.record(MailOperation.CONNECT, "imap0.isotope.com", null, () -> null);
+
+        // Then
+        assertThat(meterRegistry.find(MailMetrics.OPERATIONS).timers().size(), equalTo(MailMetrics.MAX_HOST_TAGS + 1));
+        assertThat(meterRegistry.find(MailMetrics.OPERATIONS).tags(MailMetrics.TAG_HOST, MailMetrics.HOST_OTHER)
+                .timer().count(), equalTo(2L));
+    }
+
+    @Test
+    public void profile_uidAndFlagsWithHeaders_shouldReturnItemNames() {
+        // Given
+        final FetchProfile fetchProfile = new FetchProfile();
+        fetchProfile.add(UIDFolder.FetchProfileItem.UID);
+        fetchProfile.add(FetchProfile.Item.FLAGS);
+        fetchProfile.add(IMAPFolder.FetchProfileItem.HEADERS);
+        fetchProfile.add("References");
+
+        // When
+        final String result = MailMetrics.profile(fetchProfile);
+
+        // Then
+        assertThat(result, equalTo("uid+flags+headers"));
+    }
+
+    @Test
+    public void recordHeaderBytes_fieldsProjection_shouldRecordBatchSize() {
+        // When
+        mailMetrics.recordHeaderBytes(false, 1337L);
+        mailMetrics.recordHeaderBytes(false, 663L);
+
+        // Then
+        final DistributionSummary summary = meterRegistry.find(MailMetrics.HEADER_BYTES)
+                .tags(MailMetrics.TAG_HEADERS, MailMetrics.HEADERS_FIELDS).summary();
+        assertThat(summary.count(), equalTo(2L));
+        assertThat(summary.totalAmount(), equalTo(2000D));
+    }
+
+    @Test
+    public void trackStream_subscribedAndCompleted_shouldUpdateActiveStreamsGauge() {
+        // Given
+        final Flux<Integer> flux = mailMetrics.trackStream("messages", Flux.just(1, 2, 3));
+
+        // When
+        final Double activeWhileStreaming = flux
+                .map(i -> meterRegistry.find(MailMetrics.STREAMS_ACTIVE).tags(MailMetrics.TAG_STREAM, "messages")
+                        .gauge().value())
+                .blockFirst();
+
+        // Then
+        assertThat(activeWhileStreaming, equalTo(1D));
+        assertThat(meterRegistry.find(MailMetrics.STREAMS_ACTIVE).gauge().value(), equalTo(0D));
+    }
+}
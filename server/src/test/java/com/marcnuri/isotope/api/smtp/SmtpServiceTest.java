@@ -25,7 +25,9 @@ import com.marcnuri.isotope.api.exception.AuthenticationException;
 import com.marcnuri.isotope.api.http.IsotopeURLDataSource;
 import com.marcnuri.isotope.api.message.Attachment;
 import com.marcnuri.isotope.api.message.Message;
+import com.marcnuri.isotope.api.metrics.MailMetrics;
 import com.sun.mail.util.MailSSLSocketFactory;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.hamcrest.FeatureMatcher;
 import org.hamcrest.Matcher;
 import org.junit.After;
@@ -86,7 +88,8 @@ public class SmtpServiceTest {
         doReturn(new Properties()).when(mockedSession).getProperties();
         doReturn("mockPropertyValue").when(mockedSession).getProperty(Mockito.anyString());
 
-        smtpService = new SmtpService(Mockito.mock(MailSSLSocketFactory.class));
+        smtpService = new SmtpService(
+                Mockito.mock(MailSSLSocketFactory.class), new MailMetrics(new SimpleMeterRegistry()));
     }
 
     @After